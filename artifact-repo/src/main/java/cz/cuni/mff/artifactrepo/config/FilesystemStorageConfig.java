@@ -0,0 +1,32 @@
+package cz.cuni.mff.artifactrepo.config;
+
+import cz.cuni.mff.artifactrepo.service.FilesystemStorageBackend;
+import cz.cuni.mff.artifactrepo.service.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Keeps the objects in a local directory instead of MinIO, selected by {@code storage.backend=filesystem}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "storage.backend", havingValue = "filesystem")
+public class FilesystemStorageConfig {
+    @Value("${storage.filesystem.root}")
+    private String root;
+
+    @Value("${storage.filesystem.fsync}")
+    private boolean fsync;
+
+    @Value("${storage.filesystem.fsync-window-ms}")
+    private long fsyncWindowMs;
+
+    @Bean
+    public StorageBackend storageBackend() {
+        return new FilesystemStorageBackend(Path.of(root), fsync, Duration.ofMillis(fsyncWindowMs));
+    }
+}
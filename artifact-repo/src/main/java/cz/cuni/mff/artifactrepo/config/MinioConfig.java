@@ -1,11 +1,19 @@
 package cz.cuni.mff.artifactrepo.config;
 
+import cz.cuni.mff.artifactrepo.service.CachingStorageBackend;
+import cz.cuni.mff.artifactrepo.service.MinioStorageBackend;
+import cz.cuni.mff.artifactrepo.service.StorageBackend;
 import io.minio.MinioClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
 
 @Configuration
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
 public class MinioConfig {
     @Value("${minio.endpoint}")
     private String endpoint;
@@ -16,11 +24,63 @@ public class MinioConfig {
     @Value("${minio.secretKey}")
     private String secretKey;
 
+    @Value("${minio.publicEndpoint}")
+    private String publicEndpoint;
+
+    @Value("${minio.region}")
+    private String region;
+
+    @Value("${minio.bucketName}")
+    private String bucketName;
+
+    @Value("${cache.enabled}")
+    private boolean cacheEnabled;
+
+    @Value("${cache.directory}")
+    private String cacheDirectory;
+
+    @Value("${cache.max-size}")
+    private long cacheMaxSize;
+
+    @Value("${cache.max-object-size}")
+    private long cacheMaxObjectSize;
+
     @Bean
+    @Primary
     public MinioClient minioClient() {
         return MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
                 .build();
     }
+
+    /**
+     * Client used only to sign presigned URLs handed out to clients. It is bound to the endpoint the clients
+     * reach MinIO at, which is part of the signature, and to a fixed region, so that signing needs no request to MinIO.
+     */
+    @Bean
+    public MinioClient presigningMinioClient() {
+        return MinioClient.builder()
+                .endpoint(publicEndpoint)
+                .region(region)
+                .credentials(accessKey, secretKey)
+                .build();
+    }
+
+    @Bean
+    public MinioStorageBackend minioStorageBackend() {
+        return new MinioStorageBackend(minioClient(), presigningMinioClient(), bucketName);
+    }
+
+    /**
+     * The MinIO bucket, behind a local download cache if {@code cache.enabled} is set.
+     */
+    @Bean
+    @Primary
+    public StorageBackend storageBackend() {
+        if (!cacheEnabled) {
+            return minioStorageBackend();
+        }
+        return new CachingStorageBackend(minioStorageBackend(), Path.of(cacheDirectory), cacheMaxSize, cacheMaxObjectSize);
+    }
 }
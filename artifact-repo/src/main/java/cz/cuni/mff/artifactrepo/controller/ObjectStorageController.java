@@ -1,94 +1,578 @@
 package cz.cuni.mff.artifactrepo.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cz.cuni.mff.artifactrepo.service.BundleEntry;
+import cz.cuni.mff.artifactrepo.service.BundleMember;
+import cz.cuni.mff.artifactrepo.service.BundleService;
+import cz.cuni.mff.artifactrepo.service.CacheStats;
+import cz.cuni.mff.artifactrepo.service.ObjectPage;
+import cz.cuni.mff.artifactrepo.service.ObjectResult;
 import cz.cuni.mff.artifactrepo.service.ObjectStorageService;
-import io.minio.StatObjectResponse;
-import io.minio.errors.MinioException;
+import cz.cuni.mff.artifactrepo.service.PresignedUpload;
+import cz.cuni.mff.artifactrepo.service.StorageBackend;
+import cz.cuni.mff.artifactrepo.service.StorageUsage;
+import cz.cuni.mff.artifactrepo.service.StoredObject;
+import cz.cuni.mff.artifactrepo.service.UploadedObject;
+import cz.cuni.mff.artifactrepo.service.ZipIndexService;
+import cz.cuni.mff.artifactrepo.service.archive.ZipEntryInfo;
+import cz.cuni.mff.artifactrepo.service.archive.ZipIndex;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.web.server.Compression;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/objects")
 public class ObjectStorageController {
 
+    private static final String DELIVERY_REDIRECT = "redirect";
+    private static final String DELIVERY_STREAM = "stream";
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final Pattern OBJECT_ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+
+    // Request attributes through which Tomcat offers and performs sendfile, as used by its DefaultServlet
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
     @Autowired
     private ObjectStorageService objectStorageService;
 
+    @Autowired
+    private BundleService bundleService;
+
+    @Autowired
+    private ZipIndexService zipIndexService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${download.redirect.min-size}")
+    private long redirectMinSize;
+
+    @Value("${download.redirect.expiry-seconds}")
+    private int redirectExpirySeconds;
+
+    @Value("${upload.expiry-seconds}")
+    private int uploadExpirySeconds;
+
+    @Value("${download.sendfile.min-size}")
+    private long sendfileMinSize;
+
+    @Value("${batch.max-size}")
+    private int batchMaxSize;
+
+    @Value("${download.cache-max-age-seconds}")
+    private long cacheMaxAgeSeconds;
+
+    @Autowired
+    private ServerProperties serverProperties;
+
+    /**
+     * Stores an object under a generated ID. Answers with the plain ID, or, for clients asking for JSON,
+     * with the ID together with the size, SHA-256 digest and content type of the object.
+     *
+     * @param file The file to store.
+     * @param accept The Accept header of the request.
+     * @return The object ID, or the uploaded object as JSON.
+     */
     @PostMapping
-    public ResponseEntity<String> storeObjectAndGenerateId(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> storeObjectAndGenerateId(@RequestParam("file") MultipartFile file,
+                                                      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body("File cannot be empty");
         }
         try {
-            String generatedObjectId = objectStorageService.storeObject(file);
+            UploadedObject uploadedObject = objectStorageService.storeObject(file);
 
-            return ResponseEntity.status(HttpStatus.CREATED).body(generatedObjectId);
-        } catch (MinioException | IOException | InvalidKeyException | NoSuchAlgorithmException e) {
+            return uploadResponse(HttpStatus.CREATED, uploadedObject, accept);
+        } catch (IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error storing object: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Starts a direct upload: reserves an object ID and returns a presigned URL the client sends the object bytes to,
+     * so that they go to MinIO without passing through this service. The upload has to be finalized with
+     * {@link #completeUpload(String, long, String, String)}. Not available with the filesystem storage backend.
+     *
+     * @return The upload slot.
+     */
+    @PostMapping(value = "/uploads", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PresignedUpload> createUpload() {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(objectStorageService.createPresignedUpload(uploadExpirySeconds));
+        } catch (UnsupportedOperationException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, e.getMessage(), e);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error creating upload: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finalizes a direct upload by checking the uploaded bytes against the size and SHA-256 digest the client declared
+     * and storing them under the object ID. Uploads that do not match are discarded; existing objects are never touched.
+     *
+     * @param objectId The ID the upload was created for.
+     * @param size The declared size in bytes.
+     * @param sha256 The declared SHA-256 digest, hex-encoded.
+     * @param accept The Accept header of the request.
+     * @return The object ID, or the verified object as JSON for clients asking for JSON.
+     */
+    @PostMapping("/uploads/{objectId}/complete")
+    public ResponseEntity<?> completeUpload(@PathVariable String objectId,
+                                            @RequestParam("size") long size,
+                                            @RequestParam("sha256") String sha256,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        try {
+            Optional<UploadedObject> uploadedObject = objectStorageService.completeUpload(objectId, size, sha256);
+            if (uploadedObject.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Uploaded object does not match the declared size and checksum");
+            }
+            return uploadResponse(HttpStatus.OK, uploadedObject.get(), accept);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error completing upload: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Answers an upload with the uploaded object as JSON if the client names application/json before text/plain
+     * in its Accept header, and with the plain object ID otherwise, as clients predating the JSON answer expect.
+     */
+    private static ResponseEntity<?> uploadResponse(HttpStatus status, UploadedObject uploadedObject, String accept) {
+        if (accept != null) {
+            try {
+                for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+                    if (mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_JSON)) {
+                        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(uploadedObject);
+                    }
+                    if (mediaType.equalsTypeAndSubtype(MediaType.TEXT_PLAIN)) {
+                        break;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // An unparsable Accept header gets the plain answer
+            }
+        }
+        return ResponseEntity.status(status).body(uploadedObject.objectId());
+    }
+
+    /**
+     * Downloads an object. With {@code delivery=redirect}, or for objects of at least {@code download.redirect.min-size} bytes
+     * unless {@code delivery=stream} is requested, answers with a 307 to a short-lived presigned MinIO URL, so that the
+     * bytes go from MinIO to the client directly instead of through this service.
+     * Objects kept in local files, by the filesystem storage backend or the download cache, are only redirected on request;
+     * objects of at least {@code download.sendfile.min-size} bytes are handed to Tomcat to send with sendfile when the
+     * connector supports it. With the download cache, an object that is not cached yet is fetched into it first.
+     * <p>
+     * Objects never change once stored, so downloads carry an entity tag and Last-Modified and may be cached for
+     * {@code download.cache-max-age-seconds} without revalidation. Conditional requests with the current validators
+     * are answered with 304 Not Modified before anything is read or redirected.
+     *
+     * @param objectId The ID of the object.
+     * @param delivery 'redirect' or 'stream' to force a delivery mode, or null to decide by size.
+     * @param request The request, used to hand the file to Tomcat for sendfile.
+     * @param response The response, used to answer conditional requests.
+     * @return The object, or a redirect to it, or null if the request was answered as not modified.
+     */
     @GetMapping("/{objectId}")
-    public ResponseEntity<InputStreamResource> fetchObject(@PathVariable String objectId) {
+    public ResponseEntity<InputStreamResource> fetchObject(@PathVariable String objectId,
+                                                           @RequestParam(value = "delivery", required = false) String delivery,
+                                                           HttpServletRequest request,
+                                                           HttpServletResponse response) {
+        if (delivery != null && !delivery.equals(DELIVERY_REDIRECT) && !delivery.equals(DELIVERY_STREAM)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported delivery: " + delivery + ". Supported: redirect, stream");
+        }
         try {
-            StatObjectResponse metadata = objectStorageService.getObjectMetadata(objectId);
+            StoredObject metadata = objectStorageService.getObjectMetadata(objectId);
             if (metadata == null) {
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Object not found");
             }
 
-            InputStream inputStream = objectStorageService.fetchObject(objectId);
-            if (inputStream == null) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Object not found");
+            // Objects available locally, from the filesystem backend or the download cache, are only redirected on request
+            Optional<Path> localFile = DELIVERY_REDIRECT.equals(delivery) ? Optional.empty() : objectStorageService.getLocalFile(objectId);
+            boolean sendfile = localFile.isPresent() && sendfileMinSize >= 0 && metadata.size() >= sendfileMinSize
+                    && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR));
+
+            String etag = entityTag(metadata, sendfile);
+            if (new ServletWebRequest(request, response).checkNotModified(etag, metadata.lastModified().toEpochMilli())) {
+                // 304 Not Modified, or 412 Precondition Failed for a failed If-Match, with the validators already set
+                if (response.getStatus() == HttpStatus.NOT_MODIFIED.value()) {
+                    response.setHeader(HttpHeaders.CACHE_CONTROL, immutableCacheControl().getHeaderValue());
+                }
+                return null;
             }
 
-            InputStreamResource resource = new InputStreamResource(inputStream);
+            boolean redirect = delivery != null
+                    ? delivery.equals(DELIVERY_REDIRECT)
+                    : localFile.isEmpty() && objectStorageService.supportsPresignedUrls() && redirectMinSize >= 0 && metadata.size() >= redirectMinSize;
+            if (redirect) {
+                String presignedUrl = objectStorageService.getPresignedUrlForGet(objectId, redirectExpirySeconds);
+                return ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT)
+                        .location(URI.create(presignedUrl))
+                        .cacheControl(CacheControl.noStore())
+                        .build();
+            }
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType(metadata.contentType()));
             headers.setContentLength(metadata.size());
             headers.setContentDispositionFormData("attachment", objectId);
+            // ETag and Last-Modified are already set on the response by checkNotModified
+            headers.setCacheControl(immutableCacheControl());
 
-            return new ResponseEntity<>(resource, headers, HttpStatus.OK);
+            if (sendfile) {
+                // Tomcat sends the file itself once the headers are committed; sendfile responses are never compressed
+                request.setAttribute(SENDFILE_FILENAME_ATTR, localFile.get().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTR, 0L);
+                request.setAttribute(SENDFILE_END_ATTR, metadata.size());
+                return new ResponseEntity<>(headers, HttpStatus.OK);
+            }
 
-        } catch (MinioException | IOException | InvalidKeyException | NoSuchAlgorithmException e) {
-            if (e.getMessage() != null && e.getMessage().contains("NoSuchKey")) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Object not found", e);
+            InputStream inputStream = openObject(objectId, localFile);
+            if (inputStream == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Object not found");
             }
+
+            InputStreamResource resource = new InputStreamResource(inputStream);
+
+            return new ResponseEntity<>(resource, headers, HttpStatus.OK);
+
+        } catch (UnsupportedOperationException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error fetching object: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Returns the entity tag of a download, or null if the storage has none. Tomcat does not gzip-compress responses
+     * with a strong entity tag, as the compressed bytes are a different representation, so downloads that it may
+     * compress get a weak one. If-None-Match is compared weakly, so either kind validates cached copies.
+     */
+    private String entityTag(StoredObject metadata, boolean sendfile) {
+        if (metadata.etag() == null) {
+            return null;
+        }
+        String etag = "\"" + metadata.etag() + "\"";
+        return !sendfile && mayBeCompressed(metadata) ? "W/" + etag : etag;
+    }
+
+    private boolean mayBeCompressed(StoredObject metadata) {
+        Compression compression = serverProperties.getCompression();
+        if (!compression.getEnabled() || metadata.size() < compression.getMinResponseSize().toBytes()) {
+            return false;
+        }
+        MediaType contentType = MediaType.parseMediaType(metadata.contentType());
+        return Arrays.stream(compression.getMimeTypes()).anyMatch(mimeType -> MediaType.parseMediaType(mimeType).includes(contentType));
+    }
+
+    private CacheControl immutableCacheControl() {
+        return CacheControl.maxAge(Duration.ofSeconds(cacheMaxAgeSeconds)).cachePublic().immutable();
+    }
+
+    private InputStream openObject(String objectId, Optional<Path> localFile) throws IOException {
+        if (localFile.isPresent()) {
+            try {
+                return Files.newInputStream(localFile.get());
+            } catch (NoSuchFileException e) {
+                // Evicted from the download cache in the meantime
+            }
+        }
+        return objectStorageService.fetchObject(objectId);
+    }
+
+    /**
+     * Lists the files of a ZIP archive, from its central directory, without reading the rest of the archive.
+     *
+     * @param objectId The ID of the archive.
+     * @return The files of the archive with their sizes and compression.
+     */
+    @GetMapping(value = "/{objectId}/entries", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ZipEntryInfo>> listArchiveEntries(@PathVariable String objectId) {
+        try {
+            return ResponseEntity.ok(getZipIndex(objectId).getEntries());
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading archive: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Downloads a single file of a ZIP archive, reading only the range of the archive holding the file.
+     *
+     * @param objectId The ID of the archive.
+     * @param path The path of the file in the archive.
+     * @return The uncompressed file.
+     */
+    @GetMapping("/{objectId}/entries/{*path}")
+    public ResponseEntity<InputStreamResource> fetchArchiveEntry(@PathVariable String objectId, @PathVariable String path) {
+        String entryPath = path.startsWith("/") ? path.substring(1) : path;
+        try {
+            ZipIndex index = getZipIndex(objectId);
+            ZipEntryInfo entry = index.getEntry(entryPath)
+                    .filter(candidate -> !candidate.isDirectory())
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Archive has no file " + entryPath));
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaTypeFactory.getMediaType(entryPath).orElse(MediaType.APPLICATION_OCTET_STREAM));
+            headers.setContentLength(entry.size());
+            headers.setContentDispositionFormData("attachment", entryPath.substring(entryPath.lastIndexOf('/') + 1));
+            InputStream inputStream = zipIndexService.openEntry(objectId, index, entry);
+            return new ResponseEntity<>(new InputStreamResource(inputStream), headers, HttpStatus.OK);
+        } catch (UnsupportedOperationException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, e.getMessage(), e);
+        } catch (NoSuchElementException e) {
+            // The archive was deleted after its index was read
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Object not found", e);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading archive: " + e.getMessage(), e);
+        }
+    }
+
+    private ZipIndex getZipIndex(String objectId) throws IOException {
+        try {
+            return zipIndexService.getIndex(objectId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Object is not a ZIP archive"));
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Object not found", e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
     @DeleteMapping("/{objectId}")
     public ResponseEntity<Void> deleteObject(@PathVariable String objectId) {
         try {
             objectStorageService.deleteObject(objectId);
             return ResponseEntity.noContent().build();
-        } catch (MinioException | IOException | InvalidKeyException | NoSuchAlgorithmException e) {
-            if (e.getMessage() != null && e.getMessage().contains("NoSuchKey")) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Object not found", e);
-            }
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error deleting object: " + e.getMessage(), e);
         }
     }
 
-    @GetMapping("dump")
-    public ResponseEntity<String> dumpObjectStorage() {
+    /**
+     * Deletes a batch of objects, using multi-object deletes where the storage supports them.
+     *
+     * @param objectIds The IDs of the objects to delete, at most {@code batch.max-size}.
+     * @return The outcome for each ID: 'deleted' or 'error'.
+     */
+    @PostMapping(value = "/batch-delete", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ObjectResult>> deleteObjects(@RequestBody List<String> objectIds) {
+        checkBatchSize(objectIds);
+        try {
+            return ResponseEntity.ok(objectStorageService.deleteObjects(objectIds));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error deleting objects: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Retrieves the metadata of a batch of objects in parallel, e.g. to check that they exist.
+     *
+     * @param objectIds The IDs of the objects, at most {@code batch.max-size}.
+     * @return The outcome for each ID: 'found' with the object metadata, 'not_found' or 'error'.
+     */
+    @PostMapping(value = "/batch-stat", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ObjectResult>> statObjects(@RequestBody List<String> objectIds) {
+        checkBatchSize(objectIds);
+        return ResponseEntity.ok(objectStorageService.statObjects(objectIds));
+    }
+
+    /**
+     * Streams objects as a single ZIP or TAR archive, assembled while it is sent. The objects are looked up before
+     * the archive starts, so that missing objects are reported as 404 instead of a truncated archive.
+     *
+     * @param entries The objects to bundle, each with an optional path in the archive, at most {@code batch.max-size}.
+     * @param format 'zip' or 'tar'.
+     * @param compression 'auto' to store already compressed objects and deflate the others, 'store' or 'deflate'; ZIP only.
+     * @param filename The name of the archive offered to the client, without extension.
+     * @return The archive.
+     */
+    @PostMapping(value = "/bundle", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> bundleObjects(@RequestBody List<BundleEntry> entries,
+                                                               @RequestParam(value = "format", defaultValue = "zip") String format,
+                                                               @RequestParam(value = "compression", defaultValue = "auto") String compression,
+                                                               @RequestParam(value = "filename", defaultValue = "bundle") String filename) {
+        if (entries.isEmpty() || entries.size() > batchMaxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A bundle must contain between 1 and " + batchMaxSize + " objects");
+        }
+        for (BundleEntry entry : entries) {
+            // Entries without an object ID are reported by the bundle service
+            if (entry != null && entry.objectId() != null) {
+                checkObjectId(entry.objectId());
+            }
+        }
+        BundleService.Format bundleFormat = parseOption(BundleService.Format.class, "format", format);
+        BundleService.Compression bundleCompression = parseOption(BundleService.Compression.class, "compression", compression);
+
+        List<BundleMember> members;
+        try {
+            members = bundleService.resolveBundle(entries);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error preparing bundle: " + e.getMessage(), e);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(bundleFormat.getContentType()));
+        headers.setContentDispositionFormData("attachment", filename + "." + bundleFormat.getExtension());
+        return new ResponseEntity<>(out -> bundleService.writeBundle(members, bundleFormat, bundleCompression, out), headers, HttpStatus.OK);
+    }
+
+    private static <E extends Enum<E>> E parseOption(Class<E> options, String name, String value) {
+        try {
+            return Enum.valueOf(options, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported " + name + ": " + value + ". Supported: "
+                    + Arrays.stream(options.getEnumConstants()).map(option -> option.name().toLowerCase(Locale.ROOT)).collect(Collectors.joining(", ")));
+        }
+    }
+
+    private void checkBatchSize(List<String> objectIds) {
+        if (objectIds.isEmpty() || objectIds.size() > batchMaxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A batch must contain between 1 and " + batchMaxSize + " object IDs");
+        }
+        if (objectIds.contains(null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Object IDs must not be null");
+        }
+        objectIds.forEach(ObjectStorageController::checkObjectId);
+    }
+
+    /**
+     * Rejects IDs that are not valid object IDs, such as the staging keys of direct uploads,
+     * before a batch reaches the storage.
+     */
+    private static void checkObjectId(String objectId) {
+        if (objectId.startsWith(StorageBackend.STAGING_PREFIX) || !OBJECT_ID.matcher(objectId).matches()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid object ID: " + objectId);
+        }
+    }
+
+    /**
+     * Returns the hit ratio and occupancy of the local download cache.
+     *
+     * @return The cache statistics.
+     */
+    @GetMapping(value = "/cache/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CacheStats> getCacheStats() {
+        return objectStorageService.getCacheStats()
+                .map(ResponseEntity::ok)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Download cache is disabled"));
+    }
+
+    /**
+     * Lists a page of objects in the order of their IDs, together with the token for the next page.
+     *
+     * @param prefix Only objects whose ID starts with this prefix are listed.
+     * @param continuationToken The token returned with the previous page, or null to start with the first object.
+     * @param limit The maximum number of objects on the page, at most 1000.
+     * @return The page of objects.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ObjectPage> listObjects(@RequestParam(value = "prefix", defaultValue = "") String prefix,
+                                                  @RequestParam(value = "continuationToken", required = false) String continuationToken,
+                                                  @RequestParam(value = "limit", defaultValue = "1000") int limit) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be positive: " + limit);
+        }
+        try {
+            return ResponseEntity.ok(objectStorageService.listObjects(prefix, continuationToken, Math.min(limit, MAX_PAGE_SIZE)));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error listing objects: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Streams objects in the order of their IDs as NDJSON, one object per line, following the pages of the listing
+     * until {@code limit} objects have been sent or the listing ends. Only one page of objects is held in memory at a time.
+     *
+     * @param prefix Only objects whose ID starts with this prefix are listed.
+     * @param continuationToken A token returned with a page, or null to start with the first object.
+     * @param limit The maximum number of objects, or null for all of them.
+     * @return The stream of objects.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamObjects(@RequestParam(value = "prefix", defaultValue = "") String prefix,
+                                                               @RequestParam(value = "continuationToken", required = false) String continuationToken,
+                                                               @RequestParam(value = "limit", required = false) Long limit) {
+        if (limit != null && limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be positive: " + limit);
+        }
+        StreamingResponseBody body = out -> {
+            long remaining = limit != null ? limit : Long.MAX_VALUE;
+            String token = continuationToken;
+            do {
+                ObjectPage page = objectStorageService.listObjects(prefix, token, (int) Math.min(remaining, MAX_PAGE_SIZE));
+                for (StoredObject object : page.objects()) {
+                    out.write(objectMapper.writeValueAsBytes(object));
+                    out.write('\n');
+                }
+                out.flush();
+                remaining -= page.objects().size();
+                token = page.nextContinuationToken();
+            } while (token != null && remaining > 0);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Counts the objects and sums up their sizes, without listing them to the client.
+     *
+     * @param prefix Only objects whose ID starts with this prefix are counted.
+     * @return The storage usage.
+     */
+    @GetMapping(value = "/usage", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StorageUsage> getStorageUsage(@RequestParam(value = "prefix", defaultValue = "") String prefix) {
         try {
-            String dump = objectStorageService.dumpObjectStorage();
-            return ResponseEntity.ok(dump);
-        } catch (MinioException | IOException | InvalidKeyException | NoSuchAlgorithmException e) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error dumping object storage: " + e.getMessage(), e);
+            return ResponseEntity.ok(objectStorageService.getStorageUsage(prefix));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error computing storage usage: " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+}
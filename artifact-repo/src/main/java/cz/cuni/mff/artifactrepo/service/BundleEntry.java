@@ -0,0 +1,10 @@
+package cz.cuni.mff.artifactrepo.service;
+
+/**
+ * An object to include in a bundle.
+ *
+ * @param objectId The ID of the object.
+ * @param name The path of the object in the bundle, or null to name it by its ID.
+ */
+public record BundleEntry(String objectId, String name) {
+}
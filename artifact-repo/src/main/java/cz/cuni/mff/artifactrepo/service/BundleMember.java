@@ -0,0 +1,10 @@
+package cz.cuni.mff.artifactrepo.service;
+
+/**
+ * An object of a bundle whose metadata has been looked up, ready to be written.
+ *
+ * @param name The path of the object in the bundle.
+ * @param metadata The metadata of the object.
+ */
+public record BundleMember(String name, StoredObject metadata) {
+}
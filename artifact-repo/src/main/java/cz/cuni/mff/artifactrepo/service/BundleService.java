@@ -0,0 +1,236 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import cz.cuni.mff.artifactrepo.service.archive.ArchiveWriter;
+import cz.cuni.mff.artifactrepo.service.archive.TarStreamWriter;
+import cz.cuni.mff.artifactrepo.service.archive.ZipStreamWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Streams many objects as a single ZIP or TAR archive, assembled while it is sent, without temporary files.
+ * <p>
+ * The objects are read ahead in parallel, up to {@code bundle.parallel-reads} at a time, so that the latency of
+ * fetching each object from the storage overlaps with sending the objects before it. Objects of up to
+ * {@code bundle.prefetch-max-size} bytes are read ahead completely; larger ones are only opened ahead.
+ */
+@Service
+public class BundleService {
+    private static final Logger logger = LoggerFactory.getLogger(BundleService.class);
+
+    // Content types and extensions of formats that are compressed already and are stored in ZIP bundles as they are
+    private static final Set<String> COMPRESSED_CONTENT_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2", "application/x-xz",
+            "application/zstd", "application/x-7z-compressed", "application/x-rar-compressed", "application/java-archive",
+            "application/vnd.apache.parquet", "application/pdf", "image/png", "image/jpeg", "image/gif", "image/webp",
+            "audio/mpeg", "video/mp4", "video/webm");
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "jar", "parquet", "pdf", "png", "jpg", "jpeg", "gif",
+            "webp", "mp3", "mp4", "webm", "docx", "xlsx", "odt", "ods");
+
+    @Autowired
+    private ObjectStorageService objectStorageService;
+
+    @Value("${bundle.parallel-reads}")
+    private int parallelReads;
+
+    @Value("${bundle.prefetch-max-size}")
+    private long prefetchMaxSize;
+
+    public enum Format {
+        ZIP("application/zip", "zip", ZipStreamWriter::new),
+        TAR("application/x-tar", "tar", TarStreamWriter::new);
+
+        private final String contentType;
+        private final String extension;
+        private final Function<OutputStream, ArchiveWriter> writerFactory;
+
+        Format(String contentType, String extension, Function<OutputStream, ArchiveWriter> writerFactory) {
+            this.contentType = contentType;
+            this.extension = extension;
+            this.writerFactory = writerFactory;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * How ZIP entries are compressed; TAR entries are never compressed.
+     */
+    public enum Compression {
+        /** Deflate all entries except those of formats that are compressed already. */
+        AUTO,
+        /** Store all entries as they are. */
+        STORE,
+        /** Deflate all entries. */
+        DEFLATE
+    }
+
+    /**
+     * Looks up the objects of a bundle and checks the names of its entries, before anything of the bundle is sent.
+     *
+     * @param entries The objects to bundle, in the order of the bundle.
+     * @return The members of the bundle, in the order of the entries.
+     * @throws IllegalArgumentException If an entry has no object ID, a name escaping the bundle, or a name used by another entry.
+     * @throws NoSuchElementException If an object does not exist.
+     * @throws IOException If the metadata of an object could not be read.
+     */
+    public List<BundleMember> resolveBundle(List<BundleEntry> entries) throws IOException {
+        List<String> names = new ArrayList<>(entries.size());
+        Set<String> uniqueNames = new HashSet<>();
+        for (BundleEntry entry : entries) {
+            if (entry == null || entry.objectId() == null || entry.objectId().isBlank()) {
+                throw new IllegalArgumentException("Every bundle entry needs an object ID");
+            }
+            String name = entryName(entry);
+            if (!uniqueNames.add(name)) {
+                throw new IllegalArgumentException("Duplicate bundle entry name: " + name);
+            }
+            names.add(name);
+        }
+
+        List<ObjectResult> results = objectStorageService.statObjects(entries.stream().map(BundleEntry::objectId).toList());
+        List<BundleMember> members = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            ObjectResult result = results.get(i);
+            switch (result.status()) {
+                case ObjectResult.FOUND -> members.add(new BundleMember(names.get(i), result.metadata()));
+                case ObjectResult.NOT_FOUND -> throw new NoSuchElementException("Object " + result.objectId() + " not found");
+                default -> throw new IOException("Error getting metadata for object " + result.objectId() + ": " + result.error());
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Writes the bundle. Once this has started, errors can no longer be reported as a response status,
+     * so an object that disappeared in the meantime aborts the bundle with an IOException.
+     *
+     * @param members The members of the bundle, as resolved by {@link #resolveBundle(List)}.
+     * @param format The archive format.
+     * @param compression How to compress ZIP entries.
+     * @param out The stream to write the bundle to; it is flushed but not closed.
+     * @throws IOException If an object could not be read or the bundle could not be written.
+     */
+    public void writeBundle(List<BundleMember> members, Format format, Compression compression, OutputStream out) throws IOException {
+        ArchiveWriter writer = format.writerFactory.apply(out);
+        Deque<Future<InputStream>> pending = new ArrayDeque<>();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        long totalBytes = 0;
+        try {
+            int next = 0;
+            for (BundleMember member : members) {
+                while (next < members.size() && pending.size() < parallelReads) {
+                    pending.add(executor.submit(readAhead(members.get(next++))));
+                }
+                try (InputStream data = await(pending.poll())) {
+                    StoredObject metadata = member.metadata();
+                    writer.addEntry(member.name(), metadata.size(), metadata.lastModified(), shouldCompress(member, compression), data);
+                }
+                totalBytes += member.metadata().size();
+            }
+            writer.finish();
+            logger.info("Bundled {} objects ({} bytes) as {}.", members.size(), totalBytes, format);
+        } finally {
+            // Let the reads still ahead finish, so that the streams they opened can be closed
+            executor.close();
+            for (Future<InputStream> read : pending) {
+                if (read.state() == Future.State.SUCCESS) {
+                    read.resultNow().close();
+                }
+            }
+        }
+    }
+
+    private Callable<InputStream> readAhead(BundleMember member) {
+        return () -> {
+            String objectId = member.metadata().objectId();
+            InputStream inputStream = objectStorageService.fetchObject(objectId);
+            if (inputStream == null) {
+                throw new IOException("Object " + objectId + " was deleted while it was being bundled");
+            }
+            if (member.metadata().size() > prefetchMaxSize) {
+                return inputStream;
+            }
+            try (inputStream) {
+                return new ByteArrayInputStream(inputStream.readAllBytes());
+            }
+        };
+    }
+
+    private static InputStream await(Future<InputStream> read) throws IOException {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading ahead", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Error reading ahead: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static boolean shouldCompress(BundleMember member, Compression compression) {
+        return switch (compression) {
+            case STORE -> false;
+            case DEFLATE -> true;
+            case AUTO -> !isCompressed(member);
+        };
+    }
+
+    private static boolean isCompressed(BundleMember member) {
+        String contentType = member.metadata().contentType();
+        if (contentType != null && COMPRESSED_CONTENT_TYPES.contains(contentType.split(";")[0].trim().toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        String name = member.name();
+        int dot = name.lastIndexOf('.');
+        return dot > name.lastIndexOf('/') && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the path of an entry in the bundle, relative and without '.' or '..' segments.
+     */
+    private static String entryName(BundleEntry entry) {
+        String name = entry.name() == null || entry.name().isBlank() ? entry.objectId() : entry.name();
+        name = name.replace('\\', '/');
+        while (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        for (String segment : name.split("/", -1)) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                throw new IllegalArgumentException("Invalid bundle entry name: " + entry.name());
+            }
+        }
+        return name;
+    }
+}
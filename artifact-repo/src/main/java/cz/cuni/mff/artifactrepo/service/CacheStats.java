@@ -0,0 +1,16 @@
+package cz.cuni.mff.artifactrepo.service;
+
+/**
+ * Statistics of the local download cache since startup.
+ *
+ * @param hits The number of downloads served from the cache.
+ * @param misses The number of downloads streamed from the storage because the object was not cached yet, including
+ *               downloads while another download was fetching the object into the cache.
+ * @param hitRatio The share of downloads served from the cache, or 0 if there were none yet.
+ * @param evictions The number of objects evicted to make room for others.
+ * @param entries The number of cached objects.
+ * @param sizeBytes The total size of the cached objects.
+ * @param maxSizeBytes The size the cache is bounded to.
+ */
+public record CacheStats(long hits, long misses, double hitRatio, long evictions, int entries, long sizeBytes, long maxSizeBytes) {
+}
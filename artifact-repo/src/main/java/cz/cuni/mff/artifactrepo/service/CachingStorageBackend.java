@@ -0,0 +1,348 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import cz.cuni.mff.artifactrepo.service.archive.BoundedInputStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps recently downloaded objects of another backend in a bounded local directory, so that artifacts downloaded
+ * over and over are read from local disk instead of the remote storage, and can be sent with sendfile.
+ * <p>
+ * Objects are immutable once stored, so cached copies stay valid until the object is deleted.
+ * The least recently used objects are evicted once the cached objects exceed the maximum size.
+ * A download of an object that is not cached is streamed from the remote storage right away, while the object is
+ * fetched into the cache in the background; concurrent downloads of the object share that single background fetch.
+ * The cache index is kept in memory, so the cache starts empty after a restart.
+ */
+public class CachingStorageBackend implements StorageBackend {
+    private static final Logger logger = LoggerFactory.getLogger(CachingStorageBackend.class);
+
+    private static final Pattern CACHEABLE_ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+
+    private final StorageBackend delegate;
+    private final Path directory;
+    private final long maxSize;
+    private final long maxObjectSize;
+
+    // Cached objects in access order, guarded by this
+    private final LinkedHashMap<String, StoredObject> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    // Fills in progress by object ID, completed once the object is cached or the fill failed
+    private final Map<String, CompletableFuture<Void>> fills = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param delegate The backend the objects are kept in.
+     * @param directory The directory to cache objects in.
+     * @param maxSize The maximum total size of the cached objects in bytes.
+     * @param maxObjectSize Objects larger than this many bytes are not cached.
+     */
+    public CachingStorageBackend(StorageBackend delegate, Path directory, long maxSize, long maxObjectSize) {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxObjectSize = Math.min(maxObjectSize, maxSize);
+    }
+
+    /**
+     * Creates the cache directory and removes the files cached by a previous run, which the in-memory index no longer covers.
+     */
+    @PostConstruct
+    private void initialize() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> leftovers = Files.list(directory)) {
+                for (Path leftover : leftovers.toList()) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error initializing cache directory {}: {}", directory, e.getMessage(), e);
+            throw new UncheckedIOException("Could not initialize cache directory: " + e.getMessage(), e);
+        }
+        logger.info("Caching up to {} bytes of objects from {} in {}.", maxSize, delegate, directory);
+    }
+
+    /**
+     * Stops the fills in progress; their partial files are removed at the next startup.
+     */
+    @PreDestroy
+    private void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Uploads are written to the backend only; objects are cached when they are first downloaded.
+     */
+    @Override
+    public void put(String objectId, InputStream inputStream, long size, String contentType) throws IOException {
+        delegate.put(objectId, inputStream, size, contentType);
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String objectId) throws IOException {
+        synchronized (this) {
+            StoredObject cached = entries.get(objectId);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+        return delegate.stat(objectId);
+    }
+
+    /**
+     * Objects are read from the cached copy if the object is cached, but do not fill the cache; downloads fill it
+     * through {@link #localFile}.
+     */
+    @Override
+    public Optional<InputStream> open(String objectId) throws IOException {
+        if (isCached(objectId)) {
+            try {
+                return Optional.of(Files.newInputStream(cacheFile(objectId)));
+            } catch (NoSuchFileException e) {
+                // Evicted in the meantime
+                logger.debug("Cached object '{}' was evicted before it could be read.", objectId);
+            }
+        }
+        return delegate.open(objectId);
+    }
+
+    /**
+     * Ranges are read from the cached copy if the object is cached, but do not fill the cache.
+     */
+    @Override
+    public Optional<InputStream> openRange(String objectId, long offset, long length) throws IOException {
+        if (isCached(objectId)) {
+            try {
+                FileChannel channel = FileChannel.open(cacheFile(objectId), StandardOpenOption.READ);
+                channel.position(offset);
+                return Optional.of(new BoundedInputStream(Channels.newInputStream(channel), length));
+            } catch (NoSuchFileException e) {
+                // Evicted in the meantime
+            }
+        }
+        return delegate.openRange(objectId, offset, length);
+    }
+
+    @Override
+    public void delete(String objectId) throws IOException {
+        delegate.delete(objectId);
+        evict(objectId);
+    }
+
+    @Override
+    public void copy(String sourceId, String targetId, String expectedEtag) throws IOException {
+        delegate.copy(sourceId, targetId, expectedEtag);
+    }
+
+    @Override
+    public Map<String, String> deleteAll(Collection<String> objectIds) throws IOException {
+        Map<String, String> errors = delegate.deleteAll(objectIds);
+        for (String objectId : objectIds) {
+            if (!errors.containsKey(objectId)) {
+                evict(objectId);
+            }
+        }
+        return errors;
+    }
+
+    @Override
+    public List<StoredObject> list(String prefix, String startAfter, int limit) throws IOException {
+        return delegate.list(prefix, startAfter, limit);
+    }
+
+    @Override
+    public StorageUsage usage(String prefix) throws IOException {
+        return delegate.usage(prefix);
+    }
+
+    /**
+     * Returns the cached copy of an object. If the object is not cached yet, it is fetched into the cache in the
+     * background, unless another download already started fetching it, and the download is counted as a miss, to be
+     * streamed from the backend instead of waiting for the fetch.
+     * A cached file can be evicted at any time after it has been returned, but only once it has become the least
+     * recently used object, which takes more than the whole cache size of other downloads.
+     *
+     * @return The cached file, or empty if the object is not cached yet, does not exist or is too large to be cached.
+     */
+    @Override
+    public Optional<Path> localFile(String objectId) {
+        if (!CACHEABLE_ID.matcher(objectId).matches()) {
+            return Optional.empty();
+        }
+        if (isCached(objectId)) {
+            hits.incrementAndGet();
+            return Optional.of(cacheFile(objectId));
+        }
+        misses.incrementAndGet();
+        fillInBackground(objectId);
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean supportsPresignedUrls() {
+        return delegate.supportsPresignedUrls();
+    }
+
+    @Override
+    public String presignGet(String objectId, int expirySeconds) throws IOException {
+        return delegate.presignGet(objectId, expirySeconds);
+    }
+
+    @Override
+    public String presignPut(String objectId, int expirySeconds) throws IOException {
+        return delegate.presignPut(objectId, expirySeconds);
+    }
+
+    /**
+     * @return The statistics of the cache since startup.
+     */
+    public synchronized CacheStats getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        return new CacheStats(hitCount, missCount, total == 0 ? 0 : (double) hitCount / total, evictions.get(),
+                entries.size(), size, maxSize);
+    }
+
+    @Override
+    public String toString() {
+        return delegate + " (cached in " + directory + ")";
+    }
+
+    private synchronized boolean isCached(String objectId) {
+        return entries.get(objectId) != null;
+    }
+
+    /**
+     * Starts fetching an object into the cache, unless it is already being fetched.
+     */
+    private void fillInBackground(String objectId) {
+        CompletableFuture<Void> fill = new CompletableFuture<>();
+        if (fills.putIfAbsent(objectId, fill) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    fill(objectId);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Error caching object '{}': {}", objectId, e.getMessage());
+                } finally {
+                    fills.remove(objectId, fill);
+                    fill.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            fills.remove(objectId, fill);
+            fill.complete(null);
+        }
+    }
+
+    /**
+     * Fetches an object from the backend into the cache, then evicts the least recently used objects until the cache fits its size.
+     */
+    private void fill(String objectId) throws IOException {
+        Optional<StoredObject> metadata = delegate.stat(objectId);
+        if (metadata.isEmpty() || metadata.get().size() > maxObjectSize) {
+            return;
+        }
+
+        Path target = cacheFile(objectId);
+        Path tmp = directory.resolve(objectId + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Optional<InputStream> inputStream = delegate.open(objectId);
+            if (inputStream.isEmpty()) {
+                return;
+            }
+            long copied;
+            try (InputStream in = inputStream.get()) {
+                copied = Files.copy(in, tmp);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            StoredObject cached = new StoredObject(objectId, copied, metadata.get().contentType(), metadata.get().lastModified(), metadata.get().etag());
+
+            List<String> evicted = new ArrayList<>();
+            synchronized (this) {
+                StoredObject previous = entries.put(objectId, cached);
+                size += copied - (previous != null ? previous.size() : 0);
+                Iterator<Map.Entry<String, StoredObject>> eldest = entries.entrySet().iterator();
+                while (size > maxSize && eldest.hasNext()) {
+                    Map.Entry<String, StoredObject> entry = eldest.next();
+                    if (entry.getKey().equals(objectId)) {
+                        continue;
+                    }
+                    size -= entry.getValue().size();
+                    evicted.add(entry.getKey());
+                    eldest.remove();
+                }
+            }
+            for (String evictedId : evicted) {
+                Files.deleteIfExists(cacheFile(evictedId));
+            }
+            evictions.addAndGet(evicted.size());
+            logger.debug("Cached object '{}' ({} bytes), evicted {} objects.", objectId, copied, evicted.size());
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Drops the cached copy of an object deleted from the backend. The object is deleted from the backend first, so that
+     * no fill started afterwards can cache it again, and fills already in progress are waited for.
+     */
+    private void evict(String objectId) throws IOException {
+        CompletableFuture<Void> fill = fills.get(objectId);
+        if (fill != null) {
+            fill.join();
+        }
+        synchronized (this) {
+            StoredObject cached = entries.remove(objectId);
+            if (cached != null) {
+                size -= cached.size();
+            }
+        }
+        if (CACHEABLE_ID.matcher(objectId).matches()) {
+            Files.deleteIfExists(cacheFile(objectId));
+        }
+    }
+
+    private Path cacheFile(String objectId) {
+        return directory.resolve(objectId);
+    }
+}
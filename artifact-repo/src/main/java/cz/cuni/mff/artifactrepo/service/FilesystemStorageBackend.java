@@ -0,0 +1,377 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import cz.cuni.mff.artifactrepo.service.archive.BoundedInputStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps objects as plain files under a root directory, for single-node deployments without MinIO.
+ * <p>
+ * Objects live in {@code objects/}, their content types in {@code meta/}. An upload is written through a
+ * {@link FileChannel} into {@code tmp/}, forced to disk by the uploading thread, and then handed to a flusher thread
+ * that moves the uploads of a whole batch into place and syncs the directories once for all of them, so concurrent
+ * uploads share the directory fsyncs instead of paying for two each.
+ * <p>
+ * The IDs of the objects are kept in memory in key order, read from the directory once at startup, so that pages of
+ * a listing are read from a sorted set instead of scanning the whole directory for each page.
+ * <p>
+ * Objects are exposed as local files, so downloads can be sent by the servlet container with sendfile
+ * ({@link FileChannel#transferTo}) without the bytes passing through the JVM heap.
+ */
+public class FilesystemStorageBackend implements StorageBackend {
+    private static final Logger logger = LoggerFactory.getLogger(FilesystemStorageBackend.class);
+
+    private static final Pattern OBJECT_ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final Path objectsDir;
+    private final Path metaDir;
+    private final Path tmpDir;
+    private final boolean fsync;
+    private final long windowNanos;
+
+    // IDs of the objects in objects/, in key order
+    private final NavigableSet<String> objectIds = new ConcurrentSkipListSet<>();
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private record Pending(String objectId, Path data, Path meta, CompletableFuture<Void> done) {
+    }
+
+    /**
+     * @param root The directory the objects are kept in.
+     * @param fsync Whether to force uploads and directory changes to disk before acknowledging an upload.
+     * @param window How long the flusher waits for more uploads after the first upload of a batch arrives.
+     */
+    public FilesystemStorageBackend(Path root, boolean fsync, Duration window) {
+        this.objectsDir = root.resolve("objects");
+        this.metaDir = root.resolve("meta");
+        this.tmpDir = root.resolve("tmp");
+        this.fsync = fsync;
+        this.windowNanos = window.toNanos();
+        this.flusher = new Thread(this::run, "fs-storage-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Creates the storage directories, removes uploads left unfinished by a previous run, reads the IDs of the stored
+     * objects and starts the flusher.
+     */
+    @PostConstruct
+    private void initialize() {
+        try {
+            Files.createDirectories(objectsDir);
+            Files.createDirectories(metaDir);
+            Files.createDirectories(tmpDir);
+            try (Stream<Path> leftovers = Files.list(tmpDir)) {
+                for (Path leftover : leftovers.toList()) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(objectsDir)) {
+                for (Path file : files) {
+                    objectIds.add(file.getFileName().toString());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error initializing storage directory {}: {}", objectsDir.getParent(), e.getMessage(), e);
+            throw new UncheckedIOException("Could not initialize storage directory: " + e.getMessage(), e);
+        }
+        flusher.start();
+        logger.info("Storing {} objects in {} (fsync {}).", objectIds.size(), objectsDir.getParent(), fsync ? "enabled" : "disabled");
+    }
+
+    /**
+     * Stops the flusher after moving all uploads submitted so far into place.
+     */
+    @PreDestroy
+    private void shutdown() {
+        running = false;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void put(String objectId, InputStream inputStream, long size, String contentType) throws IOException {
+        checkObjectId(objectId);
+        String tmpName = objectId + "." + UUID.randomUUID();
+        Path tmpData = tmpDir.resolve(tmpName + ".data");
+        Path tmpMeta = tmpDir.resolve(tmpName + ".meta");
+        try {
+            long written;
+            try (FileChannel channel = FileChannel.open(tmpData, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                written = transferFrom(Channels.newChannel(inputStream), channel);
+                if (size >= 0 && written != size) {
+                    throw new IOException("Upload of object " + objectId + " ended after " + written + " of " + size + " bytes");
+                }
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+            byte[] meta = (contentType != null ? contentType : DEFAULT_CONTENT_TYPE).getBytes(StandardCharsets.UTF_8);
+            try (FileChannel channel = FileChannel.open(tmpMeta, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(meta));
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+
+            awaitFlush(new Pending(objectId, tmpData, tmpMeta, new CompletableFuture<>()));
+            logger.debug("Object '{}' ({} bytes) written to {}.", objectId, written, objectsDir);
+        } finally {
+            Files.deleteIfExists(tmpData);
+            Files.deleteIfExists(tmpMeta);
+        }
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String objectId) throws IOException {
+        checkObjectId(objectId);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(objectsDir.resolve(objectId), BasicFileAttributes.class);
+            // Objects are written once and moved into place, so their size and modification time identify their bytes
+            String etag = Long.toHexString(attributes.lastModifiedTime().toMillis()) + "-" + Long.toHexString(attributes.size());
+            return Optional.of(new StoredObject(objectId, attributes.size(), readContentType(objectId), attributes.lastModifiedTime().toInstant(), etag));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<InputStream> open(String objectId) throws IOException {
+        checkObjectId(objectId);
+        try {
+            return Optional.of(Files.newInputStream(objectsDir.resolve(objectId)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<InputStream> openRange(String objectId, long offset, long length) throws IOException {
+        checkObjectId(objectId);
+        try {
+            FileChannel channel = FileChannel.open(objectsDir.resolve(objectId), StandardOpenOption.READ);
+            channel.position(offset);
+            return Optional.of(new BoundedInputStream(Channels.newInputStream(channel), length));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void delete(String objectId) throws IOException {
+        checkObjectId(objectId);
+        Files.deleteIfExists(objectsDir.resolve(objectId));
+        objectIds.remove(objectId);
+        Files.deleteIfExists(metaDir.resolve(objectId));
+    }
+
+    /**
+     * Reads the page from the sorted IDs, starting at the prefix or after {@code startAfter}, whichever comes later;
+     * IDs with the prefix are adjacent in key order, so the page ends at the first ID without it.
+     */
+    @Override
+    public List<StoredObject> list(String prefix, String startAfter, int limit) throws IOException {
+        NavigableSet<String> following = startAfter != null && startAfter.compareTo(prefix) >= 0
+                ? objectIds.tailSet(startAfter, false)
+                : objectIds.tailSet(prefix, true);
+        List<StoredObject> objects = new ArrayList<>(Math.min(limit, 1000));
+        for (String objectId : following) {
+            if (objects.size() >= limit || !objectId.startsWith(prefix)) {
+                break;
+            }
+            // Skips objects deleted since their ID was read
+            stat(objectId).ifPresent(objects::add);
+        }
+        return objects;
+    }
+
+    @Override
+    public StorageUsage usage(String prefix) throws IOException {
+        long objectCount = 0;
+        long totalBytes = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(objectsDir, file -> file.getFileName().toString().startsWith(prefix))) {
+            for (Path file : files) {
+                try {
+                    totalBytes += Files.size(file);
+                    objectCount++;
+                } catch (NoSuchFileException e) {
+                    // Deleted since the scan
+                }
+            }
+        }
+        return new StorageUsage(prefix, objectCount, totalBytes);
+    }
+
+    @Override
+    public Optional<Path> localFile(String objectId) {
+        checkObjectId(objectId);
+        Path file = objectsDir.resolve(objectId);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "directory " + objectsDir.getParent();
+    }
+
+    /**
+     * Rejects IDs that could address a file outside the storage directories.
+     */
+    private static void checkObjectId(String objectId) {
+        if (objectId == null || !OBJECT_ID.matcher(objectId).matches()) {
+            throw new IllegalArgumentException("Invalid object ID: " + objectId);
+        }
+    }
+
+    private String readContentType(String objectId) throws IOException {
+        try {
+            return Files.readString(metaDir.resolve(objectId), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+    }
+
+    private static long transferFrom(ReadableByteChannel source, FileChannel target) throws IOException {
+        long position = 0;
+        long transferred;
+        while ((transferred = target.transferFrom(source, position, 1 << 20)) > 0) {
+            position += transferred;
+        }
+        return position;
+    }
+
+    private void awaitFlush(Pending pending) throws IOException {
+        if (!running) {
+            throw new IllegalStateException("Storage backend has been shut down");
+        }
+        queue.add(pending);
+        // The flusher may have seen an empty queue and stopped since the check above; then nobody else takes the upload
+        if (!running && queue.remove(pending)) {
+            throw new IllegalStateException("Storage backend has been shut down");
+        }
+        try {
+            pending.done().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flushBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.done().completeExceptionally(new IllegalStateException("Storage backend has been shut down"));
+        }
+    }
+
+    /**
+     * Moves the uploads of a batch into place, then syncs both directories once so that all the moves are durable.
+     * The content type is moved first, so that a visible object always has its content type.
+     */
+    private void flushBatch(List<Pending> batch) {
+        List<Pending> moved = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            try {
+                Files.move(pending.meta(), metaDir.resolve(pending.objectId()), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(pending.data(), objectsDir.resolve(pending.objectId()), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                objectIds.add(pending.objectId());
+                moved.add(pending);
+            } catch (IOException e) {
+                logger.error("Error moving object '{}' into place: {}", pending.objectId(), e.getMessage(), e);
+                pending.done().completeExceptionally(e);
+            }
+        }
+        if (moved.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (fsync) {
+                forceDirectory(metaDir);
+                forceDirectory(objectsDir);
+            }
+            moved.forEach(pending -> pending.done().complete(null));
+            logger.debug("Flushed {} uploads with one directory sync.", moved.size());
+        } catch (IOException e) {
+            logger.error("Error syncing storage directories: {}", e.getMessage(), e);
+            moved.forEach(pending -> pending.done().completeExceptionally(e));
+        }
+    }
+
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
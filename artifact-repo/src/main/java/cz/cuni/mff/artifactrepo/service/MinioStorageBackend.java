@@ -0,0 +1,320 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.MinioException;
+import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps objects in a MinIO bucket. Clients can be handed presigned URLs to read and write objects in MinIO directly.
+ */
+public class MinioStorageBackend implements StorageBackend {
+    private static final Logger logger = LoggerFactory.getLogger(MinioStorageBackend.class);
+
+    // Upper bound of keys S3 returns per list request
+    private static final int MAX_KEYS_PER_REQUEST = 1000;
+
+    private final MinioClient minioClient;
+    private final MinioClient presigningMinioClient;
+    private final String bucketName;
+
+    /**
+     * @param minioClient The client used to access the objects.
+     * @param presigningMinioClient The client used to sign presigned URLs handed out to clients.
+     * @param bucketName The bucket the objects are kept in.
+     */
+    public MinioStorageBackend(MinioClient minioClient, MinioClient presigningMinioClient, String bucketName) {
+        this.minioClient = minioClient;
+        this.presigningMinioClient = presigningMinioClient;
+        this.bucketName = bucketName;
+    }
+
+    /**
+     * Ensures that the configured bucket exists. If it does not exist, it creates the bucket.
+     * This method is called after the backend is initialized.
+     */
+    @PostConstruct
+    private void ensureBucketExists() {
+        try {
+            boolean found = minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build());
+            if (!found) {
+                minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+                logger.info("Bucket {} created successfully.", bucketName);
+            } else {
+                logger.info("Bucket {} already exists.", bucketName);
+            }
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            logger.error("Error ensuring bucket exists: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not initialize MinIO bucket: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void put(String objectId, InputStream inputStream, long size, String contentType) throws IOException {
+        try {
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectId)
+                            .stream(inputStream, size, -1)
+                            .contentType(contentType)
+                            .build());
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error uploading object " + objectId, e);
+        }
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String objectId) throws IOException {
+        try {
+            StatObjectResponse response = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectId)
+                            .build());
+            return Optional.of(new StoredObject(objectId, response.size(), response.contentType(), response.lastModified().toInstant(), unquote(response.etag())));
+        } catch (ErrorResponseException e) {
+            if (isNoSuchKey(e)) {
+                return Optional.empty();
+            }
+            throw storageError("Error getting metadata for object " + objectId, e);
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error getting metadata for object " + objectId, e);
+        }
+    }
+
+    @Override
+    public Optional<InputStream> open(String objectId) throws IOException {
+        try {
+            return Optional.of(minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectId)
+                            .build()));
+        } catch (ErrorResponseException e) {
+            if (isNoSuchKey(e)) {
+                return Optional.empty();
+            }
+            throw storageError("Error fetching object " + objectId, e);
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error fetching object " + objectId, e);
+        }
+    }
+
+    @Override
+    public Optional<InputStream> openRange(String objectId, long offset, long length) throws IOException {
+        try {
+            return Optional.of(minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectId)
+                            .offset(offset)
+                            .length(length)
+                            .build()));
+        } catch (ErrorResponseException e) {
+            if (isNoSuchKey(e)) {
+                return Optional.empty();
+            }
+            throw storageError("Error fetching range of object " + objectId, e);
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error fetching range of object " + objectId, e);
+        }
+    }
+
+    @Override
+    public void delete(String objectId) throws IOException {
+        try {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectId)
+                            .build());
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error deleting object " + objectId, e);
+        }
+    }
+
+    /**
+     * Copies the object within MinIO, with a multipart copy for objects beyond the 5 GiB limit of a single copy.
+     */
+    @Override
+    public void copy(String sourceId, String targetId, String expectedEtag) throws IOException {
+        try {
+            StatObjectResponse source = minioClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(sourceId).build());
+            minioClient.composeObject(
+                    ComposeObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(targetId)
+                            .sources(List.of(ComposeSource.builder()
+                                    .bucket(bucketName)
+                                    .object(sourceId)
+                                    .matchETag(expectedEtag)
+                                    .build()))
+                            .headers(Map.of("Content-Type", source.contentType()))
+                            .build());
+        } catch (ErrorResponseException e) {
+            String code = e.errorResponse().code();
+            if (code.equals("PreconditionFailed") || code.equals("NoSuchKey")) {
+                throw new IllegalStateException("Object " + sourceId + " changed before it was copied", e);
+            }
+            throw storageError("Error copying object " + sourceId + " to " + targetId, e);
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error copying object " + sourceId + " to " + targetId, e);
+        }
+    }
+
+    /**
+     * Deletes the objects with multi-object delete requests, of up to 1000 objects each.
+     */
+    @Override
+    public Map<String, String> deleteAll(Collection<String> objectIds) throws IOException {
+        Map<String, String> errors = new HashMap<>();
+        try {
+            Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                    RemoveObjectsArgs.builder()
+                            .bucket(bucketName)
+                            .objects(objectIds.stream().map(DeleteObject::new).toList())
+                            .build());
+            // The deletes are only sent while the results are read
+            for (Result<DeleteError> result : results) {
+                DeleteError error = result.get();
+                errors.put(error.objectName(), error.code() + ": " + error.message());
+            }
+            return errors;
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error deleting objects from bucket " + bucketName, e);
+        }
+    }
+
+    /**
+     * MinIO lists objects in key order, fetching the keys from the bucket page by page as they are consumed.
+     */
+    @Override
+    public List<StoredObject> list(String prefix, String startAfter, int limit) throws IOException {
+        List<StoredObject> objects = new ArrayList<>(Math.min(limit, MAX_KEYS_PER_REQUEST));
+        try {
+            for (Result<Item> result : listObjects(prefix, startAfter, Math.min(limit, MAX_KEYS_PER_REQUEST))) {
+                if (objects.size() >= limit) {
+                    break;
+                }
+                Item item = result.get();
+                if (item.objectName().startsWith(STAGING_PREFIX)) {
+                    continue;
+                }
+                objects.add(new StoredObject(item.objectName(), item.size(), null, item.lastModified().toInstant(), unquote(item.etag())));
+            }
+            return objects;
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error listing bucket " + bucketName, e);
+        }
+    }
+
+    @Override
+    public StorageUsage usage(String prefix) throws IOException {
+        long objectCount = 0;
+        long totalBytes = 0;
+        try {
+            for (Result<Item> result : listObjects(prefix, null, MAX_KEYS_PER_REQUEST)) {
+                Item item = result.get();
+                if (item.objectName().startsWith(STAGING_PREFIX)) {
+                    continue;
+                }
+                objectCount++;
+                totalBytes += item.size();
+            }
+            return new StorageUsage(prefix, objectCount, totalBytes);
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error summing up bucket " + bucketName, e);
+        }
+    }
+
+    @Override
+    public boolean supportsPresignedUrls() {
+        return true;
+    }
+
+    /**
+     * The URL is reachable at the public MinIO endpoint, which serves the object through it as an attachment named by its ID.
+     */
+    @Override
+    public String presignGet(String objectId, int expirySeconds) throws IOException {
+        try {
+            return presigningMinioClient.getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(Method.GET)
+                            .bucket(bucketName)
+                            .object(objectId)
+                            .expiry(expirySeconds, TimeUnit.SECONDS)
+                            .extraQueryParams(Map.of("response-content-disposition", "attachment; filename=\"" + objectId + "\""))
+                            .build());
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error generating presigned URL for object " + objectId, e);
+        }
+    }
+
+    @Override
+    public String presignPut(String objectId, int expirySeconds) throws IOException {
+        try {
+            return presigningMinioClient.getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(Method.PUT)
+                            .bucket(bucketName)
+                            .object(objectId)
+                            .expiry(expirySeconds, TimeUnit.SECONDS)
+                            .build());
+        } catch (MinioException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw storageError("Error generating presigned upload URL for object " + objectId, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MinIO bucket " + bucketName;
+    }
+
+    private Iterable<Result<Item>> listObjects(String prefix, String startAfter, int maxKeys) {
+        ListObjectsArgs.Builder args = ListObjectsArgs.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .recursive(true)
+                .maxKeys(maxKeys);
+        if (startAfter != null) {
+            args.startAfter(startAfter);
+        }
+        return minioClient.listObjects(args.build());
+    }
+
+    private static boolean isNoSuchKey(ErrorResponseException e) {
+        return e.errorResponse().code().equals("NoSuchKey");
+    }
+
+    /**
+     * Strips the quotes listings keep around ETags, so that they match the ETags of object metadata.
+     */
+    private static String unquote(String etag) {
+        return etag == null ? null : etag.replace("\"", "");
+    }
+
+    private static IOException storageError(String message, Exception e) {
+        logger.error("{}: {}", message, e.getMessage(), e);
+        return new IOException(message + ": " + e.getMessage(), e);
+    }
+}
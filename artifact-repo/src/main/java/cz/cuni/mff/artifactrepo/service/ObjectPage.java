@@ -0,0 +1,12 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import java.util.List;
+
+/**
+ * A page of stored objects, ordered by ID.
+ *
+ * @param objects The objects of this page.
+ * @param nextContinuationToken The token to request the next page with, or null if this is the last page.
+ */
+public record ObjectPage(List<StoredObject> objects, String nextContinuationToken) {
+}
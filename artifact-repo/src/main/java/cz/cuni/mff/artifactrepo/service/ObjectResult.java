@@ -0,0 +1,36 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of a batch operation for a single object.
+ *
+ * @param objectId The ID of the object.
+ * @param status 'deleted', 'found', 'not_found' or 'error'.
+ * @param metadata The metadata of a found object.
+ * @param error The reason of an error.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ObjectResult(String objectId, String status, StoredObject metadata, String error) {
+
+    public static final String DELETED = "deleted";
+    public static final String FOUND = "found";
+    public static final String NOT_FOUND = "not_found";
+    public static final String ERROR = "error";
+
+    public static ObjectResult deleted(String objectId) {
+        return new ObjectResult(objectId, DELETED, null, null);
+    }
+
+    public static ObjectResult found(StoredObject metadata) {
+        return new ObjectResult(metadata.objectId(), FOUND, metadata, null);
+    }
+
+    public static ObjectResult notFound(String objectId) {
+        return new ObjectResult(objectId, NOT_FOUND, null, null);
+    }
+
+    public static ObjectResult error(String objectId, String error) {
+        return new ObjectResult(objectId, ERROR, null, error);
+    }
+}
@@ -1,11 +1,5 @@
 package cz.cuni.mff.artifactrepo.service;
 
-import io.minio.*;
-import io.minio.errors.ErrorResponseException;
-import io.minio.errors.MinioException;
-import io.minio.http.Method;
-import io.minio.messages.Item;
-import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,253 +9,321 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.InvalidKeyException;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 @Service
 public class ObjectStorageService {
     private static final Logger logger = LoggerFactory.getLogger(ObjectStorageService.class);
 
     @Autowired
-    private MinioClient minioClient;
+    private StorageBackend storageBackend;
 
-    @Value("${minio.bucketName}")
-    private String bucketName;
+    @Autowired
+    private ZipIndexService zipIndexService;
 
-    /**
-     * Ensures that the configured bucket exists. If it does not exist, it creates the bucket.
-     * This method is called after the service is initialized.
-     */
-    @PostConstruct
-    private void ensureBucketExists() {
-        try {
-            boolean found = minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build());
-            if (!found) {
-                minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
-                logger.info("Bucket {} created successfully.", bucketName);
-            } else {
-                logger.info("Bucket {} already exists.", bucketName);
-            }
-        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
-            logger.error("Error ensuring bucket exists: {}", e.getMessage(), e);
-            throw new RuntimeException("Could not initialize MinIO bucket: " + e.getMessage(), e);
-        }
-    }
+    @Value("${batch.stat-parallelism}")
+    private int statParallelism;
+
+    // IDs of direct uploads that are being verified, so that two completions of one upload do not race
+    private final Set<String> completingUploads = ConcurrentHashMap.newKeySet();
 
     /**
-     * Stores an object in the configured bucket and generates a unique ID for it.
+     * Stores an object and generates a unique ID for it. The SHA-256 digest is computed while the bytes are
+     * passed to the storage, so the object is not read a second time for it.
      *
      * @param file The file to store.
-     * @return The generated object ID.
-     * @throws MinioException If there is an error communicating with MinIO.
-     * @throws IOException If there is an IO error.
-     * @throws InvalidKeyException If the provided key is invalid.
-     * @throws NoSuchAlgorithmException If the specified algorithm does not exist.
+     * @return The generated object ID with the size, digest and content type of the object.
+     * @throws IOException If the object could not be stored.
      */
-    public String storeObject(MultipartFile file) throws MinioException, IOException, InvalidKeyException, NoSuchAlgorithmException {
+    public UploadedObject storeObject(MultipartFile file) throws IOException {
         String objectId = UUID.randomUUID().toString();
+        MessageDigest digest = sha256();
 
-        try (InputStream inputStream = file.getInputStream()) {
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(objectId)
-                            .stream(inputStream, file.getSize(), -1)
-                            .contentType(file.getContentType())
-                            .build());
-            logger.info("Object '{}' uploaded successfully to bucket '{}'.", objectId, bucketName);
-            return objectId;
-        } catch (Exception e) {
+        try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+            storageBackend.put(objectId, inputStream, file.getSize(), file.getContentType());
+            logger.info("Object '{}' uploaded successfully to {}.", objectId, storageBackend);
+            zipIndexService.indexInBackground(objectId);
+            return new UploadedObject(objectId, file.getSize(), HexFormat.of().formatHex(digest.digest()), file.getContentType());
+        } catch (IOException e) {
             logger.error("Error uploading object with generated ID '{}': {}", objectId, e.getMessage(), e);
-            errorHandler(e);
-            throw new RuntimeException("Error during object upload: " + e.getMessage(), e);
+            throw e;
         }
     }
 
     /**
-     * Fetches an object from the configured bucket.
+     * Fetches an object.
      *
      * @param objectId The ID of the object to fetch.
      * @return An InputStream for the object, or null if the object does not exist.
-     * @throws MinioException If there is an error communicating with MinIO.
-     * @throws IOException If there is an IO error.
-     * @throws InvalidKeyException If the provided key is invalid.
-     * @throws NoSuchAlgorithmException If the specified algorithm does not exist.
+     * @throws IOException If the object could not be read.
      */
-    public InputStream fetchObject(String objectId) throws MinioException, IOException, InvalidKeyException, NoSuchAlgorithmException {
-        try {
-            return minioClient.getObject(
-                    GetObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(objectId)
-                            .build());
-        } catch (ErrorResponseException e) {
-            if (e.errorResponse().code().equals("NoSuchKey")) {
-                logger.warn("Object '{}' not found in bucket '{}'.", objectId, bucketName);
-                return null;
-            }
-            logger.error("Error fetching object '{}': Minio error code {}", objectId, e.errorResponse().code(), e);
-            throw e;
-        } catch (Exception e) {
-            logger.error("Error fetching object '{}': {}", objectId, e.getMessage(), e);
-            errorHandler(e);
-            throw new RuntimeException("Error during object fetch: " + e.getMessage(), e);
+    public InputStream fetchObject(String objectId) throws IOException {
+        Optional<InputStream> inputStream = storageBackend.open(objectId);
+        if (inputStream.isEmpty()) {
+            logger.warn("Object '{}' not found in {}.", objectId, storageBackend);
         }
+        return inputStream.orElse(null);
     }
 
     /**
-     * Retrieves metadata for an object in the configured bucket.
+     * Retrieves metadata for an object.
      *
      * @param objectId The ID of the object to retrieve metadata for.
      * @return The metadata of the object, or null if the object does not exist.
-     * @throws MinioException If there is an error communicating with MinIO.
-     * @throws IOException If there is an IO error.
-     * @throws InvalidKeyException If the provided key is invalid.
-     * @throws NoSuchAlgorithmException If the specified algorithm does not exist.
+     * @throws IOException If the metadata could not be read.
      */
-    public StatObjectResponse getObjectMetadata(String objectId) throws MinioException, IOException, InvalidKeyException, NoSuchAlgorithmException {
-        try {
-            return minioClient.statObject(
-                    StatObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(objectId)
-                            .build());
-        } catch (ErrorResponseException e) {
-            if (e.errorResponse().code().equals("NoSuchKey")) {
-                logger.warn("Metadata requested for non-existent object '{}' in bucket '{}'.", objectId, bucketName);
-                return null;
-            }
-            logger.error("Error getting metadata for object '{}': Minio error code {}", objectId, e.errorResponse().code(), e);
-            throw e;
-        } catch (Exception e) {
-            logger.error("Error getting metadata for object '{}': {}", objectId, e.getMessage(), e);
-            errorHandler(e);
-            throw new RuntimeException("Error during metadata fetch: " + e.getMessage(), e);
+    public StoredObject getObjectMetadata(String objectId) throws IOException {
+        Optional<StoredObject> metadata = storageBackend.stat(objectId);
+        if (metadata.isEmpty()) {
+            logger.warn("Metadata requested for non-existent object '{}' in {}.", objectId, storageBackend);
         }
+        return metadata.orElse(null);
     }
 
     /**
-     * Generates a presigned URL for downloading an object.
+     * Returns the local file holding an object, if the storage backend keeps objects in local files or the object is
+     * cached locally; an object that can be cached but is not yet is fetched into the cache in the background. Such
+     * files can be sent to clients with sendfile, without copying them through the JVM.
+     *
+     * @param objectId The ID of the object.
+     * @return The file, or empty if the object is not kept in a local file.
+     * @throws IOException If the local file could not be looked up.
+     */
+    public Optional<Path> getLocalFile(String objectId) throws IOException {
+        return storageBackend.localFile(objectId);
+    }
+
+    /**
+     * @return The statistics of the local download cache, or empty if caching is disabled.
+     */
+    public Optional<CacheStats> getCacheStats() {
+        if (storageBackend instanceof CachingStorageBackend cachingStorageBackend) {
+            return Optional.of(cachingStorageBackend.getStats());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return true if the storage backend can hand out presigned URLs for direct downloads and uploads.
+     */
+    public boolean supportsPresignedUrls() {
+        return storageBackend.supportsPresignedUrls();
+    }
+
+    /**
+     * Generates a presigned URL for downloading an object directly from the storage.
      *
      * @param objectId The ID of the object to generate the URL for.
      * @param expirySeconds The number of seconds until the URL expires.
      * @return A presigned URL for the object.
-     * @throws MinioException If there is an error communicating with MinIO.
-     * @throws IOException If there is an IO error.
-     * @throws InvalidKeyException If the provided key is invalid.
-     * @throws NoSuchAlgorithmException If the specified algorithm does not exist.
+     * @throws UnsupportedOperationException If the storage backend does not support presigned URLs.
+     * @throws IOException If the URL could not be generated.
      */
-    public String getPresignedUrlForGet(String objectId, int expirySeconds) throws MinioException, IOException, InvalidKeyException, NoSuchAlgorithmException {
-        try {
-            return minioClient.getPresignedObjectUrl(
-                    GetPresignedObjectUrlArgs.builder()
-                            .method(Method.GET)
-                            .bucket(bucketName)
-                            .object(objectId)
-                            .expiry(expirySeconds, TimeUnit.SECONDS)
-                            .build());
-        } catch (Exception e) {
-            logger.error("Error generating presigned URL for object '{}': {}", objectId, e.getMessage(), e);
-            errorHandler(e);
-            throw new RuntimeException("Error during presigned URL generation: " + e.getMessage(), e);
-        }
+    public String getPresignedUrlForGet(String objectId, int expirySeconds) throws IOException {
+        return storageBackend.presignGet(objectId, expirySeconds);
     }
 
     /**
-     * Deletes an object from the configured bucket.
+     * Reserves a new object ID and generates a presigned URL for uploading the object directly to the storage.
+     * The URL writes to a staging key; the object only gets its ID once {@link #completeUpload} has verified it.
      *
-     * @param objectId The ID of the object to delete.
-     * @throws MinioException If there is an error communicating with MinIO.
-     * @throws IOException If there is an IO error.
-     * @throws InvalidKeyException If the provided key is invalid.
-     * @throws NoSuchAlgorithmException If the specified algorithm does not exist.
+     * @param expirySeconds The number of seconds until the URL expires.
+     * @return The upload slot.
+     * @throws UnsupportedOperationException If the storage backend does not support presigned URLs.
+     * @throws IOException If the URL could not be generated.
+     */
+    public PresignedUpload createPresignedUpload(int expirySeconds) throws IOException {
+        String objectId = UUID.randomUUID().toString();
+        Instant expiresAt = Instant.now().plusSeconds(expirySeconds);
+        String uploadUrl = storageBackend.presignPut(StorageBackend.STAGING_PREFIX + objectId, expirySeconds);
+        logger.info("Presigned upload of object '{}' to {} created.", objectId, storageBackend);
+        return new PresignedUpload(objectId, uploadUrl, "PUT", expiresAt);
+    }
+
+    /**
+     * Completes an upload through a presigned URL: checks that the staged upload has the size and SHA-256 digest the
+     * client declared and copies it to its object ID. The presigned URL only ever writes to the staging key, so the
+     * object cannot be overwritten once it has been verified, and a failed check only deletes the staged upload.
+     * The size is checked against the object metadata first, so that only uploads of the right size are read for hashing.
+     *
+     * @param objectId The ID the upload was presigned for.
+     * @param expectedSize The declared size in bytes.
+     * @param expectedSha256 The declared SHA-256 digest, hex-encoded.
+     * @return The verified object, or empty if the upload does not match.
+     * @throws NoSuchElementException If there is no pending upload with this ID.
+     * @throws IllegalStateException If the upload is being completed by another request or changed while it was verified.
+     * @throws IOException If the upload could not be read or copied.
      */
-    public void deleteObject(String objectId) throws MinioException, IOException, InvalidKeyException, NoSuchAlgorithmException {
+    public Optional<UploadedObject> completeUpload(String objectId, long expectedSize, String expectedSha256) throws IOException {
+        if (!isObjectId(objectId)) {
+            throw new NoSuchElementException("There is no pending upload " + objectId);
+        }
+        if (!completingUploads.add(objectId)) {
+            throw new IllegalStateException("Upload " + objectId + " is already being completed");
+        }
         try {
-            minioClient.removeObject(
-                    RemoveObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(objectId)
-                            .build());
-            logger.info("Object '{}' deleted successfully from bucket '{}'.", objectId, bucketName);
-        } catch (ErrorResponseException e) {
-            if (e.errorResponse().code().equals("NoSuchKey")) {
-                logger.warn("Attempted to delete non-existent object '{}' in bucket '{}'.", objectId, bucketName);
+            String stagingId = StorageBackend.STAGING_PREFIX + objectId;
+            StoredObject staged = storageBackend.stat(stagingId)
+                    .orElseThrow(() -> new NoSuchElementException("There is no pending upload " + objectId));
+            if (storageBackend.stat(objectId).isPresent()) {
+                // Uploaded again after it was completed; the object itself is kept as it was verified
+                storageBackend.delete(stagingId);
+                throw new NoSuchElementException("There is no pending upload " + objectId);
             }
-            logger.error("Error deleting object '{}': Minio error code {}", objectId, e.errorResponse().code(), e);
-            throw e;
-        } catch (Exception e) {
-            logger.error("Error deleting object '{}': {}", objectId, e.getMessage(), e);
-            errorHandler(e);
-            throw new RuntimeException("Error during object deletion: " + e.getMessage(), e);
+            if (staged.size() != expectedSize) {
+                logger.warn("Upload '{}' has {} bytes, {} were declared.", objectId, staged.size(), expectedSize);
+                storageBackend.delete(stagingId);
+                return Optional.empty();
+            }
+
+            MessageDigest digest = sha256();
+            try (InputStream inputStream = storageBackend.open(stagingId)
+                    .orElseThrow(() -> new NoSuchElementException("There is no pending upload " + objectId))) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            String actualSha256 = HexFormat.of().formatHex(digest.digest());
+            if (!actualSha256.equalsIgnoreCase(expectedSha256)) {
+                logger.warn("Upload '{}' has SHA-256 {}, {} was declared.", objectId, actualSha256, expectedSha256);
+                storageBackend.delete(stagingId);
+                return Optional.empty();
+            }
+
+            // Only the bytes that were hashed are copied; a PUT racing the check fails the copy instead
+            storageBackend.copy(stagingId, objectId, staged.etag());
+            storageBackend.delete(stagingId);
+            logger.info("Upload '{}' verified and stored in {}.", objectId, storageBackend);
+            zipIndexService.indexInBackground(objectId);
+            return Optional.of(new UploadedObject(objectId, staged.size(), actualSha256, staged.contentType()));
+        } finally {
+            completingUploads.remove(objectId);
         }
     }
 
-    // dumpObjectStorage();
     /**
-     * Dumps the contents of the configured bucket.
+     * Deletes an object.
      *
-     * @return A string representation of the bucket contents.
-     * @throws MinioException If there is an error communicating with MinIO.
-     * @throws IOException If there is an IO error.
-     * @throws InvalidKeyException If the provided key is invalid.
-     * @throws NoSuchAlgorithmException If the specified algorithm does not exist.
+     * @param objectId The ID of the object to delete.
+     * @throws IOException If the object could not be deleted.
      */
-    public String dumpObjectStorage() throws MinioException, IOException, InvalidKeyException, NoSuchAlgorithmException {
-        StringBuilder dump = new StringBuilder("Bucket: " + bucketName + "\n");
-        try {
-            Iterable<Result<Item>> results = minioClient.listObjects(
-                    ListObjectsArgs.builder()
-                            .bucket(bucketName)
-                            .build());
+    public void deleteObject(String objectId) throws IOException {
+        storageBackend.delete(objectId);
+        zipIndexService.invalidate(objectId);
+        logger.info("Object '{}' deleted successfully from {}.", objectId, storageBackend);
+    }
+
+    /**
+     * Deletes a batch of objects with as few requests to the storage as it allows.
+     *
+     * @param objectIds The IDs of the objects to delete.
+     * @return The outcome for each ID, in the order of the IDs.
+     * @throws IOException If the storage could not be reached.
+     */
+    public List<ObjectResult> deleteObjects(List<String> objectIds) throws IOException {
+        Map<String, String> errors = storageBackend.deleteAll(new LinkedHashSet<>(objectIds));
+        objectIds.forEach(zipIndexService::invalidate);
+        logger.info("Deleted {} of {} objects from {}.", objectIds.size() - errors.size(), objectIds.size(), storageBackend);
+        return objectIds.stream()
+                .map(objectId -> errors.containsKey(objectId) ? ObjectResult.error(objectId, errors.get(objectId)) : ObjectResult.deleted(objectId))
+                .toList();
+    }
 
-            for (Result<Item> result : results) {
-                Item item = result.get();
-                dump.append("Object ID: ").append(item.objectName())
-                        .append(", Size: ").append(item.size())
-                        .append(", Last Modified: ").append(item.lastModified())
-                        .append("\n");
+    /**
+     * Retrieves the metadata of a batch of objects, with up to {@code batch.stat-parallelism} requests to the storage at a time.
+     *
+     * @param objectIds The IDs of the objects.
+     * @return The outcome for each ID, in the order of the IDs.
+     */
+    public List<ObjectResult> statObjects(List<String> objectIds) {
+        Semaphore permits = new Semaphore(statParallelism);
+        List<Future<ObjectResult>> results = new ArrayList<>(objectIds.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String objectId : objectIds) {
+                results.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return storageBackend.stat(objectId)
+                                .map(ObjectResult::found)
+                                .orElseGet(() -> ObjectResult.notFound(objectId));
+                    } catch (IOException | RuntimeException e) {
+                        // A failed task would make resultNow throw and fail the whole batch
+                        return ObjectResult.error(objectId, e.getMessage());
+                    } finally {
+                        permits.release();
+                    }
+                }));
             }
-            return dump.toString();
-        } catch (Exception e) {
-            logger.error("Error dumping object storage: {}", e.getMessage(), e);
-            throw new RuntimeException("Error during object storage dump: " + e.getMessage(), e);
         }
+        return results.stream().map(Future::resultNow).toList();
     }
 
     /**
-     * Handles exceptions by logging them and throwing appropriate exceptions.
+     * Lists a page of objects in the order of their IDs.
      *
-     * @param e The exception to handle.
-     * @throws MinioException If the exception is a MinIO-specific error.
-     * @throws IOException If the exception is an IO error.
-     * @throws InvalidKeyException If the exception is due to an invalid key.
-     * @throws NoSuchAlgorithmException If the exception is due to a non-existent algorithm.
+     * @param prefix Only objects whose ID starts with this prefix are listed; empty for all objects.
+     * @param continuationToken The token returned with the previous page, or null for the first page.
+     * @param limit The maximum number of objects on the page.
+     * @return The page, with the token for the next page if there are more objects.
+     * @throws IOException If the objects could not be listed.
      */
-    private void errorHandler(Exception e) throws MinioException, IOException, InvalidKeyException, NoSuchAlgorithmException {
-        switch (e) {
-            case MinioException minioException -> {
-                logger.error("MinIO error: {}", e.getMessage(), e);
-                throw minioException;
-            }
-            case IOException ioException -> {
-                logger.error("IO error: {}", e.getMessage(), e);
-                throw ioException;
-            }
-            case InvalidKeyException invalidKeyException -> {
-                logger.error("Invalid key error: {}", e.getMessage(), e);
-                throw invalidKeyException;
-            }
-            case NoSuchAlgorithmException noSuchAlgorithmException -> {
-                logger.error("No such algorithm error: {}", e.getMessage(), e);
-                throw noSuchAlgorithmException;
-            }
-            default -> {
-                logger.error("Unexpected error: {}", e.getMessage(), e);
-                throw new RuntimeException("Unexpected error: " + e.getMessage(), e);
-            }
+    public ObjectPage listObjects(String prefix, String continuationToken, int limit) throws IOException {
+        // One object more than requested tells whether there is a next page
+        List<StoredObject> objects = storageBackend.list(prefix, continuationToken, limit + 1);
+        if (objects.size() <= limit) {
+            return new ObjectPage(objects, null);
+        }
+        List<StoredObject> page = List.copyOf(objects.subList(0, limit));
+        return new ObjectPage(page, page.getLast().objectId());
+    }
+
+    /**
+     * Sums up the number and sizes of objects, without listing them.
+     *
+     * @param prefix Only objects whose ID starts with this prefix are counted; empty for all objects.
+     * @return The storage usage.
+     * @throws IOException If the objects could not be listed.
+     */
+    public StorageUsage getStorageUsage(String prefix) throws IOException {
+        return storageBackend.usage(prefix);
+    }
+
+    /**
+     * @return true if the ID is one this service could have generated, so that it cannot name a staging key or any other path.
+     */
+    private static boolean isObjectId(String objectId) {
+        try {
+            return UUID.fromString(objectId).toString().equals(objectId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
     }
 }
@@ -0,0 +1,14 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import java.time.Instant;
+
+/**
+ * A slot for uploading one object directly to MinIO.
+ *
+ * @param objectId The ID the object will be stored under.
+ * @param uploadUrl The presigned URL to send the object bytes to.
+ * @param method The HTTP method to use with the URL.
+ * @param expiresAt The instant the URL stops being valid.
+ */
+public record PresignedUpload(String objectId, String uploadUrl, String method, Instant expiresAt) {
+}
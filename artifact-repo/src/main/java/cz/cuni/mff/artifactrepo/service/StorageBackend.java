@@ -0,0 +1,174 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import cz.cuni.mff.artifactrepo.service.archive.BoundedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Storage the artifact bytes are kept in, selected by the {@code storage.backend} property.
+ * Implementations report failures of the underlying storage as {@link IOException}s.
+ */
+public interface StorageBackend {
+
+    /**
+     * Prefix of the keys direct uploads are written to until they are verified and copied to their object ID.
+     * Clients can write to these keys for as long as their presigned URL is valid, so they are not objects:
+     * they are never served, and listings leave them out.
+     */
+    String STAGING_PREFIX = "uploads/";
+
+    /**
+     * Stores an object, replacing any object with the same ID.
+     *
+     * @param objectId The ID of the object.
+     * @param inputStream The object bytes.
+     * @param size The number of bytes to store.
+     * @param contentType The media type of the object, or null if unknown.
+     */
+    void put(String objectId, InputStream inputStream, long size, String contentType) throws IOException;
+
+    /**
+     * @param objectId The ID of the object.
+     * @return The metadata of the object, or empty if it does not exist.
+     */
+    Optional<StoredObject> stat(String objectId) throws IOException;
+
+    /**
+     * @param objectId The ID of the object.
+     * @return A stream of the object bytes, or empty if the object does not exist.
+     */
+    Optional<InputStream> open(String objectId) throws IOException;
+
+    /**
+     * Opens a range of an object, e.g. to read a single file of a ZIP archive without reading the whole archive.
+     * The default implementation reads past the bytes before the range; backends that can seek override it.
+     *
+     * @param objectId The ID of the object.
+     * @param offset The position of the first byte of the range.
+     * @param length The number of bytes of the range; the range ends early at the end of the object.
+     * @return A stream of the bytes of the range, or empty if the object does not exist.
+     */
+    default Optional<InputStream> openRange(String objectId, long offset, long length) throws IOException {
+        Optional<InputStream> inputStream = open(objectId);
+        if (inputStream.isPresent()) {
+            try {
+                inputStream.get().skipNBytes(offset);
+            } catch (IOException e) {
+                inputStream.get().close();
+                throw e;
+            }
+        }
+        return inputStream.map(in -> new BoundedInputStream(in, length));
+    }
+
+    /**
+     * Copies an object to another ID, provided the source still has the given ETag, so that bytes changed after they
+     * were checked are never copied. The default implementation reads the object and stores it again; backends that
+     * can copy within the storage override it.
+     *
+     * @param sourceId The ID of the object to copy.
+     * @param targetId The ID to copy the object to.
+     * @param expectedEtag The ETag the source had when it was checked.
+     * @throws IllegalStateException If the source has changed or disappeared.
+     */
+    default void copy(String sourceId, String targetId, String expectedEtag) throws IOException {
+        StoredObject source = stat(sourceId)
+                .filter(metadata -> expectedEtag.equals(metadata.etag()))
+                .orElseThrow(() -> new IllegalStateException("Object " + sourceId + " changed before it was copied"));
+        try (InputStream inputStream = open(sourceId)
+                .orElseThrow(() -> new IllegalStateException("Object " + sourceId + " disappeared before it was copied"))) {
+            put(targetId, inputStream, source.size(), source.contentType());
+        }
+    }
+
+    /**
+     * Deletes an object. Deleting an object that does not exist is not an error.
+     *
+     * @param objectId The ID of the object.
+     */
+    void delete(String objectId) throws IOException;
+
+    /**
+     * Deletes a batch of objects. Deleting an object that does not exist is not an error.
+     *
+     * @param objectIds The IDs of the objects.
+     * @return The reasons the objects that could not be deleted were not deleted, by their IDs; empty if all were deleted.
+     */
+    default Map<String, String> deleteAll(Collection<String> objectIds) throws IOException {
+        Map<String, String> errors = new HashMap<>();
+        for (String objectId : objectIds) {
+            try {
+                delete(objectId);
+            } catch (IOException | IllegalArgumentException e) {
+                errors.put(objectId, e.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Lists objects in the order of their IDs.
+     *
+     * @param prefix Only objects whose ID starts with this prefix are listed; empty for all objects.
+     * @param startAfter Only objects whose ID comes after this ID are listed, or null to start with the first object.
+     * @param limit The maximum number of objects to list.
+     * @return At most {@code limit} objects. Listings may leave out the content type.
+     */
+    List<StoredObject> list(String prefix, String startAfter, int limit) throws IOException;
+
+    /**
+     * Sums up the sizes of objects, without holding all of them in memory.
+     *
+     * @param prefix Only objects whose ID starts with this prefix are counted; empty for all objects.
+     * @return The number and total size of the objects.
+     */
+    StorageUsage usage(String prefix) throws IOException;
+
+    /**
+     * Returns the local file holding an object, so that it can be sent without copying it through the JVM.
+     *
+     * @param objectId The ID of the object.
+     * @return The file, or empty if the backend does not keep the object in a local file or the object does not exist.
+     */
+    default Optional<Path> localFile(String objectId) throws IOException {
+        return Optional.empty();
+    }
+
+    /**
+     * @return true if clients can be handed presigned URLs to read and write objects in the storage directly.
+     */
+    default boolean supportsPresignedUrls() {
+        return false;
+    }
+
+    /**
+     * Generates a presigned URL for downloading an object directly from the storage.
+     *
+     * @param objectId The ID of the object.
+     * @param expirySeconds The number of seconds until the URL expires.
+     * @return The URL.
+     * @throws UnsupportedOperationException If the backend does not support presigned URLs.
+     */
+    default String presignGet(String objectId, int expirySeconds) throws IOException {
+        throw new UnsupportedOperationException("Storage backend does not support presigned URLs");
+    }
+
+    /**
+     * Generates a presigned URL for uploading an object directly to the storage.
+     *
+     * @param objectId The ID of the object.
+     * @param expirySeconds The number of seconds until the URL expires.
+     * @return The URL.
+     * @throws UnsupportedOperationException If the backend does not support presigned URLs.
+     */
+    default String presignPut(String objectId, int expirySeconds) throws IOException {
+        throw new UnsupportedOperationException("Storage backend does not support presigned URLs");
+    }
+}
@@ -0,0 +1,11 @@
+package cz.cuni.mff.artifactrepo.service;
+
+/**
+ * Aggregated size of stored objects.
+ *
+ * @param prefix The prefix of the IDs of the counted objects; empty for all objects.
+ * @param objectCount The number of objects.
+ * @param totalBytes The total size of the objects in bytes.
+ */
+public record StorageUsage(String prefix, long objectCount, long totalBytes) {
+}
@@ -0,0 +1,19 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+/**
+ * Metadata of a stored object.
+ *
+ * @param objectId The ID of the object.
+ * @param size The size of the object in bytes.
+ * @param contentType The media type the object was uploaded with, or null where listings do not include it.
+ * @param lastModified The instant the object was stored.
+ * @param etag An opaque, unquoted tag that changes whenever the stored bytes change: the ETag of MinIO,
+ *             or one derived from the size and modification time of a file.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StoredObject(String objectId, long size, String contentType, Instant lastModified, String etag) {
+}
@@ -0,0 +1,16 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A newly stored object, with the size and digest computed while its bytes were stored, so that clients can record
+ * them without reading the object again.
+ *
+ * @param objectId The ID of the object.
+ * @param size The size of the object in bytes.
+ * @param sha256 The SHA-256 digest of the object, hex-encoded in lower case.
+ * @param contentType The media type the object was uploaded with, or null if none was given.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UploadedObject(String objectId, long size, String sha256, String contentType) {
+}
@@ -0,0 +1,178 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import cz.cuni.mff.artifactrepo.service.archive.ZipEntryInfo;
+import cz.cuni.mff.artifactrepo.service.archive.ZipIndex;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipException;
+
+/**
+ * Indexes the central directories of ZIP archives, so that single files can be read from an archive with ranged
+ * reads instead of downloading the whole archive, e.g. the configuration of a plugin.
+ * <p>
+ * Archives are indexed in the background when they are uploaded. The indexes of the most recently used archives
+ * are kept in memory, up to {@code zip-index.max-entries} entries in total, so that a few huge archives cannot
+ * exhaust the heap; the index of any other archive is read again when it is needed, which takes two ranged reads.
+ * Objects are immutable, so an index stays valid until its object is deleted.
+ */
+@Service
+public class ZipIndexService {
+    private static final Logger logger = LoggerFactory.getLogger(ZipIndexService.class);
+
+    private static final byte[] LOCAL_HEADER_MAGIC = {'P', 'K', 3, 4};
+    private static final byte[] EMPTY_ARCHIVE_MAGIC = {'P', 'K', 5, 6};
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Value("${zip-index.max-central-directory-size}")
+    private int maxCentralDirectorySize;
+
+    // Indexes by object ID in access order, empty for objects that are not ZIP archives; guarded by itself
+    private final Map<String, Optional<ZipIndex>> indexes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxEntries;
+
+    // Total weight of the indexes in memory; guarded by indexes
+    private long cachedEntries;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ZipIndexService(@Value("${zip-index.max-entries}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Indexes a newly uploaded object in the background, if it starts like a ZIP archive.
+     *
+     * @param objectId The ID of the object.
+     */
+    public void indexInBackground(String objectId) {
+        executor.execute(() -> {
+            try {
+                byte[] magic;
+                try (InputStream inputStream = storageBackend.openRange(objectId, 0, LOCAL_HEADER_MAGIC.length).orElseThrow()) {
+                    magic = inputStream.readAllBytes();
+                }
+                if (Arrays.equals(magic, LOCAL_HEADER_MAGIC) || Arrays.equals(magic, EMPTY_ARCHIVE_MAGIC)) {
+                    getIndex(objectId);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Error indexing object '{}': {}", objectId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Returns the index of a ZIP archive, reading it from the archive if it is not in memory.
+     *
+     * @param objectId The ID of the archive.
+     * @return The index, or empty if the object is not a ZIP archive.
+     * @throws NoSuchElementException If the object does not exist.
+     * @throws IOException If the object could not be read.
+     */
+    public Optional<ZipIndex> getIndex(String objectId) throws IOException {
+        synchronized (indexes) {
+            Optional<ZipIndex> index = indexes.get(objectId);
+            if (index != null) {
+                return index;
+            }
+        }
+
+        StoredObject metadata = storageBackend.stat(objectId)
+                .orElseThrow(() -> new NoSuchElementException("Object " + objectId + " not found"));
+        Optional<ZipIndex> index;
+        try {
+            index = Optional.of(ZipIndex.read((offset, length) -> readRange(objectId, offset, length), metadata.size(), maxCentralDirectorySize));
+            logger.info("Indexed {} entries of ZIP archive '{}'.", index.get().getEntries().size(), objectId);
+        } catch (ZipException e) {
+            logger.debug("Object '{}' is not a readable ZIP archive: {}", objectId, e.getMessage());
+            index = Optional.empty();
+        }
+        cache(objectId, index);
+        return index;
+    }
+
+    /**
+     * Opens the uncompressed data of a file of a ZIP archive, reading only the range of the archive holding it.
+     *
+     * @param objectId The ID of the archive.
+     * @param index The index of the archive.
+     * @param entry The file.
+     * @return The data of the file.
+     * @throws UnsupportedOperationException If the file is compressed with a method other than deflate.
+     * @throws IOException If the archive could not be read.
+     */
+    public InputStream openEntry(String objectId, ZipIndex index, ZipEntryInfo entry) throws IOException {
+        return index.openEntry(entry, (offset, length) -> storageBackend.openRange(objectId, offset, length)
+                .orElseThrow(() -> new NoSuchElementException("Object " + objectId + " not found")));
+    }
+
+    /**
+     * Drops the index of a deleted object.
+     *
+     * @param objectId The ID of the object.
+     */
+    public void invalidate(String objectId) {
+        synchronized (indexes) {
+            Optional<ZipIndex> removed = indexes.remove(objectId);
+            if (removed != null) {
+                cachedEntries -= weight(removed);
+            }
+        }
+    }
+
+    /**
+     * Keeps an index in memory, evicting the least recently used indexes until the total number of entries fits the
+     * limit again. An index that alone exceeds the limit is not kept.
+     */
+    private void cache(String objectId, Optional<ZipIndex> index) {
+        long weight = weight(index);
+        if (weight > maxEntries) {
+            return;
+        }
+        synchronized (indexes) {
+            Optional<ZipIndex> replaced = indexes.put(objectId, index);
+            cachedEntries += weight - (replaced == null ? 0 : weight(replaced));
+            Iterator<Map.Entry<String, Optional<ZipIndex>>> eldest = indexes.entrySet().iterator();
+            while (cachedEntries > maxEntries) {
+                cachedEntries -= weight(eldest.next().getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Weighs an index by its number of entries, which dominate its memory; objects that are not archives count as one.
+     */
+    private static long weight(Optional<ZipIndex> index) {
+        return index.map(zipIndex -> Math.max(1, zipIndex.getEntries().size())).orElse(1);
+    }
+
+    private byte[] readRange(String objectId, long offset, int length) throws IOException {
+        try (InputStream inputStream = storageBackend.openRange(objectId, offset, length)
+                .orElseThrow(() -> new NoSuchElementException("Object " + objectId + " not found"))) {
+            return inputStream.readNBytes(length);
+        }
+    }
+}
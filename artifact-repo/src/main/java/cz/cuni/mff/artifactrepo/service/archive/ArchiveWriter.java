@@ -0,0 +1,28 @@
+package cz.cuni.mff.artifactrepo.service.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+
+/**
+ * Writes an archive to a stream entry by entry, without seeking back and without buffering entries.
+ */
+public interface ArchiveWriter {
+
+    /**
+     * Writes an entry.
+     *
+     * @param name The path of the entry in the archive.
+     * @param size The number of bytes of the entry; exactly that many bytes are read from {@code data}.
+     * @param lastModified The modification time of the entry.
+     * @param compress Whether to compress the entry, if the format supports compressing entries.
+     * @param data The bytes of the entry.
+     * @throws IOException If the data ends before {@code size} bytes, or the archive could not be written.
+     */
+    void addEntry(String name, long size, Instant lastModified, boolean compress, InputStream data) throws IOException;
+
+    /**
+     * Writes the end of the archive. The underlying stream is flushed but not closed.
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,134 @@
+package cz.cuni.mff.artifactrepo.service.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Writes a POSIX (ustar) TAR archive to a stream. TAR has no compression of its own, so entries are always stored.
+ * Names longer than the 100 bytes a ustar header holds are written as PAX extended headers,
+ * and sizes of 8 GiB and more in the base-256 encoding understood by GNU tar and bsdtar.
+ */
+public class TarStreamWriter implements ArchiveWriter {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    // Readers take the name of the entry from the PAX record; this one is only shown by readers without PAX support
+    private static final byte[] PAX_HEADER_NAME = "././@PaxHeader".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte TYPE_FILE = '0';
+    private static final byte TYPE_PAX_HEADER = 'x';
+
+    private final OutputStream out;
+
+    public TarStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void addEntry(String name, long size, Instant lastModified, boolean compress, InputStream data) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long mtime = Math.max(0, lastModified.getEpochSecond());
+        if (nameBytes.length > NAME_LENGTH) {
+            byte[] pax = paxRecord("path", name);
+            out.write(header(PAX_HEADER_NAME, pax.length, mtime, TYPE_PAX_HEADER));
+            out.write(pax);
+            pad(pax.length);
+            nameBytes = truncate(nameBytes);
+        }
+        out.write(header(nameBytes, size, mtime, TYPE_FILE));
+        ZipStreamWriter.copy(data, out, size, null);
+        pad(size);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.write(new byte[2 * BLOCK_SIZE]);
+        out.flush();
+    }
+
+    private void pad(long written) throws IOException {
+        int remainder = (int) (written % BLOCK_SIZE);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK_SIZE - remainder]);
+        }
+    }
+
+    private static byte[] header(byte[] name, long size, long mtime, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(name, 0, header, 0, name.length);
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        if (size > MAX_OCTAL_SIZE) {
+            // Base-256: the high bit of the first byte is set and the value fills the rest of the field big-endian
+            header[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) {
+                header[135 - i] = (byte) (size >>> (8 * i));
+            }
+        } else {
+            octal(header, 124, 12, size);
+        }
+        octal(header, 136, 12, mtime);
+        header[156] = type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        // The checksum is computed with its own field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Writes a zero-padded, NUL-terminated octal number into a header field.
+     */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int padding = length - 1 - digits.length();
+        for (int i = 0; i < padding; i++) {
+            header[offset + i] = '0';
+        }
+        System.arraycopy(digits.getBytes(StandardCharsets.US_ASCII), 0, header, offset + padding, digits.length());
+        header[offset + length - 1] = 0;
+    }
+
+    /**
+     * Cuts a name to the ustar name field, without splitting a UTF-8 sequence.
+     */
+    private static byte[] truncate(byte[] name) {
+        if (name.length <= NAME_LENGTH) {
+            return name;
+        }
+        int length = NAME_LENGTH;
+        while (length > 0 && (name[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        byte[] truncated = new byte[length];
+        System.arraycopy(name, 0, truncated, 0, length);
+        return truncated;
+    }
+
+    /**
+     * Encodes a PAX record "length key=value\n", where the length counts the whole record including its own digits.
+     */
+    private static byte[] paxRecord(String key, String value) {
+        int contentLength = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int length = contentLength + String.valueOf(contentLength).length();
+        if (String.valueOf(length).length() != String.valueOf(contentLength).length()) {
+            length++;
+        }
+        return (length + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
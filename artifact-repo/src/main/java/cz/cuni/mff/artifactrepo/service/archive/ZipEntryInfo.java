@@ -0,0 +1,38 @@
+package cz.cuni.mff.artifactrepo.service.archive;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+
+/**
+ * A file of a ZIP archive, as listed in its central directory.
+ *
+ * @param path The path of the file in the archive; directories end with '/'.
+ * @param size The uncompressed size in bytes.
+ * @param compressedSize The size of the stored data in bytes.
+ * @param method The compression method: 0 for stored, 8 for deflated.
+ * @param crc32 The CRC-32 of the uncompressed data.
+ * @param lastModified The modification time, read as UTC.
+ * @param localHeaderOffset The position of the local header of the file in the archive.
+ */
+public record ZipEntryInfo(String path, long size, long compressedSize, @JsonIgnore int method, @JsonIgnore long crc32,
+                           Instant lastModified, @JsonIgnore long localHeaderOffset) {
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    public boolean isDirectory() {
+        return path.endsWith("/");
+    }
+
+    /**
+     * @return 'stored', 'deflated' or the number of another compression method.
+     */
+    public String getCompression() {
+        return switch (method) {
+            case METHOD_STORED -> "stored";
+            case METHOD_DEFLATED -> "deflated";
+            default -> String.valueOf(method);
+        };
+    }
+}
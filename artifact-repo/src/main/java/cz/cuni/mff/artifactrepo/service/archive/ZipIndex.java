@@ -0,0 +1,275 @@
+package cz.cuni.mff.artifactrepo.service.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * The files of a ZIP archive and where their data is, read from the central directory at the end of the archive.
+ * Reading it takes two ranged reads, the end of the archive and the central directory, however large the archive is.
+ */
+public class ZipIndex {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    // Upper bound of the name and extra field following a local header
+    private static final int MAX_LOCAL_HEADER_FIELDS = 2 * 0xFFFF;
+    private static final short ZIP64_EXTRA_ID = 0x0001;
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    // Names without the UTF-8 flag are in the original IBM PC code page
+    private static final Charset LEGACY_CHARSET = Charset.isSupported("IBM437") ? Charset.forName("IBM437") : StandardCharsets.ISO_8859_1;
+
+    private final List<ZipEntryInfo> entries;
+    private final Map<String, ZipEntryInfo> entriesByPath;
+    private final long[] dataEnds;
+
+    /**
+     * Reads a range of the archive.
+     */
+    @FunctionalInterface
+    public interface RangeReader {
+        byte[] read(long offset, int length) throws IOException;
+    }
+
+    /**
+     * Opens a range of the archive as a stream.
+     */
+    @FunctionalInterface
+    public interface RangeOpener {
+        InputStream open(long offset, long length) throws IOException;
+    }
+
+    private ZipIndex(List<ZipEntryInfo> entries, long centralDirectoryOffset) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.entriesByPath = new HashMap<>();
+        for (ZipEntryInfo entry : entries) {
+            entriesByPath.putIfAbsent(entry.path(), entry);
+        }
+
+        // The data of an entry ends at the latest where the next local header or the central directory starts
+        long[] offsets = entries.stream().mapToLong(ZipEntryInfo::localHeaderOffset).sorted().toArray();
+        this.dataEnds = new long[offsets.length + 1];
+        System.arraycopy(offsets, 0, dataEnds, 0, offsets.length);
+        dataEnds[offsets.length] = centralDirectoryOffset;
+    }
+
+    /**
+     * @param size The size of the archive in bytes.
+     * @param maxCentralDirectorySize Archives with a larger central directory are rejected.
+     * @throws ZipException If the object is not a ZIP archive, or its central directory is too large.
+     */
+    public static ZipIndex read(RangeReader reader, long size, int maxCentralDirectorySize) throws IOException {
+        int tailLength = (int) Math.min(size, END_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE);
+        long tailOffset = size - tailLength;
+        ByteBuffer tail = buffer(reader.read(tailOffset, tailLength));
+        int end = findEnd(tail);
+
+        long entryCount = tail.getShort(end + 10) & 0xFFFF;
+        long centralDirectorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long centralDirectoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+        int locator = end - ZIP64_LOCATOR_SIZE;
+        if (locator >= 0 && tail.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            long zip64EndOffset = tail.getLong(locator + 8);
+            ByteBuffer zip64End = buffer(reader.read(zip64EndOffset, ZIP64_END_SIZE));
+            if (zip64End.capacity() < ZIP64_END_SIZE || zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                throw new ZipException("Invalid ZIP64 end of central directory");
+            }
+            entryCount = zip64End.getLong(32);
+            centralDirectorySize = zip64End.getLong(40);
+            centralDirectoryOffset = zip64End.getLong(48);
+        }
+
+        if (entryCount < 0 || centralDirectorySize < 0 || centralDirectoryOffset < 0) {
+            throw new ZipException("Invalid end of central directory");
+        }
+        if (centralDirectorySize > maxCentralDirectorySize) {
+            throw new ZipException("Central directory of " + centralDirectorySize + " bytes exceeds the limit of " + maxCentralDirectorySize);
+        }
+        if (centralDirectoryOffset + centralDirectorySize > size) {
+            throw new ZipException("Central directory lies beyond the end of the archive");
+        }
+
+        // The central directory usually ends right before the end records, which are then already read
+        byte[] centralDirectory;
+        if (centralDirectoryOffset >= tailOffset) {
+            int start = (int) (centralDirectoryOffset - tailOffset);
+            centralDirectory = Arrays.copyOfRange(tail.array(), start, start + (int) centralDirectorySize);
+        } else {
+            centralDirectory = reader.read(centralDirectoryOffset, (int) centralDirectorySize);
+        }
+        return new ZipIndex(parseCentralDirectory(buffer(centralDirectory), entryCount), centralDirectoryOffset);
+    }
+
+    /**
+     * @return The files of the archive, in the order of the central directory.
+     */
+    public List<ZipEntryInfo> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param path The path of a file in the archive.
+     * @return The file, or empty if the archive has no file with the path.
+     */
+    public Optional<ZipEntryInfo> getEntry(String path) {
+        return Optional.ofNullable(entriesByPath.get(path));
+    }
+
+    /**
+     * Opens the uncompressed data of an entry with a single ranged read. The range ends where the next entry or the
+     * central directory starts, as the length of the local header before the data is only known once it is read.
+     *
+     * @throws UnsupportedOperationException If the entry is compressed with a method other than deflate.
+     * @throws ZipException If the entry does not start with a local header.
+     */
+    public InputStream openEntry(ZipEntryInfo entry, RangeOpener opener) throws IOException {
+        if (entry.method() != ZipEntryInfo.METHOD_STORED && entry.method() != ZipEntryInfo.METHOD_DEFLATED) {
+            throw new UnsupportedOperationException("Unsupported compression method " + entry.method() + " of " + entry.path());
+        }
+        long offset = entry.localHeaderOffset();
+        long end = dataEnds[Arrays.binarySearch(dataEnds, 0, dataEnds.length - 1, offset) + 1];
+        long minLength = LOCAL_HEADER_SIZE + entry.compressedSize();
+        long length = Math.max(minLength, Math.min(end - offset, minLength + MAX_LOCAL_HEADER_FIELDS));
+
+        InputStream range = opener.open(offset, length);
+        try {
+            ByteBuffer header = buffer(range.readNBytes(LOCAL_HEADER_SIZE));
+            if (header.capacity() < LOCAL_HEADER_SIZE || header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header of " + entry.path());
+            }
+            range.skipNBytes((header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF));
+        } catch (IOException | RuntimeException e) {
+            range.close();
+            throw e;
+        }
+
+        InputStream data = new BoundedInputStream(range, entry.compressedSize());
+        if (entry.method() == ZipEntryInfo.METHOD_STORED) {
+            return data;
+        }
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(data, inflater, 64 * 1024) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Finds the end of central directory record, searching backwards from the end since it is followed by a comment.
+     */
+    private static int findEnd(ByteBuffer tail) throws ZipException {
+        for (int position = tail.capacity() - END_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == END_SIGNATURE
+                    && position + END_SIZE + (tail.getShort(position + 20) & 0xFFFF) == tail.capacity()) {
+                return position;
+            }
+        }
+        throw new ZipException("Not a ZIP archive: no end of central directory record");
+    }
+
+    private static List<ZipEntryInfo> parseCentralDirectory(ByteBuffer directory, long entryCount) throws ZipException {
+        List<ZipEntryInfo> entries = new ArrayList<>((int) Math.min(entryCount, 65536));
+        int position = 0;
+        while (position + 46 <= directory.capacity()) {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header at " + position);
+            }
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            int dosTime = directory.getInt(position + 12);
+            long crc = directory.getInt(position + 16) & 0xFFFFFFFFL;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long offset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+            if (position + 46 + nameLength + extraLength > directory.capacity()) {
+                throw new ZipException("Truncated central directory");
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.get(position + 46, nameBytes);
+            String name = new String(nameBytes, (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : LEGACY_CHARSET);
+
+            // ZIP64 values follow in this order, each only if its 32-bit field is saturated
+            int extra = position + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                short id = directory.getShort(extra);
+                int length = directory.getShort(extra + 2) & 0xFFFF;
+                if (id == ZIP64_EXTRA_ID) {
+                    int field = extra + 4;
+                    if (size == 0xFFFFFFFFL && field + 8 <= extraEnd) {
+                        size = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL && field + 8 <= extraEnd) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (offset == 0xFFFFFFFFL && field + 8 <= extraEnd) {
+                        offset = directory.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+
+            entries.add(new ZipEntryInfo(name, size, compressedSize, method, crc, fromDosTime(dosTime), offset));
+            position = extraEnd + commentLength;
+        }
+        return entries;
+    }
+
+    private static Instant fromDosTime(int dosTime) {
+        try {
+            return LocalDateTime.of(
+                    ((dosTime >>> 25) & 0x7F) + 1980,
+                    (dosTime >>> 21) & 0x0F,
+                    (dosTime >>> 16) & 0x1F,
+                    (dosTime >>> 11) & 0x1F,
+                    (dosTime >>> 5) & 0x3F,
+                    (dosTime << 1) & 0x3E).toInstant(ZoneOffset.UTC);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer buffer(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
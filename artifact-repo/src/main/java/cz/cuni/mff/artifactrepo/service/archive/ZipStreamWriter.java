@@ -0,0 +1,234 @@
+package cz.cuni.mff.artifactrepo.service.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a ZIP archive to a non-seekable stream.
+ * <p>
+ * Unlike {@link java.util.zip.ZipOutputStream}, entries can be STORED without knowing their CRC up front:
+ * every entry is followed by a data descriptor carrying its CRC and sizes, so each entry is read exactly once.
+ * Entries and archives above 4 GiB, and archives of more than 65535 entries, use the ZIP64 extensions.
+ * Tools reading the central directory (unzip, 7-Zip, {@link java.util.zip.ZipFile}, ...) open such archives;
+ * {@link java.util.zip.ZipInputStream} does not accept STORED entries with data descriptors.
+ */
+public class ZipStreamWriter implements ArchiveWriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    // Bit 3: CRC and sizes follow the data; bit 11: names are UTF-8
+    private static final int FLAGS = 1 << 3 | 1 << 11;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final short ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    // Entries this large could exceed 4 GiB once deflated, so they get 64-bit sizes from the start
+    private static final long ZIP64_ENTRY_THRESHOLD = MAX_32 - (1 << 24);
+
+    private final CountingOutputStream out;
+    private final List<CentralEntry> entries = new ArrayList<>();
+
+    private record CentralEntry(byte[] name, int method, int dosTime, long crc, long compressedSize, long size,
+                                long offset, boolean zip64) {
+    }
+
+    public ZipStreamWriter(OutputStream out) {
+        this.out = new CountingOutputStream(out);
+    }
+
+    @Override
+    public void addEntry(String name, long size, Instant lastModified, boolean compress, InputStream data) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int method = compress ? METHOD_DEFLATED : METHOD_STORED;
+        int dosTime = dosTime(lastModified);
+        boolean zip64 = size >= ZIP64_ENTRY_THRESHOLD;
+        long offset = out.getCount();
+
+        ByteBuffer header = buffer(30 + nameBytes.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT))
+                .putShort((short) FLAGS)
+                .putShort((short) method)
+                .putInt(dosTime)
+                .putInt(0)
+                .putInt(zip64 ? (int) MAX_32 : 0)
+                .putInt(zip64 ? (int) MAX_32 : 0)
+                .putShort((short) nameBytes.length)
+                .putShort((short) (zip64 ? 20 : 0))
+                .put(nameBytes);
+        if (zip64) {
+            header.putShort(ZIP64_EXTRA_ID).putShort((short) 16).putLong(0).putLong(0);
+        }
+        out.write(header.array());
+
+        CRC32 crc = new CRC32();
+        long dataStart = out.getCount();
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 64 * 1024);
+                copy(data, deflated, size, crc);
+                deflated.finish();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            copy(data, out, size, crc);
+        }
+        long compressedSize = out.getCount() - dataStart;
+
+        ByteBuffer descriptor = buffer(zip64 ? 24 : 16);
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE).putInt((int) crc.getValue());
+        if (zip64) {
+            descriptor.putLong(compressedSize).putLong(size);
+        } else {
+            if (compressedSize > MAX_32) {
+                throw new IOException("Entry " + name + " grew beyond 4 GiB when compressed");
+            }
+            descriptor.putInt((int) compressedSize).putInt((int) size);
+        }
+        out.write(descriptor.array());
+
+        entries.add(new CentralEntry(nameBytes, method, dosTime, crc.getValue(), compressedSize, size, offset, zip64));
+    }
+
+    @Override
+    public void finish() throws IOException {
+        long centralStart = out.getCount();
+        for (CentralEntry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralSize = out.getCount() - centralStart;
+
+        boolean zip64 = entries.size() >= MAX_16 || centralStart >= MAX_32 || centralSize >= MAX_32;
+        if (zip64) {
+            long zip64EndOffset = out.getCount();
+            ByteBuffer end64 = buffer(56 + 20);
+            end64.putInt(ZIP64_END_SIGNATURE)
+                    .putLong(44)
+                    .putShort((short) VERSION_ZIP64)
+                    .putShort((short) VERSION_ZIP64)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(entries.size())
+                    .putLong(entries.size())
+                    .putLong(centralSize)
+                    .putLong(centralStart);
+            end64.putInt(ZIP64_LOCATOR_SIGNATURE)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1);
+            out.write(end64.array());
+        }
+
+        ByteBuffer end = buffer(22);
+        end.putInt(END_SIGNATURE)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(entries.size(), MAX_16))
+                .putShort((short) Math.min(entries.size(), MAX_16))
+                .putInt((int) Math.min(centralSize, MAX_32))
+                .putInt((int) Math.min(centralStart, MAX_32))
+                .putShort((short) 0);
+        out.write(end.array());
+        out.flush();
+    }
+
+    private void writeCentralHeader(CentralEntry entry) throws IOException {
+        boolean sizesIn64 = entry.zip64() || entry.compressedSize() >= MAX_32 || entry.size() >= MAX_32;
+        boolean offsetIn64 = entry.offset() >= MAX_32;
+        int extraLength = (sizesIn64 ? 16 : 0) + (offsetIn64 ? 8 : 0);
+        boolean needsZip64 = extraLength > 0;
+
+        ByteBuffer header = buffer(46 + entry.name().length + (needsZip64 ? 4 + extraLength : 0));
+        header.putInt(CENTRAL_HEADER_SIGNATURE)
+                .putShort((short) (needsZip64 ? VERSION_ZIP64 : VERSION_DEFAULT))
+                .putShort((short) (needsZip64 ? VERSION_ZIP64 : VERSION_DEFAULT))
+                .putShort((short) FLAGS)
+                .putShort((short) entry.method())
+                .putInt(entry.dosTime())
+                .putInt((int) entry.crc())
+                .putInt(sizesIn64 ? (int) MAX_32 : (int) entry.compressedSize())
+                .putInt(sizesIn64 ? (int) MAX_32 : (int) entry.size())
+                .putShort((short) entry.name().length)
+                .putShort((short) (needsZip64 ? 4 + extraLength : 0))
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(0)
+                .putInt(offsetIn64 ? (int) MAX_32 : (int) entry.offset())
+                .put(entry.name());
+        if (needsZip64) {
+            // The ZIP64 fields come in this order, each only if its 32-bit field is saturated
+            header.putShort(ZIP64_EXTRA_ID).putShort((short) extraLength);
+            if (sizesIn64) {
+                header.putLong(entry.size()).putLong(entry.compressedSize());
+            }
+            if (offsetIn64) {
+                header.putLong(entry.offset());
+            }
+        }
+        out.write(header.array());
+    }
+
+    /**
+     * Copies exactly {@code size} bytes, updating the CRC with them.
+     */
+    static void copy(InputStream in, OutputStream sink, long size, CRC32 crc) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = size;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new EOFException("Entry data ended " + remaining + " bytes early");
+            }
+            if (crc != null) {
+                crc.update(buffer, 0, read);
+            }
+            sink.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * MS-DOS date and time in UTC, the modification time format of ZIP headers, clamped to its 1980 epoch.
+     */
+    private static int dosTime(Instant instant) {
+        LocalDateTime time = LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25
+                | time.getMonthValue() << 21
+                | time.getDayOfMonth() << 16
+                | time.getHour() << 11
+                | time.getMinute() << 5
+                | time.getSecond() >> 1;
+    }
+}
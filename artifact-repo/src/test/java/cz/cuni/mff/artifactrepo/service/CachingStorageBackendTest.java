@@ -0,0 +1,127 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CachingStorageBackend class.
+ */
+class CachingStorageBackendTest {
+
+    private static final byte[] DATA = "cached artifact".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path root;
+
+    private final AtomicInteger opens = new AtomicInteger();
+    private final CountDownLatch openAllowed = new CountDownLatch(1);
+
+    private FilesystemStorageBackend delegate;
+    private CachingStorageBackend cache;
+
+    private void start(boolean blockOpens) throws IOException {
+        // Counts the reads of whole objects, blocking the first one until it is allowed if requested
+        delegate = new FilesystemStorageBackend(root.resolve("storage"), false, Duration.ZERO) {
+            @Override
+            public Optional<InputStream> open(String objectId) throws IOException {
+                if (opens.incrementAndGet() == 1 && blockOpens) {
+                    try {
+                        openAllowed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.open(objectId);
+            }
+        };
+        ReflectionTestUtils.invokeMethod(delegate, "initialize");
+        delegate.put("artifact", new ByteArrayInputStream(DATA), DATA.length, "text/plain");
+
+        cache = new CachingStorageBackend(delegate, root.resolve("cache"), 1 << 20, 1 << 20);
+        ReflectionTestUtils.invokeMethod(cache, "initialize");
+    }
+
+    @AfterEach
+    void stop() {
+        openAllowed.countDown();
+        ReflectionTestUtils.invokeMethod(cache, "shutdown");
+        ReflectionTestUtils.invokeMethod(delegate, "shutdown");
+    }
+
+    private void awaitCached() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (cache.getStats().entries() == 0) {
+            assertTrue(System.nanoTime() < deadline, "Object was not cached in time");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void localFile_FillsTheCacheInTheBackgroundOnAMiss() throws IOException, InterruptedException {
+        start(false);
+
+        assertTrue(cache.localFile("artifact").isEmpty());
+        awaitCached();
+
+        Path cached = cache.localFile("artifact").orElseThrow();
+        assertArrayEquals(DATA, Files.readAllBytes(cached));
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(DATA.length, stats.sizeBytes());
+    }
+
+    @Test
+    void localFile_DoesNotWaitForAFillInProgress() throws IOException, InterruptedException {
+        start(true);
+
+        assertTrue(cache.localFile("artifact").isEmpty());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (opens.get() == 0) {
+            assertTrue(System.nanoTime() < deadline, "Fill did not start in time");
+            Thread.sleep(10);
+        }
+
+        // The fill is blocked reading the object, yet the next download neither waits for it nor starts another fill
+        assertTrue(cache.localFile("artifact").isEmpty());
+        try (InputStream inputStream = cache.open("artifact").orElseThrow()) {
+            assertArrayEquals(DATA, inputStream.readAllBytes());
+        }
+        openAllowed.countDown();
+        awaitCached();
+
+        CacheStats stats = cache.getStats();
+        assertEquals(0, stats.hits());
+        assertEquals(2, stats.misses());
+        // One read by the single shared fill, one by the streamed download
+        assertEquals(2, opens.get());
+    }
+
+    @Test
+    void delete_DropsTheCachedCopy() throws IOException, InterruptedException {
+        start(false);
+        cache.localFile("artifact");
+        awaitCached();
+
+        cache.delete("artifact");
+        assertEquals(0, cache.getStats().entries());
+        assertTrue(cache.localFile("artifact").isEmpty());
+        assertTrue(cache.open("artifact").isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+package cz.cuni.mff.artifactrepo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the FilesystemStorageBackend class.
+ */
+class FilesystemStorageBackendTest {
+
+    @TempDir
+    Path root;
+
+    private final List<FilesystemStorageBackend> backends = new ArrayList<>();
+
+    private FilesystemStorageBackend start() {
+        FilesystemStorageBackend backend = new FilesystemStorageBackend(root, false, Duration.ZERO);
+        ReflectionTestUtils.invokeMethod(backend, "initialize");
+        backends.add(backend);
+        return backend;
+    }
+
+    @AfterEach
+    void stop() {
+        backends.forEach(backend -> ReflectionTestUtils.invokeMethod(backend, "shutdown"));
+    }
+
+    private static void put(FilesystemStorageBackend backend, String objectId) throws IOException {
+        byte[] data = objectId.getBytes(StandardCharsets.UTF_8);
+        backend.put(objectId, new ByteArrayInputStream(data), data.length, "text/plain");
+    }
+
+    private static List<String> ids(List<StoredObject> objects) {
+        return objects.stream().map(StoredObject::objectId).toList();
+    }
+
+    @Test
+    void list_ReadsPagesInKeyOrderWithinThePrefix() throws IOException {
+        FilesystemStorageBackend backend = start();
+        for (String objectId : List.of("b-3", "a-1", "b-1", "c-1", "b-2", "b-4")) {
+            put(backend, objectId);
+        }
+
+        assertEquals(List.of("a-1", "b-1", "b-2"), ids(backend.list("", null, 3)));
+        assertEquals(List.of("b-1", "b-2"), ids(backend.list("b-", null, 2)));
+        assertEquals(List.of("b-3", "b-4"), ids(backend.list("b-", "b-2", 2)));
+        assertEquals(List.of(), ids(backend.list("b-", "b-4", 2)));
+        // A cursor before the prefix starts the page at the prefix
+        assertEquals(List.of("b-1"), ids(backend.list("b-", "a-1", 1)));
+        assertEquals(List.of(), ids(backend.list("b-", "c", 10)));
+
+        StoredObject first = backend.list("c-", null, 1).get(0);
+        assertEquals(3, first.size());
+        assertEquals("text/plain", first.contentType());
+    }
+
+    @Test
+    void list_FollowsDeletesAndRestarts() throws IOException {
+        FilesystemStorageBackend backend = start();
+        for (String objectId : List.of("x-1", "x-2", "x-3")) {
+            put(backend, objectId);
+        }
+        backend.delete("x-2");
+        assertEquals(List.of("x-1", "x-3"), ids(backend.list("x-", null, 10)));
+
+        FilesystemStorageBackend restarted = start();
+        assertEquals(List.of("x-1", "x-3"), ids(restarted.list("", null, 10)));
+    }
+}
@@ -0,0 +1,139 @@
+package cz.cuni.mff.artifactrepo.service.archive;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the TarStreamWriter class, parsing the written headers as a ustar reader would.
+ */
+class TarStreamWriterTest {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final Instant MODIFIED = Instant.parse("2024-05-17T10:20:30Z");
+
+    private static byte[] block(byte[] archive, int index) {
+        return Arrays.copyOfRange(archive, index * BLOCK_SIZE, (index + 1) * BLOCK_SIZE);
+    }
+
+    private static String string(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long octal(byte[] header, int offset, int length) {
+        return Long.parseLong(string(header, offset, length).trim(), 8);
+    }
+
+    /**
+     * Checks the header checksum: the sum of all header bytes, with the checksum field counted as spaces.
+     */
+    private static void assertValidChecksum(byte[] header) {
+        long sum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        assertEquals(sum, octal(header, 148, 8));
+    }
+
+    private static void assertUstarHeader(byte[] header, byte type) {
+        assertEquals("ustar", string(header, 257, 6));
+        assertEquals("00", new String(header, 263, 2, StandardCharsets.US_ASCII));
+        assertEquals(type, header[156]);
+        assertValidChecksum(header);
+    }
+
+    @Test
+    void addEntry_WritesUstarHeadersAndPadsToBlocks() throws IOException {
+        byte[] data = "distribution data\n".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarStreamWriter writer = new TarStreamWriter(out);
+        writer.addEntry("dataset/data.csv", data.length, MODIFIED, true, new ByteArrayInputStream(data));
+        writer.finish();
+        byte[] archive = out.toByteArray();
+
+        // Header, one block of data and two blocks of zeros ending the archive
+        assertEquals(4 * BLOCK_SIZE, archive.length);
+        byte[] header = block(archive, 0);
+        assertUstarHeader(header, (byte) '0');
+        assertEquals("dataset/data.csv", string(header, 0, 100));
+        assertEquals(0644, octal(header, 100, 8));
+        assertEquals(data.length, octal(header, 124, 12));
+        assertEquals(MODIFIED.getEpochSecond(), octal(header, 136, 12));
+
+        byte[] content = block(archive, 1);
+        assertArrayEquals(data, Arrays.copyOf(content, data.length));
+        assertTrue(Arrays.equals(new byte[BLOCK_SIZE - data.length], Arrays.copyOfRange(content, data.length, BLOCK_SIZE)));
+        assertArrayEquals(new byte[2 * BLOCK_SIZE], Arrays.copyOfRange(archive, 2 * BLOCK_SIZE, archive.length));
+    }
+
+    @Test
+    void addEntry_WritesLongNamesAsPaxRecords() throws IOException {
+        // Two-byte characters straddle the 100 byte limit of the ustar name field
+        String name = "dataset/" + "a".repeat(91) + "čššš/data.csv";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarStreamWriter writer = new TarStreamWriter(out);
+        writer.addEntry(name, 0, MODIFIED, false, new ByteArrayInputStream(new byte[0]));
+        writer.finish();
+        byte[] archive = out.toByteArray();
+
+        byte[] paxHeader = block(archive, 0);
+        assertUstarHeader(paxHeader, (byte) 'x');
+        int paxLength = (int) octal(paxHeader, 124, 12);
+        String record = new String(block(archive, 1), 0, paxLength, StandardCharsets.UTF_8);
+        assertEquals(" path=" + name + "\n", record.substring(record.indexOf(' ')));
+        assertEquals(paxLength, Integer.parseInt(record.substring(0, record.indexOf(' '))));
+
+        byte[] header = block(archive, 2);
+        assertUstarHeader(header, (byte) '0');
+        String truncatedName = string(header, 0, 100);
+        assertTrue(name.startsWith(truncatedName));
+        assertEquals(99, truncatedName.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(5 * BLOCK_SIZE, archive.length);
+    }
+
+    @Test
+    void addEntry_WritesSizesOf8GiBInBase256() throws IOException {
+        long size = 1L << 33;
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        long[] written = {0};
+        // Keeps only the header, counting the zeros of the data
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                int kept = (int) Math.max(0, Math.min(length, BLOCK_SIZE - written[0]));
+                head.write(buffer, offset, kept);
+                written[0] += length;
+            }
+        };
+        TarStreamWriter writer = new TarStreamWriter(out);
+        writer.addEntry("large.bin", size, MODIFIED, false, ZipStreamWriterTest.zeros());
+        writer.finish();
+
+        byte[] header = head.toByteArray();
+        assertUstarHeader(header, (byte) '0');
+        assertEquals((byte) 0x80, header[124]);
+        long decoded = 0;
+        for (int i = 125; i < 136; i++) {
+            decoded = decoded << 8 | header[i] & 0xFF;
+        }
+        assertEquals(size, decoded);
+        assertEquals(BLOCK_SIZE + size + 2 * BLOCK_SIZE, written[0]);
+    }
+}
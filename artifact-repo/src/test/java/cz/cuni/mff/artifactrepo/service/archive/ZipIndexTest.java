@@ -0,0 +1,185 @@
+package cz.cuni.mff.artifactrepo.service.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ZipIndex class, over archives written by {@link ZipOutputStream}.
+ */
+class ZipIndexTest {
+
+    private static final LocalDateTime MODIFIED = LocalDateTime.of(2024, 5, 17, 10, 20, 30);
+
+    @TempDir
+    Path directory;
+
+    private static ZipIndex read(byte[] archive) throws IOException {
+        return ZipIndex.read((offset, length) -> Arrays.copyOfRange(archive, (int) offset, (int) offset + length), archive.length, Integer.MAX_VALUE);
+    }
+
+    private static byte[] readEntry(byte[] archive, ZipIndex index, String path) throws IOException {
+        ZipEntryInfo entry = index.getEntry(path).orElseThrow();
+        try (InputStream data = index.openEntry(entry, (offset, length) -> new ByteArrayInputStream(archive, (int) offset, (int) length))) {
+            return data.readAllBytes();
+        }
+    }
+
+    private static void putStored(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setCrc(crc.getValue());
+        entry.setTimeLocal(MODIFIED);
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static void putDeflated(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTimeLocal(MODIFIED);
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    @Test
+    void read_IndexesStoredAndDeflatedEntriesBeforeAComment() throws IOException {
+        byte[] config = "{\"name\": \"plugin\"}\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+        byte[] binary = new byte[70_000];
+        new Random(42).nextBytes(binary);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.setComment("Plugin archive");
+            putDeflated(zip, "plugin/", new byte[0]);
+            putDeflated(zip, "plugin/df_config.json", config);
+            putStored(zip, "plugin/binary.bin", binary);
+            putStored(zip, "plugin/Dockerfile", "FROM scratch\n".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] archive = out.toByteArray();
+
+        ZipIndex index = read(archive);
+        assertEquals(List.of("plugin/", "plugin/df_config.json", "plugin/binary.bin", "plugin/Dockerfile"),
+                index.getEntries().stream().map(ZipEntryInfo::path).toList());
+        assertTrue(index.getEntry("plugin/").orElseThrow().isDirectory());
+
+        ZipEntryInfo configEntry = index.getEntry("plugin/df_config.json").orElseThrow();
+        assertEquals("deflated", configEntry.getCompression());
+        assertEquals(config.length, configEntry.size());
+        assertEquals(MODIFIED.toInstant(ZoneOffset.UTC), configEntry.lastModified());
+        CRC32 crc = new CRC32();
+        crc.update(config);
+        assertEquals(crc.getValue(), configEntry.crc32());
+        assertArrayEquals(config, readEntry(archive, index, "plugin/df_config.json"));
+
+        ZipEntryInfo binaryEntry = index.getEntry("plugin/binary.bin").orElseThrow();
+        assertEquals("stored", binaryEntry.getCompression());
+        assertEquals(binary.length, binaryEntry.compressedSize());
+        assertArrayEquals(binary, readEntry(archive, index, "plugin/binary.bin"));
+        assertArrayEquals("FROM scratch\n".getBytes(StandardCharsets.UTF_8), readEntry(archive, index, "plugin/Dockerfile"));
+
+        assertTrue(index.getEntry("plugin/missing.txt").isEmpty());
+    }
+
+    @Test
+    void read_FindsZip64EndRecordsBeforeTheLongestComment() throws IOException {
+        int entryCount = 70_000;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.setComment("c".repeat(0xFFFF));
+            for (int i = 0; i < entryCount; i++) {
+                putStored(zip, "entry-" + i, new byte[]{(byte) i});
+            }
+        }
+        byte[] archive = out.toByteArray();
+
+        ZipIndex index = read(archive);
+        assertEquals(entryCount, index.getEntries().size());
+        assertArrayEquals(new byte[]{(byte) (entryCount - 1)}, readEntry(archive, index, "entry-" + (entryCount - 1)));
+    }
+
+    @Test
+    void read_IndexesZip64SizesAndOffsetsBeyond4GiB() throws IOException {
+        Path file = directory.resolve("large.zip");
+        long largeSize = (1L << 32) + 1;
+        byte[] small = "after the large entry".getBytes(StandardCharsets.UTF_8);
+
+        CRC32 zerosCrc = new CRC32();
+        byte[] buffer = new byte[1 << 20];
+        for (long remaining = largeSize; remaining > 0; remaining -= buffer.length) {
+            zerosCrc.update(buffer, 0, (int) Math.min(buffer.length, remaining));
+        }
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(ZipStreamWriterTest.sparseOutputStream(file), 1 << 20))) {
+            ZipEntry large = new ZipEntry("large.bin");
+            large.setMethod(ZipEntry.STORED);
+            large.setSize(largeSize);
+            large.setCrc(zerosCrc.getValue());
+            zip.putNextEntry(large);
+            ZipStreamWriter.copy(ZipStreamWriterTest.zeros(), zip, largeSize, null);
+            zip.closeEntry();
+            putStored(zip, "small.txt", small);
+        }
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            ZipIndex index = ZipIndex.read((offset, length) -> {
+                ByteBuffer range = ByteBuffer.allocate(length);
+                channel.read(range, offset);
+                return range.array();
+            }, channel.size(), Integer.MAX_VALUE);
+
+            ZipEntryInfo largeEntry = index.getEntry("large.bin").orElseThrow();
+            assertEquals(largeSize, largeEntry.size());
+            assertEquals(largeSize, largeEntry.compressedSize());
+            ZipEntryInfo smallEntry = index.getEntry("small.txt").orElseThrow();
+            assertTrue(smallEntry.localHeaderOffset() > largeSize);
+            try (InputStream data = index.openEntry(smallEntry, (offset, length) ->
+                    new BoundedInputStream(Channels.newInputStream(channel.position(offset)), length))) {
+                assertArrayEquals(small, data.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void read_RejectsObjectsThatAreNotZipArchives() {
+        byte[] notZip = "not a ZIP archive".repeat(10).getBytes(StandardCharsets.UTF_8);
+        assertThrows(ZipException.class, () -> read(notZip));
+    }
+
+    @Test
+    void read_RejectsCentralDirectoriesBeyondTheLimit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < 100; i++) {
+                putStored(zip, "entry-" + i, new byte[]{(byte) i});
+            }
+        }
+        byte[] archive = out.toByteArray();
+        assertThrows(ZipException.class, () -> ZipIndex.read(
+                (offset, length) -> Arrays.copyOfRange(archive, (int) offset, (int) offset + length), archive.length, 1024));
+    }
+}
@@ -0,0 +1,177 @@
+package cz.cuni.mff.artifactrepo.service.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ZipStreamWriter class, reading the written archives back with {@link ZipFile}.
+ */
+class ZipStreamWriterTest {
+
+    private static final Instant MODIFIED = Instant.parse("2024-05-17T10:20:30Z");
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Endless zeros, to write large entries without holding them in memory.
+     */
+    static InputStream zeros() {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                Arrays.fill(buffer, offset, offset + length, (byte) 0);
+                return length;
+            }
+        };
+    }
+
+    /**
+     * Writes to a file, skipping over writes of only zeros so that large entries of zeros leave holes in a sparse file
+     * instead of taking up the disk.
+     */
+    static OutputStream sparseOutputStream(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                if (Arrays.mismatch(buffer, offset, offset + length, new byte[length], 0, length) < 0) {
+                    channel.position(channel.position() + length);
+                } else {
+                    channel.write(ByteBuffer.wrap(buffer, offset, length));
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private static void addEntry(ArchiveWriter writer, String name, byte[] data, boolean compress) throws IOException {
+        writer.addEntry(name, data.length, MODIFIED, compress, new ByteArrayInputStream(data));
+    }
+
+    @Test
+    void addEntry_WritesStoredAndDeflatedEntries() throws IOException {
+        Path file = directory.resolve("archive.zip");
+        byte[] text = "{\"name\": \"plugin\"}\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+        byte[] binary = new byte[70_000];
+        new Random(42).nextBytes(binary);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ZipStreamWriter writer = new ZipStreamWriter(out);
+            addEntry(writer, "config/df_config.json", text, true);
+            addEntry(writer, "data/binary.bin", binary, false);
+            addEntry(writer, "data/prázdný.txt", new byte[0], false);
+            writer.finish();
+        }
+
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            assertEquals(3, zipFile.size());
+
+            ZipEntry config = zipFile.getEntry("config/df_config.json");
+            assertEquals(ZipEntry.DEFLATED, config.getMethod());
+            assertEquals(text.length, config.getSize());
+            assertTrue(config.getCompressedSize() < text.length);
+            assertEquals(MODIFIED, config.getLastModifiedTime().toInstant());
+            try (InputStream data = zipFile.getInputStream(config)) {
+                assertArrayEquals(text, data.readAllBytes());
+            }
+
+            ZipEntry stored = zipFile.getEntry("data/binary.bin");
+            assertEquals(ZipEntry.STORED, stored.getMethod());
+            assertEquals(binary.length, stored.getCompressedSize());
+            CRC32 crc = new CRC32();
+            crc.update(binary);
+            assertEquals(crc.getValue(), stored.getCrc());
+            try (InputStream data = zipFile.getInputStream(stored)) {
+                assertArrayEquals(binary, data.readAllBytes());
+            }
+
+            ZipEntry empty = zipFile.getEntry("data/prázdný.txt");
+            assertNotNull(empty);
+            assertEquals(0, empty.getSize());
+        }
+    }
+
+    @Test
+    void addEntry_RejectsDataShorterThanTheSize() {
+        ZipStreamWriter writer = new ZipStreamWriter(OutputStream.nullOutputStream());
+        assertThrows(EOFException.class, () -> writer.addEntry("short.txt", 10, MODIFIED, false, new ByteArrayInputStream(new byte[5])));
+    }
+
+    @Test
+    void finish_WritesZip64EndRecordsForMoreThan65535Entries() throws IOException {
+        Path file = directory.resolve("many.zip");
+        int entryCount = 70_000;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            ZipStreamWriter writer = new ZipStreamWriter(out);
+            for (int i = 0; i < entryCount; i++) {
+                addEntry(writer, "entry-" + i, new byte[]{(byte) i}, false);
+            }
+            writer.finish();
+        }
+
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            assertEquals(entryCount, zipFile.size());
+            try (InputStream data = zipFile.getInputStream(zipFile.getEntry("entry-" + (entryCount - 1)))) {
+                assertArrayEquals(new byte[]{(byte) (entryCount - 1)}, data.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void addEntry_WritesZip64SizesAndOffsetsBeyond4GiB() throws IOException {
+        Path file = directory.resolve("large.zip");
+        long largeSize = (1L << 32) + 1;
+        byte[] small = "after the large entry".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = sparseOutputStream(file)) {
+            ZipStreamWriter writer = new ZipStreamWriter(out);
+            writer.addEntry("large.bin", largeSize, MODIFIED, false, zeros());
+            addEntry(writer, "small.txt", small, false);
+            writer.finish();
+        }
+
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            assertEquals(2, zipFile.size());
+            ZipEntry large = zipFile.getEntry("large.bin");
+            assertEquals(largeSize, large.getSize());
+            assertEquals(largeSize, large.getCompressedSize());
+            try (InputStream data = zipFile.getInputStream(zipFile.getEntry("small.txt"))) {
+                assertArrayEquals(small, data.readAllBytes());
+            }
+        }
+    }
+}
@@ -1,19 +1,31 @@
 package cz.cuni.mff.df_manager.controller;
 
+import cz.cuni.mff.df_manager.model.upload.CompletedUpload;
+import cz.cuni.mff.df_manager.model.upload.DatasetUploadCompletion;
+import cz.cuni.mff.df_manager.model.upload.UploadSlot;
+import cz.cuni.mff.df_manager.model.upload.UploadedArtifact;
 import cz.cuni.mff.df_manager.service.ArtifactRepositoryService;
 import cz.cuni.mff.df_manager.service.MetadataStoreService;
 import cz.cuni.mff.df_manager.service.RdfService;
 import cz.cuni.mff.df_manager.utils.RdfMediaType;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.rdf.model.Model;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * REST controller for dataset operations.
@@ -28,14 +40,16 @@ public class DatasetController {
     private final MetadataStoreService metadataStoreService;
     private final RdfService rdfService;
 
+    private static final int MAX_DIRECT_UPLOADS = 100;
+
     private ResponseEntity<String> createDataset(String title, String description, List<MultipartFile> files) {
         // Upload the files to artifact repository
-        List<String> artifactIds = artifactRepositoryService.uploadArtifacts(files);
-        log.info("Artifacts uploaded with IDs: {}", artifactIds);
+        List<UploadedArtifact> artifacts = artifactRepositoryService.uploadArtifacts(files);
+        log.info("Artifacts uploaded with IDs: {}", artifacts.stream().map(UploadedArtifact::getObjectId).toList());
 
         // Generate RDF for dataset with multiple distributions
-        String rdfData = rdfService.generateDatasetRdf(title, description, artifactIds);
-        log.info("Generated RDF for multi-file dataset: {}", rdfData);
+        Model rdfData = rdfService.generateDatasetRdf(title, description, artifacts);
+        log.info("Generated RDF for multi-file dataset with {} triples", rdfData.size());
 
         // Submit RDF to metadata store
         String response = metadataStoreService.submitRdf("ds", rdfData, null, HttpMethod.POST);
@@ -68,6 +82,75 @@ public class DatasetController {
         }
     }
 
+    /**
+     * Starts a direct dataset upload. Returns presigned URLs the client uploads the dataset files to with PUT,
+     * straight into object storage, so that the bytes pass through neither this service nor the artifact repository.
+     *
+     * @param count The number of files to upload
+     * @return One upload slot per file
+     */
+    @PostMapping(value = "/uploads", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<UploadSlot>> createDatasetUploads(@RequestParam(value = "count", defaultValue = "1") int count) {
+        if (count < 1 || count > MAX_DIRECT_UPLOADS) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.info("Creating {} direct upload slots for a dataset", count);
+
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(artifactRepositoryService.createUploads(count));
+        } catch (Exception e) {
+            log.error("Error creating direct upload slots", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Finalizes a direct dataset upload: verifies the size and checksum of every uploaded file,
+     * then creates the dataset metadata with one distribution per file.
+     *
+     * @param completion The uploaded files and the dataset metadata
+     * @return RDF data for the created dataset
+     */
+    @PostMapping(value = "/uploads/complete", consumes = MediaType.APPLICATION_JSON_VALUE, produces = RdfMediaType.TEXT_TURTLE_VALUE)
+    public ResponseEntity<String> completeDatasetUpload(@Valid @RequestBody DatasetUploadCompletion completion) {
+        log.info("Completing direct upload of dataset: {}, file count: {}", completion.getTitle(), completion.getFiles().size());
+
+        List<UploadedArtifact> artifacts = new ArrayList<>();
+        try {
+            for (CompletedUpload upload : completion.getFiles()) {
+                artifacts.add(artifactRepositoryService.completeUpload(upload));
+            }
+
+            Model rdfData = rdfService.generateDatasetRdf(completion.getTitle(), completion.getDescription(), artifacts);
+            String response = metadataStoreService.submitRdf("ds", rdfData, null, HttpMethod.POST);
+
+            log.info("Directly uploaded dataset RDF stored successfully, response: {}", response);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (IllegalArgumentException e) {
+            log.error("Verification of uploaded dataset files failed", e);
+            deleteOrphanedArtifacts(artifacts);
+            return ResponseEntity.unprocessableEntity().build();
+        } catch (Exception e) {
+            log.error("Error completing direct dataset upload", e);
+            deleteOrphanedArtifacts(artifacts);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Deletes the artifacts of a direct upload that failed after they were verified, as no dataset refers to them.
+     */
+    private void deleteOrphanedArtifacts(List<UploadedArtifact> artifacts) {
+        if (artifacts.isEmpty()) {
+            return;
+        }
+        try {
+            artifactRepositoryService.deleteArtifacts(artifacts.stream().map(UploadedArtifact::getObjectId).toList());
+        } catch (Exception e) {
+            log.error("Error deleting {} artifacts of a failed direct upload", artifacts.size(), e);
+        }
+    }
+
     /**
      * Retrieves metadata for a dataset.
      *
@@ -87,6 +170,76 @@ public class DatasetController {
         }
     }
 
+    /**
+     * Lists the pipelines using a dataset, e.g. to find the pipelines affected by a change of the dataset.
+     *
+     * @param uuid The UUID of the dataset
+     * @return The using pipelines as JSON, with their variables specializing the dataset
+     */
+    @GetMapping(value = "/{uuid}/usages", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getDatasetUsages(@PathVariable String uuid) {
+        log.info("Retrieving usages of dataset: {}", uuid);
+
+        try {
+            return ResponseEntity.ok(metadataStoreService.getResourceUsages("ds", uuid));
+        } catch (Exception e) {
+            log.error("Error retrieving usages of dataset", e);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Downloads all artifacts of a dataset as a single ZIP or TAR archive, streamed from the artifact repository,
+     * which assembles it on the fly. The artifacts are named by their IDs in the archive.
+     *
+     * @param uuid The UUID of the dataset
+     * @param format The archive format: zip or tar
+     * @param compression How ZIP entries are compressed: auto (store already compressed artifacts), store or deflate
+     * @return The archive
+     */
+    @GetMapping("/{uuid}/bundle")
+    public ResponseEntity<StreamingResponseBody> getDatasetBundle(
+            @PathVariable String uuid,
+            @RequestParam(value = "format", defaultValue = "zip") String format,
+            @RequestParam(value = "compression", defaultValue = "auto") String compression) {
+
+        log.info("Bundling artifacts of dataset: {} as {}", uuid, format);
+
+        List<String> artifactIds;
+        try {
+            artifactIds = rdfService.getDistributionArtifactIds(uuid, metadataStoreService.getResourceModel("ds", uuid));
+        } catch (Exception e) {
+            log.error("Error retrieving dataset", e);
+            return ResponseEntity.notFound().build();
+        }
+        if (artifactIds.isEmpty()) {
+            log.error("Dataset {} has no distributions in the artifact repository", uuid);
+            return ResponseEntity.notFound().build();
+        }
+
+        InputStream bundle;
+        try {
+            bundle = artifactRepositoryService.openBundle(artifactIds, format, compression);
+        } catch (HttpClientErrorException.NotFound e) {
+            log.error("Artifact of dataset {} not found in artifact repository", uuid, e);
+            return ResponseEntity.notFound().build();
+        } catch (HttpClientErrorException.BadRequest e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error bundling dataset", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(format.equalsIgnoreCase("tar") ? "application/x-tar" : "application/zip"));
+        headers.setContentDispositionFormData("attachment", uuid + "." + format.toLowerCase(Locale.ROOT));
+        return new ResponseEntity<>(out -> {
+            try (bundle) {
+                bundle.transferTo(out);
+            }
+        }, headers, HttpStatus.OK);
+    }
+
     /**
      * Lists all datasets as an RDF graph.
      *
@@ -113,30 +266,33 @@ public class DatasetController {
         }
 
         // Upload the files to the artifact repository
-        List<String> artifactIds;
+        List<UploadedArtifact> artifacts;
         try {
-            artifactIds = artifactRepositoryService.uploadArtifacts(files);
-            log.info("Artifacts uploaded with IDs: {}", artifactIds);
+            artifacts = artifactRepositoryService.uploadArtifacts(files);
+            log.info("Artifacts uploaded with IDs: {}", artifacts.stream().map(UploadedArtifact::getObjectId).toList());
         } catch (Exception e) {
             log.error("Error uploading dataset files", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
 
-        // Update the dataset's distributions
-        String rdfData;
+        // Generate RDF for the new distributions
+        Model rdfData;
         try {
-            rdfData = rdfService.updateDatasetDistributions(uuid, artifactIds);
-            log.info("Updated RDF for dataset: {}", rdfData);
+            rdfData = rdfService.updateDatasetDistributions(uuid, artifacts);
+            log.info("Generated RDF for dataset distributions with {} triples", rdfData.size());
         } catch (Exception e) {
             log.error("Error updating dataset distributions", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
 
-        // Submit updated RDF to metadata store
+        // Let the metadata store replace the distributions in a single transaction
         String response;
         try {
-            response = metadataStoreService.submitRdf("ds", rdfData, uuid, HttpMethod.PUT);
+            response = metadataStoreService.submitDatasetDistributions(uuid, rdfData, true);
             log.info("Dataset distributions updated successfully, response: {}", response);
+        } catch (HttpClientErrorException.NotFound e) {
+            log.error("Dataset not found in metadata store: {}", uuid);
+            return ResponseEntity.notFound().build();
         } catch (Exception e) {
             log.error("Error submitting updated RDF to metadata store", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -7,8 +7,10 @@ import cz.cuni.mff.df_manager.utils.RdfMediaType;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.rdf.model.Model;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -41,7 +43,7 @@ public class PipelineController {
 
         try {
             // Generate RDF for pipeline
-            String rdfData = rdfService.generatePipelineRdf(pipelineConfig);
+            Model rdfData = rdfService.generatePipelineRdf(pipelineConfig);
 
             // Submit RDF to metadata store
             String response = metadataStoreService.submitRdf("pipe", rdfData, null, HttpMethod.POST);
@@ -94,6 +96,24 @@ public class PipelineController {
         }
     }
 
+    /**
+     * Retrieves the execution plan of a pipeline, computed when the pipeline was created.
+     *
+     * @param uuid The UUID of the pipeline
+     * @return The execution plan as JSON
+     */
+    @GetMapping(value = "/{uuid}/plan", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getPipelinePlan(@PathVariable String uuid) {
+        log.info("Retrieving execution plan of pipeline: {}", uuid);
+
+        try {
+            return ResponseEntity.ok(metadataStoreService.getPipelinePlan(uuid));
+        } catch (Exception e) {
+            log.error("Error retrieving execution plan of pipeline", e);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     /**
      * Lists all pipelines.
      *
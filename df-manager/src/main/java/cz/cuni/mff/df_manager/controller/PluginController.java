@@ -1,11 +1,13 @@
 package cz.cuni.mff.df_manager.controller;
 
+import cz.cuni.mff.df_manager.model.upload.UploadedArtifact;
 import cz.cuni.mff.df_manager.service.ArtifactRepositoryService;
 import cz.cuni.mff.df_manager.service.MetadataStoreService;
 import cz.cuni.mff.df_manager.service.RdfService;
 import cz.cuni.mff.df_manager.utils.RdfMediaType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.rdf.model.Model;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -44,15 +46,15 @@ public class PluginController {
 
         try {
             // Upload the file to artifact repository
-            String artifactId = artifactRepositoryService.uploadArtifact(file);
-            log.info("Artifact uploaded with ID: {}", artifactId);
+            UploadedArtifact artifact = artifactRepositoryService.uploadArtifact(file);
+            log.info("Artifact uploaded with ID: {}", artifact.getObjectId());
 
             // Determine file extension
 //            String originalFilename = Objects.requireNonNull(file.getOriginalFilename());
 //            String fileExtension = originalFilename.substring(originalFilename.lastIndexOf('.') + 1);
 
             // Generate RDF for plugin
-            String rdfData = rdfService.generatePluginRdf(title, description, artifactId);
+            Model rdfData = rdfService.generatePluginRdf(title, description, artifact);
 
             // Submit RDF to metadata store
             String response = metadataStoreService.submitRdf("pl", rdfData, null, HttpMethod.POST);
@@ -72,32 +74,23 @@ public class PluginController {
         }
 
         // Upload the file to the artifact repository
-        String artifactId;
+        UploadedArtifact artifact;
         try {
-            artifactId = artifactRepositoryService.uploadArtifact(file);
-            log.info("Artifact uploaded with ID: {}", artifactId);
+            artifact = artifactRepositoryService.uploadArtifact(file);
+            log.info("Artifact uploaded with ID: {}", artifact.getObjectId());
         } catch (Exception e) {
             log.error("Error uploading plugin file", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
 
-        // Update the plugin's distribution
-        String rdfData;
-        try {
-            rdfData = rdfService.updatePluginDistribution(uuid, artifactId);
-            log.info("Updated RDF for plugin: {}", rdfData);
-        } catch (Exception e) {
-            log.error("Error updating plugin distribution", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
-
-        // Submit updated RDF to metadata store
+        // Replace the plugin's distribution, retrying when the plugin is modified concurrently
         String response;
         try {
-            response = metadataStoreService.submitRdf("pl", rdfData, uuid, HttpMethod.PUT);
+            response = metadataStoreService.updateResource("pl", uuid,
+                    existingRdf -> rdfService.updatePluginDistribution(existingRdf, uuid, artifact));
             log.info("Plugin distribution updated successfully, response: {}", response);
         } catch (Exception e) {
-            log.error("Error submitting updated RDF to metadata store", e);
+            log.error("Error updating plugin distribution", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
 
@@ -145,6 +138,24 @@ public class PluginController {
         }
     }
 
+    /**
+     * Lists the pipelines using a plugin, e.g. to find the pipelines affected by a change of the plugin.
+     *
+     * @param uuid The UUID of the plugin
+     * @return The using pipelines as JSON, with their steps using the plugin
+     */
+    @GetMapping(value = "/{uuid}/usages", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getPluginUsages(@PathVariable String uuid) {
+        log.info("Retrieving usages of plugin: {}", uuid);
+
+        try {
+            return ResponseEntity.ok(metadataStoreService.getResourceUsages("pl", uuid));
+        } catch (Exception e) {
+            log.error("Error retrieving usages of plugin", e);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     /**
      * Lists all plugins as an RDF graph.
      *
@@ -0,0 +1,36 @@
+package cz.cuni.mff.df_manager.model.plan;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Validated execution plan of a pipeline.
+ * Stored with the pipeline as a df:executionPlan JSON literal.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExecutionPlan {
+    /**
+     * URI of the planned pipeline (p-plan:Plan).
+     */
+    private String pipeline;
+
+    /**
+     * Stages in execution order. All steps of a stage can run in parallel once the previous stages have completed.
+     */
+    private List<List<PlannedStep>> stages;
+
+    /**
+     * URIs of the steps on a longest dependency chain, in execution order.
+     */
+    private List<String> criticalPath;
+
+    /**
+     * Number of steps on the critical path, i.e. the minimal number of sequential step executions.
+     */
+    private int criticalPathLength;
+}
@@ -0,0 +1,40 @@
+package cz.cuni.mff.df_manager.model.plan;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A step of an execution plan with everything an executor needs to run it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlannedStep {
+    /**
+     * URI of the step (p-plan:Step).
+     */
+    private String step;
+
+    /**
+     * Human-readable title of the step.
+     */
+    private String title;
+
+    /**
+     * URI of the plugin (df:Plugin) the step runs.
+     */
+    private String plugin;
+
+    /**
+     * Variables the step reads.
+     */
+    private List<PlannedVariable> inputs;
+
+    /**
+     * Variables the step writes.
+     */
+    private List<PlannedVariable> outputs;
+}
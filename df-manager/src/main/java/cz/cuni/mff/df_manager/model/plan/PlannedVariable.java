@@ -0,0 +1,25 @@
+package cz.cuni.mff.df_manager.model.plan;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A variable read or written by a planned step.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PlannedVariable {
+    /**
+     * URI of the variable (p-plan:Variable).
+     */
+    private String variable;
+
+    /**
+     * URI of the dataset the variable is a specialization of, if any.
+     */
+    private String dataset;
+}
@@ -0,0 +1,37 @@
+package cz.cuni.mff.df_manager.model.upload;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An artifact the client has uploaded to an upload slot, with the size and checksum it is verified against.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompletedUpload {
+    /**
+     * ID of the upload slot the artifact was uploaded to.
+     */
+    @NotBlank(message = "Object ID is required")
+    private String objectId;
+
+    /**
+     * Size of the artifact in bytes.
+     */
+    @NotNull(message = "Size is required")
+    @PositiveOrZero(message = "Size must not be negative")
+    private Long size;
+
+    /**
+     * Hex-encoded SHA-256 digest of the artifact.
+     */
+    @NotBlank(message = "SHA-256 digest is required")
+    @Pattern(regexp = "^[0-9a-fA-F]{64}$", message = "SHA-256 digest must be 64 hexadecimal characters")
+    private String sha256;
+}
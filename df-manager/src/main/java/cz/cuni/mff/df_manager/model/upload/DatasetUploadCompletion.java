@@ -0,0 +1,35 @@
+package cz.cuni.mff.df_manager.model.upload;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Finalizes a direct dataset upload: the uploaded files and the metadata to register them under.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DatasetUploadCompletion {
+    /**
+     * Title of the dataset.
+     */
+    @NotBlank(message = "Dataset title is required")
+    private String title;
+
+    /**
+     * Optional description of the dataset.
+     */
+    private String description;
+
+    /**
+     * Uploaded files, one distribution each.
+     */
+    @NotEmpty(message = "At least one uploaded file is required")
+    private List<@Valid CompletedUpload> files;
+}
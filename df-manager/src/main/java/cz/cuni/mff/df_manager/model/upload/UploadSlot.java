@@ -0,0 +1,33 @@
+package cz.cuni.mff.df_manager.model.upload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A presigned URL issued by the artifact repository for uploading one artifact directly to object storage.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSlot {
+    /**
+     * ID the artifact will be stored under.
+     */
+    private String objectId;
+
+    /**
+     * Presigned URL to send the artifact bytes to.
+     */
+    private String uploadUrl;
+
+    /**
+     * HTTP method to use with the upload URL.
+     */
+    private String method;
+
+    /**
+     * Instant the upload URL stops being valid, in ISO-8601.
+     */
+    private String expiresAt;
+}
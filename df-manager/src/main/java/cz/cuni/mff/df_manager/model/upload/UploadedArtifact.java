@@ -0,0 +1,33 @@
+package cz.cuni.mff.df_manager.model.upload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An artifact stored in the artifact repository, with the size and checksum the repository computed while storing it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadedArtifact {
+    /**
+     * ID the artifact is stored under.
+     */
+    private String objectId;
+
+    /**
+     * Size of the artifact in bytes.
+     */
+    private long size;
+
+    /**
+     * Hex-encoded SHA-256 digest of the artifact.
+     */
+    private String sha256;
+
+    /**
+     * Media type the artifact was uploaded with, or null if it is not known.
+     */
+    private String contentType;
+}
@@ -1,7 +1,12 @@
 package cz.cuni.mff.df_manager.service;
 
+import cz.cuni.mff.df_manager.model.upload.CompletedUpload;
+import cz.cuni.mff.df_manager.model.upload.UploadSlot;
+import cz.cuni.mff.df_manager.model.upload.UploadedArtifact;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -13,15 +18,53 @@ public interface ArtifactRepositoryService {
      * Uploads an artifact file to the artifact repository.
      *
      * @param file The artifact file to upload
-     * @return The artifact ID assigned by the repository
+     * @return The artifact with the ID assigned by the repository and its size, checksum and media type
      */
-    String uploadArtifact(MultipartFile file);
+    UploadedArtifact uploadArtifact(MultipartFile file);
 
     /**
      * Uploads multiple artifact files to the artifact repository.
      *
      * @param files The list of artifact files to upload
-     * @return The list of artifact IDs assigned by the repository
+     * @return The uploaded artifacts, in the order of the files
      */
-    List<String> uploadArtifacts(List<MultipartFile> files);
+    List<UploadedArtifact> uploadArtifacts(List<MultipartFile> files);
+
+    /**
+     * Requests presigned URLs for uploading artifacts directly to the object storage of the artifact repository.
+     *
+     * @param count The number of artifacts to upload
+     * @return One upload slot per artifact
+     */
+    List<UploadSlot> createUploads(int count);
+
+    /**
+     * Finalizes a direct upload. The artifact repository checks the uploaded bytes against the declared
+     * size and SHA-256 digest and stores them as the artifact, or discards them if they do not match.
+     *
+     * @param upload The uploaded artifact with its declared size and digest
+     * @return The verified artifact with its size, checksum and media type
+     * @throws IllegalArgumentException if the slot has no pending upload or the artifact does not match
+     */
+    UploadedArtifact completeUpload(CompletedUpload upload);
+
+    /**
+     * Deletes artifacts from the artifact repository in one request.
+     *
+     * @param artifactIds The IDs of the artifacts to delete
+     */
+    void deleteArtifacts(List<String> artifactIds);
+
+    /**
+     * Opens a ZIP or TAR archive of artifacts, which the artifact repository assembles while streaming it.
+     * The artifacts are checked before the archive starts, so a missing artifact fails this call rather than the stream.
+     *
+     * @param artifactIds The IDs of the artifacts, named by their IDs in the archive
+     * @param format      The archive format: zip or tar
+     * @param compression How ZIP entries are compressed: auto, store or deflate
+     * @return The archive, to be closed by the caller
+     * @throws org.springframework.web.client.HttpClientErrorException.NotFound if an artifact does not exist
+     * @throws IOException if the artifact repository could not be reached
+     */
+    InputStream openBundle(List<String> artifactIds, String format, String compression) throws IOException;
 }
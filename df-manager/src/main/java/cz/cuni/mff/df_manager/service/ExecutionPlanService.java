@@ -0,0 +1,21 @@
+package cz.cuni.mff.df_manager.service;
+
+import cz.cuni.mff.df_manager.model.plan.ExecutionPlan;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Service for computing execution plans of pipelines.
+ */
+public interface ExecutionPlanService {
+
+    /**
+     * Computes the execution plan of a pipeline from its RDF description. A step depends on the steps
+     * it is p-plan:isPrecededBy and on the steps producing its input variables.
+     *
+     * @param pipelineModel The RDF description of the pipeline, its steps and its variables
+     * @param pipelineUri   The URI of the pipeline
+     * @return The stages of steps that can run in parallel, in execution order, with the critical path
+     * @throws IllegalArgumentException if the steps depend on each other in a cycle
+     */
+    ExecutionPlan createPlan(Model pipelineModel, String pipelineUri);
+}
@@ -1,9 +1,14 @@
 package cz.cuni.mff.df_manager.service;
 
+import org.apache.jena.rdf.model.Model;
 import org.springframework.http.HttpMethod;
 
+import java.util.function.UnaryOperator;
+
 /**
  * Service for interacting with the metadata store.
+ * RDF sent to and read back from the metadata store internally uses the binary format configured by
+ * {@code metadata-store.rdf-format}; only data passed through to clients is requested as Turtle.
  */
 public interface MetadataStoreService {
 
@@ -11,16 +16,41 @@ public interface MetadataStoreService {
      * Submits RDF data to the metadata store.
      *
      * @param resourceType The type of resource (ds, pl, pipe)
-     * @param rdfData      The RDF data in Turtle format
+     * @param rdfData      The RDF data
      * @param uuid         Optional UUID for the resource. If provided, it will be
      *                     used to update the existing resource.
      * @param httpMethod  The HTTP method to use (e.g., "POST", "PUT").
      * @return The response from the metadata store
      */
-    String submitRdf(String resourceType, String rdfData, String uuid, HttpMethod httpMethod);
+    String submitRdf(String resourceType, Model rdfData, String uuid, HttpMethod httpMethod);
+
+    /**
+     * Submits dcat:distribution entries of an existing dataset to the metadata store,
+     * which applies them in a single write transaction.
+     *
+     * @param datasetUuid The UUID of the dataset
+     * @param rdfData     The RDF data containing only the new distributions
+     * @param replace     If true, the existing distributions are replaced, otherwise the new ones are appended
+     * @return The response from the metadata store
+     */
+    String submitDatasetDistributions(String datasetUuid, Model rdfData, boolean replace);
+
+    /**
+     * Updates a resource in the metadata store using optimistic concurrency control.
+     * The current RDF data is read together with its entity tag, transformed by the given
+     * modifier and written back with an If-Match precondition. When another writer modified
+     * the resource in the meantime, the metadata store answers 412 and the whole
+     * read-modify-write cycle is retried with exponential backoff.
+     *
+     * @param resourceType The type of resource (ds, pl)
+     * @param uuid         The UUID of the resource
+     * @param modifier     Function producing the new RDF data from the current one
+     * @return The response from the metadata store
+     */
+    String updateResource(String resourceType, String uuid, UnaryOperator<Model> modifier);
 
     /**
-     * Retrieves RDF data for a resource from the metadata store.
+     * Retrieves RDF data for a resource from the metadata store, to be passed through to clients.
      *
      * @param resourceType The type of resource (ds, pl, pipe)
      * @param uuid         The UUID of the resource (nullable for listing all resources)
@@ -28,6 +58,15 @@ public interface MetadataStoreService {
      */
     String getResourceRdf(String resourceType, String uuid);
 
+    /**
+     * Retrieves RDF data for a resource from the metadata store, to be used within df-manager.
+     *
+     * @param resourceType The type of resource (ds, pl, pipe)
+     * @param uuid         The UUID of the resource
+     * @return The RDF data, read in the configured transport format
+     */
+    Model getResourceModel(String resourceType, String uuid);
+
     /**
      * Checks if a resource exists in the metadata store.
      *
@@ -36,4 +75,21 @@ public interface MetadataStoreService {
      * @return true if the resource exists, false otherwise
      */
     boolean resourceExists(String resourceType, String uuid);
+
+    /**
+     * Retrieves the execution plan stored with a pipeline in the metadata store.
+     *
+     * @param pipelineUuid The UUID of the pipeline
+     * @return The execution plan as JSON
+     */
+    String getPipelinePlan(String pipelineUuid);
+
+    /**
+     * Retrieves the pipelines using a plugin or a dataset from the reverse-reference index of the metadata store.
+     *
+     * @param resourceType The type of resource (ds, pl)
+     * @param uuid         The UUID of the resource
+     * @return The using pipelines as JSON, mapped to their steps or variables referencing the resource
+     */
+    String getResourceUsages(String resourceType, String uuid);
 }
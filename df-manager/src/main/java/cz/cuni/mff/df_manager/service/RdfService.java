@@ -1,6 +1,8 @@
 package cz.cuni.mff.df_manager.service;
 
 import cz.cuni.mff.df_manager.model.pipeline.PipelineConfig;
+import cz.cuni.mff.df_manager.model.upload.UploadedArtifact;
+import org.apache.jena.rdf.model.Model;
 
 import java.util.List;
 
@@ -14,44 +16,57 @@ public interface RdfService {
      *
      * @param title       The title of the dataset
      * @param description The description of the dataset
-     * @param artifactIds The list of artifact IDs in the artifact repository
-     * @return The generated RDF data in Turtle format
+     * @param artifacts   The artifacts in the artifact repository, one distribution each
+     * @return The generated RDF model
      */
-    String generateDatasetRdf(String title, String description, List<String> artifactIds);
+    Model generateDatasetRdf(String title, String description, List<UploadedArtifact> artifacts);
 
     /**
-     * Updates the distributions of an existing dataset.
+     * Generates RDF data containing only the new distributions of an existing dataset.
+     * The result is meant to be applied by the metadata store, which appends or replaces
+     * the distributions on its side.
      *
      * @param datasetUuid The UUID of the dataset to update
-     * @param artifactIds The list of artifact IDs for the new distributions
-     * @return The updated RDF data in Turtle format
+     * @param artifacts   The artifacts of the new distributions
+     * @return The RDF model of the new distributions
      */
-    String updateDatasetDistributions(String datasetUuid, List<String> artifactIds);
+    Model updateDatasetDistributions(String datasetUuid, List<UploadedArtifact> artifacts);
 
     /**
-     * Updates the distribution of a plugin.
+     * Extracts the IDs of the artifacts behind the distributions of a dataset, from the access URLs
+     * pointing to the artifact repository. Distributions hosted elsewhere are skipped.
      *
-     * @param pluginUuid The UUID of the plugin to update
-     * @param artifactId The ID of the new artifact in the artifact repository
-     * @return The updated RDF data in Turtle format
+     * @param datasetUuid The UUID of the dataset
+     * @param model       The RDF data of the dataset
+     * @return The artifact IDs, sorted
      */
-    String updatePluginDistribution(String pluginUuid, String artifactId);
+    List<String> getDistributionArtifactIds(String datasetUuid, Model model);
+
+    /**
+     * Replaces the distribution of a plugin in its existing RDF data.
+     *
+     * @param existingRdf The current RDF model of the plugin, modified in place
+     * @param pluginUuid  The UUID of the plugin to update
+     * @param artifact    The new artifact in the artifact repository
+     * @return The updated RDF model
+     */
+    Model updatePluginDistribution(Model existingRdf, String pluginUuid, UploadedArtifact artifact);
 
     /**
      * Generates RDF data for a plugin.
      *
      * @param title       The title of the plugin
      * @param description The description of the plugin
-     * @param artifactId  The ID of the artifact in the artifact repository
-     * @return The generated RDF data in Turtle format
+     * @param artifact    The artifact in the artifact repository
+     * @return The generated RDF model
      */
-    String generatePluginRdf(String title, String description, String artifactId);
+    Model generatePluginRdf(String title, String description, UploadedArtifact artifact);
 
     /**
      * Generates RDF data for a pipeline.
      *
      * @param pipelineConfig The pipeline configuration
-     * @return The generated RDF data in Turtle format
+     * @return The generated RDF model
      */
-    String generatePipelineRdf(PipelineConfig pipelineConfig);
+    Model generatePipelineRdf(PipelineConfig pipelineConfig);
 }
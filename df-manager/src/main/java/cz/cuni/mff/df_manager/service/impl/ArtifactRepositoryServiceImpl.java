@@ -1,23 +1,37 @@
 package cz.cuni.mff.df_manager.service.impl;
 
+import cz.cuni.mff.df_manager.model.upload.CompletedUpload;
+import cz.cuni.mff.df_manager.model.upload.UploadSlot;
+import cz.cuni.mff.df_manager.model.upload.UploadedArtifact;
 import cz.cuni.mff.df_manager.service.ArtifactRepositoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Implementation of the ArtifactRepositoryService that communicates with the
@@ -29,6 +43,7 @@ import java.util.List;
 public class ArtifactRepositoryServiceImpl implements ArtifactRepositoryService {
 
     private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
 
     @Value("${artifact-repository.upload-endpoint}")
     private String uploadEndpoint;
@@ -36,11 +51,22 @@ public class ArtifactRepositoryServiceImpl implements ArtifactRepositoryService
     @Value("${artifact-repository.download-endpoint}")
     private String downloadEndpointTemplate;
 
+    @Value("${artifact-repository.uploads-endpoint}")
+    private String uploadsEndpoint;
+
+    @Value("${artifact-repository.bundle-endpoint}")
+    private String bundleEndpoint;
+
+    @Value("${artifact-repository.batch-delete-endpoint}")
+    private String batchDeleteEndpoint;
+
     @Override
-    public String uploadArtifact(MultipartFile file) {
+    public UploadedArtifact uploadArtifact(MultipartFile file) {
         try {
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+            // Ask for the size and checksum the repository computes while storing the artifact, not only its ID
+            headers.setAccept(List.of(MediaType.APPLICATION_JSON));
 
             MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
             ByteArrayResource fileResource = new ByteArrayResource(file.getBytes()) {
@@ -49,16 +75,24 @@ public class ArtifactRepositoryServiceImpl implements ArtifactRepositoryService
                     return file.getOriginalFilename();
                 }
             };
-            body.add("file", fileResource);
+            // Pass on the media type of the file, which becomes the media type of its distribution
+            HttpHeaders partHeaders = new HttpHeaders();
+            if (file.getContentType() != null) {
+                try {
+                    partHeaders.setContentType(MediaType.parseMediaType(file.getContentType()));
+                } catch (InvalidMediaTypeException e) {
+                    log.debug("Ignoring invalid content type of {}: {}", file.getOriginalFilename(), file.getContentType());
+                }
+            }
+            body.add("file", new HttpEntity<>(fileResource, partHeaders));
 
             HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
 
-            ResponseEntity<String> response = restTemplate.postForEntity(
+            ResponseEntity<UploadedArtifact> response = restTemplate.postForEntity(
                     uploadEndpoint,
                     requestEntity,
-                    String.class);
+                    UploadedArtifact.class);
 
-            // Assuming the response body contains the artifact ID
             return response.getBody();
         } catch (IOException e) {
             log.error("Error uploading artifact", e);
@@ -67,20 +101,90 @@ public class ArtifactRepositoryServiceImpl implements ArtifactRepositoryService
     }
 
     @Override
-    public List<String> uploadArtifacts(List<MultipartFile> files) {
-        List<String> artifactIds = new ArrayList<>();
+    public List<UploadedArtifact> uploadArtifacts(List<MultipartFile> files) {
+        List<UploadedArtifact> artifacts = new ArrayList<>();
 
         for (MultipartFile file : files) {
             try {
-                String artifactId = uploadArtifact(file);
-                artifactIds.add(artifactId);
-                log.info("Uploaded artifact with ID: {}", artifactId);
+                UploadedArtifact artifact = uploadArtifact(file);
+                artifacts.add(artifact);
+                log.info("Uploaded artifact with ID: {}", artifact.getObjectId());
             } catch (Exception e) {
                 log.error("Error uploading artifact: {}", file.getOriginalFilename(), e);
                 throw new RuntimeException("Failed to upload artifacts: " + e.getMessage(), e);
             }
         }
 
-        return artifactIds;
+        return artifacts;
+    }
+
+    @Override
+    public List<UploadSlot> createUploads(int count) {
+        List<UploadSlot> slots = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            slots.add(restTemplate.postForObject(uploadsEndpoint, null, UploadSlot.class));
+        }
+        log.info("Created {} direct upload slots", slots.size());
+        return slots;
+    }
+
+    @Override
+    public UploadedArtifact completeUpload(CompletedUpload upload) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+            ResponseEntity<UploadedArtifact> response = restTemplate.exchange(
+                    uploadsEndpoint + "/{objectId}/complete?size={size}&sha256={sha256}",
+                    HttpMethod.POST,
+                    new HttpEntity<>(headers),
+                    UploadedArtifact.class,
+                    upload.getObjectId(), upload.getSize(), upload.getSha256());
+            log.info("Verified direct upload of artifact {}", upload.getObjectId());
+            return response.getBody();
+        } catch (HttpClientErrorException.NotFound e) {
+            throw new IllegalArgumentException("There is no pending upload for artifact " + upload.getObjectId(), e);
+        } catch (HttpClientErrorException.Conflict e) {
+            throw new IllegalArgumentException("Artifact " + upload.getObjectId() + " is being completed by another request", e);
+        } catch (HttpClientErrorException.UnprocessableEntity e) {
+            throw new IllegalArgumentException("Artifact " + upload.getObjectId() + " does not match the declared size and checksum", e);
+        }
+    }
+
+    @Override
+    public void deleteArtifacts(List<String> artifactIds) {
+        restTemplate.postForObject(batchDeleteEndpoint, artifactIds, String.class);
+        log.info("Deleted {} artifacts", artifactIds.size());
+    }
+
+    @Override
+    public InputStream openBundle(List<String> artifactIds, String format, String compression) throws IOException {
+        URI url = UriComponentsBuilder.fromUriString(bundleEndpoint)
+                .queryParam("format", format)
+                .queryParam("compression", compression)
+                .build()
+                .toUri();
+        List<Map<String, String>> entries = artifactIds.stream().map(artifactId -> Map.of("objectId", artifactId)).toList();
+
+        // Not through RestTemplate.exchange, which would read the whole archive into memory before returning it
+        ClientHttpRequest request = restTemplate.getRequestFactory().createRequest(url, HttpMethod.POST);
+        request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        objectMapper.writeValue(request.getBody(), entries);
+        ClientHttpResponse response = request.execute();
+        try {
+            if (restTemplate.getErrorHandler().hasError(response)) {
+                restTemplate.getErrorHandler().handleError(url, HttpMethod.POST, response);
+            }
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
+        log.info("Streaming bundle of {} artifacts as {}", artifactIds.size(), format);
+
+        return new FilterInputStream(response.getBody()) {
+            @Override
+            public void close() {
+                response.close();
+            }
+        };
     }
 }
@@ -0,0 +1,125 @@
+package cz.cuni.mff.df_manager.service.impl;
+
+import cz.cuni.mff.df_manager.model.plan.ExecutionPlan;
+import cz.cuni.mff.df_manager.model.plan.PlannedStep;
+import cz.cuni.mff.df_manager.model.plan.PlannedVariable;
+import cz.cuni.mff.df_manager.service.ExecutionPlanService;
+import cz.cuni.mff.df_manager.utils.Vocab;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.rdf.model.*;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Implementation of the ExecutionPlanService that layers the step DAG of a pipeline
+ * with Kahn's algorithm.
+ */
+@Service
+@Slf4j
+public class ExecutionPlanServiceImpl implements ExecutionPlanService {
+
+    @Override
+    public ExecutionPlan createPlan(Model pipelineModel, String pipelineUri) {
+        Property isStepOfPlan = pipelineModel.createProperty(Vocab.PPLAN_NS + "isStepOfPlan");
+        Property isPrecededBy = pipelineModel.createProperty(Vocab.PPLAN_NS + "isPrecededBy");
+        Property hasInputVar = pipelineModel.createProperty(Vocab.PPLAN_NS + "hasInputVar");
+        Property isOutputVarOf = pipelineModel.createProperty(Vocab.PPLAN_NS + "isOutputVarOf");
+
+        List<Resource> steps = pipelineModel.listSubjectsWithProperty(isStepOfPlan, pipelineModel.getResource(pipelineUri)).toList();
+        steps.sort(Comparator.comparing(Resource::getURI));
+
+        // Steps producing each variable; steps link their outputs with p-plan:isOutputVarOf
+        Map<Resource, List<Resource>> producers = new HashMap<>();
+        for (Resource step : steps) {
+            for (RDFNode output : pipelineModel.listObjectsOfProperty(step, isOutputVarOf).toList()) {
+                producers.computeIfAbsent(output.asResource(), variable -> new ArrayList<>()).add(step);
+            }
+        }
+
+        Map<Resource, Set<Resource>> dependencies = new LinkedHashMap<>();
+        Map<Resource, List<Resource>> dependents = new HashMap<>();
+        for (Resource step : steps) {
+            Set<Resource> upstream = new LinkedHashSet<>();
+            for (RDFNode preceding : pipelineModel.listObjectsOfProperty(step, isPrecededBy).toList()) {
+                if (steps.contains(preceding.asResource())) {
+                    upstream.add(preceding.asResource());
+                }
+            }
+            for (RDFNode input : pipelineModel.listObjectsOfProperty(step, hasInputVar).toList()) {
+                upstream.addAll(producers.getOrDefault(input.asResource(), List.of()));
+            }
+            upstream.remove(step);
+            dependencies.put(step, upstream);
+            upstream.forEach(dependency -> dependents.computeIfAbsent(dependency, s -> new ArrayList<>()).add(step));
+        }
+
+        // Kahn's algorithm, one stage at a time; a step's stage is the length of the longest chain leading to it
+        Map<Resource, Integer> remaining = new HashMap<>();
+        dependencies.forEach((step, upstream) -> remaining.put(step, upstream.size()));
+        Map<Resource, Resource> longestChainPredecessor = new HashMap<>();
+        List<List<Resource>> stages = new ArrayList<>();
+        List<Resource> ready = steps.stream().filter(step -> remaining.get(step) == 0).toList();
+        int planned = 0;
+
+        while (!ready.isEmpty()) {
+            stages.add(ready);
+            planned += ready.size();
+            List<Resource> next = new ArrayList<>();
+            for (Resource step : ready) {
+                for (Resource dependent : dependents.getOrDefault(step, List.of())) {
+                    longestChainPredecessor.put(dependent, step);
+                    if (remaining.merge(dependent, -1, Integer::sum) == 0) {
+                        next.add(dependent);
+                    }
+                }
+            }
+            next.sort(Comparator.comparing(Resource::getURI));
+            ready = next;
+        }
+
+        if (planned < steps.size()) {
+            List<String> cyclic = steps.stream().filter(step -> remaining.get(step) > 0).map(Resource::getURI).toList();
+            throw new IllegalArgumentException("Pipeline steps depend on each other in a cycle: " + String.join(", ", cyclic));
+        }
+
+        // Walk back from a step of the last stage; its predecessor was always recorded from the previous stage
+        LinkedList<String> criticalPath = new LinkedList<>();
+        Resource current = stages.isEmpty() ? null : stages.getLast().getFirst();
+        while (current != null) {
+            criticalPath.addFirst(current.getURI());
+            current = longestChainPredecessor.get(current);
+        }
+
+        List<List<PlannedStep>> plannedStages = stages.stream()
+                .map(stage -> stage.stream().map(step -> toPlannedStep(pipelineModel, step, hasInputVar, isOutputVarOf)).toList())
+                .toList();
+
+        log.debug("Planned pipeline {} in {} stages", pipelineUri, plannedStages.size());
+        return new ExecutionPlan(pipelineUri, plannedStages, criticalPath, criticalPath.size());
+    }
+
+    private PlannedStep toPlannedStep(Model model, Resource step, Property hasInputVar, Property isOutputVarOf) {
+        Property usesPlugin = model.createProperty(Vocab.DF_NS + "usesPlugin");
+        Statement title = step.getProperty(Vocab.title);
+        Statement plugin = step.getProperty(usesPlugin);
+        return new PlannedStep(
+                step.getURI(),
+                title != null ? title.getString() : null,
+                plugin != null ? plugin.getResource().getURI() : null,
+                toPlannedVariables(model, step, hasInputVar),
+                toPlannedVariables(model, step, isOutputVarOf));
+    }
+
+    private List<PlannedVariable> toPlannedVariables(Model model, Resource step, Property link) {
+        Property specializationOf = model.createProperty(Vocab.PROV_NS + "specializationOf");
+        return model.listObjectsOfProperty(step, link).toList().stream()
+                .map(RDFNode::asResource)
+                .sorted(Comparator.comparing(Resource::getURI))
+                .map(variable -> {
+                    Statement dataset = variable.getProperty(specializationOf);
+                    return new PlannedVariable(variable.getURI(), dataset != null ? dataset.getResource().getURI() : null);
+                })
+                .toList();
+    }
+}
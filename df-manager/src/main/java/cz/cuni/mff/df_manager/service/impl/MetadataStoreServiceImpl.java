@@ -4,12 +4,25 @@ import cz.cuni.mff.df_manager.service.MetadataStoreService;
 import cz.cuni.mff.df_manager.utils.RdfMediaType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
 import static java.util.Collections.singletonList;
 
 /**
@@ -35,12 +48,26 @@ public class MetadataStoreServiceImpl implements MetadataStoreService {
     @Value("${metadata-store.plugins-endpoint}")
     private String pluginsEndpoint;
 
-    @Override
-    public String submitRdf(String resourceType, String rdfData, String uuid, HttpMethod httpMethod) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(RdfMediaType.TEXT_TURTLE);
+    @Value("${metadata-store.update.max-attempts:5}")
+    private int updateMaxAttempts;
+
+    @Value("${metadata-store.update.initial-backoff-ms:50}")
+    private long updateInitialBackoffMs;
+
+    @Value("${metadata-store.base-url}")
+    private String baseUrl;
 
-        HttpEntity<String> requestEntity = new HttpEntity<>(rdfData, headers);
+    @Value("${metadata-store.rdf-format:thrift}")
+    private String rdfFormat;
+
+    @Value("${metadata-store.replica-urls:}")
+    private List<String> replicaUrls;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    @Override
+    public String submitRdf(String resourceType, Model rdfData, String uuid, HttpMethod httpMethod) {
+        HttpEntity<byte[]> requestEntity = rdfEntity(rdfData, new HttpHeaders());
         String uuidPath = uuid != null ? "/" + uuid : "";
 
         String endpoint = switch (resourceType) {
@@ -59,6 +86,126 @@ public class MetadataStoreServiceImpl implements MetadataStoreService {
         return response.getBody();
     }
 
+    @Override
+    public String submitDatasetDistributions(String datasetUuid, Model rdfData, boolean replace) {
+        HttpEntity<byte[]> requestEntity = rdfEntity(rdfData, new HttpHeaders());
+
+        ResponseEntity<String> response = restTemplate.exchange(
+                datasetsEndpoint + "/" + datasetUuid + "/distributions",
+                replace ? HttpMethod.PUT : HttpMethod.POST,
+                requestEntity,
+                String.class);
+
+        return response.getBody();
+    }
+
+    @Override
+    public String updateResource(String resourceType, String uuid, UnaryOperator<Model> modifier) {
+        String url = getEndpointForResourceType(resourceType) + "/" + uuid;
+
+        for (int attempt = 1; ; attempt++) {
+            HttpHeaders getHeaders = new HttpHeaders();
+            getHeaders.setAccept(singletonList(transportMediaType()));
+
+            ResponseEntity<byte[]> current = restTemplate.exchange(
+                    url,
+                    HttpMethod.GET,
+                    new HttpEntity<>(getHeaders),
+                    byte[].class);
+
+            HttpHeaders putHeaders = new HttpHeaders();
+            if (current.getHeaders().getETag() != null) {
+                putHeaders.setIfMatch(current.getHeaders().getETag());
+            }
+
+            HttpEntity<byte[]> requestEntity = rdfEntity(modifier.apply(readRdf(current)), putHeaders);
+
+            try {
+                ResponseEntity<String> response = restTemplate.exchange(
+                        url,
+                        HttpMethod.PUT,
+                        requestEntity,
+                        String.class);
+                return response.getBody();
+            } catch (HttpClientErrorException e) {
+                if (e.getStatusCode() != HttpStatus.PRECONDITION_FAILED || attempt >= updateMaxAttempts) {
+                    throw e;
+                }
+                long backoff = updateInitialBackoffMs << (attempt - 1);
+                long delay = backoff + ThreadLocalRandom.current().nextLong(backoff + 1);
+                log.info("Resource {} was modified concurrently, retrying update in {} ms (attempt {}/{})",
+                        url, delay, attempt, updateMaxAttempts);
+                sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Media type of the RDF exchanged with the metadata store, chosen by {@code metadata-store.rdf-format}.
+     */
+    private MediaType transportMediaType() {
+        return switch (rdfFormat) {
+            case "thrift" -> RdfMediaType.APPLICATION_RDF_THRIFT;
+            case "protobuf" -> RdfMediaType.APPLICATION_RDF_PROTOBUF;
+            case "turtle" -> RdfMediaType.TEXT_TURTLE;
+            default -> throw new IllegalStateException("Unknown metadata-store.rdf-format: " + rdfFormat);
+        };
+    }
+
+    /**
+     * Jena language of a media type. Parameters such as {@code charset} are dropped, Jena does not recognize
+     * content types carrying them.
+     */
+    private static Lang toLang(MediaType mediaType) {
+        return RDFLanguages.contentTypeToLang(mediaType.getType() + "/" + mediaType.getSubtype());
+    }
+
+    private HttpEntity<byte[]> rdfEntity(Model model, HttpHeaders headers) {
+        MediaType mediaType = transportMediaType();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFDataMgr.write(out, model, toLang(mediaType));
+        headers.setContentType(mediaType);
+        return new HttpEntity<>(out.toByteArray(), headers);
+    }
+
+    private Model readRdf(ResponseEntity<byte[]> response) {
+        MediaType contentType = response.getHeaders().getContentType();
+        Lang lang = toLang(contentType != null ? contentType : transportMediaType());
+        Model model = ModelFactory.createDefaultModel();
+        if (response.getBody() != null) {
+            RDFDataMgr.read(model, new ByteArrayInputStream(response.getBody()), lang);
+        }
+        return model;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry update", e);
+        }
+    }
+
+    /**
+     * Sends a read request to one of the read replicas of the metadata store, in round-robin order.
+     * Falls back to the primary if no replica is configured, the replica is unreachable, or it does not
+     * know the resource yet (e.g. a resource that was just created and has not been replicated).
+     * Reads that a subsequent conditional write depends on must go to the primary instead.
+     */
+    private <T> ResponseEntity<T> exchangeRead(String url, HttpMethod method, HttpEntity<?> requestEntity, Class<T> responseType) {
+        if (!replicaUrls.isEmpty() && url.startsWith(baseUrl)) {
+            String replicaUrl = replicaUrls.get(Math.floorMod(nextReplica.getAndIncrement(), replicaUrls.size()))
+                    + url.substring(baseUrl.length());
+            try {
+                return restTemplate.exchange(replicaUrl, method, requestEntity, responseType);
+            } catch (HttpClientErrorException.NotFound | ResourceAccessException e) {
+                log.debug("Replica read of {} failed ({}), falling back to the primary", replicaUrl, e.getMessage());
+            }
+        }
+        return restTemplate.exchange(url, method, requestEntity, responseType);
+    }
+
     private String getEndpointForResourceType(String resourceType) {
         return switch (resourceType) {
             case "ds" -> datasetsEndpoint;
@@ -78,7 +225,7 @@ public class MetadataStoreServiceImpl implements MetadataStoreService {
 
         HttpEntity<String> requestEntity = new HttpEntity<>(headers);
 
-        ResponseEntity<String> response = restTemplate.exchange(
+        ResponseEntity<String> response = exchangeRead(
                 uuid != null ? url + "/" + uuid : url,
                 HttpMethod.GET,
                 requestEntity,
@@ -87,12 +234,54 @@ public class MetadataStoreServiceImpl implements MetadataStoreService {
         return response.getBody();
     }
 
+    @Override
+    public Model getResourceModel(String resourceType, String uuid) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(singletonList(transportMediaType()));
+
+        ResponseEntity<byte[]> response = exchangeRead(
+                getEndpointForResourceType(resourceType) + "/" + uuid,
+                HttpMethod.GET,
+                new HttpEntity<>(headers),
+                byte[].class);
+
+        return readRdf(response);
+    }
+
+    @Override
+    public String getPipelinePlan(String pipelineUuid) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(singletonList(MediaType.APPLICATION_JSON));
+
+        ResponseEntity<String> response = exchangeRead(
+                pipelinesEndpoint + "/" + pipelineUuid + "/plan",
+                HttpMethod.GET,
+                new HttpEntity<>(headers),
+                String.class);
+
+        return response.getBody();
+    }
+
+    @Override
+    public String getResourceUsages(String resourceType, String uuid) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(singletonList(MediaType.APPLICATION_JSON));
+
+        ResponseEntity<String> response = exchangeRead(
+                getEndpointForResourceType(resourceType) + "/" + uuid + "/usages",
+                HttpMethod.GET,
+                new HttpEntity<>(headers),
+                String.class);
+
+        return response.getBody();
+    }
+
     @Override
     public boolean resourceExists(String resourceType, String uuid) {
         String url = getEndpointForResourceType(resourceType) + "/" + uuid;
 
         try {
-            ResponseEntity<Void> response = restTemplate.exchange(
+            ResponseEntity<Void> response = exchangeRead(
                     url,
                     HttpMethod.HEAD,
                     new HttpEntity<>(new HttpHeaders() {
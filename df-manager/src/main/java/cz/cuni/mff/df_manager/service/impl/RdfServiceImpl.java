@@ -3,17 +3,24 @@ package cz.cuni.mff.df_manager.service.impl;
 import cz.cuni.mff.df_manager.model.pipeline.PipelineConfig;
 import cz.cuni.mff.df_manager.model.pipeline.Step;
 import cz.cuni.mff.df_manager.model.pipeline.Variable;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cz.cuni.mff.df_manager.model.plan.ExecutionPlan;
+import cz.cuni.mff.df_manager.model.upload.UploadedArtifact;
+import cz.cuni.mff.df_manager.service.ExecutionPlanService;
 import cz.cuni.mff.df_manager.service.MetadataStoreService;
 import cz.cuni.mff.df_manager.service.RdfService;
 import cz.cuni.mff.df_manager.utils.Vocab;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.rdf.model.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.StringWriter;
 import java.util.*;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -24,19 +31,29 @@ import java.util.stream.Collectors;
 @Slf4j
 public class RdfServiceImpl implements RdfService {
 
+    // A media type as registered with IANA, "type/subtype" without parameters
+    private static final Pattern MEDIA_TYPE_PATTERN = Pattern.compile("[a-z0-9][a-z0-9!#$&^_.+-]*/[a-z0-9][a-z0-9!#$&^_.+-]*");
+
     private final MetadataStoreService metadataStoreService;
+    private final ExecutionPlanService executionPlanService;
+    private final ObjectMapper objectMapper;
 
     @Value("${artifact-repository.download-endpoint}")
     private String downloadEndpointTemplate;
 
+    @Value("${artifact-repository.access-url-delivery:}")
+    private String accessUrlDelivery;
+
     /**
      * Adds a distribution to a resource in the RDF model.
      *
-     * @param model      The RDF model
-     * @param resource   The resource to which the distribution will be added
-     * @param artifactId The artifact ID for the distribution access URL
+     * @param model    The RDF model
+     * @param resource The resource to which the distribution will be added
+     * @param artifact The artifact behind the distribution, whose ID goes into the access URL
      */
-    private void addDistribution(Model model, Resource resource, String artifactId) {
+    private void addDistribution(Model model, Resource resource, UploadedArtifact artifact) {
+        String artifactId = artifact.getObjectId();
+
         // Create distribution
         Resource distribution = model.createResource();
 
@@ -45,12 +62,49 @@ public class RdfServiceImpl implements RdfService {
                 model.createProperty(Vocab.RDF_NS + "type"),
                 model.createResource(Vocab.DCAT_NS + "Distribution"));
 
-        // Add access URL
+        // Add access URL, optionally pinning the delivery mode of the artifact repository (redirect or stream)
         String downloadUrl = downloadEndpointTemplate.replace("{artifactId}", artifactId);
+        if (!accessUrlDelivery.isBlank()) {
+            downloadUrl += (downloadUrl.contains("?") ? "&" : "?") + "delivery=" + accessUrlDelivery;
+        }
         distribution.addProperty(
                 model.createProperty(Vocab.DCAT_NS + "accessURL"),
                 model.createResource(downloadUrl));
 
+        // Add the size and checksum the artifact repository computed while storing the artifact,
+        // so that consumers can plan transfers and check downloads without fetching the artifact first
+        distribution.addProperty(
+                model.createProperty(Vocab.DCAT_NS + "byteSize"),
+                model.createTypedLiteral(String.valueOf(artifact.getSize()), XSDDatatype.XSDnonNegativeInteger));
+
+        if (artifact.getSha256() != null && !artifact.getSha256().isEmpty()) {
+            Resource checksum = model.createResource();
+            checksum.addProperty(
+                    model.createProperty(Vocab.RDF_NS + "type"),
+                    model.createResource(Vocab.SPDX_NS + "Checksum"));
+            checksum.addProperty(
+                    model.createProperty(Vocab.SPDX_NS + "algorithm"),
+                    model.createResource(Vocab.SPDX_NS + "checksumAlgorithm_sha256"));
+            checksum.addProperty(
+                    model.createProperty(Vocab.SPDX_NS + "checksumValue"),
+                    model.createTypedLiteral(artifact.getSha256().toLowerCase(Locale.ROOT), XSDDatatype.XSDhexBinary));
+            distribution.addProperty(
+                    model.createProperty(Vocab.SPDX_NS + "checksum"),
+                    checksum);
+        }
+
+        // Add the media type as an IANA media type IRI, without parameters such as the charset
+        if (artifact.getContentType() != null) {
+            String mediaType = artifact.getContentType().split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+            if (MEDIA_TYPE_PATTERN.matcher(mediaType).matches()) {
+                distribution.addProperty(
+                        model.createProperty(Vocab.DCAT_NS + "mediaType"),
+                        model.createResource(Vocab.IANA_MEDIA_TYPES_NS + mediaType));
+            } else {
+                log.debug("Skipping invalid media type of artifact {}: {}", artifactId, artifact.getContentType());
+            }
+        }
+
         // Link distribution to resource
         resource.addProperty(
                 model.createProperty(Vocab.DCAT_NS + "distribution"),
@@ -65,10 +119,10 @@ public class RdfServiceImpl implements RdfService {
      * @param resource    The resource to which properties will be added
      * @param title       The title of the resource
      * @param description The description of the resource
-     * @param artifactId  The artifact ID for the distribution access URL
+     * @param artifact    The artifact behind the distribution
      */
     private void addCommonResourceProperties(Model model, Resource resource, String title, String description,
-            String artifactId) {
+            UploadedArtifact artifact) {
         // Add title and description
         if (title != null && !title.isEmpty()) {
             resource.addProperty(
@@ -83,17 +137,17 @@ public class RdfServiceImpl implements RdfService {
         }
 
         // Create distribution
-        addDistribution(model, resource, artifactId);
+        addDistribution(model, resource, artifact);
     }
 
     @Override
-    public String generateDatasetRdf(String title, String description, List<String> artifactIds) {
-        if (artifactIds == null || artifactIds.isEmpty()) {
-            throw new IllegalArgumentException("At least one artifact ID must be provided");
+    public Model generateDatasetRdf(String title, String description, List<UploadedArtifact> artifacts) {
+        if (artifacts == null || artifacts.isEmpty()) {
+            throw new IllegalArgumentException("At least one artifact must be provided");
         }
 
         // Use the first artifact ID as the dataset ID
-        String datasetId = artifactIds.get(0);
+        String datasetId = artifacts.get(0).getObjectId();
 
         // Create a new model
         Model model = ModelFactory.createDefaultModel();
@@ -102,6 +156,7 @@ public class RdfServiceImpl implements RdfService {
         model.setNsPrefix("dcat", Vocab.DCAT_NS);
         model.setNsPrefix("dcterms", Vocab.DCTERMS_NS);
         model.setNsPrefix("ds", Vocab.DS_NS);
+        model.setNsPrefix("spdx", Vocab.SPDX_NS);
 
         String datasetUri = Vocab.DS_NS + datasetId;
 
@@ -127,18 +182,15 @@ public class RdfServiceImpl implements RdfService {
         }
 
         // Add distributions for each artifact
-        for (String artifactId : artifactIds) {
-            addDistribution(model, dataset, artifactId);
+        for (UploadedArtifact artifact : artifacts) {
+            addDistribution(model, dataset, artifact);
         }
 
-        // Convert model to Turtle format
-        java.io.StringWriter sw = new java.io.StringWriter();
-        model.write(sw, "TURTLE");
-        return sw.toString();
+        return model;
     }
 
     @Override
-    public String generatePluginRdf(String title, String description, String artifactId) {
+    public Model generatePluginRdf(String title, String description, UploadedArtifact artifact) {
         // Create a new model
         Model model = ModelFactory.createDefaultModel();
 
@@ -147,8 +199,9 @@ public class RdfServiceImpl implements RdfService {
         model.setNsPrefix("dcterms", Vocab.DCTERMS_NS);
         model.setNsPrefix("df", Vocab.DF_NS);
         model.setNsPrefix("pl", Vocab.PL_NS);
+        model.setNsPrefix("spdx", Vocab.SPDX_NS);
 
-        String pluginUri = Vocab.PL_NS + artifactId;
+        String pluginUri = Vocab.PL_NS + artifact.getObjectId();
 
         // Create the plugin resource
         Resource plugin = model.createResource(pluginUri);
@@ -159,16 +212,13 @@ public class RdfServiceImpl implements RdfService {
                 model.createResource(Vocab.DF_NS + "Plugin"));
 
         // Add title and description
-        addCommonResourceProperties(model, plugin, title, description, artifactId);
+        addCommonResourceProperties(model, plugin, title, description, artifact);
 
-        // Convert model to Turtle format
-        java.io.StringWriter sw = new java.io.StringWriter();
-        model.write(sw, "TURTLE");
-        return sw.toString();
+        return model;
     }
 
     @Override
-    public String generatePipelineRdf(PipelineConfig pipelineConfig) {
+    public Model generatePipelineRdf(PipelineConfig pipelineConfig) {
         // Create a new model
         Model model = ModelFactory.createDefaultModel();
 
@@ -396,102 +446,104 @@ public class RdfServiceImpl implements RdfService {
             }
         }
 
-        // Convert model to Turtle format
-        StringWriter sw = new java.io.StringWriter();
-        model.write(sw, "TURTLE");
-        return sw.toString();
+        // Store the validated execution plan with the pipeline
+        ExecutionPlan executionPlan = executionPlanService.createPlan(model, pipelineUri);
+        try {
+            pipeline.addProperty(
+                    model.createProperty(Vocab.DF_NS + "executionPlan"),
+                    model.createTypedLiteral(objectMapper.writeValueAsString(executionPlan),
+                            TypeMapper.getInstance().getSafeTypeByName(Vocab.RDF_NS + "JSON")));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize execution plan of " + pipelineUri, e);
+        }
+
+        return model;
     }
 
     @Override
-    public String updateDatasetDistributions(String datasetUuid, List<String> artifactIds) {
-        if (artifactIds == null || artifactIds.isEmpty()) {
-            throw new IllegalArgumentException("At least one artifact ID must be provided");
-        }
-
-        // Validate that the dataset exists
-        if (!metadataStoreService.resourceExists("ds", datasetUuid)) {
-            throw new IllegalArgumentException("Dataset with UUID " + datasetUuid + " does not exist");
+    public Model updateDatasetDistributions(String datasetUuid, List<UploadedArtifact> artifacts) {
+        if (artifacts == null || artifacts.isEmpty()) {
+            throw new IllegalArgumentException("At least one artifact must be provided");
         }
 
-        // Retrieve the existing dataset RDF
-        String existingRdf = metadataStoreService.getResourceRdf("ds", datasetUuid);
-
-        // Parse the existing RDF into a model
+        // Create a new model holding only the new distributions
         Model model = ModelFactory.createDefaultModel();
-        model.read(new java.io.StringReader(existingRdf), null, "TURTLE");
+
+        // Set up namespaces
+        model.setNsPrefix("dcat", Vocab.DCAT_NS);
+        model.setNsPrefix("ds", Vocab.DS_NS);
+        model.setNsPrefix("spdx", Vocab.SPDX_NS);
 
         // Get the dataset resource
         String datasetUri = Vocab.DS_NS + datasetUuid;
-        Resource dataset = model.getResource(datasetUri);
-
-        // This list will hold every statement we intend to remove.
-
-        // 2. Find all direct "dcat:distribution" statements and snapshot them into a
-        // List.
-        // This avoids modifying the model while we are iterating over its contents.
-        Property distributionProperty = model.createProperty(Vocab.DCAT_NS, "distribution");
-        List<Statement> linkStatements = dataset.listProperties(distributionProperty).toList();
-
-        // Add these linking statements to our master removal list.
-        List<Statement> statementsToRemove = new ArrayList<>(linkStatements);
-
-        // 3. For each distribution link we found, find all properties of the
-        // distribution resource.
-        for (Statement linkStmt : linkStatements) {
-            if (linkStmt.getObject().isResource()) {
-                Resource distributionResource = linkStmt.getObject().asResource();
-
-                // Get a list of all statements where this distribution is the subject.
-                List<Statement> propertiesOfDistribution = distributionResource.listProperties().toList();
-
-                // Add all of these statements to our master removal list as well.
-                statementsToRemove.addAll(propertiesOfDistribution);
-            }
-        }
-
-        // 4. Perform a single, efficient batch removal operation.
-        // This is safe because we are no longer using any live iterators on the model.
-        model.remove(statementsToRemove);
+        Resource dataset = model.createResource(datasetUri);
 
         // Add new distributions for each artifact
-        for (String artifactId : artifactIds) {
-            addDistribution(model, dataset, artifactId);
+        for (UploadedArtifact artifact : artifacts) {
+            addDistribution(model, dataset, artifact);
         }
 
-        // Convert model to Turtle format
-        StringWriter sw = new StringWriter();
-        model.write(sw, "TURTLE");
-        return sw.toString();
+        return model;
     }
 
     @Override
-    public String updatePluginDistribution(String pluginUuid, String artifactId) {
-        // Validate that the plugin exists
-        if (!metadataStoreService.resourceExists("pl", pluginUuid)) {
-            throw new IllegalArgumentException("Plugin with UUID " + pluginUuid + " does not exist");
-        }
-
-        // Retrieve the existing plugin RDF
-        String existingRdf = metadataStoreService.getResourceRdf("pl", pluginUuid);
-
-        // Parse the existing RDF into a model
-        Model model = ModelFactory.createDefaultModel();
-        model.read(new java.io.StringReader(existingRdf), null, "TURTLE");
+    public List<String> getDistributionArtifactIds(String datasetUuid, Model model) {
+        // Access URLs are generated from the download endpoint template, with the artifact ID as the path segment after its prefix
+        String downloadUrlPrefix = downloadEndpointTemplate.substring(0, downloadEndpointTemplate.indexOf("{artifactId}"));
+        Resource dataset = model.getResource(Vocab.DS_NS + datasetUuid);
+        Property accessUrlProperty = model.createProperty(Vocab.DCAT_NS, "accessURL");
+
+        SortedSet<String> artifactIds = new TreeSet<>();
+        dataset.listProperties(model.createProperty(Vocab.DCAT_NS, "distribution")).forEachRemaining(distribution -> {
+            if (!distribution.getObject().isResource()) {
+                return;
+            }
+            distribution.getResource().listProperties(accessUrlProperty).forEachRemaining(accessUrl -> {
+                String url = accessUrl.getObject().isResource() ? accessUrl.getResource().getURI() : accessUrl.getString();
+                if (url == null || !url.startsWith(downloadUrlPrefix)) {
+                    log.debug("Skipping distribution of dataset {} hosted elsewhere: {}", datasetUuid, url);
+                    return;
+                }
+                String artifactId = url.substring(downloadUrlPrefix.length()).split("[?/#]", 2)[0];
+                if (!artifactId.isEmpty()) {
+                    artifactIds.add(artifactId);
+                }
+            });
+        });
+        return new ArrayList<>(artifactIds);
+    }
 
+    @Override
+    public Model updatePluginDistribution(Model model, String pluginUuid, UploadedArtifact artifact) {
         // Get the plugin resource
         String pluginUri = Vocab.PL_NS + pluginUuid;
         Resource plugin = model.getResource(pluginUri);
 
-        // Remove existing distributions
+        // Remove existing distributions together with their descriptions, which are blank nodes
         Property distributionProperty = model.createProperty(Vocab.DCAT_NS, "distribution");
-        model.remove(plugin.listProperties(distributionProperty));
+        for (Statement distribution : plugin.listProperties(distributionProperty).toList()) {
+            if (distribution.getObject().isAnon()) {
+                removeDescription(model, distribution.getResource());
+            }
+            model.remove(distribution);
+        }
 
         // Add new distribution
-        addDistribution(model, plugin, artifactId);
+        model.setNsPrefix("spdx", Vocab.SPDX_NS);
+        addDistribution(model, plugin, artifact);
 
-        // Convert model to Turtle format
-        StringWriter sw = new StringWriter();
-        model.write(sw, "TURTLE");
-        return sw.toString();
+        return model;
+    }
+
+    /**
+     * Removes the triples of a blank node and of the blank nodes nested in it, such as the checksum of a distribution.
+     */
+    private void removeDescription(Model model, Resource node) {
+        for (Statement statement : node.listProperties().toList()) {
+            model.remove(statement);
+            if (statement.getObject().isAnon()) {
+                removeDescription(model, statement.getResource());
+            }
+        }
     }
 }
@@ -36,6 +36,26 @@ public class RdfMediaType {
      * MediaType object for RDF/XML format.
      */
     public static final MediaType APPLICATION_RDF_XML = MediaType.parseMediaType(APPLICATION_RDF_XML_VALUE);
+
+    /**
+     * Media type for binary RDF Thrift format.
+     */
+    public static final String APPLICATION_RDF_THRIFT_VALUE = "application/rdf+thrift";
+
+    /**
+     * MediaType object for binary RDF Thrift format.
+     */
+    public static final MediaType APPLICATION_RDF_THRIFT = MediaType.parseMediaType(APPLICATION_RDF_THRIFT_VALUE);
+
+    /**
+     * Media type for binary RDF Protobuf format.
+     */
+    public static final String APPLICATION_RDF_PROTOBUF_VALUE = "application/rdf+protobuf";
+
+    /**
+     * MediaType object for binary RDF Protobuf format.
+     */
+    public static final MediaType APPLICATION_RDF_PROTOBUF = MediaType.parseMediaType(APPLICATION_RDF_PROTOBUF_VALUE);
     
     private RdfMediaType() {
         // Utility class, no instances
@@ -29,6 +29,8 @@ public final class Vocab {
     public static final String PROV_NS = "http://www.w3.org/ns/prov#";
     public static final String LDP_NS = "http://www.w3.org/ns/ldp#";
     public static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    public static final String SPDX_NS = "http://spdx.org/rdf/terms#";
+    public static final String IANA_MEDIA_TYPES_NS = "https://www.iana.org/assignments/media-types/";
     public static final String RDF_NAMESPACE_BASE = ensureNamespace(namespaceUri);
     public static final String DF_NS = ensureNamespaceWithHash(RDF_NAMESPACE_BASE + dfNamespace);
     public static final String DS_NS = ensureNamespaceWithHash(RDF_NAMESPACE_BASE + dsNamespace);
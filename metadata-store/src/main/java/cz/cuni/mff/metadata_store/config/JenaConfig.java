@@ -1,7 +1,16 @@
 package cz.cuni.mff.metadata_store.config;
 
+import cz.cuni.mff.metadata_store.service.ChangeLogRecorder;
+import cz.cuni.mff.metadata_store.service.DefaultGraphLayout;
+import cz.cuni.mff.metadata_store.service.NamedGraphLayout;
+import cz.cuni.mff.metadata_store.service.SearchIndex;
+import cz.cuni.mff.metadata_store.service.StorageLayout;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdfpatch.system.DatasetGraphChanges;
+import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.lucene.store.FSDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,18 +35,31 @@ public class JenaConfig {
     @Value("${jena.tdb2.location}")
     private String tdb2Location;
 
+    @Value("${replication.role:standalone}")
+    private ReplicationRole replicationRole;
+
+    @Value("${storage.layout:default}")
+    private String storageLayout;
+
+    @Value("${search.index.location}")
+    private String searchIndexLocation;
+
     private Dataset dataset;
 
     /**
      * Creates the Jena TDB2 Dataset bean.
      * Ensures the database directory exists and connects to the TDB2 dataset.
+     * On a replication primary, the dataset is wrapped so that every committed write transaction
+     * is recorded in the change log. The dataset is always wrapped so that committed write transactions
+     * update the search index, which is rebuilt first if it is behind the store.
      * Specifies 'close' as the destroy method for proper resource release on shutdown.
      *
+     * @param searchIndex The full-text index kept in step with the dataset.
      * @return The configured Jena Dataset instance.
      * @throws IOException If the directory cannot be created.
      */
     @Bean(destroyMethod = "close")
-    public Dataset dataset() throws IOException {
+    public Dataset dataset(SearchIndex searchIndex) throws IOException {
         log.info("Initializing Jena TDB2 dataset at location: {}", tdb2Location);
         Path locationPath = Paths.get(tdb2Location);
 
@@ -49,8 +71,44 @@ public class JenaConfig {
             throw new IllegalStateException("TDB2 location must be a directory: " + tdb2Location);
         }
 
-        this.dataset = TDB2Factory.connectDataset(tdb2Location);
+        DatasetGraph base = TDB2Factory.connectDataset(tdb2Location).asDatasetGraph();
+        DatasetGraph monitored = base;
+        if (replicationRole == ReplicationRole.PRIMARY) {
+            monitored = new DatasetGraphChanges(monitored, new ChangeLogRecorder(base));
+            log.info("Recording committed changes to the replication change log.");
+        }
+        searchIndex.synchronize(base);
+        this.dataset = DatasetFactory.wrap(searchIndex.monitor(monitored, base));
         log.info("Jena TDB2 Dataset initialized successfully.");
         return this.dataset;
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates the Lucene full-text index over resource metadata, stored in the directory given by 'search.index.location'.
+     *
+     * @return The search index.
+     * @throws IOException If the index cannot be opened.
+     */
+    @Bean(destroyMethod = "close")
+    public SearchIndex searchIndex() throws IOException {
+        log.info("Opening search index at location: {}", searchIndexLocation);
+        return new SearchIndex(FSDirectory.open(Files.createDirectories(Paths.get(searchIndexLocation))));
+    }
+
+    /**
+     * Creates the storage layout selected by the 'storage.layout' property:
+     * 'default' keeps all resources in the default graph, 'named-graph' keeps each resource in its own named graph.
+     *
+     * @param dataset The Jena Dataset the layout operates on.
+     * @return The configured storage layout.
+     */
+    @Bean
+    public StorageLayout storageLayout(Dataset dataset) {
+        log.info("Using '{}' storage layout.", storageLayout);
+        return switch (storageLayout) {
+            case "default" -> new DefaultGraphLayout(dataset);
+            case "named-graph" -> new NamedGraphLayout(dataset);
+            default -> throw new IllegalStateException("Unknown storage layout: " + storageLayout);
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package cz.cuni.mff.metadata_store.config;
+
+import cz.cuni.mff.metadata_store.service.ReplicaService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.Set;
+
+/**
+ * Web configuration of read-only replicas.
+ * A replica rejects every modifying request with 405 and tags every response with the
+ * change log sequence it has applied, so clients can tell how far behind the primary it is.
+ */
+@Configuration
+public class ReplicationConfig implements WebMvcConfigurer {
+
+    /**
+     * Response header with the change log sequence a replica has applied.
+     */
+    public static final String REPLICATION_SEQUENCE_HEADER = "X-Replication-Sequence";
+
+    private static final Set<String> READ_METHODS = Set.of(HttpMethod.GET.name(), HttpMethod.HEAD.name(), HttpMethod.OPTIONS.name());
+
+    /**
+     * Endpoints that accept POST without modifying the store.
+     */
+    private static final Set<String> READ_ONLY_PATHS = Set.of("/api/v1/sparql");
+
+    private final ReplicationRole replicationRole;
+    private final ReplicaService replicaService;
+
+    @Autowired
+    public ReplicationConfig(@Value("${replication.role:standalone}") ReplicationRole replicationRole, ReplicaService replicaService) {
+        this.replicationRole = replicationRole;
+        this.replicaService = replicaService;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (replicationRole != ReplicationRole.REPLICA) {
+            return;
+        }
+
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                response.setHeader(REPLICATION_SEQUENCE_HEADER, Long.toString(replicaService.getAppliedSequence()));
+                if (!READ_METHODS.contains(request.getMethod()) && !READ_ONLY_PATHS.contains(request.getRequestURI())) {
+                    response.setHeader(HttpHeaders.ALLOW, String.join(", ", READ_METHODS));
+                    throw new ResponseStatusException(HttpStatus.METHOD_NOT_ALLOWED, "This metadata-store instance is a read-only replica, send writes to the primary");
+                }
+                return true;
+            }
+        }).addPathPatterns("/api/**");
+    }
+}
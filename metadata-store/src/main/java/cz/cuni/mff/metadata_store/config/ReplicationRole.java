@@ -0,0 +1,19 @@
+package cz.cuni.mff.metadata_store.config;
+
+/**
+ * Role of a metadata-store instance in change-log replication.
+ */
+public enum ReplicationRole {
+    /**
+     * Single instance, no change log is kept.
+     */
+    STANDALONE,
+    /**
+     * Accepts writes and publishes a change log of every committed transaction.
+     */
+    PRIMARY,
+    /**
+     * Read-only copy of a primary, kept up to date by applying its change log.
+     */
+    REPLICA
+}
@@ -0,0 +1,536 @@
+package cz.cuni.mff.metadata_store.config;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses GET responses with zstd or gzip, whichever the client prefers in its {@code Accept-Encoding}
+ * header (zstd on a tie). The body is compressed while it is written, so streamed responses, i.e. all RDF
+ * in streaming formats and the store dump, are never buffered; only the first
+ * {@code compression.min-response-size} bytes are held back to decide whether the response is worth
+ * compressing at all.
+ * Compressed bodies of responses carrying a strong ETag, i.e. of a specific version of a resource,
+ * are kept in a small LRU cache and sent again without recompressing while the version stays the same.
+ * As the compressed bytes differ from the identity ones, their strong ETag gets the coding as a suffix
+ * ({@code "3-nt"} becomes {@code "3-nt-zstd"}), which is stripped again from the If-Match and If-None-Match
+ * headers of later requests, so that the controllers only ever see their own ETags.
+ */
+@Component
+public class ResponseCompressionFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCompressionFilter.class);
+
+    static final String ZSTD = "zstd";
+    static final String GZIP = "gzip";
+
+    private final boolean enabled;
+    private final int minResponseSize;
+    private final int zstdLevel;
+    private final int maxCachedEntrySize;
+    private final List<MediaType> compressibleTypes;
+    private final Map<String, byte[]> precompressed;
+
+    @Autowired
+    public ResponseCompressionFilter(@Value("${compression.enabled:true}") boolean enabled,
+                                     @Value("${compression.min-response-size:2048}") int minResponseSize,
+                                     @Value("${compression.zstd-level:3}") int zstdLevel,
+                                     @Value("${compression.mime-types}") String[] mimeTypes,
+                                     @Value("${compression.cache.max-entries:256}") int maxCachedEntries,
+                                     @Value("${compression.cache.max-entry-size:1048576}") int maxCachedEntrySize) {
+        this.enabled = enabled;
+        this.minResponseSize = minResponseSize;
+        this.zstdLevel = zstdLevel;
+        this.maxCachedEntrySize = maxCachedEntrySize;
+        this.compressibleTypes = Arrays.stream(mimeTypes).map(String::trim).map(MediaType::parseMediaType).toList();
+        this.precompressed = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxCachedEntries;
+            }
+        });
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Requests of any method may carry an ETag of a compressed response in their preconditions
+        return !enabled;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        // Streamed bodies are finished in the async dispatch that follows them
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        HttpServletRequest requestToUse = hasEncodedETags(request) ? new ETagDecodingRequest(request) : request;
+        HttpServletResponse responseToUse = response;
+        if (!isAsyncDispatch(request) && HttpMethod.GET.matches(request.getMethod())) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            String encoding = negotiateEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+            if (encoding != null) {
+                responseToUse = new CompressingResponse(response, encoding, cacheKey(request, encoding),
+                        request.getHeader(HttpHeaders.IF_NONE_MATCH));
+            }
+        }
+
+        filterChain.doFilter(requestToUse, responseToUse);
+
+        if (!isAsyncStarted(request)) {
+            CompressingResponse compressingResponse = WebUtils.getNativeResponse(responseToUse, CompressingResponse.class);
+            if (compressingResponse != null) {
+                compressingResponse.finish();
+            }
+        }
+    }
+
+    /**
+     * Picks the content coding for an {@code Accept-Encoding} header.
+     *
+     * @param acceptEncoding The header value, may be null.
+     * @return {@value #ZSTD}, {@value #GZIP}, or null to send the response uncompressed.
+     */
+    static String negotiateEncoding(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+
+        Double zstd = null;
+        Double gzip = null;
+        double wildcard = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            switch (parts[0].trim().toLowerCase()) {
+                case ZSTD -> zstd = quality;
+                case GZIP, "x-gzip" -> gzip = quality;
+                case "*" -> wildcard = quality;
+                default -> {
+                }
+            }
+        }
+
+        double zstdQuality = zstd != null ? zstd : wildcard;
+        double gzipQuality = gzip != null ? gzip : wildcard;
+        if (zstdQuality > 0 && zstdQuality >= gzipQuality) {
+            return ZSTD;
+        }
+        return gzipQuality > 0 ? GZIP : null;
+    }
+
+    /**
+     * Appends the content coding to a strong ETag. Weak ETags are left as they are, since compressing does not
+     * change what the representation means.
+     *
+     * @param etag The ETag of the identity representation.
+     * @param encoding The content coding of the response.
+     * @return The ETag of the compressed representation.
+     */
+    static String encodeETag(String etag, String encoding) {
+        if (etag.startsWith("W/") || !etag.endsWith("\"")) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + '-' + encoding + '"';
+    }
+
+    /**
+     * Strips the content coding {@link #encodeETag} appended from the ETags of a precondition header.
+     *
+     * @param header The If-Match or If-None-Match header value, may be null.
+     * @return The header with the ETags of the identity representations.
+     */
+    static String decodeETags(String header) {
+        if (header == null) {
+            return null;
+        }
+        return header.replace("-" + ZSTD + '"', "\"").replace("-" + GZIP + '"', "\"");
+    }
+
+    private static boolean hasEncodedETags(HttpServletRequest request) {
+        String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        return (ifMatch != null && !ifMatch.equals(decodeETags(ifMatch)))
+                || (ifNoneMatch != null && !ifNoneMatch.equals(decodeETags(ifNoneMatch)));
+    }
+
+    private static String cacheKey(HttpServletRequest request, String encoding) {
+        return encoding + ' ' + request.getRequestURI() + '?' + request.getQueryString() + ' ' + request.getHeader(HttpHeaders.ACCEPT);
+    }
+
+    private boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            return compressibleTypes.stream().anyMatch(type -> type.includes(mediaType));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Presents the precondition headers of a request with the ETags the controllers sent.
+     */
+    private static final class ETagDecodingRequest extends HttpServletRequestWrapper {
+
+        private ETagDecodingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            String value = super.getHeader(name);
+            return isPrecondition(name) ? decodeETags(value) : value;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            Enumeration<String> values = super.getHeaders(name);
+            if (!isPrecondition(name) || values == null) {
+                return values;
+            }
+            return Collections.enumeration(Collections.list(values).stream().map(ResponseCompressionFilter::decodeETags).toList());
+        }
+
+        private static boolean isPrecondition(String name) {
+            return HttpHeaders.IF_MATCH.equalsIgnoreCase(name) || HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase(name);
+        }
+    }
+
+    /**
+     * Holds back the start of the body until it is clear whether to compress, then either compresses
+     * the rest of the body on the fly, replays a cached compressed body, or passes the body through.
+     */
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final String encoding;
+        private final String cacheKey;
+        private final String ifNoneMatch;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private long declaredLength = -1;
+
+        private OutputStream target;
+        private CapturingOutputStream compressedSink;
+        private String cacheEntryKey;
+        private ByteArrayOutputStream captured;
+        private boolean replayed;
+
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private CompressingResponse(HttpServletResponse response, String encoding, String cacheKey, String ifNoneMatch) {
+            super(response);
+            this.encoding = encoding;
+            this.cacheKey = cacheKey;
+            this.ifNoneMatch = ifNoneMatch;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            declaredLength = len;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        CompressingResponse.this.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        if (target != null) {
+                            target.flush();
+                        }
+                    }
+
+                    /**
+                     * Bytes that are held back are always accepted; after that, every write is passed on to the
+                     * container as a single write, so its readiness holds for this stream too.
+                     */
+                    @Override
+                    public boolean isReady() {
+                        if (replayed || (target == null && pending.size() < minResponseSize)) {
+                            return true;
+                        }
+                        return containerOutputStream().isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        containerOutputStream().setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), Charset.forName(getCharacterEncoding())));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target != null) {
+                target.flush();
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (target == null) {
+                pending.reset();
+            }
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            if (target == null) {
+                pending.reset();
+                declaredLength = -1;
+            }
+            super.reset();
+        }
+
+        private ServletOutputStream containerOutputStream() {
+            try {
+                return getResponse().getOutputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write(byte[] b, int off, int len) throws IOException {
+            if (replayed) {
+                return;
+            }
+            if (target != null) {
+                target.write(b, off, len);
+                if (compressedSink != null) {
+                    compressedSink.drain();
+                }
+                return;
+            }
+
+            pending.write(b, off, len);
+            if (declaredLength >= 0 || pending.size() >= minResponseSize) {
+                start(Math.max(declaredLength, pending.size()) >= minResponseSize);
+            }
+        }
+
+        /**
+         * Decides how to send the body and writes out what has been held back so far.
+         */
+        private void start(boolean largeEnough) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            boolean compress = largeEnough
+                    && response.getStatus() == HttpServletResponse.SC_OK
+                    && response.getHeader(HttpHeaders.CONTENT_ENCODING) == null
+                    && isCompressible(response.getContentType());
+
+            if (!compress) {
+                if (declaredLength >= 0) {
+                    response.setContentLengthLong(declaredLength);
+                }
+                target = response.getOutputStream();
+                pending.writeTo(target);
+                return;
+            }
+
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+            String etag = response.getHeader(HttpHeaders.ETAG);
+            boolean cacheable = etag != null && !etag.startsWith("W/");
+
+            if (cacheable) {
+                response.setHeader(HttpHeaders.ETAG, encodeETag(etag, encoding));
+                cacheEntryKey = cacheKey + ' ' + etag;
+                byte[] cached = precompressed.get(cacheEntryKey);
+                if (cached != null) {
+                    response.setContentLength(cached.length);
+                    response.getOutputStream().write(cached);
+                    replayed = true;
+                    log.debug("Sent cached {} body of {} bytes for {}", encoding, cached.length, cacheKey);
+                    return;
+                }
+                captured = new ByteArrayOutputStream();
+            }
+
+            compressedSink = new CapturingOutputStream(response.getOutputStream());
+            target = ZSTD.equals(encoding) ? new ZstdOutputStream(compressedSink, zstdLevel) : new GZIPOutputStream(compressedSink, 8192, true);
+            pending.writeTo(target);
+            compressedSink.drain();
+        }
+
+        /**
+         * Completes the body once the request has been fully handled.
+         */
+        private void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (replayed) {
+                return;
+            }
+            if (target == null) {
+                if (pending.size() == 0 && declaredLength < 0) {
+                    answerNotModified();
+                    return;
+                }
+                start(pending.size() >= minResponseSize);
+            }
+
+            if (compressedSink != null) {
+                target.close();
+                if (captured != null) {
+                    precompressed.put(cacheEntryKey, captured.toByteArray());
+                }
+            }
+        }
+
+        /**
+         * Sends a 304 with the ETag the client holds, which is the one of the compressed body if it was sent compressed.
+         */
+        private void answerNotModified() {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            String etag = response.getHeader(HttpHeaders.ETAG);
+            if (response.getStatus() == HttpServletResponse.SC_NOT_MODIFIED && etag != null && ifNoneMatch != null
+                    && ifNoneMatch.contains(encodeETag(etag, encoding))) {
+                response.setHeader(HttpHeaders.ETAG, encodeETag(etag, encoding));
+            }
+        }
+
+        /**
+         * Collects the compressed body and passes it through in one write per write of the response body,
+         * however many pieces the compressor emits, keeping a copy for the cache unless it grows too large.
+         * Closing it does not close the response stream, which is left to the container.
+         */
+        private final class CapturingOutputStream extends OutputStream {
+            private final OutputStream out;
+            private final ByteArrayOutputStream outbox = new ByteArrayOutputStream();
+
+            private CapturingOutputStream(OutputStream out) {
+                this.out = out;
+            }
+
+            private void drain() throws IOException {
+                if (outbox.size() > 0) {
+                    outbox.writeTo(out);
+                    outbox.reset();
+                }
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                outbox.write(b, off, len);
+                if (captured != null) {
+                    if (captured.size() + len > maxCachedEntrySize) {
+                        captured = null;
+                    } else {
+                        captured.write(b, off, len);
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                drain();
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }
+    }
+}
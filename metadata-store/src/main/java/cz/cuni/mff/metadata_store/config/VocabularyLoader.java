@@ -13,6 +13,7 @@ import org.apache.jena.vocabulary.RDFS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
@@ -26,14 +27,20 @@ public class VocabularyLoader implements ApplicationListener<ContextRefreshedEve
 
     private static final Logger log = LoggerFactory.getLogger(VocabularyLoader.class);
     private final Dataset dataset;
+    private final ReplicationRole replicationRole;
 
     @Autowired
-    public VocabularyLoader(Dataset dataset) {
+    public VocabularyLoader(Dataset dataset, @Value("${replication.role:standalone}") ReplicationRole replicationRole) {
         this.dataset = dataset;
+        this.replicationRole = replicationRole;
     }
 
     @Override
     public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (replicationRole == ReplicationRole.REPLICA) {
+            log.info("Application context refreshed. Replica receives the vocabulary from its primary, skipping generation.");
+            return;
+        }
         log.info("Application context refreshed. Generating and loading vocabulary.");
         generateVocabulary();
     }
@@ -1,9 +1,15 @@
 package cz.cuni.mff.metadata_store.controller;
 
+import cz.cuni.mff.metadata_store.service.IngestService;
 import cz.cuni.mff.metadata_store.service.RdfStorageService;
+import cz.cuni.mff.metadata_store.service.ResourceUsages;
+import cz.cuni.mff.metadata_store.service.ValidatedGraph;
+import cz.cuni.mff.metadata_store.service.VersionService;
+import cz.cuni.mff.metadata_store.service.VersionedModel;
 import cz.cuni.mff.metadata_store.utils.RdfMediaType;
 import cz.cuni.mff.metadata_store.utils.Vocab;
 
+import java.util.ConcurrentModificationException;
 import java.util.NoSuchElementException;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -12,6 +18,7 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.RDFFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,6 +28,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.InputStream;
 import java.net.URI;
@@ -34,11 +42,16 @@ public class DatasetController implements RdfController {
     private static final Logger log = LoggerFactory.getLogger(DatasetController.class);
 
     private final RdfStorageService rdfStorageService;
+    private final IngestService ingestService;
 
     private static final String[] SUPPORTED_RDF_MEDIA_TYPES = {
         RdfMediaType.TEXT_TURTLE_VALUE,
         RdfMediaType.APPLICATION_LD_JSON_VALUE,
-        RdfMediaType.APPLICATION_RDF_XML_VALUE
+        RdfMediaType.APPLICATION_RDF_XML_VALUE,
+        RdfMediaType.APPLICATION_RDF_THRIFT_VALUE,
+        RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE,
+        RdfMediaType.APPLICATION_N_TRIPLES_VALUE,
+        RdfMediaType.APPLICATION_N_QUADS_VALUE
     };
 
     @Override
@@ -47,8 +60,9 @@ public class DatasetController implements RdfController {
     }
 
     @Autowired
-    public DatasetController(RdfStorageService rdfStorageService) {
+    public DatasetController(RdfStorageService rdfStorageService, IngestService ingestService) {
         this.rdfStorageService = rdfStorageService;
+        this.ingestService = ingestService;
     }
 
     /**
@@ -57,37 +71,113 @@ public class DatasetController implements RdfController {
      * @param requestBody InputStream containing RDF data for the dataset
      * @param contentType Content-Type of the request
      * @param datasetId UUID of the dataset to update
+     * @param ifMatch Optional entity tag of the dataset version the update is based on
      * @return ResponseEntity with status 200 if successful, 404 if dataset not found, or 415 if unsupported content type
      */
-    @PutMapping(value = "/{datasetId}", consumes = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    @PutMapping(value = "/{datasetId}", consumes = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE, MediaType.TEXT_PLAIN_VALUE})
     @Operation(summary = "Update an existing dataset RDF graph",
-            description = "Updates an existing dataset (dcat:Dataset) with a new RDF graph. The provided graph must contain the complete updated state of the dataset.",
+            description = "Updates an existing dataset (dcat:Dataset) with a new RDF graph. The provided graph must contain the complete updated state of the dataset. Send the ETag of a previous GET in If-Match to reject the update if the dataset was modified concurrently.",
             parameters = @Parameter(name = "datasetId", description = "UUID of the dataset to update", required = true),
             responses = {
                     @ApiResponse(responseCode = "200", description = "Dataset updated successfully"),
                     @ApiResponse(responseCode = "404", description = "Dataset not found", content = @Content),
+                    @ApiResponse(responseCode = "412", description = "Dataset was modified since the version given in If-Match", content = @Content),
                     @ApiResponse(responseCode = "415", description = "Unsupported RDF Content-Type", content = @Content)
             })
     public ResponseEntity<String> updateDataset(
             @Parameter(description = "Input stream containing RDF data for the dataset") InputStream requestBody,
-            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, @PathVariable String datasetId) {
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, @PathVariable String datasetId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
         log.debug("Attempting to update dataset with ID: {} and content type: {}", datasetId, contentType);
         Model datasetModel = parseRdfData(requestBody, contentType);
 
         try {
-            rdfStorageService.updateDataset(datasetId, datasetModel);
-            log.info("Dataset updated successfully with ID: {}", datasetId);
-            return ResponseEntity.status(HttpStatus.OK).headers(ldpHeaders()).body(datasetId);
+            long version = rdfStorageService.updateDataset(datasetId, datasetModel, ifMatch);
+            log.info("Dataset updated successfully with ID: {}, new version: {}", datasetId, version);
+            HttpHeaders headers = ldpHeaders();
+            // The request body is the new state of the dataset, so it gets the tag of the body's format
+            headers.setETag(VersionService.toETag(version, negotiateFormat(contentType)));
+            return ResponseEntity.status(HttpStatus.OK).headers(headers).body(datasetId);
         } catch (NoSuchElementException e) {
             log.warn("Dataset not found for ID: {}", datasetId);
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (ConcurrentModificationException e) {
+            log.warn("Precondition failed updating dataset with ID: {}: {}", datasetId, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, e.getMessage(), e);
         } catch (IllegalArgumentException e) {
             log.warn("Invalid dataset graph provided for update: {}", e.getMessage());
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
         }
     }
 
+    /**
+     * Appends new distributions (dcat:Distribution) to an existing dataset.
+     *
+     * @param requestBody InputStream containing the dataset's new dcat:distribution entries
+     * @param contentType Content-Type of the request
+     * @param datasetId UUID of the dataset to update
+     * @return ResponseEntity with status 200 if successful, 404 if dataset not found, or 400 if no distributions were provided
+     */
+    @PostMapping(value = "/{datasetId}/distributions", consumes = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    @Operation(summary = "Append distributions to a dataset",
+            description = "Adds the dcat:distribution entries of the provided RDF graph to an existing dataset in a single write transaction. Existing distributions are kept.",
+            parameters = @Parameter(name = "datasetId", description = "UUID of the dataset to update", required = true),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Distributions appended successfully"),
+                    @ApiResponse(responseCode = "400", description = "Malformed RDF syntax or no dcat:distribution of the dataset", content = @Content),
+                    @ApiResponse(responseCode = "404", description = "Dataset not found", content = @Content),
+                    @ApiResponse(responseCode = "415", description = "Unsupported RDF Content-Type", content = @Content)
+            })
+    public ResponseEntity<String> appendDatasetDistributions(
+            @Parameter(description = "Input stream containing the new distributions of the dataset") InputStream requestBody,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, @PathVariable String datasetId) {
+
+        return updateDistributions(requestBody, contentType, datasetId, false);
+    }
+
+    /**
+     * Replaces all distributions (dcat:Distribution) of an existing dataset.
+     *
+     * @param requestBody InputStream containing the dataset's new dcat:distribution entries
+     * @param contentType Content-Type of the request
+     * @param datasetId UUID of the dataset to update
+     * @return ResponseEntity with status 200 if successful, 404 if dataset not found, or 400 if no distributions were provided
+     */
+    @PutMapping(value = "/{datasetId}/distributions", consumes = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    @Operation(summary = "Replace the distributions of a dataset",
+            description = "Removes all existing dcat:distribution entries of a dataset and adds the ones of the provided RDF graph in a single write transaction.",
+            parameters = @Parameter(name = "datasetId", description = "UUID of the dataset to update", required = true),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Distributions replaced successfully"),
+                    @ApiResponse(responseCode = "400", description = "Malformed RDF syntax or no dcat:distribution of the dataset", content = @Content),
+                    @ApiResponse(responseCode = "404", description = "Dataset not found", content = @Content),
+                    @ApiResponse(responseCode = "415", description = "Unsupported RDF Content-Type", content = @Content)
+            })
+    public ResponseEntity<String> replaceDatasetDistributions(
+            @Parameter(description = "Input stream containing the new distributions of the dataset") InputStream requestBody,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, @PathVariable String datasetId) {
+
+        return updateDistributions(requestBody, contentType, datasetId, true);
+    }
+
+    private ResponseEntity<String> updateDistributions(InputStream requestBody, String contentType, String datasetId, boolean replace) {
+        log.debug("Attempting to update distributions of dataset with ID: {} (replace: {})", datasetId, replace);
+        Model distributionModel = parseRdfData(requestBody, contentType);
+
+        try {
+            rdfStorageService.updateDatasetDistributions(datasetId, distributionModel, replace);
+            log.info("Dataset distributions updated successfully with ID: {}", datasetId);
+            return ResponseEntity.status(HttpStatus.OK).headers(ldpHeaders()).body(datasetId);
+        } catch (NoSuchElementException e) {
+            log.warn("Dataset not found for ID: {}", datasetId);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid distribution graph provided: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
     /**
      * Creates a new dataset (dcat:Dataset) by storing the provided RDF graph.
      *
@@ -95,11 +185,12 @@ public class DatasetController implements RdfController {
      * @param contentType Content-Type of the request
      * @return ResponseEntity with status 201 if successful, 400 if malformed RDF, or 415 if unsupported content type
      */
-    @PostMapping(consumes = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    @PostMapping(consumes = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE, MediaType.TEXT_PLAIN_VALUE})
     @Operation(summary = "Store a dataset RDF graph",
             description = "Receives and persists a pre-validated RDF graph for a dataset (dcat:Dataset). Called by Middleware.",
             responses = {
                     @ApiResponse(responseCode = "201", description = "Dataset RDF stored successfully", headers = @io.swagger.v3.oas.annotations.headers.Header(name = "Location", description = "URI of the created dataset resource")),
+                    @ApiResponse(responseCode = "202", description = "Dataset RDF accepted for asynchronous ingestion", headers = @io.swagger.v3.oas.annotations.headers.Header(name = "Location", description = "URL of the ingestion status")),
                     @ApiResponse(responseCode = "400", description = "Malformed RDF syntax or missing dcat:Dataset resource", content = @Content),
                     @ApiResponse(responseCode = "415", description = "Unsupported RDF Content-Type", content = @Content)
             })
@@ -111,6 +202,15 @@ public class DatasetController implements RdfController {
         Model datasetModel = parseRdfData(requestBody, contentType);
 
         try {
+            if (ingestService.isEnabled()) {
+                ValidatedGraph graph = rdfStorageService.validateRdfGraph(datasetModel, Vocab.Dataset);
+                String ticket = ingestService.submit(graph);
+                log.info("Dataset {} accepted for asynchronous ingestion with ticket: {}", graph.resourceUri(), ticket);
+                HttpHeaders headers = ldpHeaders();
+                headers.setLocation(new URI(IngestController.STATUS_PATH + ticket));
+                return new ResponseEntity<>(graph.resourceUri(), headers, HttpStatus.ACCEPTED);
+            }
+
             String resourceUri = rdfStorageService.storeRdfGraph(datasetModel, Vocab.Dataset);
             log.info("Dataset stored successfully with URI: {}", resourceUri);
             HttpHeaders headers = ldpHeaders();
@@ -127,9 +227,10 @@ public class DatasetController implements RdfController {
      *
      * @param datasetId UUID of the dataset to retrieve
      * @param acceptHeader Accept header specifying the desired RDF format
+     * @param ifNoneMatch Optional entity tags of the representations the client already holds
      * @return ResponseEntity with the dataset RDF in the requested format, or 404 if not found, or 406 if unsupported format
      */
-    @GetMapping(value = "/{datasetId}", produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE})
+    @GetMapping(value = "/{datasetId}", produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE})
     @Operation(summary = "Get dataset definition RDF by ID",
             parameters = @Parameter(name = "datasetId", description = "UUID of the dataset", required = true),
             responses = {
@@ -137,13 +238,37 @@ public class DatasetController implements RdfController {
                     @ApiResponse(responseCode = "404", description = "Dataset not found", content = @Content),
                     @ApiResponse(responseCode = "406", description = "Unsupported Accept header format", content = @Content)
             })
-    public ResponseEntity<String> getDataset(
+    public ResponseEntity<StreamingResponseBody> getDataset(
             @PathVariable String datasetId,
-            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        try {
+            VersionedModel datasetModel = rdfStorageService.getVersionedDatasetDescription(datasetId); // Throws NoSuchElementException
+            return formatRdfResponse(datasetModel.model(), acceptHeader, datasetModel.version(), ifNoneMatch);
+        } catch (NoSuchElementException e) {
+            log.warn("Dataset not found for ID: {}", datasetId);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        }
+    }
 
+    /**
+     * Lists the pipelines whose variables specialize a dataset.
+     *
+     * @param datasetId UUID of the dataset
+     * @return ResponseEntity containing the using pipelines and their variables as JSON
+     */
+    @GetMapping(value = "/{datasetId}/usages", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "List the pipelines using a dataset",
+            description = "Looks the dataset up in the reverse-reference index maintained on every pipeline write, without scanning the pipelines.",
+            parameters = @Parameter(name = "datasetId", description = "UUID of the dataset", required = true),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Using pipelines mapped to their variables specializing the dataset"),
+                    @ApiResponse(responseCode = "404", description = "Dataset not found", content = @Content)
+            })
+    public ResponseEntity<ResourceUsages> getDatasetUsages(@PathVariable String datasetId) {
         try {
-            Model datasetModel = rdfStorageService.getDatasetDescription(datasetId); // Throws NoSuchElementException
-            return formatRdfResponse(datasetModel, acceptHeader);
+            return ResponseEntity.ok().headers(ldpHeaders()).body(rdfStorageService.getDatasetUsages(datasetId));
         } catch (NoSuchElementException e) {
             log.warn("Dataset not found for ID: {}", datasetId);
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
@@ -154,33 +279,41 @@ public class DatasetController implements RdfController {
      * Lists all datasets (dcat:Dataset) as an RDF graph.
      *
      * @param acceptHeader Accept header specifying the desired RDF format
+     * @param ifNoneMatch Optional entity tags of the representations the client already holds
      * @return ResponseEntity with the RDF graph of all datasets, or 406 if unsupported format
      */
-    @GetMapping(produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE})
+    @GetMapping(produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE})
     @Operation(summary = "List all datasets as an RDF graph",
             description = "Retrieves an RDF graph containing descriptions of all registered datasets (dcat:Dataset).",
             responses = {
                     @ApiResponse(responseCode = "200", description = "RDF graph containing all dcat:Dataset resources"),
                     @ApiResponse(responseCode = "406", description = "Unsupported Accept header format", content = @Content)
             })
-    public ResponseEntity<String> listDatasets(
-            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+    public ResponseEntity<StreamingResponseBody> listDatasets(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         Model listModel = rdfStorageService.listResourcesWithDistributions(Vocab.Dataset);
-        return formatRdfResponse(listModel, acceptHeader);
+        return formatRdfResponse(listModel, acceptHeader, ifNoneMatch);
     }
 
     /**
      * Checks if a dataset exists by its ID.
      *
      * @param datasetId UUID of the dataset to check
-     * @return ResponseEntity with status 200 if exists, 404 if not found
+     * @param acceptHeader Accept header specifying the RDF format whose entity tag to send
+     * @return ResponseEntity with status 200 if exists, 404 if not found, or 406 if unsupported format
      */
     @RequestMapping(method = RequestMethod.HEAD, value = "/{datasetId}")
-    public ResponseEntity<Void> headDataset(@PathVariable String datasetId) {
+    public ResponseEntity<Void> headDataset(
+            @PathVariable String datasetId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+        RDFFormat format = negotiateFormat(acceptHeader);
         try {
-            rdfStorageService.getDatasetDescription(datasetId);
-            return ResponseEntity.ok().headers(ldpHeaders()).build();
+            VersionedModel datasetModel = rdfStorageService.getVersionedDatasetDescription(datasetId);
+            HttpHeaders headers = ldpHeaders();
+            headers.setETag(VersionService.toETag(datasetModel.version(), format));
+            return ResponseEntity.ok().headers(headers).build();
         } catch (NoSuchElementException e) {
             return ResponseEntity.notFound().headers(ldpHeaders()).build();
         }
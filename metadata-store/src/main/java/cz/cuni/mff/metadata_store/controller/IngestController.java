@@ -0,0 +1,76 @@
+package cz.cuni.mff.metadata_store.controller;
+
+import cz.cuni.mff.metadata_store.service.IngestService;
+import cz.cuni.mff.metadata_store.service.IngestStatus;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+@RestController
+@RequestMapping(IngestController.BASE_PATH)
+@Tag(name = "Ingestion", description = "Status of writes accepted for asynchronous ingestion")
+public class IngestController {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestController.class);
+
+    static final String BASE_PATH = "/api/v1/ingest";
+    static final String STATUS_PATH = BASE_PATH + "/";
+
+    private static final long MAX_WAIT_MS = 30_000;
+
+    private final IngestService ingestService;
+
+    @Autowired
+    public IngestController(IngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+
+    /**
+     * Returns the status of a write accepted for asynchronous ingestion.
+     *
+     * @param ticket Ticket of the write, as returned in the Location header of the 202 response
+     * @param wait Optional number of milliseconds to wait for the write to be committed
+     * @return ResponseEntity with the status of the write, or 404 if the ticket is unknown
+     */
+    @GetMapping(value = "/{ticket}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get the status of an asynchronous write",
+            description = "Returns PENDING, COMMITTED or FAILED. Once COMMITTED, the written resource is readable from this instance and Content-Location points to it. Use 'wait' to block until the write is done.",
+            parameters = {
+                    @Parameter(name = "ticket", description = "Ticket of the write", required = true),
+                    @Parameter(name = "wait", description = "Maximum number of milliseconds to wait for the write to be done (capped at 30000)")
+            },
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Status of the write"),
+                    @ApiResponse(responseCode = "404", description = "Unknown or expired ticket", content = @Content)
+            })
+    public ResponseEntity<IngestStatus> getStatus(@PathVariable String ticket,
+                                                  @RequestParam(value = "wait", required = false, defaultValue = "0") long wait) {
+
+        Duration timeout = Duration.ofMillis(Math.clamp(wait, 0, MAX_WAIT_MS));
+        IngestStatus status = ingestService.awaitStatus(ticket, timeout)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown ingestion ticket: " + ticket));
+        log.debug("Ingestion ticket {} is {}", ticket, status.state());
+
+        HttpHeaders headers = new HttpHeaders();
+        if (status.state() == IngestStatus.State.COMMITTED) {
+            headers.set(HttpHeaders.CONTENT_LOCATION, status.resource());
+        } else if (status.state() == IngestStatus.State.PENDING) {
+            headers.setCacheControl("no-store");
+        }
+        return ResponseEntity.ok().headers(headers).body(status);
+    }
+}
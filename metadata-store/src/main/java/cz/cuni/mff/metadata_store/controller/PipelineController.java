@@ -1,6 +1,9 @@
 package cz.cuni.mff.metadata_store.controller;
 
+import cz.cuni.mff.metadata_store.service.PipelineDependencies;
 import cz.cuni.mff.metadata_store.service.RdfStorageService;
+import cz.cuni.mff.metadata_store.service.VersionService;
+import cz.cuni.mff.metadata_store.service.VersionedModel;
 
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -8,20 +11,25 @@ import java.util.NoSuchElementException;
 import cz.cuni.mff.metadata_store.utils.RdfMediaType;
 import cz.cuni.mff.metadata_store.utils.Vocab;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.RDFFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.InputStream;
 
@@ -33,11 +41,16 @@ public class PipelineController implements RdfController {
     private static final Logger log = LoggerFactory.getLogger(PipelineController.class);
 
     private final RdfStorageService rdfStorageService;
+    private final ObjectMapper objectMapper;
 
     private static final String[] SUPPORTED_RDF_MEDIA_TYPES = {
         RdfMediaType.TEXT_TURTLE_VALUE,
         RdfMediaType.APPLICATION_LD_JSON_VALUE,
-        RdfMediaType.APPLICATION_RDF_XML_VALUE
+        RdfMediaType.APPLICATION_RDF_XML_VALUE,
+        RdfMediaType.APPLICATION_RDF_THRIFT_VALUE,
+        RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE,
+        RdfMediaType.APPLICATION_N_TRIPLES_VALUE,
+        RdfMediaType.APPLICATION_N_QUADS_VALUE
     };
 
     @Override
@@ -46,8 +59,9 @@ public class PipelineController implements RdfController {
     }
 
     @Autowired
-    public PipelineController(RdfStorageService rdfStorageService) {
+    public PipelineController(RdfStorageService rdfStorageService, ObjectMapper objectMapper) {
         this.rdfStorageService = rdfStorageService;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -57,7 +71,7 @@ public class PipelineController implements RdfController {
      * @param contentType Content-Type of the request
      * @return Parsed Jena Model containing the RDF data
      */
-    @PostMapping(consumes = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE})
+    @PostMapping(consumes = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE})
     @Operation(summary = "Store a pipeline definition RDF graph",
             description = "Receives and persists a complete RDF graph for a pipeline plan (p-plan:Plan). Called by Middleware.",
             responses = {
@@ -91,9 +105,10 @@ public class PipelineController implements RdfController {
      * @param planId UUID of the pipeline plan
      * @param full If true, includes dependencies in the response
      * @param acceptHeader Accept header specifying the desired RDF format
+     * @param ifNoneMatch Optional entity tags of the representations the client already holds
      * @return ResponseEntity containing the RDF representation of the pipeline
      */
-    @GetMapping(value = "/{planId}", produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE})
+    @GetMapping(value = "/{planId}", produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE})
     @Operation(summary = "Get pipeline definition RDF by ID",
             parameters = @Parameter(name = "planId", description = "UUID of the pipeline plan", required = true, example = "d290f1ee-6c54-4b01-90e6-d701748f0851"),
             responses = {
@@ -101,16 +116,91 @@ public class PipelineController implements RdfController {
                     @ApiResponse(responseCode = "404", description = "Pipeline plan not found", content = @Content),
                     @ApiResponse(responseCode = "406", description = "Unsupported Accept header format", content = @Content)
             })
-    public ResponseEntity<String> getPipeline(
+    public ResponseEntity<StreamingResponseBody> getPipeline(
             @PathVariable String planId,
             @RequestParam(required = false, defaultValue = "true") boolean full,
-            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        try {
+            VersionedModel pipelineModel = describePipeline(planId, full);
+            return formatRdfResponse(pipelineModel.model(), acceptHeader, pipelineETagVersion(pipelineModel), ifNoneMatch);
+        } catch (NoSuchElementException e) {
+            log.warn("Pipeline not found for ID: {}", planId);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Resolves the pipelines a pipeline transitively depends on through the datasets it consumes.
+     *
+     * @param planId UUID of the pipeline plan
+     * @param depth Maximum number of pipeline hops to follow
+     * @param format 'graph' for the merged RDF graph, 'plan' for the JSON execution order
+     * @param acceptHeader Accept header specifying the desired RDF format of the graph
+     * @param ifNoneMatch Optional entity tags of the representations the client already holds
+     * @return ResponseEntity containing the merged graph or the execution order
+     */
+    @GetMapping(value = "/{planId}/dependencies")
+    @Operation(summary = "Resolve transitive pipeline dependencies",
+            description = "Follows variables specializing datasets that were prov:wasGeneratedBy other pipelines, in one read transaction. " +
+                    "Returns either the merged dependency graph or the order in which the pipelines have to run.",
+            parameters = @Parameter(name = "planId", description = "UUID of the pipeline plan", required = true, example = "d290f1ee-6c54-4b01-90e6-d701748f0851"),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Merged RDF graph (format=graph) or JSON plan (format=plan)"),
+                    @ApiResponse(responseCode = "400", description = "Negative depth or unknown format", content = @Content),
+                    @ApiResponse(responseCode = "404", description = "Pipeline plan not found", content = @Content),
+                    @ApiResponse(responseCode = "406", description = "Unsupported Accept header format", content = @Content),
+                    @ApiResponse(responseCode = "409", description = "The pipelines depend on each other in a cycle", content = @Content)
+            })
+    public ResponseEntity<StreamingResponseBody> getPipelineDependencies(
+            @PathVariable String planId,
+            @RequestParam(required = false, defaultValue = "10") int depth,
+            @RequestParam(required = false, defaultValue = "graph") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        if (!format.equals("graph") && !format.equals("plan")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported format: " + format + ". Supported formats: graph, plan");
+        }
 
         try {
-            Model pipelineModel = full
-                    ? rdfStorageService.getPipelineDescriptionWithDependencies(planId)
-                    : rdfStorageService.getPipelineDescription(planId);
-            return formatRdfResponse(pipelineModel, acceptHeader);
+            PipelineDependencies dependencies = rdfStorageService.resolvePipelineDependencies(planId, depth);
+            if (format.equals("plan")) {
+                return ResponseEntity.ok().headers(ldpHeaders()).contentType(MediaType.APPLICATION_JSON)
+                        .body(out -> objectMapper.writeValue(StreamUtils.nonClosing(out), dependencies.plan()));
+            }
+            return formatRdfResponse(dependencies.graph(), acceptHeader, ifNoneMatch);
+        } catch (NoSuchElementException e) {
+            log.warn("Pipeline not found for ID: {}", planId);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            log.warn("Cannot resolve dependencies of pipeline {}: {}", planId, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Retrieves the execution plan computed for a pipeline when it was created.
+     *
+     * @param planId UUID of the pipeline plan
+     * @return ResponseEntity containing the JSON execution plan
+     */
+    @GetMapping(value = "/{planId}/plan", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get the execution plan of a pipeline",
+            description = "Returns the stages of steps that can run in parallel and the critical path, as stored with the pipeline.",
+            parameters = @Parameter(name = "planId", description = "UUID of the pipeline plan", required = true, example = "d290f1ee-6c54-4b01-90e6-d701748f0851"),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Execution plan of the pipeline"),
+                    @ApiResponse(responseCode = "404", description = "Pipeline plan not found or stored without an execution plan", content = @Content)
+            })
+    public ResponseEntity<String> getPipelineExecutionPlan(@PathVariable String planId) {
+        try {
+            String plan = rdfStorageService.getPipelineExecutionPlan(planId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Pipeline " + planId + " has no execution plan."));
+            return ResponseEntity.ok().headers(ldpHeaders()).contentType(MediaType.APPLICATION_JSON).body(plan);
         } catch (NoSuchElementException e) {
             log.warn("Pipeline not found for ID: {}", planId);
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
@@ -121,38 +211,63 @@ public class PipelineController implements RdfController {
      * Lists all pipeline definitions in the specified RDF format.
      *
      * @param acceptHeader Accept header specifying the desired RDF format
+     * @param ifNoneMatch Optional entity tags of the representations the client already holds
      * @return ResponseEntity containing the RDF representation of all pipelines
      */
-    @GetMapping(produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE})
+    @GetMapping(produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE})
     @Operation(summary = "List all pipelines",
             description = "Retrieves a list of all pipeline definitions in the specified RDF format.",
             responses = {
                     @ApiResponse(responseCode = "200", description = "List of pipelines in requested RDF format"),
                     @ApiResponse(responseCode = "406", description = "Unsupported Accept header format", content = @Content)
             })
-    public ResponseEntity<String> listPipelines(
-            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+    public ResponseEntity<StreamingResponseBody> listPipelines(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         Model pipelinesModel = rdfStorageService.listResources(Vocab.Plan);
-        return formatRdfResponse(pipelinesModel, acceptHeader);
+        return formatRdfResponse(pipelinesModel, acceptHeader, ifNoneMatch);
     }
 
     /**
      * Checks if a pipeline plan exists by its ID.
      *
      * @param planId UUID of the pipeline plan
-     * @return ResponseEntity with status 200 if exists, 404 if not found
+     * @param full If true, sends the entity tag of the pipeline with its dependencies
+     * @param acceptHeader Accept header specifying the RDF format whose entity tag to send
+     * @return ResponseEntity with status 200 if exists, 404 if not found, or 406 if unsupported format
      */
     @RequestMapping(method = RequestMethod.HEAD, value = "/{planId}")
-    public ResponseEntity<Void> headPipeline(@PathVariable String planId) {
+    public ResponseEntity<Void> headPipeline(
+            @PathVariable String planId,
+            @RequestParam(required = false, defaultValue = "true") boolean full,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+        RDFFormat format = negotiateFormat(acceptHeader);
         try {
-            rdfStorageService.getPipelineDescription(planId);
-            return ResponseEntity.ok().headers(ldpHeaders()).build();
+            Long version = pipelineETagVersion(describePipeline(planId, full));
+            HttpHeaders headers = ldpHeaders();
+            if (version != null) {
+                headers.setETag(VersionService.toETag(version, format));
+            }
+            return ResponseEntity.ok().headers(headers).build();
         } catch (NoSuchElementException e) {
             return ResponseEntity.notFound().headers(ldpHeaders()).build();
         }
     }
 
+    private VersionedModel describePipeline(String planId, boolean full) {
+        return full
+                ? rdfStorageService.getVersionedPipelineDescriptionWithDependencies(planId)
+                : rdfStorageService.getVersionedPipelineDescription(planId);
+    }
+
+    /**
+     * A closure computed on the fly because it has not been materialized yet has no version to tag it with.
+     */
+    private static Long pipelineETagVersion(VersionedModel pipelineModel) {
+        return pipelineModel.version() > 0 ? pipelineModel.version() : null;
+    }
+
     /**
      * Returns the allowed HTTP methods for this endpoint.
      *
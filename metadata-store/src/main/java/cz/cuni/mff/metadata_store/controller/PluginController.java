@@ -1,9 +1,15 @@
 package cz.cuni.mff.metadata_store.controller;
 
+import cz.cuni.mff.metadata_store.service.IngestService;
 import cz.cuni.mff.metadata_store.service.RdfStorageService;
+import cz.cuni.mff.metadata_store.service.ResourceUsages;
+import cz.cuni.mff.metadata_store.service.ValidatedGraph;
+import cz.cuni.mff.metadata_store.service.VersionService;
+import cz.cuni.mff.metadata_store.service.VersionedModel;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ConcurrentModificationException;
 import java.util.NoSuchElementException;
 import cz.cuni.mff.metadata_store.utils.RdfMediaType;
 import cz.cuni.mff.metadata_store.utils.Vocab;
@@ -14,6 +20,7 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.RDFFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +30,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.InputStream;
 
@@ -34,11 +42,16 @@ public class PluginController implements RdfController {
     private static final Logger log = LoggerFactory.getLogger(PluginController.class);
 
     private final RdfStorageService rdfStorageService;
+    private final IngestService ingestService;
 
     private static final String[] SUPPORTED_RDF_MEDIA_TYPES = {
             RdfMediaType.TEXT_TURTLE_VALUE,
             RdfMediaType.APPLICATION_LD_JSON_VALUE,
-            RdfMediaType.APPLICATION_RDF_XML_VALUE
+            RdfMediaType.APPLICATION_RDF_XML_VALUE,
+            RdfMediaType.APPLICATION_RDF_THRIFT_VALUE,
+            RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE,
+            RdfMediaType.APPLICATION_N_TRIPLES_VALUE,
+            RdfMediaType.APPLICATION_N_QUADS_VALUE
     };
 
     @Override
@@ -47,8 +60,9 @@ public class PluginController implements RdfController {
     }
 
     @Autowired
-    public PluginController(RdfStorageService rdfStorageService) {
+    public PluginController(RdfStorageService rdfStorageService, IngestService ingestService) {
         this.rdfStorageService = rdfStorageService;
+        this.ingestService = ingestService;
     }
 
     /**
@@ -59,9 +73,10 @@ public class PluginController implements RdfController {
      * @return Parsed Jena Model containing the RDF data
      */
     @PostMapping(consumes = { RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE,
-            RdfMediaType.APPLICATION_RDF_XML_VALUE })
+            RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE })
     @Operation(summary = "Store a plugin RDF graph", description = "Receives and persists a pre-validated RDF graph for a plugin (df:Plugin). Called by Middleware.", responses = {
             @ApiResponse(responseCode = "201", description = "Plugin RDF stored successfully", headers = @io.swagger.v3.oas.annotations.headers.Header(name = "Location", description = "URI of the created plugin resource")),
+            @ApiResponse(responseCode = "202", description = "Plugin RDF accepted for asynchronous ingestion", headers = @io.swagger.v3.oas.annotations.headers.Header(name = "Location", description = "URL of the ingestion status")),
             @ApiResponse(responseCode = "400", description = "Malformed RDF syntax or missing df:Plugin resource", content = @Content),
             @ApiResponse(responseCode = "415", description = "Unsupported RDF Content-Type", content = @Content)
     })
@@ -73,6 +88,15 @@ public class PluginController implements RdfController {
         Model pluginModel = parseRdfData(requestBody, contentType);
 
         try {
+            if (ingestService.isEnabled()) {
+                ValidatedGraph graph = rdfStorageService.validateRdfGraph(pluginModel, Vocab.Plugin);
+                String ticket = ingestService.submit(graph);
+                log.info("Plugin {} accepted for asynchronous ingestion with ticket: {}", graph.resourceUri(), ticket);
+                HttpHeaders headers = ldpHeaders();
+                headers.setLocation(new URI(IngestController.STATUS_PATH + ticket));
+                return new ResponseEntity<>(graph.resourceUri(), headers, HttpStatus.ACCEPTED);
+            }
+
             String resourceUri = rdfStorageService.storeRdfGraph(pluginModel, Vocab.Plugin);
             log.info("Plugin stored successfully with URI: {}", resourceUri);
             HttpHeaders headers = ldpHeaders();
@@ -90,31 +114,40 @@ public class PluginController implements RdfController {
      * @param requestBody InputStream containing RDF data
      * @param contentType Content-Type of the request
      * @param pluginId UUID of the plugin to update
+     * @param ifMatch Optional entity tag of the plugin version the update is based on
      * @return ResponseEntity with status and headers
      */
     @PutMapping(value = "/{pluginId}", consumes = { RdfMediaType.TEXT_TURTLE_VALUE,
-            RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE,
+            RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE,
             MediaType.TEXT_PLAIN_VALUE })
-    @Operation(summary = "Update an existing plugin RDF graph", description = "Updates an existing plugin (df:Plugin) with a new RDF graph. The provided graph must contain the complete updated state of the plugin.", parameters = @Parameter(name = "pluginId", description = "UUID of the plugin to update", required = true), responses = {
+    @Operation(summary = "Update an existing plugin RDF graph", description = "Updates an existing plugin (df:Plugin) with a new RDF graph. The provided graph must contain the complete updated state of the plugin. Send the ETag of a previous GET in If-Match to reject the update if the plugin was modified concurrently.", parameters = @Parameter(name = "pluginId", description = "UUID of the plugin to update", required = true), responses = {
             @ApiResponse(responseCode = "200", description = "Plugin updated successfully"),
             @ApiResponse(responseCode = "404", description = "Plugin not found", content = @Content),
+            @ApiResponse(responseCode = "412", description = "Plugin was modified since the version given in If-Match", content = @Content),
             @ApiResponse(responseCode = "415", description = "Unsupported RDF Content-Type", content = @Content)
     })
     public ResponseEntity<String> updatePlugin(
             @Parameter(description = "Input stream containing RDF data for the plugin") InputStream requestBody,
             @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
-            @PathVariable String pluginId) {
+            @PathVariable String pluginId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
         log.debug("Attempting to update plugin with ID: {} and content type: {}", pluginId, contentType);
         Model pluginModel = parseRdfData(requestBody, contentType);
 
         try {
-            rdfStorageService.updatePlugin(pluginId, pluginModel);
-            log.info("Plugin updated successfully with ID: {}", pluginId);
-            return ResponseEntity.status(HttpStatus.OK).headers(ldpHeaders()).body(pluginId);
+            long version = rdfStorageService.updatePlugin(pluginId, pluginModel, ifMatch);
+            log.info("Plugin updated successfully with ID: {}, new version: {}", pluginId, version);
+            HttpHeaders headers = ldpHeaders();
+            // The request body is the new state of the plugin, so it gets the tag of the body's format
+            headers.setETag(VersionService.toETag(version, negotiateFormat(contentType)));
+            return ResponseEntity.status(HttpStatus.OK).headers(headers).body(pluginId);
         } catch (NoSuchElementException e) {
             log.warn("Plugin not found for ID: {}", pluginId);
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (ConcurrentModificationException e) {
+            log.warn("Precondition failed updating plugin with ID: {}: {}", pluginId, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, e.getMessage(), e);
         } catch (IllegalArgumentException e) {
             log.warn("Invalid plugin graph provided for update: {}", e.getMessage());
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
@@ -126,22 +159,47 @@ public class PluginController implements RdfController {
      *
      * @param pluginId UUID of the plugin
      * @param acceptHeader Accept header specifying the desired RDF format
+     * @param ifNoneMatch Optional entity tags of the representations the client already holds
      * @return ResponseEntity containing the RDF representation of the plugin
      */
     @GetMapping(value = "/{pluginId}", produces = { RdfMediaType.TEXT_TURTLE_VALUE,
-            RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE })
+            RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE })
     @Operation(summary = "Get plugin definition RDF by ID", parameters = @Parameter(name = "pluginId", description = "UUID of the plugin", required = true), responses = {
             @ApiResponse(responseCode = "200", description = "Plugin definition in requested RDF format"),
             @ApiResponse(responseCode = "404", description = "Plugin not found", content = @Content),
             @ApiResponse(responseCode = "406", description = "Unsupported Accept header format", content = @Content)
     })
-    public ResponseEntity<String> getPlugin(
+    public ResponseEntity<StreamingResponseBody> getPlugin(
             @PathVariable String pluginId,
-            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         try {
-            Model pluginModel = rdfStorageService.getPluginDescription(pluginId); // Throws NoSuchElementException
-            return formatRdfResponse(pluginModel, acceptHeader);
+            VersionedModel pluginModel = rdfStorageService.getVersionedPluginDescription(pluginId); // Throws NoSuchElementException
+            return formatRdfResponse(pluginModel.model(), acceptHeader, pluginModel.version(), ifNoneMatch);
+        } catch (NoSuchElementException e) {
+            log.warn("Plugin not found for ID: {}", pluginId);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lists the pipelines whose steps use a plugin, e.g. to find the pipelines affected by a new plugin distribution.
+     *
+     * @param pluginId UUID of the plugin
+     * @return ResponseEntity containing the using pipelines and their steps as JSON
+     */
+    @GetMapping(value = "/{pluginId}/usages", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "List the pipelines using a plugin",
+            description = "Looks the plugin up in the reverse-reference index maintained on every pipeline write, without scanning the pipelines.",
+            parameters = @Parameter(name = "pluginId", description = "UUID of the plugin", required = true),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Using pipelines mapped to their steps using the plugin"),
+                    @ApiResponse(responseCode = "404", description = "Plugin not found", content = @Content)
+            })
+    public ResponseEntity<ResourceUsages> getPluginUsages(@PathVariable String pluginId) {
+        try {
+            return ResponseEntity.ok().headers(ldpHeaders()).body(rdfStorageService.getPluginUsages(pluginId));
         } catch (NoSuchElementException e) {
             log.warn("Plugin not found for ID: {}", pluginId);
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
@@ -152,32 +210,40 @@ public class PluginController implements RdfController {
      * Lists all registered plugins (df:Plugin) in the requested RDF format.
      *
      * @param acceptHeader Accept header specifying the desired RDF format
+     * @param ifNoneMatch Optional entity tags of the representations the client already holds
      * @return ResponseEntity containing the RDF representation of all plugins
      */
     @GetMapping(produces = { RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE,
-            RdfMediaType.APPLICATION_RDF_XML_VALUE })
+            RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE })
     @Operation(summary = "List all plugins as an RDF graph", description = "Retrieves an RDF graph containing descriptions of all registered plugins (df:Plugin).", responses = {
             @ApiResponse(responseCode = "200", description = "RDF graph containing all df:Plugin resources"),
             @ApiResponse(responseCode = "406", description = "Unsupported Accept header format", content = @Content)
     })
-    public ResponseEntity<String> listPlugins(
-            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+    public ResponseEntity<StreamingResponseBody> listPlugins(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         Model listModel = rdfStorageService.listResourcesWithDistributions(Vocab.Plugin);
-        return formatRdfResponse(listModel, acceptHeader);
+        return formatRdfResponse(listModel, acceptHeader, ifNoneMatch);
     }
 
     /**
      * Checks if a plugin exists by its ID.
      *
      * @param pluginId UUID of the plugin
-     * @return ResponseEntity with status 200 if exists, 404 if not found
+     * @param acceptHeader Accept header specifying the RDF format whose entity tag to send
+     * @return ResponseEntity with status 200 if exists, 404 if not found, or 406 if unsupported format
      */
     @RequestMapping(method = RequestMethod.HEAD, value = "/{pluginId}")
-    public ResponseEntity<Void> headPlugin(@PathVariable String pluginId) {
+    public ResponseEntity<Void> headPlugin(
+            @PathVariable String pluginId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+        RDFFormat format = negotiateFormat(acceptHeader);
         try {
-            rdfStorageService.getPluginDescription(pluginId);
-            return ResponseEntity.ok().headers(ldpHeaders()).build();
+            VersionedModel pluginModel = rdfStorageService.getVersionedPluginDescription(pluginId);
+            HttpHeaders headers = ldpHeaders();
+            headers.setETag(VersionService.toETag(pluginModel.version(), format));
+            return ResponseEntity.ok().headers(headers).build();
         } catch (NoSuchElementException e) {
             return ResponseEntity.notFound().headers(ldpHeaders()).build();
         }
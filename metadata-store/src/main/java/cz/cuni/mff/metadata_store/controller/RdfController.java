@@ -1,18 +1,24 @@
 package cz.cuni.mff.metadata_store.controller;
 
+import cz.cuni.mff.metadata_store.service.VersionService;
 import cz.cuni.mff.metadata_store.utils.RdfMediaType;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.Prefixes;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFOps;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
@@ -57,38 +63,104 @@ public interface RdfController {
     }
 
     /**
-     * Format an RDF model as a string using the specified accept header.
-     * @param model The RDF model to format
+     * Choose the RDF writer format for the specified accept header.
      * @param acceptHeader The accept header specifying the desired format
-     * @return A ResponseEntity containing the formatted RDF data
+     * @return The writer format chosen by {@link RdfMediaType#getFormatFromAcceptHeader(String)}
      * @throws ResponseStatusException if the accept header is not supported
      */
-    default ResponseEntity<String> formatRdfResponse(Model model, String acceptHeader) {
-        Lang requestedLang = RdfMediaType.getLangFromAcceptHeader(acceptHeader)
+    default RDFFormat negotiateFormat(String acceptHeader) {
+        return RdfMediaType.getFormatFromAcceptHeader(acceptHeader)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE,
                         "Unsupported Accept header: " + acceptHeader + ". Supported types: " +
                                 String.join(", ", getSupportedRdfMediaTypes())));
+    }
 
-        StringWriter writer = new StringWriter();
-        RDFDataMgr.write(writer, model, requestedLang);
-        String body = writer.toString();
+    /**
+     * Format an RDF model using the specified accept header.
+     * @param model The RDF model to format
+     * @param acceptHeader The accept header specifying the desired format
+     * @param ifNoneMatch The If-None-Match header of the request, may be null
+     * @return A ResponseEntity streaming the formatted RDF data, or a 304 if the client's copy is current
+     * @throws ResponseStatusException if the accept header is not supported
+     */
+    default ResponseEntity<StreamingResponseBody> formatRdfResponse(Model model, String acceptHeader, String ifNoneMatch) {
+        return formatRdfResponse(model, acceptHeader, null, ifNoneMatch);
+    }
+
+    /**
+     * Format an RDF model using the specified accept header. Text formats are encoded as UTF-8.
+     * The writer variant is chosen by {@link RdfMediaType#getFormatFromAcceptHeader(String)}.
+     * Formats with a streaming writer (N-Triples, N-Quads, Thrift, Protobuf, blocks and flat Turtle) are written
+     * to the response as the body is sent, without holding the serialized graph in memory. The pretty writers
+     * need the whole graph to lay it out, so their output is buffered and gets a Content-Length.
+     * @param model The RDF model to format
+     * @param acceptHeader The accept header specifying the desired format
+     * @param version Version of the resource, used for a strong entity tag of the formatted body, or null to send
+     *                a weak one derived from a buffered body
+     * @param ifNoneMatch The If-None-Match header of the request, may be null
+     * @return A ResponseEntity streaming the formatted RDF data, or a 304 if the client's copy is current
+     * @throws ResponseStatusException if the accept header is not supported
+     */
+    default ResponseEntity<StreamingResponseBody> formatRdfResponse(Model model, String acceptHeader, Long version, String ifNoneMatch) {
+        RDFFormat requestedFormat = negotiateFormat(acceptHeader);
 
-        String contentType = RdfMediaType.getContentTypeFromLang(requestedLang)
+        String contentType = RdfMediaType.getContentTypeFromLang(requestedFormat.getLang())
                 .orElse(RdfMediaType.TEXT_TURTLE_VALUE); // Fallback
 
         HttpHeaders headers = ldpHeaders();
         headers.add(HttpHeaders.CONTENT_TYPE, contentType);
+        if (version != null) {
+            headers.setETag(VersionService.toETag(version, requestedFormat));
+        }
 
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            byte[] hash = digest.digest(body.getBytes(StandardCharsets.UTF_8));
-            String etag = "W/\"" + Base64.getEncoder().encodeToString(hash) + "\"";
-            headers.setETag(etag);
-        } catch (NoSuchAlgorithmException e) {
-            // This should not happen
+        if (StreamRDFWriter.registered(requestedFormat)) {
+            if (isNotModified(ifNoneMatch, headers.getETag())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            }
+            return new ResponseEntity<>(out -> {
+                StreamRDF stream = StreamRDFWriter.getWriterStream(out, requestedFormat);
+                stream.start();
+                StreamRDFOps.sendGraphToStream(model.getGraph(), stream, null, Prefixes.adapt(model.getGraph()));
+                stream.finish();
+            }, headers, HttpStatus.OK);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFDataMgr.write(out, model, requestedFormat);
+        byte[] body = out.toByteArray();
+
+        if (version == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                byte[] hash = digest.digest(body);
+                headers.setETag("W/\"" + Base64.getEncoder().encodeToString(hash) + "\"");
+            } catch (NoSuchAlgorithmException e) {
+                // This should not happen
+            }
+        }
+        if (isNotModified(ifNoneMatch, headers.getETag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
         }
 
-        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+        headers.setContentLength(body.length);
+        return new ResponseEntity<>(responseBody -> responseBody.write(body), headers, HttpStatus.OK);
+    }
+
+    /**
+     * Checks an If-None-Match header against the entity tag of the response, comparing weakly as RFC 9110 requires.
+     */
+    private static boolean isNotModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String opaqueTag = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
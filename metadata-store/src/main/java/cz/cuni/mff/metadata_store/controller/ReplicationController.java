@@ -0,0 +1,128 @@
+package cz.cuni.mff.metadata_store.controller;
+
+import cz.cuni.mff.metadata_store.config.ReplicationRole;
+import cz.cuni.mff.metadata_store.service.ChangeLogPage;
+import cz.cuni.mff.metadata_store.service.ChangeLogService;
+import cz.cuni.mff.metadata_store.service.ReplicaService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+@RestController
+@RequestMapping("/api/v1/replication")
+@Tag(name = "Replication", description = "Change log shipping from the primary to read-only replicas")
+public class ReplicationController {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationController.class);
+
+    private static final String RDF_PATCH_VALUE = "application/rdf-patch";
+    private static final int MAX_LIMIT = 5000;
+
+    private final ChangeLogService changeLogService;
+    private final ReplicaService replicaService;
+    private final ReplicationRole replicationRole;
+
+    @Autowired
+    public ReplicationController(ChangeLogService changeLogService, ReplicaService replicaService,
+                                 @Value("${replication.role:standalone}") ReplicationRole replicationRole) {
+        this.changeLogService = changeLogService;
+        this.replicaService = replicaService;
+        this.replicationRole = replicationRole;
+    }
+
+    /**
+     * Returns change log entries following the given sequence number.
+     *
+     * @param after Sequence number of the last entry the caller has applied
+     * @param limit Maximum number of entries to return
+     * @param replica ID of the calling replica, which acknowledges the entries up to {@code after}
+     * @return ResponseEntity with the entries as RDF Patch text, 404 if this instance is not a primary,
+     * or 410 if the entries have been compacted and the caller has to reload the snapshot
+     */
+    @GetMapping(value = "/log", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Tail the change log",
+            description = "Returns the committed write transactions following the given sequence number, in commit order, each as an RDF Patch.",
+            parameters = {
+                    @Parameter(name = "after", description = "Sequence number of the last applied entry"),
+                    @Parameter(name = "limit", description = "Maximum number of entries to return (capped at 5000)"),
+                    @Parameter(name = "replica", description = "ID of the calling replica; acknowledges the entries up to 'after' so they can be compacted")
+            },
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Change log entries"),
+                    @ApiResponse(responseCode = "404", description = "This instance is not a replication primary", content = @Content),
+                    @ApiResponse(responseCode = "410", description = "The entries have been compacted, reload the snapshot", content = @Content)
+            })
+    public ResponseEntity<ChangeLogPage> getLog(@RequestParam(value = "after", defaultValue = "0") long after,
+                                                @RequestParam(value = "limit", defaultValue = "500") int limit,
+                                                @RequestParam(value = "replica", required = false) String replica) {
+        requirePrimary();
+        if (replica != null && !replica.isBlank()) {
+            changeLogService.acknowledge(replica, Math.max(after, 0));
+        }
+        try {
+            ChangeLogPage page = changeLogService.getEntries(Math.max(after, 0), Math.clamp(limit, 1, MAX_LIMIT));
+            log.debug("Serving {} change log entries after {}", page.entries().size(), after);
+            return ResponseEntity.ok(page);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.GONE, e.getMessage() + ", reload the snapshot", e);
+        }
+    }
+
+    /**
+     * Returns the complete replicated content of the store as a single RDF Patch.
+     *
+     * @return ResponseEntity streaming the snapshot, or 404 if this instance is not a primary
+     */
+    @GetMapping(value = "/snapshot", produces = RDF_PATCH_VALUE)
+    @Operation(summary = "Get a snapshot for initializing a replica",
+            description = "Streams all replicated quads and prefixes as one RDF Patch. The 'sequence' patch header holds the change log position the snapshot corresponds to.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Snapshot in RDF Patch text format"),
+                    @ApiResponse(responseCode = "404", description = "This instance is not a replication primary", content = @Content)
+            })
+    public ResponseEntity<StreamingResponseBody> getSnapshot() {
+        requirePrimary();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(RDF_PATCH_VALUE))
+                .body(changeLogService::writeSnapshot);
+    }
+
+    /**
+     * Returns the replication role of this instance and its position in the change log.
+     *
+     * @return ResponseEntity with the replication status
+     */
+    @GetMapping(value = "/status", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get the replication status",
+            description = "Returns the role of this instance and the last change log sequence it has committed (primary) or applied (replica).")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        long sequence = switch (replicationRole) {
+            case PRIMARY -> changeLogService.getLatestSequence();
+            case REPLICA -> replicaService.getAppliedSequence();
+            case STANDALONE -> 0L;
+        };
+        return ResponseEntity.ok(Map.of("role", replicationRole.name().toLowerCase(), "sequence", sequence));
+    }
+
+    private void requirePrimary() {
+        if (replicationRole != ReplicationRole.PRIMARY) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "This metadata-store instance is not a replication primary");
+        }
+    }
+}
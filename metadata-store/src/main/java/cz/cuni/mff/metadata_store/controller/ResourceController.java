@@ -17,6 +17,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.Optional;
 
@@ -32,7 +33,11 @@ public class ResourceController implements RdfController {
     private static final String[] SUPPORTED_RDF_MEDIA_TYPES = {
         RdfMediaType.TEXT_TURTLE_VALUE,
         RdfMediaType.APPLICATION_LD_JSON_VALUE,
-        RdfMediaType.APPLICATION_RDF_XML_VALUE
+        RdfMediaType.APPLICATION_RDF_XML_VALUE,
+        RdfMediaType.APPLICATION_RDF_THRIFT_VALUE,
+        RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE,
+        RdfMediaType.APPLICATION_N_TRIPLES_VALUE,
+        RdfMediaType.APPLICATION_N_QUADS_VALUE
     };
 
     @Override
@@ -50,12 +55,13 @@ public class ResourceController implements RdfController {
      *
      * @param resourceId   the UUID of the resource to retrieve
      * @param acceptHeader the requested RDF media type (Accept header), defaults to Turtle if not specified
+     * @param ifNoneMatch Optional entity tags of the representations the client already holds
      * @return a {@link ResponseEntity} containing the RDF description of the resource in the requested format,
      *         or a 404 Not Found if the resource does not exist,
      *         or a 406 Not Acceptable if the requested media type is not supported
      * @throws ResponseStatusException if the resource is not found
      */
-    @GetMapping(value = "/{resourceId}", produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE})
+    @GetMapping(value = "/{resourceId}", produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE})
     @Operation(summary = "Get any resource RDF by its UUID",
             parameters = @Parameter(name = "resourceId", description = "UUID of the resource to retrieve", required = true),
             responses = {
@@ -63,9 +69,10 @@ public class ResourceController implements RdfController {
                     @ApiResponse(responseCode = "404", description = "Resource not found", content = @Content),
                     @ApiResponse(responseCode = "406", description = "Unsupported Accept header format", content = @Content)
             })
-    public ResponseEntity<String> getResource(
+    public ResponseEntity<StreamingResponseBody> getResource(
             @PathVariable String resourceId,
-            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader) {
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         Optional<Model> resourceModelOpt = rdfStorageService.getGenericResourceDescription(resourceId);
 
@@ -75,6 +82,6 @@ public class ResourceController implements RdfController {
         }
 
         Model resourceModel = resourceModelOpt.get();
-        return formatRdfResponse(resourceModel, acceptHeader);
+        return formatRdfResponse(resourceModel, acceptHeader, ifNoneMatch);
     }
 }
@@ -0,0 +1,75 @@
+package cz.cuni.mff.metadata_store.controller;
+
+import cz.cuni.mff.metadata_store.service.SearchIndex;
+import cz.cuni.mff.metadata_store.service.SearchResult;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/v1/search")
+@Tag(name = "Search", description = "Full-text search over dataset, plugin and pipeline metadata")
+public class SearchController {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchController.class);
+
+    private static final int MAX_SIZE = 100;
+    private static final int MAX_PAGE = 1000;
+
+    private final SearchIndex searchIndex;
+
+    @Autowired
+    public SearchController(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * Searches the titles, descriptions and keywords of datasets, plugins and pipelines.
+     *
+     * @param query The query in Lucene query syntax
+     * @param type Optional resource type to restrict the hits to
+     * @param page Index of the page to return, starting at 0
+     * @param size Maximum number of hits per page
+     * @return ResponseEntity with the hits ordered by relevance and the number of matches per resource type
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Search resources by their metadata",
+            description = "Full-text search over dcterms:title, dcterms:description and dcat:keyword, ranked by relevance with titles weighing most. " +
+                    "The facets give the number of matches per resource type regardless of the type filter.",
+            parameters = {
+                    @Parameter(name = "q", description = "Query in Lucene syntax, e.g. 'weather AND title:prague'"),
+                    @Parameter(name = "type", description = "Restrict hits to 'dataset', 'plugin' or 'pipeline'"),
+                    @Parameter(name = "page", description = "Index of the page, starting at 0"),
+                    @Parameter(name = "size", description = "Hits per page (capped at 100)")
+            },
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Search results"),
+                    @ApiResponse(responseCode = "400", description = "Invalid query or unknown resource type", content = @Content)
+            })
+    public ResponseEntity<SearchResult> search(@RequestParam("q") String query,
+                                               @RequestParam(value = "type", required = false) String type,
+                                               @RequestParam(value = "page", defaultValue = "0") int page,
+                                               @RequestParam(value = "size", defaultValue = "20") int size) {
+        if (query.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search query must not be empty");
+        }
+        try {
+            SearchResult result = searchIndex.search(query, type, Math.clamp(page, 0, MAX_PAGE), Math.clamp(size, 1, MAX_SIZE));
+            log.debug("Search '{}' matched {} resources", query, result.total());
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package cz.cuni.mff.metadata_store.controller;
+
+import cz.cuni.mff.metadata_store.service.SparqlQueryService;
+import cz.cuni.mff.metadata_store.utils.RdfMediaType;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/v1/sparql")
+@Tag(name = "SPARQL", description = "Read-only SPARQL queries over the store")
+public class SparqlController {
+
+    private static final Logger log = LoggerFactory.getLogger(SparqlController.class);
+
+    private static final String APPLICATION_SPARQL_QUERY_VALUE = "application/sparql-query";
+
+    private final SparqlQueryService sparqlQueryService;
+
+    @Autowired
+    public SparqlController(SparqlQueryService sparqlQueryService) {
+        this.sparqlQueryService = sparqlQueryService;
+    }
+
+    /**
+     * Evaluates a SPARQL query passed as the 'query' parameter.
+     *
+     * @param query The SPARQL query
+     * @param acceptHeader The requested result format
+     * @return ResponseEntity streaming the query results
+     */
+    @GetMapping
+    @Operation(summary = "Run a read-only SPARQL query",
+            description = "SELECT and ASK results are streamed as SPARQL JSON (default), CSV, TSV or XML; CONSTRUCT and DESCRIBE results in any supported RDF format. " +
+                    "Queries get their LIMIT capped, are cancelled after the configured timeout, and are rejected when their estimated cost is too high " +
+                    "(e.g. unbound patterns that share no variables) or when too many queries are already running.",
+            parameters = @Parameter(name = "query", description = "The SPARQL query"),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Query results"),
+                    @ApiResponse(responseCode = "400", description = "Invalid or too expensive query", content = @Content),
+                    @ApiResponse(responseCode = "406", description = "Unsupported Accept header for the query type", content = @Content),
+                    @ApiResponse(responseCode = "503", description = "Too many concurrent queries, or the query timed out", content = @Content)
+            })
+    public ResponseEntity<StreamingResponseBody> query(@RequestParam("query") String query,
+                                                       @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String acceptHeader) {
+        return execute(query, acceptHeader);
+    }
+
+    /**
+     * Evaluates a SPARQL query sent as a URL-encoded form.
+     *
+     * @param query The SPARQL query
+     * @param acceptHeader The requested result format
+     * @return ResponseEntity streaming the query results
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    @Operation(summary = "Run a read-only SPARQL query sent as a form", description = "Same as GET, for queries too long for a URL.")
+    public ResponseEntity<StreamingResponseBody> queryForm(@RequestParam("query") String query,
+                                                           @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String acceptHeader) {
+        return execute(query, acceptHeader);
+    }
+
+    /**
+     * Evaluates a SPARQL query sent directly as the request body.
+     *
+     * @param query The SPARQL query
+     * @param acceptHeader The requested result format
+     * @return ResponseEntity streaming the query results
+     */
+    @PostMapping(consumes = APPLICATION_SPARQL_QUERY_VALUE)
+    @Operation(summary = "Run a read-only SPARQL query sent as the request body", description = "Same as GET, for queries too long for a URL.")
+    public ResponseEntity<StreamingResponseBody> queryBody(@RequestBody String query,
+                                                           @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String acceptHeader) {
+        return execute(query, acceptHeader);
+    }
+
+    private ResponseEntity<StreamingResponseBody> execute(String queryString, String acceptHeader) {
+        Query query;
+        try {
+            query = sparqlQueryService.prepare(queryString);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+
+        boolean graphResult = query.isConstructType() || query.isDescribeType();
+        Lang resultLang = null;
+        RDFFormat rdfFormat = null;
+        String contentType;
+        if (graphResult) {
+            rdfFormat = RdfMediaType.getFormatFromAcceptHeader(acceptHeader)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Unsupported Accept header for a graph query: " + acceptHeader));
+            contentType = RdfMediaType.getContentTypeFromLang(rdfFormat.getLang()).orElse(RdfMediaType.TEXT_TURTLE_VALUE);
+        } else {
+            resultLang = RdfMediaType.getResultsLangFromAcceptHeader(acceptHeader)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Unsupported Accept header for query results: " + acceptHeader));
+            contentType = resultLang.getHeaderString();
+        }
+
+        Lang selectedResultLang = resultLang;
+        RDFFormat selectedRdfFormat = rdfFormat;
+        log.info("Running SPARQL {} query", query.queryType());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, contentType)
+                .body(out -> {
+                    // Admitted only once the body runs, so that a response that is never written holds no permit;
+                    // the status is still sent as the permit is taken before any results
+                    SparqlQueryService.Permit permit;
+                    try {
+                        permit = sparqlQueryService.admit();
+                    } catch (RejectedExecutionException e) {
+                        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+                    }
+                    try (permit) {
+                        if (graphResult) {
+                            sparqlQueryService.construct(query, selectedRdfFormat, out);
+                        } else {
+                            sparqlQueryService.select(query, selectedResultLang, out);
+                        }
+                    } catch (QueryCancelledException e) {
+                        // Only reaches the client as a status if no results have been sent yet
+                        log.warn("SPARQL query timed out");
+                        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Query timed out", e);
+                    }
+                });
+    }
+}
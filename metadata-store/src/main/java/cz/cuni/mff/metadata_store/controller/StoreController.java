@@ -7,9 +7,8 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.apache.jena.rdf.model.Model;
 import org.apache.jena.riot.Lang;
-import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,13 +17,11 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.media.Schema;
 
-
-import java.io.StringWriter;
-
 @RestController
 @RequestMapping("/api/v1/store")
 @Tag(name = "Store Operations", description = "Operations related to the entire RDF store")
@@ -37,7 +34,11 @@ public class StoreController implements RdfController {
     private static final String[] SUPPORTED_RDF_MEDIA_TYPES = {
         RdfMediaType.TEXT_TURTLE_VALUE,
         RdfMediaType.APPLICATION_LD_JSON_VALUE,
-        RdfMediaType.APPLICATION_RDF_XML_VALUE
+        RdfMediaType.APPLICATION_RDF_XML_VALUE,
+        RdfMediaType.APPLICATION_RDF_THRIFT_VALUE,
+        RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE,
+        RdfMediaType.APPLICATION_N_TRIPLES_VALUE,
+        RdfMediaType.APPLICATION_N_QUADS_VALUE
     };
 
     @Override
@@ -57,10 +58,11 @@ public class StoreController implements RdfController {
      * @param inline       whether to display content inline or trigger a download
      * @return a {@link ResponseEntity} containing the RDF dump in the requested format
      */
-    @GetMapping(value = "/dump", produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE})
+    @GetMapping(value = "/dump", produces = {RdfMediaType.TEXT_TURTLE_VALUE, RdfMediaType.APPLICATION_LD_JSON_VALUE, RdfMediaType.APPLICATION_RDF_XML_VALUE, RdfMediaType.APPLICATION_RDF_THRIFT_VALUE, RdfMediaType.APPLICATION_RDF_PROTOBUF_VALUE, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, RdfMediaType.APPLICATION_N_QUADS_VALUE})
     @Operation(summary = "Dump the entire default graph of the RDF store",
             description = "Retrieves all triples residing in the default graph of the RDF store in the requested format. " +
-                      "By default, prompts a download. Use the 'inline=true' query parameter to display directly in the browser.",
+                      "By default, prompts a download. Use the 'inline=true' query parameter to display directly in the browser. " +
+                      "N-Triples, N-Quads, RDF Thrift/Protobuf and Turtle with the 'style=blocks' or 'style=flat' media type parameter are streamed straight from the store.",
             responses = {
                     @ApiResponse(responseCode = "200", description = "RDF dump successful"),
                     @ApiResponse(responseCode = "406", description = "Unsupported Accept header format", content = @Content),
@@ -69,46 +71,39 @@ public class StoreController implements RdfController {
             parameters = {
                 @Parameter(name = "inline", in = ParameterIn.QUERY, description = "Set to 'true' to display content inline instead of triggering a download.", schema = @Schema(type = "boolean", defaultValue = "false"))
         })
-    public ResponseEntity<String> dumpStore(
+    public ResponseEntity<StreamingResponseBody> dumpStore(
             @RequestHeader(value = HttpHeaders.ACCEPT, required = false, defaultValue = RdfMediaType.TEXT_TURTLE_VALUE) String acceptHeader,
             @RequestParam(value = "inline", required = false, defaultValue = "false") boolean inline
     ) {
 
-        Lang requestedLang = RdfMediaType.getLangFromAcceptHeader(acceptHeader)
+        RDFFormat requestedFormat = RdfMediaType.getFormatFromAcceptHeader(acceptHeader)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Unsupported Accept header: " + acceptHeader + ". Supported types: " + String.join(", ", SUPPORTED_RDF_MEDIA_TYPES)));
+        Lang requestedLang = requestedFormat.getLang();
 
-        try {
-            Model storeModel = rdfStorageService.getEntireStoreModel();
-
-            if (storeModel.isEmpty()) {
-                log.info("Store dump requested, but the default graph is empty.");
-            } else {
-                log.info("Serializing store dump with {} triples as {}", storeModel.size(), requestedLang.getName());
-            }
-
-            StringWriter writer = new StringWriter();
-            RDFDataMgr.write(writer, storeModel, requestedLang);
+        String contentType = RdfMediaType.getContentTypeFromLang(requestedLang)
+                .orElse(RdfMediaType.TEXT_TURTLE_VALUE); // Fallback shouldn't be needed
 
-            String contentType = RdfMediaType.getContentTypeFromLang(requestedLang)
-                    .orElse(RdfMediaType.TEXT_TURTLE_VALUE); // Fallback shouldn't be needed
+        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, contentType);
 
-            ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_TYPE, contentType);
+        if (!inline) {
+            String filename = "store_dump." + requestedLang.getFileExtensions().getFirst();
+            responseBuilder.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+            log.debug("Setting Content-Disposition to attachment for download.");
+        } else {
+            log.debug("Content-Disposition not set, allowing inline display.");
+        }
 
-            if (!inline) {
-                String filename = "store_dump." + requestedLang.getFileExtensions().getFirst();
-                responseBuilder.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
-                log.debug("Setting Content-Disposition to attachment for download.");
-            } else {
-                log.debug("Content-Disposition not set, allowing inline display.");
+        log.info("Serializing store dump as {}", requestedFormat);
+        return responseBuilder.body(out -> {
+            try {
+                rdfStorageService.writeEntireStore(out, requestedFormat);
+            } catch (RuntimeException e) {
+                // The status has already been sent, all that is left is to cut the response short
+                log.error("Error writing store dump: {}", e.getMessage(), e);
+                throw e;
             }
-
-            return responseBuilder.body(writer.toString());
-
-        } catch (Exception e) {
-            log.error("Error generating store dump: {}", e.getMessage(), e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to generate store dump", e);
-        }
+        });
     }
 
     /**
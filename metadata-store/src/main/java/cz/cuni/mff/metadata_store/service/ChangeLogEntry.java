@@ -0,0 +1,10 @@
+package cz.cuni.mff.metadata_store.service;
+
+/**
+ * A single committed write transaction of the primary.
+ *
+ * @param sequence The position of the transaction in the change log, starting at 1.
+ * @param patch The changes made by the transaction in RDF Patch text format.
+ */
+public record ChangeLogEntry(long sequence, String patch) {
+}
@@ -0,0 +1,12 @@
+package cz.cuni.mff.metadata_store.service;
+
+import java.util.List;
+
+/**
+ * A contiguous part of the change log.
+ *
+ * @param latestSequence The sequence number of the last entry of the whole change log.
+ * @param entries The entries of this page in sequence order.
+ */
+public record ChangeLogPage(long latestSequence, List<ChangeLogEntry> entries) {
+}
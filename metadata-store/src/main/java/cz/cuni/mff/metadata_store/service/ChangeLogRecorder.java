@@ -0,0 +1,144 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdfpatch.RDFChanges;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.rdfpatch.changes.RDFChangesCollector;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+
+import java.util.Iterator;
+
+/**
+ * Records the changes of every committed write transaction as an RDF Patch and appends it to the
+ * change log kept in the {@code df:changelog} named graph.
+ * The patch is appended through the unwrapped dataset right before the transaction commits,
+ * so the change log is always exactly as durable as the data it describes and its own
+ * quads are never recorded.
+ */
+public class ChangeLogRecorder implements RDFChanges {
+
+    private static final Node LOG_GRAPH = Vocab.ChangeLogGraph.asNode();
+    private static final Node SEQUENCE = Vocab.sequence.asNode();
+    private static final Node PATCH = Vocab.patch.asNode();
+
+    private final DatasetGraph base;
+    private final ThreadLocal<PendingPatch> pending = new ThreadLocal<>();
+
+    private static final class PendingPatch {
+        private final RDFChangesCollector collector = new RDFChangesCollector();
+        private boolean empty = true;
+    }
+
+    /**
+     * @param base The dataset the change log is written to, without change monitoring.
+     */
+    public ChangeLogRecorder(DatasetGraph base) {
+        this.base = base;
+    }
+
+    /**
+     * Returns the URI of a change log entry.
+     *
+     * @param sequence The sequence number of the entry.
+     * @return The node identifying the entry in the change log graph.
+     */
+    static Node entryNode(long sequence) {
+        return NodeFactory.createURI(Vocab.ChangeLogGraph.getURI() + "/" + sequence);
+    }
+
+    /**
+     * Returns the sequence number of the last change log entry. Must be called inside a transaction.
+     *
+     * @param dsg The dataset holding the change log.
+     * @return The last sequence number, or 0 if the log is empty.
+     */
+    static long latestSequence(DatasetGraph dsg) {
+        Iterator<Quad> quads = dsg.find(LOG_GRAPH, LOG_GRAPH, SEQUENCE, Node.ANY);
+        return quads.hasNext() ? ((Number) quads.next().getObject().getLiteralValue()).longValue() : 0L;
+    }
+
+    @Override
+    public void txnBegin() {
+        pending.set(new PendingPatch());
+    }
+
+    @Override
+    public void add(Node g, Node s, Node p, Node o) {
+        PendingPatch patch = current();
+        patch.collector.add(g, s, p, o);
+        patch.empty = false;
+    }
+
+    @Override
+    public void delete(Node g, Node s, Node p, Node o) {
+        PendingPatch patch = current();
+        patch.collector.delete(g, s, p, o);
+        patch.empty = false;
+    }
+
+    @Override
+    public void addPrefix(Node gn, String prefix, String uriStr) {
+        PendingPatch patch = current();
+        patch.collector.addPrefix(gn, prefix, uriStr);
+        patch.empty = false;
+    }
+
+    @Override
+    public void deletePrefix(Node gn, String prefix) {
+        PendingPatch patch = current();
+        patch.collector.deletePrefix(gn, prefix);
+        patch.empty = false;
+    }
+
+    @Override
+    public void txnCommit() {
+        PendingPatch patch = pending.get();
+        pending.remove();
+        if (patch == null || patch.empty) {
+            return;
+        }
+
+        long sequence = latestSequence(base) + 1;
+        Node sequenceLiteral = NodeFactory.createLiteralDT(Long.toString(sequence), XSDDatatype.XSDlong);
+        String patchText = RDFPatchOps.str(patch.collector.getRDFPatch());
+
+        base.deleteAny(LOG_GRAPH, LOG_GRAPH, SEQUENCE, Node.ANY);
+        base.add(LOG_GRAPH, LOG_GRAPH, SEQUENCE, sequenceLiteral);
+        base.add(LOG_GRAPH, entryNode(sequence), PATCH, NodeFactory.createLiteralString(patchText));
+    }
+
+    @Override
+    public void txnAbort() {
+        pending.remove();
+    }
+
+    @Override
+    public void header(String field, Node value) {
+    }
+
+    @Override
+    public void segment() {
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void finish() {
+    }
+
+    private PendingPatch current() {
+        PendingPatch patch = pending.get();
+        if (patch == null) {
+            // TDB2 only accepts changes inside a write transaction, this merely guards against a missed txnBegin.
+            patch = new PendingPatch();
+            pending.set(patch);
+        }
+        return patch;
+    }
+}
@@ -0,0 +1,219 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.config.ReplicationRole;
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdfpatch.RDFChanges;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read access to the change log published by a primary instance.
+ * The log itself is written by {@link ChangeLogRecorder} as part of every committed write transaction.
+ * <p>
+ * Replicas acknowledge the last entry they applied with every log request. On a primary, entries are compacted
+ * periodically once every replica heard from within {@code replication.replica-timeout-ms} has acknowledged them,
+ * keeping at least the last {@code replication.log-retention} entries. A replica that asks for compacted entries,
+ * e.g. after being down longer than the timeout, is told to reload the snapshot.
+ */
+@Service
+public class ChangeLogService implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeLogService.class);
+
+    /**
+     * Patch header carrying the change log position a snapshot corresponds to.
+     */
+    public static final String SNAPSHOT_SEQUENCE_HEADER = "sequence";
+
+    /**
+     * Graphs that are local to an instance and never shipped to replicas.
+     */
+    private static final Set<Node> LOCAL_GRAPHS = Set.of(Vocab.ChangeLogGraph.asNode(), Vocab.ReplicationGraph.asNode(), Vocab.SearchIndexGraph.asNode());
+
+    private final Dataset dataset;
+    private final ReplicationRole role;
+    private final long retention;
+    private final long replicaTimeoutNanos;
+    private final long compactionIntervalMs;
+
+    // Last acknowledged sequence of every replica by its ID
+    private final Map<String, Acknowledgement> acknowledgements = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService compactor;
+
+    private record Acknowledgement(long sequence, long nanoTime) {
+    }
+
+    @Autowired
+    public ChangeLogService(Dataset dataset,
+                            @Value("${replication.role:standalone}") ReplicationRole role,
+                            @Value("${replication.log-retention:1000}") long retention,
+                            @Value("${replication.replica-timeout-ms:3600000}") long replicaTimeoutMs,
+                            @Value("${replication.compaction-interval-ms:60000}") long compactionIntervalMs) {
+        this.dataset = dataset;
+        this.role = role;
+        this.retention = retention;
+        this.replicaTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(replicaTimeoutMs);
+        this.compactionIntervalMs = compactionIntervalMs;
+    }
+
+    @Override
+    public void start() {
+        if (role != ReplicationRole.PRIMARY) {
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "changelog-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (RuntimeException e) {
+                log.warn("Failed to compact the change log: {}", e.getMessage());
+            }
+        }, compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            compactor = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return compactor != null;
+    }
+
+    /**
+     * Returns the sequence number of the last committed write transaction.
+     *
+     * @return The last sequence number, or 0 if nothing has been logged yet.
+     */
+    public long getLatestSequence() {
+        return dataset.calculateRead(() -> ChangeLogRecorder.latestSequence(dataset.asDatasetGraph()));
+    }
+
+    /**
+     * Returns the change log entries following the given sequence number.
+     *
+     * @param after The sequence number of the last entry the caller already has.
+     * @param limit The maximum number of entries to return.
+     * @return The entries in sequence order together with the latest sequence number.
+     * @throws NoSuchElementException If the entries following the sequence number have been compacted.
+     */
+    public ChangeLogPage getEntries(long after, int limit) {
+        return dataset.calculateRead(() -> {
+            DatasetGraph dsg = dataset.asDatasetGraph();
+            long latest = ChangeLogRecorder.latestSequence(dsg);
+            List<ChangeLogEntry> entries = new ArrayList<>();
+
+            for (long sequence = after + 1; sequence <= latest && entries.size() < limit; sequence++) {
+                Iterator<Quad> patch = dsg.find(Vocab.ChangeLogGraph.asNode(), ChangeLogRecorder.entryNode(sequence), Vocab.patch.asNode(), Node.ANY);
+                if (!patch.hasNext()) {
+                    // Entries are only removed by compaction, which keeps the log contiguous up to the latest entry
+                    throw new NoSuchElementException("Change log entry " + sequence + " has been compacted");
+                }
+                entries.add(new ChangeLogEntry(sequence, patch.next().getObject().getLiteralLexicalForm()));
+            }
+            return new ChangeLogPage(latest, entries);
+        });
+    }
+
+    /**
+     * Records that a replica has applied the change log up to a sequence number, so compaction may drop the entries
+     * up to it.
+     *
+     * @param replicaId The ID the replica identifies itself with.
+     * @param sequence The sequence number of the last entry the replica has applied.
+     */
+    public void acknowledge(String replicaId, long sequence) {
+        acknowledgements.put(replicaId, new Acknowledgement(sequence, System.nanoTime()));
+    }
+
+    /**
+     * Drops the change log entries that every active replica has acknowledged, keeping at least the last
+     * {@code replication.log-retention} entries. Replicas not heard from within {@code replication.replica-timeout-ms}
+     * are forgotten and no longer hold back compaction.
+     * The entries are deleted from the unwrapped dataset, so the deletion is neither recorded in the change log itself
+     * nor seen by the search index.
+     *
+     * @return The number of entries dropped.
+     */
+    public long compact() {
+        long now = System.nanoTime();
+        acknowledgements.values().removeIf(acknowledgement -> now - acknowledgement.nanoTime() > replicaTimeoutNanos);
+        long acknowledged = acknowledgements.values().stream().mapToLong(Acknowledgement::sequence).min().orElse(Long.MAX_VALUE);
+
+        DatasetGraph base = DatasetGraphWrapper.unwrap(dataset.asDatasetGraph());
+        long removed = Txn.calculateWrite(base, () -> {
+            long through = Math.min(ChangeLogRecorder.latestSequence(base) - retention, acknowledged);
+            // Earlier compactions removed everything below the first remaining entry, so stop at the first gap
+            long sequence = through;
+            while (sequence > 0 && base.contains(Vocab.ChangeLogGraph.asNode(), ChangeLogRecorder.entryNode(sequence), Vocab.patch.asNode(), Node.ANY)) {
+                base.deleteAny(Vocab.ChangeLogGraph.asNode(), ChangeLogRecorder.entryNode(sequence), Node.ANY, Node.ANY);
+                sequence--;
+            }
+            return through - sequence;
+        });
+        if (removed > 0) {
+            log.info("Compacted {} change log entries acknowledged by {} replicas", removed, acknowledgements.size());
+        }
+        return removed;
+    }
+
+    /**
+     * Writes the whole replicated content of the store as a single RDF Patch, as of one read transaction.
+     * The sequence number the snapshot corresponds to is sent in the {@value #SNAPSHOT_SEQUENCE_HEADER} header
+     * of the patch, so a replica can continue tailing the change log right after it.
+     *
+     * @param out The stream to write the snapshot to.
+     */
+    public void writeSnapshot(OutputStream out) {
+        dataset.executeRead(() -> {
+            DatasetGraph dsg = dataset.asDatasetGraph();
+            long sequence = ChangeLogRecorder.latestSequence(dsg);
+            RDFChanges writer = RDFPatchOps.textWriter(out);
+
+            writer.start();
+            writer.header(SNAPSHOT_SEQUENCE_HEADER, NodeFactory.createLiteralDT(Long.toString(sequence), XSDDatatype.XSDlong));
+            dsg.prefixes().forEach((prefix, uri) -> writer.addPrefix(null, prefix, uri));
+            dsg.find().forEachRemaining(quad -> {
+                if (!LOCAL_GRAPHS.contains(quad.getGraph())) {
+                    writer.add(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+                }
+            });
+            writer.finish();
+            log.info("Wrote replication snapshot at sequence {}", sequence);
+        });
+    }
+}
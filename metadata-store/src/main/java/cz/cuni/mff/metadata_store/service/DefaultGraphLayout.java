@@ -0,0 +1,74 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ * Storage layout keeping all resources in the default graph.
+ * A resource is described by the triples it is the subject of, expanded by one level of blank nodes.
+ */
+public class DefaultGraphLayout implements StorageLayout {
+
+    private final Dataset dataset;
+
+    public DefaultGraphLayout(Dataset dataset) {
+        this.dataset = dataset;
+    }
+
+    @Override
+    public Model resourceModel(String resourceUri) {
+        return dataset.getDefaultModel();
+    }
+
+    @Override
+    public boolean contains(String resourceUri) {
+        Model model = dataset.getDefaultModel();
+        return model.contains(model.getResource(resourceUri), null, (RDFNode) null);
+    }
+
+    @Override
+    public Model describe(String resourceUri) {
+        String queryString = """
+                PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
+                CONSTRUCT {
+                  ?s ?p ?o .
+                  ?o ?p2 ?o2 .
+                  ?o2 ?p3 ?o3 .
+                }
+                WHERE {
+                  BIND(<%s> AS ?s)
+                  ?s ?p ?o .
+                  OPTIONAL {
+                    FILTER(ISBLANK(?o))
+                    ?o ?p2 ?o2 .
+                    # Blank nodes nested in blank nodes, e.g. the checksum of a distribution
+                    OPTIONAL {
+                      FILTER(ISBLANK(?o2))
+                      ?o2 ?p3 ?o3 .
+                    }
+                  }
+                }
+                """.formatted(resourceUri);
+
+        try (QueryExecution qExec = QueryExecutionFactory.create(queryString, dataset)) {
+            return qExec.execConstruct();
+        }
+    }
+
+    @Override
+    public void clear(String resourceUri) {
+        Model model = dataset.getDefaultModel();
+        Resource resource = model.getResource(resourceUri);
+        // removeAll on the default graph would also remove matching quads from the named graphs
+        model.remove(model.listStatements(resource, null, (RDFNode) null).toList());
+    }
+
+    @Override
+    public Dataset queryView() {
+        return dataset;
+    }
+}
@@ -0,0 +1,15 @@
+package cz.cuni.mff.metadata_store.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered plan of the pipelines a pipeline transitively depends on.
+ *
+ * @param pipeline The URI of the requested pipeline.
+ * @param executionOrder All resolved pipelines, each listed after the pipelines it depends on; the requested pipeline is last.
+ * @param dependsOn For every resolved pipeline, the pipelines generating the datasets its variables specialize.
+ * @param truncated True if the depth limit stopped the resolution before all dependencies were reached.
+ */
+public record DependencyPlan(String pipeline, List<String> executionOrder, Map<String, List<String>> dependsOn, boolean truncated) {
+}
@@ -0,0 +1,161 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.sparql.core.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Merges concurrent small writes into shared write transactions, so that they pay for a single
+ * commit (and fsync) instead of one each.
+ * Writes submitted while a commit is in progress, or within the configured window after the first
+ * write of a batch, are applied in one transaction of up to {@code maxBatchSize} writes.
+ * If the shared transaction fails, it is rolled back and its writes are retried one by one,
+ * so a single broken write never fails the others. Every caller blocks until its own write
+ * has been committed or has failed.
+ *
+ * @param <T> Type of the writes.
+ */
+public class GroupCommitter<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final Transactional transactional;
+    private final Consumer<T> writer;
+    private final int maxBatchSize;
+    private final long windowNanos;
+
+    private final BlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    private record Pending<T>(T write, CompletableFuture<Void> done) {
+    }
+
+    /**
+     * @param transactional The dataset the writes are committed to.
+     * @param writer Applies a single write; called inside a write transaction.
+     * @param maxBatchSize Maximum number of writes per transaction.
+     * @param window How long to wait for more writes after the first write of a batch arrives.
+     * @param name Name of the committer thread.
+     */
+    public GroupCommitter(Transactional transactional, Consumer<T> writer, int maxBatchSize, Duration window, String name) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Group commit batch size must be positive: " + maxBatchSize);
+        }
+        this.transactional = transactional;
+        this.writer = writer;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = window.toNanos();
+        this.committer = new Thread(this::run, name);
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Commits a write together with other concurrently submitted writes and waits for the outcome.
+     *
+     * @param write The write to commit.
+     * @throws IllegalStateException if the committer has been shut down.
+     * @throws RuntimeException the exception thrown while applying or committing this write.
+     */
+    public void commit(T write) {
+        if (!running) {
+            throw new IllegalStateException("Group committer has been shut down");
+        }
+
+        Pending<T> pending = new Pending<>(write, new CompletableFuture<>());
+        queue.add(pending);
+        // The committer may have seen an empty queue and stopped since the check above; then nobody else takes the write
+        if (!running && queue.remove(pending)) {
+            throw new IllegalStateException("Group committer has been shut down");
+        }
+        try {
+            pending.done().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the committer after committing all writes submitted so far.
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Pending<T>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    Pending<T> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                commitBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        Pending<T> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.done().completeExceptionally(new IllegalStateException("Group committer has been shut down"));
+        }
+    }
+
+    private void commitBatch(List<Pending<T>> batch) {
+        if (batch.size() > 1) {
+            try {
+                transactional.executeWrite(() -> batch.forEach(pending -> writer.accept(pending.write())));
+                batch.forEach(pending -> pending.done().complete(null));
+                log.debug("Group-committed {} writes in one transaction", batch.size());
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Group commit of {} writes failed, retrying them one by one: {}", batch.size(), e.getMessage());
+            }
+        }
+
+        for (Pending<T> pending : batch) {
+            try {
+                transactional.executeWrite(() -> writer.accept(pending.write()));
+                pending.done().complete(null);
+            } catch (RuntimeException e) {
+                pending.done().completeExceptionally(e);
+            }
+        }
+    }
+}
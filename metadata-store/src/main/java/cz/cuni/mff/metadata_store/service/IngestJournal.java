@@ -0,0 +1,205 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file journal of accepted but not yet committed writes.
+ * Every record is framed by its length and a CRC32 checksum and forced to disk before
+ * {@link #append} returns, so an acknowledged write survives a crash. A torn record at the
+ * end of the file (crash in the middle of an append) is detected and dropped on {@link #replay}.
+ */
+public class IngestJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestJournal.class);
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    private final FileChannel channel;
+
+    /**
+     * A single journaled write.
+     *
+     * @param ticket The ticket the write was acknowledged with.
+     * @param graph The validated graph to store.
+     * @param endOffset The journal offset right after this record.
+     */
+    public record Entry(String ticket, ValidatedGraph graph, long endOffset) {
+    }
+
+    public IngestJournal(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.channel.position(this.channel.size());
+    }
+
+    /**
+     * Durably appends a write to the journal.
+     *
+     * @param ticket The ticket the write is acknowledged with.
+     * @param graph The validated graph to store.
+     * @return The journaled entry.
+     * @throws UncheckedIOException if the record cannot be written or forced to disk.
+     */
+    public synchronized Entry append(String ticket, ValidatedGraph graph) {
+        byte[] body = encode(ticket, graph);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        buffer.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            return new Entry(ticket, graph, channel.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the ingest journal", e);
+        }
+    }
+
+    /**
+     * Reads all complete records starting at the given offset.
+     * A torn or corrupted tail is truncated so that subsequent appends start from a clean record boundary.
+     *
+     * @param offset The offset of the first record to read.
+     * @return The records in journal order.
+     */
+    public synchronized List<Entry> replay(long offset) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long position = offset;
+        long size = channel.size();
+
+        while (position + HEADER_SIZE <= size) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (!readFully(header, position)) {
+                break;
+            }
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(length);
+            if (!readFully(body, position + HEADER_SIZE)) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            position += HEADER_SIZE + length;
+            entries.add(decode(body.array(), position));
+        }
+
+        if (position < size) {
+            log.warn("Dropping {} bytes of incomplete ingest journal tail at offset {}", size - position, position);
+            channel.truncate(position);
+        }
+        channel.position(channel.size());
+        return entries;
+    }
+
+    /**
+     * Fills a buffer from the journal, as a single positional read may return fewer bytes than asked for.
+     *
+     * @return false if the journal ended before the buffer was full.
+     */
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                return false;
+            }
+            readPosition += read;
+        }
+        return true;
+    }
+
+    /**
+     * Empties the journal once everything up to its end has been committed.
+     *
+     * @param committedOffset The offset up to which the journal has been committed.
+     * @return true if the journal was truncated.
+     */
+    public synchronized boolean truncateIfCommitted(long committedOffset) throws IOException {
+        if (committedOffset != channel.size()) {
+            return false;
+        }
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(false);
+        return true;
+    }
+
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static byte[] encode(String ticket, ValidatedGraph graph) {
+        ByteArrayOutputStream rdf = new ByteArrayOutputStream();
+        RDFDataMgr.write(rdf, graph.model(), Lang.NTRIPLES);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(ticket);
+            out.writeUTF(graph.resourceType().getURI());
+            out.writeUTF(graph.resourceUri());
+            out.writeInt(rdf.size());
+            rdf.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] body, long endOffset) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            String ticket = in.readUTF();
+            String resourceType = in.readUTF();
+            String resourceUri = in.readUTF();
+            byte[] rdf = new byte[in.readInt()];
+            in.readFully(rdf);
+
+            Model model = ModelFactory.createDefaultModel();
+            RDFDataMgr.read(model, new ByteArrayInputStream(rdf), Lang.NTRIPLES);
+            ValidatedGraph graph = new ValidatedGraph(model, ResourceFactory.createResource(resourceType), resourceUri);
+            return new Entry(ticket, graph, endOffset);
+        }
+    }
+}
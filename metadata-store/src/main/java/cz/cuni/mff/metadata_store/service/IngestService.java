@@ -0,0 +1,351 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous write-behind ingestion of new resources.
+ * Accepted graphs are validated by the caller, durably appended to a local {@link IngestJournal}
+ * and acknowledged with a ticket right away. A single background committer drains the journal
+ * into TDB2, merging up to {@code ingest.batch-size} writes into one write transaction.
+ * The journal offset up to which writes have been committed is stored in the same transaction,
+ * so after a restart every acknowledged write is committed exactly once.
+ * A write the store rejects as invalid is skipped and reported as failed, while a write that fails
+ * for any other reason stays in the journal and is retried after {@code ingest.retry-backoff-ms}.
+ * The mode is disabled unless {@code ingest.async.enabled} is set.
+ */
+@Service
+public class IngestService implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestService.class);
+
+    private final Dataset dataset;
+    private final RdfStorageService rdfStorageService;
+
+    private final BlockingQueue<IngestJournal.Entry> queue = new LinkedBlockingQueue<>();
+    private final Map<String, Ticket> tickets;
+
+    @Value("${ingest.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ingest.journal.location:./data/ingest.journal}")
+    private String journalLocation;
+
+    @Value("${ingest.batch-size:100}")
+    private int batchSize;
+
+    @Value("${ingest.batch-window-ms:20}")
+    private long batchWindowMs;
+
+    @Value("${ingest.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    private IngestJournal journal;
+    private Thread committer;
+    private volatile boolean running;
+
+    /**
+     * Status of a single accepted write. The future completes once the write is committed or has failed.
+     */
+    private static final class Ticket {
+        private final String resourceUri;
+        private final CompletableFuture<IngestStatus> done = new CompletableFuture<>();
+
+        private Ticket(String resourceUri) {
+            this.resourceUri = resourceUri;
+        }
+    }
+
+    @Autowired
+    public IngestService(Dataset dataset, RdfStorageService rdfStorageService,
+                         @Value("${ingest.status-retention:10000}") int statusRetention) {
+        this.dataset = dataset;
+        this.rdfStorageService = rdfStorageService;
+        this.tickets = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Ticket> eldest) {
+                return size() > statusRetention && eldest.getValue().done.isDone();
+            }
+        };
+    }
+
+    /**
+     * @return true if writes should be accepted asynchronously.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Durably journals a validated graph for asynchronous commit.
+     *
+     * @param graph The validated graph to store.
+     * @return The ticket under which the status of the write can be queried.
+     * @throws IllegalStateException if asynchronous ingestion is not enabled or not running.
+     * @throws UncheckedIOException if the write cannot be journaled.
+     */
+    public String submit(ValidatedGraph graph) {
+        if (!running) {
+            throw new IllegalStateException("Asynchronous ingestion is not running");
+        }
+
+        String ticket = UUID.randomUUID().toString();
+        synchronized (tickets) {
+            tickets.put(ticket, new Ticket(graph.resourceUri()));
+        }
+        // Enqueue under the journal lock, so that the committer sees the entries in journal order
+        // and never records an offset beyond a write it has not committed yet.
+        synchronized (journal) {
+            queue.add(journal.append(ticket, graph));
+        }
+        log.debug("Journaled write of {} under ticket {}", graph.resourceUri(), ticket);
+        return ticket;
+    }
+
+    /**
+     * Returns the current status of a write.
+     *
+     * @param ticket The ticket returned by {@link #submit}.
+     * @return The status, or Optional.empty() if the ticket is unknown or has expired.
+     */
+    public Optional<IngestStatus> getStatus(String ticket) {
+        return awaitStatus(ticket, Duration.ZERO);
+    }
+
+    /**
+     * Waits up to the given time for a write to be committed or to fail and returns its status.
+     *
+     * @param ticket The ticket returned by {@link #submit}.
+     * @param timeout The maximum time to wait.
+     * @return The status, or Optional.empty() if the ticket is unknown or has expired.
+     */
+    public Optional<IngestStatus> awaitStatus(String ticket, Duration timeout) {
+        Ticket entry;
+        synchronized (tickets) {
+            entry = tickets.get(ticket);
+        }
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        try {
+            if (timeout.isPositive()) {
+                return Optional.of(entry.done.get(timeout.toMillis(), TimeUnit.MILLISECONDS));
+            }
+            return Optional.of(entry.done.getNow(pending(ticket, entry)));
+        } catch (TimeoutException e) {
+            return Optional.of(pending(ticket, entry));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.of(pending(ticket, entry));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            journal = new IngestJournal(Paths.get(journalLocation));
+            long committedOffset = dataset.calculateRead(this::readCommittedOffset);
+            if (committedOffset > journal.size()) {
+                // The journal was truncated right before a crash, everything in it had been committed.
+                committedOffset = 0;
+            }
+
+            List<IngestJournal.Entry> pending = journal.replay(committedOffset);
+            for (IngestJournal.Entry entry : pending) {
+                tickets.put(entry.ticket(), new Ticket(entry.graph().resourceUri()));
+                queue.add(entry);
+            }
+            log.info("Asynchronous ingestion enabled with journal {}, {} pending writes to replay", journalLocation, pending.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the ingest journal at " + journalLocation, e);
+        }
+
+        running = true;
+        committer = new Thread(this::runCommitter, "ingest-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(30));
+            journal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Failed to close the ingest journal", e);
+        }
+        log.info("Asynchronous ingestion stopped, {} writes left in the journal", queue.size());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void runCommitter() {
+        List<IngestJournal.Entry> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                if (!batch.isEmpty()) {
+                    // Writes left over from a transient failure, retry them first to keep the journal order.
+                    Thread.sleep(retryBackoffMs);
+                } else {
+                    IngestJournal.Entry first = queue.poll(500, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+                while (batch.size() < batchSize) {
+                    IngestJournal.Entry next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected failure of the ingest committer", e);
+            }
+        }
+    }
+
+    /**
+     * Commits a batch of journaled writes and removes them from the list.
+     * Writes that are left in the list failed transiently and have to be retried.
+     */
+    private void commit(List<IngestJournal.Entry> batch) {
+        long endOffset = batch.getLast().endOffset();
+        try {
+            dataset.executeWrite(() -> {
+                rdfStorageService.storeValidatedGraphs(batch.stream().map(IngestJournal.Entry::graph).toList());
+                writeCommittedOffset(endOffset);
+            });
+            batch.forEach(entry -> complete(entry, IngestStatus.State.COMMITTED, null));
+            log.debug("Committed batch of {} journaled writes up to offset {}", batch.size(), endOffset);
+            batch.clear();
+        } catch (RuntimeException e) {
+            log.warn("Batch of {} journaled writes failed, committing them one by one: {}", batch.size(), e.getMessage());
+            Iterator<IngestJournal.Entry> pending = batch.iterator();
+            while (pending.hasNext()) {
+                IngestJournal.Entry entry = pending.next();
+                try {
+                    commitSingle(entry);
+                } catch (RuntimeException transientFailure) {
+                    log.warn("Journaled write {} of {} failed, retrying it and the writes after it in {} ms",
+                            entry.ticket(), entry.graph().resourceUri(), retryBackoffMs, transientFailure);
+                    return;
+                }
+                pending.remove();
+            }
+        }
+
+        try {
+            synchronized (journal) {
+                if (journal.truncateIfCommitted(endOffset)) {
+                    dataset.executeWrite(() -> writeCommittedOffset(0));
+                    log.debug("Ingest journal fully committed and truncated");
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to truncate the ingest journal", e);
+        }
+    }
+
+    /**
+     * Commits a single journaled write, or skips it if the store rejects it as invalid.
+     *
+     * @throws RuntimeException if the write failed for any other reason and has to stay in the journal.
+     */
+    private void commitSingle(IngestJournal.Entry entry) {
+        try {
+            dataset.executeWrite(() -> {
+                rdfStorageService.storeValidatedGraphs(List.of(entry.graph()));
+                writeCommittedOffset(entry.endOffset());
+            });
+            complete(entry, IngestStatus.State.COMMITTED, null);
+        } catch (IllegalArgumentException e) {
+            log.error("Journaled write {} of {} was rejected", entry.ticket(), entry.graph().resourceUri(), e);
+            // Skip the rejected write, it would be rejected again on every replay.
+            try {
+                dataset.executeWrite(() -> writeCommittedOffset(entry.endOffset()));
+            } finally {
+                complete(entry, IngestStatus.State.FAILED, e.getMessage());
+            }
+        }
+    }
+
+    private void complete(IngestJournal.Entry entry, IngestStatus.State state, String error) {
+        Ticket ticket;
+        synchronized (tickets) {
+            ticket = tickets.get(entry.ticket());
+        }
+        if (ticket != null) {
+            ticket.done.complete(new IngestStatus(entry.ticket(), state, ticket.resourceUri, error));
+        }
+    }
+
+    private static IngestStatus pending(String ticket, Ticket entry) {
+        return new IngestStatus(ticket, IngestStatus.State.PENDING, entry.resourceUri, null);
+    }
+
+    private long readCommittedOffset() {
+        Model ingestModel = dataset.getNamedModel(Vocab.IngestGraph.getURI());
+        Statement statement = ingestModel.getResource(Vocab.IngestGraph.getURI()).getProperty(Vocab.journalOffset);
+        return statement == null ? 0L : statement.getLong();
+    }
+
+    private void writeCommittedOffset(long offset) {
+        Model ingestModel = dataset.getNamedModel(Vocab.IngestGraph.getURI());
+        Resource journalResource = ingestModel.getResource(Vocab.IngestGraph.getURI());
+        journalResource.removeAll(Vocab.journalOffset);
+        journalResource.addLiteral(Vocab.journalOffset, offset);
+    }
+}
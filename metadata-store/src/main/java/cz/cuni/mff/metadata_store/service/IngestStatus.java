@@ -0,0 +1,18 @@
+package cz.cuni.mff.metadata_store.service;
+
+/**
+ * State of a write accepted by the asynchronous ingestion queue.
+ *
+ * @param ticket The ticket the write was acknowledged with.
+ * @param state The current state of the write.
+ * @param resource The URI of the primary resource of the written graph.
+ * @param error The reason of the failure if the write could not be committed, otherwise null.
+ */
+public record IngestStatus(String ticket, State state, String resource, String error) {
+
+    public enum State {
+        PENDING,
+        COMMITTED,
+        FAILED
+    }
+}
@@ -0,0 +1,127 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.TransactionHandler;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.shared.AddDeniedException;
+import org.apache.jena.shared.DeleteDeniedException;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.TransactionHandlerView;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+
+import java.util.Iterator;
+
+/**
+ * Storage layout keeping every dataset, plugin and pipeline in its own named graph, named by the
+ * resource URI. The graph holds everything submitted with the resource (distributions, steps,
+ * variables), so describing a resource is a scan of one graph and replacing it is a graph drop.
+ * The default graph keeps the vocabulary and the root container.
+ */
+public class NamedGraphLayout implements StorageLayout {
+
+    private final Dataset dataset;
+    private final Graph unionView;
+
+    public NamedGraphLayout(Dataset dataset) {
+        this.dataset = dataset;
+        this.unionView = new ResourceUnionGraph(dataset.asDatasetGraph());
+    }
+
+    /**
+     * Checks whether a named graph holds a resource, as opposed to system data such as versions.
+     *
+     * @param graphUri The name of the graph.
+     * @return true if the graph is a resource graph.
+     */
+    public static boolean isResourceGraph(String graphUri) {
+        return graphUri.startsWith(Vocab.DS_NS) || graphUri.startsWith(Vocab.PL_NS) || graphUri.startsWith(Vocab.PIPE_NS);
+    }
+
+    @Override
+    public Model resourceModel(String resourceUri) {
+        return dataset.getNamedModel(resourceUri);
+    }
+
+    @Override
+    public boolean contains(String resourceUri) {
+        return dataset.containsNamedModel(resourceUri);
+    }
+
+    @Override
+    public Model describe(String resourceUri) {
+        Model description = ModelFactory.createDefaultModel();
+        description.add(dataset.getNamedModel(resourceUri));
+        return description;
+    }
+
+    @Override
+    public void clear(String resourceUri) {
+        dataset.getNamedModel(resourceUri).removeAll();
+    }
+
+    /**
+     * The view is the default graph together with every resource graph, read with one lookup in the quad indexes
+     * rather than one per graph, and without listing the graphs. System graphs are skipped as their quads come up.
+     */
+    @Override
+    public Dataset queryView() {
+        return DatasetFactory.wrap(DatasetGraphFactory.wrap(unionView));
+    }
+
+    /**
+     * Read-only union of the default graph and the resource graphs of a dataset, like the union default graph
+     * of TDB2, but leaving out the named graphs holding system data.
+     */
+    private static final class ResourceUnionGraph extends GraphBase {
+        private final DatasetGraph dsg;
+
+        private ResourceUnionGraph(DatasetGraph dsg) {
+            this.dsg = dsg;
+        }
+
+        @Override
+        protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+            Node s = pattern.getMatchSubject();
+            Node p = pattern.getMatchPredicate();
+            Node o = pattern.getMatchObject();
+            Iterator<Triple> defaultTriples = dsg.getDefaultGraph().find(s, p, o);
+            Iterator<Triple> resourceTriples = Iter.map(
+                    Iter.filter(dsg.findNG(Node.ANY, s, p, o), quad -> quad.getGraph().isURI() && isResourceGraph(quad.getGraph().getURI())),
+                    Quad::asTriple);
+            // A triple stated in several graphs is one triple of the union
+            return WrappedIterator.createNoRemove(Iter.distinct(Iter.concat(defaultTriples, resourceTriples)));
+        }
+
+        @Override
+        protected PrefixMapping createPrefixMapping() {
+            return dsg.getDefaultGraph().getPrefixMapping();
+        }
+
+        @Override
+        public TransactionHandler getTransactionHandler() {
+            return new TransactionHandlerView(dsg);
+        }
+
+        @Override
+        public void performAdd(Triple triple) {
+            throw new AddDeniedException("Query view is read-only");
+        }
+
+        @Override
+        public void performDelete(Triple triple) {
+            throw new DeleteDeniedException("Query view is read-only");
+        }
+    }
+}
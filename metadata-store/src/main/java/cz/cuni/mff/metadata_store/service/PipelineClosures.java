@@ -0,0 +1,244 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Maintains the materialized dependency closure of every pipeline: the pipeline with its steps, plugins,
+ * variables, specialized and generated datasets and their distributions, kept in a named graph of its own.
+ * A closure is written together with its pipeline and recomputed in the same write transaction whenever
+ * a resource it mentions changes, so reading it is a single graph fetch. Every materialization bumps
+ * the version of the closure, kept by the {@link VersionService} under the name of the closure graph.
+ * All methods must be called inside a transaction on the dataset.
+ */
+public class PipelineClosures {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelineClosures.class);
+
+    private static final String DEPENDENCIES_QUERY = """
+            PREFIX dcat:    <http://www.w3.org/ns/dcat#>
+            PREFIX dcterms: <http://purl.org/dc/terms/>
+            PREFIX df:      <http://localhost:8080/ns/df#>
+            PREFIX ds:      <http://localhost:8080/ns/ds#>
+            PREFIX p-plan:  <http://purl.org/net/p-plan#>
+            PREFIX prov:    <http://www.w3.org/ns/prov#>
+            PREFIX rdf:     <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
+            PREFIX rdfs:    <http://www.w3.org/2000/01/rdf-schema#>
+
+            # This query combines several targeted CONSTRUCT queries to build a complete
+            # graph of the pipeline and its specific, known dependency types.
+            CONSTRUCT {
+              # Core pipeline properties
+              ?pipeline ?p ?o .
+              ?s ?p_inv ?pipeline .
+
+              # Steps, their properties, and their plugins/distributions
+              ?step ?step_p ?step_o .
+              ?plugin ?plugin_p ?plugin_o .
+              ?plugin_dist ?plugin_dist_p ?plugin_dist_o .
+              ?plugin_dist_o ?plugin_dist_nested_p ?plugin_dist_nested_o .
+
+              # Variables, their properties, and their specialized datasets/distributions
+              ?variable ?var_p ?var_o .
+              ?dataset ?dataset_p ?dataset_o .
+              ?dataset_dist ?dataset_dist_p ?dataset_dist_o .
+              ?dataset_dist_o ?dataset_dist_nested_p ?dataset_dist_nested_o .
+
+              # Datasets generated by the pipeline and their distributions
+              ?generated_dataset ?gds_p ?gds_o .
+              ?gds_dist ?gds_dist_p ?gds_dist_o .
+              ?gds_dist_o ?gds_dist_nested_p ?gds_dist_nested_o .
+            }
+            WHERE {
+              # Bind the specific pipeline IRI from the Java code.
+              VALUES ?pipeline { <%s> }
+
+              {
+                # 1. Get all triples for the pipeline itself (outgoing and incoming).
+                { ?pipeline ?p ?o . }
+                UNION
+                { ?s ?p_inv ?pipeline . }
+              }
+              UNION
+              {
+                # 2. Get all steps in the plan, their properties, their plugins, and distributions.
+                # The step is the subject of the isStepOfPlan property.
+                ?step p-plan:isStepOfPlan ?pipeline ;
+                      ?step_p ?step_o .
+                OPTIONAL {
+                  ?step df:usesPlugin ?plugin .
+                  ?plugin ?plugin_p ?plugin_o .
+                  OPTIONAL {
+                    ?plugin dcat:distribution ?plugin_dist .
+                    ?plugin_dist ?plugin_dist_p ?plugin_dist_o .
+                    OPTIONAL {
+                      FILTER(ISBLANK(?plugin_dist_o))
+                      ?plugin_dist_o ?plugin_dist_nested_p ?plugin_dist_nested_o .
+                    }
+                  }
+                }
+              }
+              UNION
+              {
+                # 3. Get all variables in the plan, their properties, their specialized datasets, and distributions.
+                # The variable is the subject of the isVariableOfPlan property.
+                ?variable p-plan:isVariableOfPlan ?pipeline ;
+                          ?var_p ?var_o .
+                OPTIONAL {
+                  ?variable prov:specializationOf ?dataset .
+                  ?dataset ?dataset_p ?dataset_o .
+                  OPTIONAL {
+                    ?dataset dcat:distribution ?dataset_dist .
+                    ?dataset_dist ?dataset_dist_p ?dataset_dist_o .
+                    OPTIONAL {
+                      FILTER(ISBLANK(?dataset_dist_o))
+                      ?dataset_dist_o ?dataset_dist_nested_p ?dataset_dist_nested_o .
+                    }
+                  }
+                }
+              }
+              UNION
+              {
+                # 4. Get any datasets that were generated by this pipeline and their properties/distributions.
+                ?generated_dataset prov:wasGeneratedBy ?pipeline ;
+                                   ?gds_p ?gds_o .
+                OPTIONAL {
+                  ?generated_dataset dcat:distribution ?gds_dist .
+                  ?gds_dist ?gds_dist_p ?gds_dist_o .
+                  OPTIONAL {
+                    FILTER(ISBLANK(?gds_dist_o))
+                    ?gds_dist_o ?gds_dist_nested_p ?gds_dist_nested_o .
+                  }
+                }
+              }
+            }
+            """;
+
+    private final Dataset dataset;
+    private final StorageLayout storageLayout;
+    private final VersionService versionService;
+
+    public PipelineClosures(Dataset dataset, StorageLayout storageLayout, VersionService versionService) {
+        this.dataset = dataset;
+        this.storageLayout = storageLayout;
+        this.versionService = versionService;
+    }
+
+    /**
+     * @param pipelineUri The URI of a pipeline.
+     * @return The name of the graph holding the closure of the pipeline.
+     */
+    public static String closureGraphUri(String pipelineUri) {
+        return Vocab.CLOSURE_GRAPH_NS + pipelineUri.substring(Vocab.PIPE_NS.length());
+    }
+
+    /**
+     * Computes the closure of a pipeline from the stored resources.
+     *
+     * @param pipelineUri The URI of the pipeline.
+     * @return A new model holding the pipeline description and all its dependencies.
+     */
+    public Model compute(String pipelineUri) {
+        Model closure = storageLayout.describe(pipelineUri);
+        try (QueryExecution qExec = QueryExecutionFactory.create(DEPENDENCIES_QUERY.formatted(pipelineUri), storageLayout.queryView())) {
+            qExec.execConstruct(closure);
+        }
+        return closure;
+    }
+
+    /**
+     * Returns the materialized closure of a pipeline.
+     *
+     * @param pipelineUri The URI of the pipeline.
+     * @return A detached copy of the closure, or empty if the closure has not been materialized.
+     */
+    public Model read(String pipelineUri) {
+        Model closure = ModelFactory.createDefaultModel();
+        String graphUri = closureGraphUri(pipelineUri);
+        if (dataset.containsNamedModel(graphUri)) {
+            closure.add(dataset.getNamedModel(graphUri));
+        }
+        return closure;
+    }
+
+    /**
+     * Returns the version of the materialized closure of a pipeline.
+     *
+     * @param pipelineUri The URI of the pipeline.
+     * @return The version, or 0 if the closure has not been materialized.
+     */
+    public long version(String pipelineUri) {
+        return versionService.getVersion(closureGraphUri(pipelineUri));
+    }
+
+    /**
+     * Recomputes the closures affected by a write of a resource. These are the closure of the resource itself
+     * if it is a pipeline, the closures already mentioning the resource, and the closures of the pipelines
+     * the written data declares as {@code prov:wasGeneratedBy}. Must be called inside a write transaction,
+     * after the resource has been written.
+     *
+     * @param resourceUri The URI of the written resource.
+     * @param writtenData The RDF data that was written.
+     */
+    public void refresh(String resourceUri, Model writtenData) {
+        Set<String> pipelines = new LinkedHashSet<>();
+        if (resourceUri.startsWith(Vocab.PIPE_NS)) {
+            pipelines.add(resourceUri);
+        }
+        pipelines.addAll(mentioningPipelines(ResourceFactory.createResource(resourceUri).asNode()));
+        for (RDFNode generator : writtenData.listObjectsOfProperty(Vocab.wasGeneratedBy).toList()) {
+            if (generator.isURIResource() && generator.asResource().getURI().startsWith(Vocab.PIPE_NS)) {
+                pipelines.add(generator.asResource().getURI());
+            }
+        }
+
+        for (String pipelineUri : pipelines) {
+            materialize(pipelineUri);
+        }
+    }
+
+    private void materialize(String pipelineUri) {
+        Model closureGraph = dataset.getNamedModel(closureGraphUri(pipelineUri));
+        closureGraph.removeAll();
+        if (storageLayout.contains(pipelineUri)) {
+            closureGraph.add(compute(pipelineUri));
+        }
+        versionService.incrementVersion(closureGraphUri(pipelineUri));
+        log.debug("Materialized closure of pipeline {} with {} triples", pipelineUri, closureGraph.size());
+    }
+
+    /**
+     * Finds the pipelines whose materialized closure mentions a node as a subject or an object.
+     */
+    private Set<String> mentioningPipelines(Node node) {
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Set<String> pipelines = new LinkedHashSet<>();
+        collectClosureGraphs(dsg.find(Node.ANY, node, Node.ANY, Node.ANY), pipelines);
+        collectClosureGraphs(dsg.find(Node.ANY, Node.ANY, Node.ANY, node), pipelines);
+        return pipelines;
+    }
+
+    private void collectClosureGraphs(Iterator<Quad> quads, Set<String> pipelines) {
+        quads.forEachRemaining(quad -> {
+            Node graph = quad.getGraph();
+            if (graph.isURI() && graph.getURI().startsWith(Vocab.CLOSURE_GRAPH_NS)) {
+                pipelines.add(Vocab.PIPE_NS + graph.getURI().substring(Vocab.CLOSURE_GRAPH_NS.length()));
+            }
+        });
+    }
+}
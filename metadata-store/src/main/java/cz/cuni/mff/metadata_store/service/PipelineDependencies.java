@@ -0,0 +1,12 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Transitive cross-pipeline dependencies of a pipeline, resolved in one read transaction.
+ *
+ * @param graph The merged dependency closures of all resolved pipelines.
+ * @param plan The order in which the resolved pipelines have to run.
+ */
+public record PipelineDependencies(Model graph, DependencyPlan plan) {
+}
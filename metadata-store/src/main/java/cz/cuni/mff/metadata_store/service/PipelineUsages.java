@@ -0,0 +1,155 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the reverse references from plugins and datasets to the pipelines using them, kept in a system graph:
+ * {@code plugin df:usedByStep step . step p-plan:isStepOfPlan pipeline} and
+ * {@code dataset df:usedByVariable variable . variable p-plan:isVariableOfPlan pipeline}.
+ * The entries of a pipeline are rewritten in the same write transaction as the pipeline, so looking up the
+ * usages of a resource only touches the index entries of that resource instead of scanning all pipelines.
+ * All methods must be called inside a transaction on the dataset.
+ */
+public class PipelineUsages {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelineUsages.class);
+
+    private static final Node USAGES_GRAPH = Vocab.UsagesGraph.asNode();
+    private static final Node USED_BY_STEP = Vocab.usedByStep.asNode();
+    private static final Node USED_BY_VARIABLE = Vocab.usedByVariable.asNode();
+    private static final Node STEP_OF_PLAN = Vocab.isStepOfPlan.asNode();
+    private static final Node VARIABLE_OF_PLAN = Vocab.isVariableOfPlan.asNode();
+
+    private final Dataset dataset;
+    private final StorageLayout storageLayout;
+
+    public PipelineUsages(Dataset dataset, StorageLayout storageLayout) {
+        this.dataset = dataset;
+        this.storageLayout = storageLayout;
+    }
+
+    /**
+     * Re-indexes the references of a resource if it is a pipeline. Must be called inside a write transaction,
+     * after the resource has been written.
+     *
+     * @param resourceUri The URI of the written resource.
+     */
+    public void refresh(String resourceUri) {
+        if (resourceUri.startsWith(Vocab.PIPE_NS)) {
+            index(resourceUri);
+        }
+    }
+
+    /**
+     * Checks whether the index has been built, i.e. whether it holds entries or no pipeline is stored.
+     *
+     * @param pipelineUris The URIs of all stored pipelines.
+     * @return true if the index needs no rebuild.
+     */
+    public boolean isBuilt(List<String> pipelineUris) {
+        return pipelineUris.isEmpty() || !dataset.asDatasetGraph().getGraph(USAGES_GRAPH).isEmpty();
+    }
+
+    /**
+     * Re-indexes the references of every given pipeline. Must be called inside a write transaction.
+     *
+     * @param pipelineUris The URIs of the pipelines to index.
+     */
+    public void rebuild(List<String> pipelineUris) {
+        dataset.asDatasetGraph().deleteAny(USAGES_GRAPH, Node.ANY, Node.ANY, Node.ANY);
+        pipelineUris.forEach(this::index);
+        log.info("Rebuilt the usage index of {} pipelines", pipelineUris.size());
+    }
+
+    /**
+     * @param pluginUri The URI of a plugin.
+     * @return The pipelines whose steps use the plugin.
+     */
+    public ResourceUsages pluginUsages(String pluginUri) {
+        return usages(pluginUri, USED_BY_STEP, STEP_OF_PLAN);
+    }
+
+    /**
+     * @param datasetUri The URI of a dataset.
+     * @return The pipelines whose variables specialize the dataset.
+     */
+    public ResourceUsages datasetUsages(String datasetUri) {
+        return usages(datasetUri, USED_BY_VARIABLE, VARIABLE_OF_PLAN);
+    }
+
+    private ResourceUsages usages(String resourceUri, Node usedBy, Node memberOf) {
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Map<String, List<String>> pipelines = new LinkedHashMap<>();
+        dsg.find(USAGES_GRAPH, NodeFactory.createURI(resourceUri), usedBy, Node.ANY).forEachRemaining(usage -> {
+            Node member = usage.getObject();
+            dsg.find(USAGES_GRAPH, member, memberOf, Node.ANY).forEachRemaining(plan ->
+                    pipelines.computeIfAbsent(plan.getObject().getURI(), uri -> new ArrayList<>()).add(member.getURI()));
+        });
+        return new ResourceUsages(resourceUri, pipelines);
+    }
+
+    private void index(String pipelineUri) {
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Node pipeline = NodeFactory.createURI(pipelineUri);
+        removeEntries(dsg, pipeline, STEP_OF_PLAN, USED_BY_STEP);
+        removeEntries(dsg, pipeline, VARIABLE_OF_PLAN, USED_BY_VARIABLE);
+        if (!storageLayout.contains(pipelineUri)) {
+            return;
+        }
+
+        Model model = storageLayout.resourceModel(pipelineUri);
+        Resource plan = model.getResource(pipelineUri);
+        int entries = addEntries(dsg, model, plan, Vocab.isStepOfPlan, Vocab.usesPlugin, USED_BY_STEP)
+                + addEntries(dsg, model, plan, Vocab.isVariableOfPlan, Vocab.specializationOf, USED_BY_VARIABLE);
+        log.debug("Indexed {} plugin and dataset references of pipeline {}", entries, pipelineUri);
+    }
+
+    /**
+     * Adds an entry for every member (step or variable) of the pipeline that references a resource through the given property.
+     */
+    private int addEntries(DatasetGraph dsg, Model model, Resource plan, Property memberOf, Property references, Node usedBy) {
+        int entries = 0;
+        for (Resource member : model.listSubjectsWithProperty(memberOf, plan).toList()) {
+            if (!member.isURIResource()) {
+                continue;
+            }
+            int memberEntries = 0;
+            for (RDFNode referenced : model.listObjectsOfProperty(member, references).toList()) {
+                if (referenced.isURIResource()) {
+                    dsg.add(USAGES_GRAPH, referenced.asNode(), usedBy, member.asNode());
+                    memberEntries++;
+                }
+            }
+            if (memberEntries > 0) {
+                dsg.add(USAGES_GRAPH, member.asNode(), memberOf.asNode(), plan.asNode());
+                entries += memberEntries;
+            }
+        }
+        return entries;
+    }
+
+    private void removeEntries(DatasetGraph dsg, Node pipeline, Node memberOf, Node usedBy) {
+        List<Node> members = Iter.toList(Iter.map(dsg.find(USAGES_GRAPH, Node.ANY, memberOf, pipeline), Quad::getSubject));
+        for (Node member : members) {
+            dsg.deleteAny(USAGES_GRAPH, Node.ANY, usedBy, member);
+            dsg.delete(USAGES_GRAPH, member, memberOf, pipeline);
+        }
+    }
+}
@@ -2,7 +2,11 @@ package cz.cuni.mff.metadata_store.service;
 
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFFormat;
 
+import java.io.OutputStream;
+import java.util.ConcurrentModificationException;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 
@@ -22,6 +26,25 @@ public interface RdfStorageService {
      */
     String storeRdfGraph(Model rdfModel, Resource expectedResourceType);
 
+    /**
+     * Validates that the provided RDF graph can be stored, without touching the triple store.
+     *
+     * @param rdfModel The Jena Model representing the RDF graph to store.
+     * @param expectedResourceType The primary RDF type expected within the model (e.g., Vocab.Plan).
+     * @return The graph together with the URI of its primary resource.
+     * @throws IllegalArgumentException If the input model is empty or lacks the expected primary resource.
+     */
+    ValidatedGraph validateRdfGraph(Model rdfModel, Resource expectedResourceType);
+
+    /**
+     * Stores several previously validated RDF graphs within a single write transaction.
+     * Either all of the graphs are stored or none of them.
+     * When called inside an already active write transaction, the graphs become part of it.
+     *
+     * @param graphs The graphs to store.
+     */
+    void storeValidatedGraphs(List<ValidatedGraph> graphs);
+
     /**
      * Retrieves the RDF description of a specific resource identified by its UUID.
      *
@@ -41,9 +64,20 @@ public interface RdfStorageService {
      */
     Model getPipelineDescription(String pipelineUuid) throws NoSuchElementException;
 
+    /**
+     * Retrieves the RDF description of a specific Pipeline resource together with its current version.
+     *
+     * @param pipelineUuid The UUID of the pipeline resource (Vocab.Plan).
+     * @return The description and the version it was read at.
+     * @throws NoSuchElementException if the resource with the given UUID is not found.
+     */
+    VersionedModel getVersionedPipelineDescription(String pipelineUuid) throws NoSuchElementException;
+
     /**
      * Retrieves the RDF description of a specific Pipeline resource identified by its UUID,
      * including all dependencies (e.g., datasets, plugins) referenced by the pipeline.
+     * The dependency closure is materialized when the pipeline or any of its dependencies is written,
+     * so this reads a single graph.
      *
      * @param pipelineUuid The UUID of the pipeline resource (Vocab.Plan).
      * @return A Jena Model containing the pipeline description and its dependencies.
@@ -51,6 +85,39 @@ public interface RdfStorageService {
      */
     Model getPipelineDescriptionWithDependencies(String pipelineUuid) throws NoSuchElementException;
 
+    /**
+     * Retrieves the dependency closure of a specific Pipeline resource together with its version,
+     * which changes whenever the closure is recomputed.
+     *
+     * @param pipelineUuid The UUID of the pipeline resource (Vocab.Plan).
+     * @return The closure and the version it was read at, 0 if the closure was computed because it had not been materialized.
+     * @throws NoSuchElementException if the resource with the given UUID is not found.
+     */
+    VersionedModel getVersionedPipelineDescriptionWithDependencies(String pipelineUuid) throws NoSuchElementException;
+
+    /**
+     * Resolves, in one read transaction, the pipelines a pipeline transitively depends on: the pipelines
+     * that generated ({@code prov:wasGeneratedBy}) the datasets its variables specialize, their own
+     * such pipelines, and so on up to the given depth.
+     *
+     * @param pipelineUuid The UUID of the pipeline resource (Vocab.Plan).
+     * @param maxDepth The maximum number of pipeline hops to follow; 0 resolves the pipeline alone.
+     * @return The merged dependency closures and the order in which the pipelines have to run.
+     * @throws NoSuchElementException if the pipeline with the given UUID is not found.
+     * @throws IllegalArgumentException if the depth is negative.
+     * @throws IllegalStateException if the resolved pipelines depend on each other in a cycle.
+     */
+    PipelineDependencies resolvePipelineDependencies(String pipelineUuid, int maxDepth) throws NoSuchElementException, IllegalStateException;
+
+    /**
+     * Retrieves the execution plan stored with a pipeline as its df:executionPlan JSON literal.
+     *
+     * @param pipelineUuid The UUID of the pipeline resource (Vocab.Plan).
+     * @return The JSON execution plan, or empty if the pipeline was stored without one.
+     * @throws NoSuchElementException if the pipeline with the given UUID is not found.
+     */
+    Optional<String> getPipelineExecutionPlan(String pipelineUuid) throws NoSuchElementException;
+
     /**
      * Retrieves the RDF description of a specific Dataset resource identified by its UUID.
      *
@@ -61,6 +128,24 @@ public interface RdfStorageService {
     Model getDatasetDescription(String datasetUuid) throws NoSuchElementException;
 
 
+    /**
+     * Retrieves the RDF description of a specific Dataset resource together with its current version.
+     *
+     * @param datasetUuid The UUID of the dataset resource (Vocab.Dataset).
+     * @return The description and the version it was read at.
+     * @throws NoSuchElementException if the resource with the given UUID is not found.
+     */
+    VersionedModel getVersionedDatasetDescription(String datasetUuid) throws NoSuchElementException;
+
+    /**
+     * Finds the pipelines with variables specializing a dataset, from the usage index maintained on every pipeline write.
+     *
+     * @param datasetUuid The UUID of the dataset resource (Vocab.Dataset).
+     * @return The using pipelines with their variables.
+     * @throws NoSuchElementException if the resource with the given UUID is not found.
+     */
+    ResourceUsages getDatasetUsages(String datasetUuid) throws NoSuchElementException;
+
     /**
      * Retrieves the RDF description of a specific Plugin resource identified by its UUID.
      *
@@ -70,6 +155,24 @@ public interface RdfStorageService {
      */
     Model getPluginDescription(String pluginUuid) throws NoSuchElementException;
 
+    /**
+     * Retrieves the RDF description of a specific Plugin resource together with its current version.
+     *
+     * @param pluginUuid The UUID of the plugin resource (Vocab.Plugin).
+     * @return The description and the version it was read at.
+     * @throws NoSuchElementException if the resource with the given UUID is not found.
+     */
+    VersionedModel getVersionedPluginDescription(String pluginUuid) throws NoSuchElementException;
+
+    /**
+     * Finds the pipelines with steps using a plugin, from the usage index maintained on every pipeline write.
+     *
+     * @param pluginUuid The UUID of the plugin resource (Vocab.Plugin).
+     * @return The using pipelines with their steps.
+     * @throws NoSuchElementException if the resource with the given UUID is not found.
+     */
+    ResourceUsages getPluginUsages(String pluginUuid) throws NoSuchElementException;
+
 
     /**
      * Retrieves an RDF graph containing descriptions of all resources of a specific type
@@ -96,6 +199,17 @@ public interface RdfStorageService {
      */
     Model getEntireStoreModel();
 
+    /**
+     * Writes the entire default graph of the store to a stream, as of a single read transaction.
+     * Formats with a streaming writer (N-Triples, N-Quads, Turtle blocks and flat, RDF Thrift and Protobuf)
+     * are written triple by triple straight from the store, without copying the graph into memory.
+     * Other formats are written from a copy of the graph, as their writers need the whole graph anyway.
+     *
+     * @param out The stream to write to.
+     * @param format The RDF format to write.
+     */
+    void writeEntireStore(OutputStream out, RDFFormat format);
+
     /**
      * Overwrites dataset
      * with the given UUID with the provided RDF data.
@@ -106,6 +220,19 @@ public interface RdfStorageService {
      */
     String updateDataset(String datasetUuid, Model rdfData) throws NoSuchElementException;
 
+    /**
+     * Overwrites dataset with the given UUID with the provided RDF data,
+     * provided that its current version satisfies the If-Match precondition.
+     *
+     * @param datasetUuid The UUID of the dataset to update.
+     * @param rdfData The RDF data to update the dataset with.
+     * @param ifMatch The If-Match header value, or null for an unconditional update.
+     * @return The new version of the dataset.
+     * @throws NoSuchElementException if the dataset with the given UUID is not found.
+     * @throws ConcurrentModificationException if the precondition does not hold.
+     */
+    long updateDataset(String datasetUuid, Model rdfData, String ifMatch) throws NoSuchElementException, ConcurrentModificationException;
+
     /**
      * Overwrites plugin
      * with the given UUID with the provided RDF data.
@@ -115,4 +242,32 @@ public interface RdfStorageService {
      * @return The updated RDF data in Turtle format.
      */
     String updatePlugin(String pluginUuid, Model rdfData) throws NoSuchElementException;
+
+    /**
+     * Overwrites plugin with the given UUID with the provided RDF data,
+     * provided that its current version satisfies the If-Match precondition.
+     *
+     * @param pluginUuid The UUID of the plugin to update.
+     * @param rdfData The RDF data to update the plugin with.
+     * @param ifMatch The If-Match header value, or null for an unconditional update.
+     * @return The new version of the plugin.
+     * @throws NoSuchElementException if the plugin with the given UUID is not found.
+     * @throws ConcurrentModificationException if the precondition does not hold.
+     */
+    long updatePlugin(String pluginUuid, Model rdfData, String ifMatch) throws NoSuchElementException, ConcurrentModificationException;
+
+    /**
+     * Appends or replaces the dcat:distribution entries of an existing dataset
+     * within a single write transaction.
+     * Only the distribution links of the dataset and the descriptions of the linked
+     * distributions are taken from the provided model; everything else is ignored.
+     *
+     * @param datasetUuid The UUID of the dataset to update.
+     * @param distributions The RDF data containing the dataset's new dcat:distribution entries.
+     * @param replace If true, existing distributions are removed before the new ones are added.
+     * @return The URI of the updated dataset.
+     * @throws NoSuchElementException if the dataset with the given UUID is not found.
+     * @throws IllegalArgumentException if the model contains no distributions for the dataset.
+     */
+    String updateDatasetDistributions(String datasetUuid, Model distributions, boolean replace) throws NoSuchElementException;
 }
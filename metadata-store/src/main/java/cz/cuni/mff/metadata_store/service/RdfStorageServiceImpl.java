@@ -1,18 +1,40 @@
 package cz.cuni.mff.metadata_store.service;
 
+import cz.cuni.mff.metadata_store.config.ReplicationRole;
 import cz.cuni.mff.metadata_store.utils.Vocab;
 
+import java.util.ConcurrentModificationException;
 import java.util.NoSuchElementException;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.*;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.Prefixes;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFOps;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Implementation of RdfStorageService using Jena TDB2 Dataset.
@@ -24,15 +46,76 @@ public class RdfStorageServiceImpl implements RdfStorageService {
 
     private final Dataset dataset;
     private final UriService uriService;
+    private final VersionService versionService;
+    private final StorageLayout storageLayout;
+    private final PipelineClosures pipelineClosures;
+    private final PipelineUsages pipelineUsages;
+    private final GroupCommitter<ValidatedGraph> groupCommitter;
+    private final ReplicationRole replicationRole;
+
+    public RdfStorageServiceImpl(Dataset dataset, UriService uriService, VersionService versionService) {
+        this(dataset, uriService, versionService, new DefaultGraphLayout(dataset), false, 1, 0, ReplicationRole.STANDALONE);
+    }
 
     @Autowired
-    public RdfStorageServiceImpl(Dataset dataset, UriService uriService) {
+    public RdfStorageServiceImpl(Dataset dataset, UriService uriService, VersionService versionService, StorageLayout storageLayout,
+                                 @Value("${storage.group-commit.enabled:true}") boolean groupCommitEnabled,
+                                 @Value("${storage.group-commit.max-batch-size:64}") int groupCommitMaxBatchSize,
+                                 @Value("${storage.group-commit.window-ms:1}") long groupCommitWindowMs,
+                                 @Value("${replication.role:standalone}") ReplicationRole replicationRole) {
         this.dataset = dataset;
         this.uriService = uriService;
+        this.versionService = versionService;
+        this.storageLayout = storageLayout;
+        this.pipelineClosures = new PipelineClosures(dataset, storageLayout, versionService);
+        this.pipelineUsages = new PipelineUsages(dataset, storageLayout);
+        this.groupCommitter = groupCommitEnabled
+                ? new GroupCommitter<>(dataset, this::addValidatedGraph, groupCommitMaxBatchSize, Duration.ofMillis(groupCommitWindowMs), "group-committer")
+                : null;
+        this.replicationRole = replicationRole;
+    }
+
+    /**
+     * Builds the usage index of pipelines stored before the index existed. Replicas receive the index from the primary.
+     */
+    @PostConstruct
+    public void buildUsageIndex() {
+        if (replicationRole == ReplicationRole.REPLICA) {
+            return;
+        }
+        List<String> pipelineUris = dataset.calculateRead(() -> dataset.getDefaultModel()
+                .listObjectsOfProperty(Vocab.RootContainer, Vocab.contains).toList().stream()
+                .filter(RDFNode::isURIResource)
+                .map(node -> node.asResource().getURI())
+                .filter(uri -> uri.startsWith(Vocab.PIPE_NS))
+                .toList());
+        if (!dataset.calculateRead(() -> pipelineUsages.isBuilt(pipelineUris))) {
+            dataset.executeWrite(() -> pipelineUsages.rebuild(pipelineUris));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (groupCommitter != null) {
+            groupCommitter.shutdown();
+        }
     }
 
     @Override
     public String storeRdfGraph(Model rdfModel, Resource expectedResourceType) {
+        ValidatedGraph graph = validateRdfGraph(rdfModel, expectedResourceType);
+        if (groupCommitter != null) {
+            groupCommitter.commit(graph);
+        } else {
+            dataset.executeWrite(() -> addValidatedGraph(graph));
+        }
+
+        log.info("Successfully stored RDF graph for: {}", graph.resourceUri());
+        return graph.resourceUri();
+    }
+
+    @Override
+    public ValidatedGraph validateRdfGraph(Model rdfModel, Resource expectedResourceType) {
         if (rdfModel == null || rdfModel.isEmpty()) {
             throw new IllegalArgumentException("Input RDF model cannot be null or empty.");
         }
@@ -47,28 +130,40 @@ public class RdfStorageServiceImpl implements RdfStorageService {
         if (!primaryResource.isURIResource()) {
             throw new IllegalArgumentException("Primary resource found is not a URI resource: " + primaryResource);
         }
-        String primaryResourceUri = primaryResource.getURI();
-        log.debug("Identified primary resource URI: {}", primaryResourceUri);
+        log.debug("Identified primary resource URI: {}", primaryResource.getURI());
+        return new ValidatedGraph(rdfModel, expectedResourceType, primaryResource.getURI());
+    }
 
+    @Override
+    public void storeValidatedGraphs(List<ValidatedGraph> graphs) {
+        dataset.executeWrite(() -> graphs.forEach(this::addValidatedGraph));
+        log.info("Successfully stored {} RDF graphs in one transaction", graphs.size());
+    }
 
-        dataset.executeWrite(() -> {
-            log.info("Storing RDF graph for resource: {}", primaryResourceUri);
-            Model defaultModel = dataset.getDefaultModel();
-            defaultModel.add(rdfModel);
+    /**
+     * Adds a validated graph to the store, links it from the root container, bumps its version
+     * and refreshes the pipeline closures and usage index entries it affects. Must be called inside a write transaction.
+     */
+    private void addValidatedGraph(ValidatedGraph graph) {
+        String primaryResourceUri = graph.resourceUri();
+        Resource expectedResourceType = graph.resourceType();
 
-            if (expectedResourceType.equals(Vocab.Dataset) || expectedResourceType.equals(Vocab.Plugin) || expectedResourceType.equals(Vocab.Plan)) {
-                Resource rootInModel = defaultModel.getResource(Vocab.RootContainer.getURI());
-                Resource primaryResInModel = defaultModel.getResource(primaryResourceUri);
+        log.info("Storing RDF graph for resource: {}", primaryResourceUri);
+        storageLayout.resourceModel(primaryResourceUri).add(graph.model());
 
-                if (!defaultModel.contains(rootInModel, Vocab.contains, primaryResInModel)) {
-                    log.debug("Adding ldp:contains triple for {} to root container {}", primaryResourceUri, Vocab.RootContainer.getURI());
-                    rootInModel.addProperty(Vocab.contains, primaryResInModel);
-                }
-            }
-        });
+        if (expectedResourceType.equals(Vocab.Dataset) || expectedResourceType.equals(Vocab.Plugin) || expectedResourceType.equals(Vocab.Plan)) {
+            Model defaultModel = dataset.getDefaultModel();
+            Resource rootInModel = defaultModel.getResource(Vocab.RootContainer.getURI());
+            Resource primaryResInModel = defaultModel.getResource(primaryResourceUri);
 
-        log.info("Successfully stored RDF graph for: {}", primaryResourceUri);
-        return primaryResourceUri;
+            if (!defaultModel.contains(rootInModel, Vocab.contains, primaryResInModel)) {
+                log.debug("Adding ldp:contains triple for {} to root container {}", primaryResourceUri, Vocab.RootContainer.getURI());
+                rootInModel.addProperty(Vocab.contains, primaryResInModel);
+            }
+        }
+        versionService.incrementVersion(primaryResourceUri);
+        pipelineClosures.refresh(primaryResourceUri, graph.model());
+        pipelineUsages.refresh(primaryResourceUri);
     }
 
     private Model sparqlConstruct(String queryString) {
@@ -76,7 +171,7 @@ public class RdfStorageServiceImpl implements RdfStorageService {
         final Model resultModel = ModelFactory.createDefaultModel();
 
         dataset.executeRead(() -> {
-            try (QueryExecution qExec = QueryExecutionFactory.create(queryString, dataset)) {
+            try (QueryExecution qExec = QueryExecutionFactory.create(queryString, storageLayout.queryView())) {
                 qExec.execConstruct(resultModel);
                 resultModel.setNsPrefixes(dataset.getDefaultModel().getNsPrefixMap()); // Copy prefixes
             } catch (Exception e) {
@@ -99,19 +194,14 @@ public class RdfStorageServiceImpl implements RdfStorageService {
         Model resultModel = ModelFactory.createDefaultModel();
 
         dataset.executeRead(() -> {
-            Model defaultModel = dataset.getDefaultModel();
-            Resource pipelineRes = defaultModel.getResource(pipelineUri);
-            Resource datasetRes = defaultModel.getResource(datasetUri);
-            Resource pluginRes = defaultModel.getResource(pluginUri);
-
-            if (defaultModel.containsResource(pipelineRes)) {
-                resultModel.add(describeResource(pipelineRes.getURI()));
+            if (storageLayout.contains(pipelineUri)) {
+                resultModel.add(describeResource(pipelineUri));
                 log.debug("Found resource as pipeline: {}", pipelineUri);
-            } else if (defaultModel.containsResource(datasetRes)) {
-                resultModel.add(describeResource(datasetRes.getURI()));
+            } else if (storageLayout.contains(datasetUri)) {
+                resultModel.add(describeResource(datasetUri));
                 log.debug("Found resource as dataset: {}", datasetUri);
-            } else if (defaultModel.containsResource(pluginRes)) {
-                resultModel.add(describeResource(pluginRes.getURI()));
+            } else if (storageLayout.contains(pluginUri)) {
+                resultModel.add(describeResource(pluginUri));
                 log.debug("Found resource as plugin: {}", pluginUri);
             }
         });
@@ -129,7 +219,7 @@ public class RdfStorageServiceImpl implements RdfStorageService {
                     """.formatted(resourceUuid);
 
             dataset.executeRead(() -> {
-                try (QueryExecution qExec = QueryExecutionFactory.create(queryString, dataset)) {
+                try (QueryExecution qExec = QueryExecutionFactory.create(queryString, storageLayout.queryView())) {
                     Model queryResult = qExec.execConstruct();
                     if (!queryResult.isEmpty()) {
                         resultModel.add(queryResult);
@@ -150,107 +240,148 @@ public class RdfStorageServiceImpl implements RdfStorageService {
         return describeResourceOrThrow(resourceUri);
     }
 
+    @Override
+    public VersionedModel getVersionedPipelineDescription(String pipelineUuid) throws NoSuchElementException {
+        String resourceUri = uriService.buildPipelineUri(pipelineUuid);
+        return describeVersionedResourceOrThrow(resourceUri);
+    }
+
     @Override
     public Model getPipelineDescriptionWithDependencies(String pipelineUuid) throws NoSuchElementException {
+        return getVersionedPipelineDescriptionWithDependencies(pipelineUuid).model();
+    }
+
+    @Override
+    public VersionedModel getVersionedPipelineDescriptionWithDependencies(String pipelineUuid) throws NoSuchElementException {
         String resourceUri = uriService.buildPipelineUri(pipelineUuid);
-        Model pipelineModel = describeResourceOrThrow(resourceUri);
 
-        String queryString = """
-                PREFIX dcat:    <http://www.w3.org/ns/dcat#>
-                PREFIX dcterms: <http://purl.org/dc/terms/>
-                PREFIX df:      <http://localhost:8080/ns/df#>
-                PREFIX ds:      <http://localhost:8080/ns/ds#>
-                PREFIX p-plan:  <http://purl.org/net/p-plan#>
-                PREFIX prov:    <http://www.w3.org/ns/prov#>
-                PREFIX rdf:     <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
-                PREFIX rdfs:    <http://www.w3.org/2000/01/rdf-schema#>
-                
-                # This query combines several targeted CONSTRUCT queries to build a complete
-                # graph of the pipeline and its specific, known dependency types.
-                CONSTRUCT {
-                  # Core pipeline properties
-                  ?pipeline ?p ?o .
-                  ?s ?p_inv ?pipeline .
-                
-                  # Steps, their properties, and their plugins/distributions
-                  ?step ?step_p ?step_o .
-                  ?plugin ?plugin_p ?plugin_o .
-                  ?plugin_dist ?plugin_dist_p ?plugin_dist_o .
-                
-                  # Variables, their properties, and their specialized datasets/distributions
-                  ?variable ?var_p ?var_o .
-                  ?dataset ?dataset_p ?dataset_o .
-                  ?dataset_dist ?dataset_dist_p ?dataset_dist_o .
-                
-                  # Datasets generated by the pipeline and their distributions
-                  ?generated_dataset ?gds_p ?gds_o .
-                  ?gds_dist ?gds_dist_p ?gds_dist_o .
-                }
-                WHERE {
-                  # Bind the specific pipeline IRI from the Java code.
-                  VALUES ?pipeline { <%s> }
-                
-                  {
-                    # 1. Get all triples for the pipeline itself (outgoing and incoming).
-                    { ?pipeline ?p ?o . }
-                    UNION
-                    { ?s ?p_inv ?pipeline . }
-                  }
-                  UNION
-                  {
-                    # 2. Get all steps in the plan, their properties, their plugins, and distributions.
-                    # The step is the subject of the isStepOfPlan property.
-                    ?step p-plan:isStepOfPlan ?pipeline ;
-                          ?step_p ?step_o .
-                    OPTIONAL {
-                      ?step df:usesPlugin ?plugin .
-                      ?plugin ?plugin_p ?plugin_o .
-                      OPTIONAL {
-                        ?plugin dcat:distribution ?plugin_dist .
-                        ?plugin_dist ?plugin_dist_p ?plugin_dist_o .
-                      }
-                    }
-                  }
-                  UNION
-                  {
-                    # 3. Get all variables in the plan, their properties, their specialized datasets, and distributions.
-                    # The variable is the subject of the isVariableOfPlan property.
-                    ?variable p-plan:isVariableOfPlan ?pipeline ;
-                              ?var_p ?var_o .
-                    OPTIONAL {
-                      ?variable prov:specializationOf ?dataset .
-                      ?dataset ?dataset_p ?dataset_o .
-                      OPTIONAL {
-                        ?dataset dcat:distribution ?dataset_dist .
-                        ?dataset_dist ?dataset_dist_p ?dataset_dist_o .
-                      }
-                    }
-                  }
-                  UNION
-                  {
-                    # 4. Get any datasets that were generated by this pipeline and their properties/distributions.
-                    ?generated_dataset prov:wasGeneratedBy ?pipeline ;
-                                       ?gds_p ?gds_o .
-                    OPTIONAL {
-                      ?generated_dataset dcat:distribution ?gds_dist .
-                      ?gds_dist ?gds_dist_p ?gds_dist_o .
+        VersionedModel pipelineModel = dataset.calculateRead(() -> {
+            checkExists(resourceUri);
+            Model closure = pipelineClosures.read(resourceUri);
+            if (closure.isEmpty()) {
+                // Pipelines stored before closures were materialized
+                log.debug("No materialized closure for pipeline {}, computing it", resourceUri);
+                closure = pipelineClosures.compute(resourceUri);
+            }
+            closure.setNsPrefixes(dataset.getDefaultModel().getNsPrefixMap());
+            return new VersionedModel(closure, pipelineClosures.version(resourceUri));
+        });
+
+        log.debug("Found {} triples in the closure of pipeline: {}", pipelineModel.model().size(), resourceUri);
+        return pipelineModel;
+    }
+
+    @Override
+    public PipelineDependencies resolvePipelineDependencies(String pipelineUuid, int maxDepth) throws NoSuchElementException, IllegalStateException {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Dependency depth must not be negative: " + maxDepth);
+        }
+        String resourceUri = uriService.buildPipelineUri(pipelineUuid);
+
+        return dataset.calculateRead(() -> {
+            if (!storageLayout.contains(resourceUri)) {
+                log.warn("Pipeline not found: {}", resourceUri);
+                throw new NoSuchElementException("Pipeline with URI " + resourceUri + " not found.");
+            }
+
+            Model view = storageLayout.queryView().getDefaultModel();
+            Map<String, List<String>> dependsOn = new LinkedHashMap<>();
+            Map<String, Integer> depths = new HashMap<>(Map.of(resourceUri, 0));
+            Deque<String> queue = new ArrayDeque<>(List.of(resourceUri));
+            boolean truncated = false;
+
+            while (!queue.isEmpty()) {
+                String pipelineUri = queue.poll();
+                List<String> upstream = upstreamPipelines(view, pipelineUri);
+                int depth = depths.get(pipelineUri);
+                if (depth >= maxDepth) {
+                    truncated |= upstream.stream().anyMatch(uri -> !depths.containsKey(uri));
+                    upstream = upstream.stream().filter(depths::containsKey).toList();
+                } else {
+                    for (String uri : upstream) {
+                        if (depths.putIfAbsent(uri, depth + 1) == null) {
+                            queue.add(uri);
+                        }
                     }
-                  }
                 }
-                """.formatted(resourceUri);
+                dependsOn.put(pipelineUri, upstream);
+            }
 
-        log.debug("Executing CONSTRUCT query to find dependencies for pipeline: {}", resourceUri);
-        dataset.executeRead(() -> {
-            try (QueryExecution qExec = QueryExecutionFactory.create(queryString, dataset)) {
-                Model dependenciesModel = qExec.execConstruct();
-                pipelineModel.add(dependenciesModel);
-                log.debug("Found {} dependencies for pipeline: {}", dependenciesModel.size(), resourceUri);
-            } catch (Exception e) {
-                log.error("Error executing dependency query for pipeline {}", resourceUri, e);
+            List<String> executionOrder = new ArrayList<>();
+            orderDependencies(resourceUri, dependsOn, new HashSet<>(), new ArrayList<>(), executionOrder);
+
+            Model graph = ModelFactory.createDefaultModel();
+            for (String pipelineUri : executionOrder) {
+                Model closure = pipelineClosures.read(pipelineUri);
+                graph.add(closure.isEmpty() ? pipelineClosures.compute(pipelineUri) : closure);
             }
+            graph.setNsPrefixes(dataset.getDefaultModel().getNsPrefixMap());
+
+            log.debug("Resolved {} pipelines for {} up to depth {}", executionOrder.size(), resourceUri, maxDepth);
+            return new PipelineDependencies(graph, new DependencyPlan(resourceUri, executionOrder, dependsOn, truncated));
         });
+    }
 
-        return pipelineModel;
+    /**
+     * Finds the stored pipelines that generated the datasets specialized by the variables of a pipeline.
+     * A pipeline consuming its own outputs does not depend on itself.
+     */
+    private List<String> upstreamPipelines(Model view, String pipelineUri) {
+        Set<String> upstream = new LinkedHashSet<>();
+        for (Resource variable : view.listSubjectsWithProperty(Vocab.isVariableOfPlan, view.getResource(pipelineUri)).toList()) {
+            for (RDFNode specialized : view.listObjectsOfProperty(variable, Vocab.specializationOf).toList()) {
+                if (!specialized.isResource()) {
+                    continue;
+                }
+                for (RDFNode generator : view.listObjectsOfProperty(specialized.asResource(), Vocab.wasGeneratedBy).toList()) {
+                    if (generator.isURIResource() && !generator.asResource().getURI().equals(pipelineUri)
+                            && storageLayout.contains(generator.asResource().getURI())) {
+                        upstream.add(generator.asResource().getURI());
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(upstream);
+    }
+
+    /**
+     * Appends a pipeline to the execution order after all pipelines it depends on (depth-first post-order).
+     *
+     * @throws IllegalStateException if a pipeline is reached again while its own dependencies are being ordered.
+     */
+    private void orderDependencies(String pipelineUri, Map<String, List<String>> dependsOn, Set<String> done,
+                                   List<String> path, List<String> executionOrder) {
+        if (done.contains(pipelineUri)) {
+            return;
+        }
+        int cycleStart = path.indexOf(pipelineUri);
+        if (cycleStart >= 0) {
+            List<String> cycle = new ArrayList<>(path.subList(cycleStart, path.size()));
+            cycle.add(pipelineUri);
+            throw new IllegalStateException("Pipeline dependency cycle: " + String.join(" -> ", cycle));
+        }
+
+        path.add(pipelineUri);
+        for (String upstream : dependsOn.getOrDefault(pipelineUri, List.of())) {
+            orderDependencies(upstream, dependsOn, done, path, executionOrder);
+        }
+        path.removeLast();
+        done.add(pipelineUri);
+        executionOrder.add(pipelineUri);
+    }
+
+    @Override
+    public Optional<String> getPipelineExecutionPlan(String pipelineUuid) throws NoSuchElementException {
+        String resourceUri = uriService.buildPipelineUri(pipelineUuid);
+        return dataset.calculateRead(() -> {
+            if (!storageLayout.contains(resourceUri)) {
+                log.warn("Pipeline not found: {}", resourceUri);
+                throw new NoSuchElementException("Pipeline with URI " + resourceUri + " not found.");
+            }
+            Model resourceModel = storageLayout.resourceModel(resourceUri);
+            Statement plan = resourceModel.getResource(resourceUri).getProperty(Vocab.executionPlan);
+            return Optional.ofNullable(plan).map(Statement::getString);
+        });
     }
 
     @Override
@@ -259,12 +390,59 @@ public class RdfStorageServiceImpl implements RdfStorageService {
         return describeResourceOrThrow(resourceUri);
     }
 
+    @Override
+    public VersionedModel getVersionedDatasetDescription(String datasetUuid) throws NoSuchElementException {
+        String resourceUri = uriService.buildDatasetUri(datasetUuid);
+        return describeVersionedResourceOrThrow(resourceUri);
+    }
+
     @Override
     public Model getPluginDescription(String pluginUuid) throws NoSuchElementException {
         String resourceUri = uriService.buildPluginUri(pluginUuid);
         return describeResourceOrThrow(resourceUri);
     }
 
+    @Override
+    public VersionedModel getVersionedPluginDescription(String pluginUuid) throws NoSuchElementException {
+        String resourceUri = uriService.buildPluginUri(pluginUuid);
+        return describeVersionedResourceOrThrow(resourceUri);
+    }
+
+    @Override
+    public ResourceUsages getDatasetUsages(String datasetUuid) throws NoSuchElementException {
+        String resourceUri = uriService.buildDatasetUri(datasetUuid);
+        return dataset.calculateRead(() -> {
+            checkExists(resourceUri);
+            return pipelineUsages.datasetUsages(resourceUri);
+        });
+    }
+
+    @Override
+    public ResourceUsages getPluginUsages(String pluginUuid) throws NoSuchElementException {
+        String resourceUri = uriService.buildPluginUri(pluginUuid);
+        return dataset.calculateRead(() -> {
+            checkExists(resourceUri);
+            return pipelineUsages.pluginUsages(resourceUri);
+        });
+    }
+
+    private void checkExists(String resourceUri) throws NoSuchElementException {
+        if (!storageLayout.contains(resourceUri)) {
+            log.warn("Resource not found: {}", resourceUri);
+            throw new NoSuchElementException("Resource with URI " + resourceUri + " not found.");
+        }
+    }
+
+    private VersionedModel describeVersionedResourceOrThrow(String resourceUri) throws NoSuchElementException {
+        return dataset.calculateRead(() -> {
+            if (!storageLayout.contains(resourceUri)) {
+                log.warn("Resource not found: {}", resourceUri);
+                throw new NoSuchElementException("Resource with URI " + resourceUri + " not found.");
+            }
+            return new VersionedModel(describeResource(resourceUri), versionService.getVersion(resourceUri));
+        });
+    }
+
     private Model describeResourceOrThrow(String resourceUri) throws NoSuchElementException {
         final Model resourceModel = ModelFactory.createDefaultModel();
         dataset.executeRead(() -> {
@@ -282,23 +460,12 @@ public class RdfStorageServiceImpl implements RdfStorageService {
     }
 
     private Model describeResource(String resourceUri) {
-        String queryString = """
-                PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
-                CONSTRUCT {
-                  ?s ?p ?o .
-                  ?o ?p2 ?o2 .
-                }
-                WHERE {
-                  BIND(<%s> AS ?s)
-                  ?s ?p ?o .
-                  OPTIONAL {
-                    FILTER(ISBLANK(?o))
-                    ?o ?p2 ?o2 .
-                  }
-                }
-                """.formatted(resourceUri);
-
-        return sparqlConstruct(queryString);
+        log.debug("Describing resource: {}", resourceUri);
+        return dataset.calculateRead(() -> {
+            Model resultModel = storageLayout.describe(resourceUri);
+            resultModel.setNsPrefixes(dataset.getDefaultModel().getNsPrefixMap());
+            return resultModel;
+        });
     }
 
 
@@ -331,13 +498,17 @@ public class RdfStorageServiceImpl implements RdfStorageService {
                 PREFIX dcat: <http://www.w3.org/ns/dcat#>
                 PREFIX df: <http://example.org/ns/df#>
                 
-                CONSTRUCT { ?s ?p ?o . ?s dcat:distribution ?dist . ?dist ?dp ?do }
+                CONSTRUCT { ?s ?p ?o . ?s dcat:distribution ?dist . ?dist ?dp ?do . ?do ?np ?no }
                 WHERE {
                   ?s rdf:type <%s> .
                   ?s ?p ?o .
                   OPTIONAL {
                     ?s dcat:distribution ?dist .
                     ?dist ?dp ?do .
+                    OPTIONAL {
+                      FILTER(ISBLANK(?do))
+                      ?do ?np ?no .
+                    }
                   }
                 }
                 """.formatted(resourceType.getURI());
@@ -351,70 +522,162 @@ public class RdfStorageServiceImpl implements RdfStorageService {
         final Model storeModelCopy = ModelFactory.createDefaultModel();
 
         dataset.executeRead(() -> {
-            Model defaultModel = dataset.getDefaultModel();
-            storeModelCopy.setNsPrefixes(defaultModel.getNsPrefixMap());
-            storeModelCopy.add(defaultModel);
+            storeModelCopy.setNsPrefixes(dataset.getDefaultModel().getNsPrefixMap());
+            storeModelCopy.add(storageLayout.queryView().getDefaultModel());
         });
 
         log.info("Retrieved {} triples from the default graph.", storeModelCopy.size());
         return storeModelCopy;
     }
 
+    @Override
+    public void writeEntireStore(OutputStream out, RDFFormat format) {
+        if (!StreamRDFWriter.registered(format)) {
+            RDFDataMgr.write(out, getEntireStoreModel(), format);
+            return;
+        }
+
+        dataset.executeRead(() -> {
+            StreamRDF stream = StreamRDFWriter.getWriterStream(out, format);
+            stream.start();
+            StreamRDFOps.sendGraphToStream(storageLayout.queryView().getDefaultModel().getGraph(), stream, null,
+                    Prefixes.adapt(dataset.getDefaultModel().getGraph()));
+            stream.finish();
+        });
+        log.info("Streamed the default graph as {}", format);
+    }
+
     @Override
     public String updateDataset(String datasetUuid, Model rdfData) throws NoSuchElementException {
+        updateDataset(datasetUuid, rdfData, null);
+        return uriService.buildDatasetUri(datasetUuid);
+    }
+
+    @Override
+    public long updateDataset(String datasetUuid, Model rdfData, String ifMatch) throws NoSuchElementException, ConcurrentModificationException {
         String resourceUri = uriService.buildDatasetUri(datasetUuid);
         log.info("Updating dataset with URI: {}", resourceUri);
+        return overwriteResource(resourceUri, "Dataset", rdfData, ifMatch);
+    }
+
+    @Override
+    public String updatePlugin(String pluginUuid, Model rdfData) throws NoSuchElementException {
+        updatePlugin(pluginUuid, rdfData, null);
+        return uriService.buildPluginUri(pluginUuid);
+    }
+
+    @Override
+    public long updatePlugin(String pluginUuid, Model rdfData, String ifMatch) throws NoSuchElementException, ConcurrentModificationException {
+        String resourceUri = uriService.buildPluginUri(pluginUuid);
+        log.info("Updating plugin with URI: {}", resourceUri);
+        return overwriteResource(resourceUri, "Plugin", rdfData, ifMatch);
+    }
 
+    /**
+     * Replaces the triples of a resource with the provided RDF data in a single write transaction,
+     * checking the If-Match precondition against the resource version first.
+     *
+     * @param resourceUri The URI of the resource to overwrite.
+     * @param resourceLabel Human-readable resource kind used in messages.
+     * @param rdfData The RDF data to overwrite the resource with.
+     * @param ifMatch The If-Match header value, or null for an unconditional update.
+     * @return The new version of the resource.
+     */
+    private long overwriteResource(String resourceUri, String resourceLabel, Model rdfData, String ifMatch) {
         if (rdfData == null || rdfData.isEmpty()) {
             throw new IllegalArgumentException("Input RDF model cannot be null or empty.");
         }
 
-        dataset.executeWrite(() -> {
-            Model defaultModel = dataset.getDefaultModel();
-            Resource resource = defaultModel.getResource(resourceUri);
-            if (resource == null) {
-                log.warn("Dataset not found for URI: {}", resourceUri);
-                throw new NoSuchElementException("Dataset with URI " + resourceUri + " not found.");
+        long newVersion = dataset.calculateWrite(() -> {
+            if (!storageLayout.contains(resourceUri)) {
+                log.warn("{} not found for URI: {}", resourceLabel, resourceUri);
+                throw new NoSuchElementException(resourceLabel + " with URI " + resourceUri + " not found.");
             }
 
-            // Clear existing triples for this resource
-            defaultModel.removeAll(resource, null, null);
+            versionService.checkPrecondition(resourceUri, ifMatch);
 
-            // Add the new RDF data
-            defaultModel.add(rdfData);
-            log.info("Successfully updated dataset with URI: {}", resourceUri);
+            // Clear existing triples for this resource and add the new RDF data
+            storageLayout.clear(resourceUri);
+            storageLayout.resourceModel(resourceUri).add(rdfData);
+            pipelineClosures.refresh(resourceUri, rdfData);
+            pipelineUsages.refresh(resourceUri);
+            log.info("Successfully updated {} with URI: {}", resourceLabel.toLowerCase(), resourceUri);
+            return versionService.incrementVersion(resourceUri);
         });
 
-        log.debug("Updated dataset with URI: {} with {} triples", resourceUri, rdfData.size());
-        return resourceUri;
+        log.debug("Updated {} with URI: {} with {} triples, new version {}", resourceLabel.toLowerCase(), resourceUri, rdfData.size(), newVersion);
+        return newVersion;
     }
 
     @Override
-    public String updatePlugin(String pluginUuid, Model rdfData) throws NoSuchElementException {
-        String resourceUri = uriService.buildPluginUri(pluginUuid);
-        log.info("Updating plugin with URI: {}", resourceUri);
+    public String updateDatasetDistributions(String datasetUuid, Model distributions, boolean replace) throws NoSuchElementException {
+        String resourceUri = uriService.buildDatasetUri(datasetUuid);
+        log.info("{} distributions of dataset with URI: {}", replace ? "Replacing" : "Appending", resourceUri);
 
-        if (rdfData == null || rdfData.isEmpty()) {
+        if (distributions == null || distributions.isEmpty()) {
             throw new IllegalArgumentException("Input RDF model cannot be null or empty.");
         }
 
+        Model distributionModel = extractDistributions(distributions, distributions.getResource(resourceUri));
+        if (distributionModel.isEmpty()) {
+            throw new IllegalArgumentException("Input RDF model does not contain any dcat:distribution of: " + resourceUri);
+        }
+
         dataset.executeWrite(() -> {
-            Model defaultModel = dataset.getDefaultModel();
-            Resource resource = defaultModel.getResource(resourceUri);
-            if (resource == null) {
-                log.warn("Plugin not found for URI: {}", resourceUri);
-                throw new NoSuchElementException("Plugin with URI " + resourceUri + " not found.");
+            Model resourceModel = storageLayout.resourceModel(resourceUri);
+            Resource resource = resourceModel.getResource(resourceUri);
+            if (!resourceModel.contains(resource, Vocab.type, Vocab.Dataset)) {
+                log.warn("Dataset not found for URI: {}", resourceUri);
+                throw new NoSuchElementException("Dataset with URI " + resourceUri + " not found.");
             }
 
-            // Clear existing triples for this resource
-            defaultModel.removeAll(resource, null, null);
+            if (replace) {
+                Model existing = extractDistributions(resourceModel, resource);
+                log.debug("Removing {} existing distribution triples of {}", existing.size(), resourceUri);
+                resourceModel.remove(existing);
+            }
 
-            // Add the new RDF data
-            defaultModel.add(rdfData);
-            log.info("Successfully updated plugin with URI: {}", resourceUri);
+            resourceModel.add(distributionModel);
+            versionService.incrementVersion(resourceUri);
+            pipelineClosures.refresh(resourceUri, distributionModel);
         });
 
-        log.debug("Updated plugin with URI: {} with {} triples", resourceUri, rdfData.size());
+        log.debug("Updated distributions of dataset with URI: {} with {} triples", resourceUri, distributionModel.size());
         return resourceUri;
     }
+
+    /**
+     * Collects the dcat:distribution links of a resource together with the descriptions
+     * of the linked distributions into a new model, including blank nodes nested in them
+     * such as checksums.
+     *
+     * @param source The model to read from.
+     * @param resource The resource whose distributions are collected.
+     * @return A model containing the distribution links and distribution descriptions.
+     */
+    private Model extractDistributions(Model source, Resource resource) {
+        Model result = ModelFactory.createDefaultModel();
+        for (Statement link : source.listStatements(resource, Vocab.distribution, (RDFNode) null).toList()) {
+            result.add(link);
+            if (link.getObject().isResource()) {
+                collectDescription(source, link.getObject().asResource(), result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collects the triples of a subject, following blank node objects.
+     */
+    private void collectDescription(Model source, Resource subject, Model target) {
+        for (Statement statement : source.listStatements(subject, null, (RDFNode) null).toList()) {
+            if (target.contains(statement)) {
+                continue;
+            }
+            target.add(statement);
+            if (statement.getObject().isAnon()) {
+                collectDescription(source, statement.getObject().asResource(), target);
+            }
+        }
+    }
 }
@@ -0,0 +1,217 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.config.ReplicationRole;
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.rdfpatch.changes.RDFChangesApply;
+import org.apache.jena.rdfpatch.text.RDFPatchReaderText;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a read-only replica up to date by tailing the change log of its primary over HTTP.
+ * A fresh replica first loads a snapshot of the primary, then applies every page of change log
+ * entries in one write transaction, together with the sequence number of the last applied entry.
+ * A replica that was stopped therefore resumes exactly where it left off, unless the primary has compacted the
+ * entries it missed in the meantime, in which case it loads a fresh snapshot.
+ * Only active when {@code replication.role} is {@code replica}.
+ */
+@Service
+public class ReplicaService implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaService.class);
+
+    private static final String REPLICATION_PATH = "/api/v1/replication";
+
+    private final Dataset dataset;
+    private final ReplicationRole role;
+    private final AtomicLong appliedSequence = new AtomicLong(-1);
+
+    @Value("${replication.primary-url:}")
+    private String primaryUrl;
+
+    @Value("${replication.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${replication.batch-size:500}")
+    private int batchSize;
+
+    @Value("${replication.replica-id:}")
+    private String replicaId;
+
+    private RestClient restClient;
+    private ScheduledExecutorService poller;
+
+    @Autowired
+    public ReplicaService(Dataset dataset, @Value("${replication.role:standalone}") ReplicationRole role) {
+        this.dataset = dataset;
+        this.role = role;
+    }
+
+    /**
+     * @return The sequence number of the last change log entry applied to this replica,
+     * or -1 if the replica has not been initialized from its primary yet.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence.get();
+    }
+
+    @Override
+    public void start() {
+        if (role != ReplicationRole.REPLICA) {
+            return;
+        }
+        if (primaryUrl == null || primaryUrl.isBlank()) {
+            throw new IllegalStateException("replication.primary-url must be set for a replica");
+        }
+
+        if (replicaId == null || replicaId.isBlank()) {
+            replicaId = UUID.randomUUID().toString();
+        }
+        restClient = RestClient.builder().baseUrl(primaryUrl + REPLICATION_PATH).build();
+        dataset.calculateRead(this::readAppliedSequence).ifPresent(appliedSequence::set);
+
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Started replica of {} at sequence {}", primaryUrl, appliedSequence.get());
+    }
+
+    @Override
+    public void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return poller != null;
+    }
+
+    private void poll() {
+        try {
+            if (appliedSequence.get() < 0) {
+                loadSnapshot();
+            }
+
+            ChangeLogPage page;
+            do {
+                page = restClient.get()
+                        .uri(uriBuilder -> uriBuilder.path("/log")
+                                .queryParam("after", appliedSequence.get())
+                                .queryParam("limit", batchSize)
+                                .queryParam("replica", replicaId)
+                                .build())
+                        .retrieve()
+                        .body(ChangeLogPage.class);
+                if (page == null || page.entries().isEmpty()) {
+                    return;
+                }
+                apply(page);
+            } while (appliedSequence.get() < page.latestSequence());
+        } catch (HttpClientErrorException.Gone e) {
+            log.warn("Primary {} has compacted the change log after sequence {}, reloading the snapshot", primaryUrl, appliedSequence.get());
+            appliedSequence.set(-1);
+        } catch (RuntimeException e) {
+            log.warn("Failed to replicate from {}: {}", primaryUrl, e.getMessage());
+        }
+    }
+
+    private void loadSnapshot() {
+        log.info("Loading initial snapshot from {}", primaryUrl);
+        restClient.get().uri("/snapshot").exchange((request, response) -> {
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                throw new IllegalStateException("Snapshot request failed with status " + response.getStatusCode());
+            }
+
+            InputStream body = response.getBody();
+            dataset.executeWrite(() -> {
+                DatasetGraph dsg = dataset.asDatasetGraph();
+                dsg.clear();
+                SnapshotApply snapshot = new SnapshotApply(dsg);
+                new RDFPatchReaderText(body).apply(snapshot);
+                if (snapshot.sequence == null) {
+                    throw new IllegalStateException("Snapshot does not declare its change log sequence");
+                }
+                writeAppliedSequence(snapshot.sequence);
+                appliedSequence.set(snapshot.sequence);
+            });
+            return null;
+        });
+        log.info("Loaded snapshot of {} at sequence {}", primaryUrl, appliedSequence.get());
+    }
+
+    private void apply(ChangeLogPage page) {
+        dataset.executeWrite(() -> {
+            long expected = appliedSequence.get() + 1;
+            for (ChangeLogEntry entry : page.entries()) {
+                if (entry.sequence() != expected) {
+                    throw new IllegalStateException("Expected change log entry " + expected + " but got " + entry.sequence());
+                }
+                RDFPatchOps.applyChange(dataset.asDatasetGraph(), new ByteArrayInputStream(entry.patch().getBytes(StandardCharsets.UTF_8)));
+                expected++;
+            }
+            writeAppliedSequence(expected - 1);
+        });
+        appliedSequence.set(page.entries().getLast().sequence());
+        log.debug("Applied change log up to sequence {} of {}", appliedSequence.get(), page.latestSequence());
+    }
+
+    private OptionalLong readAppliedSequence() {
+        Model replicationModel = dataset.getNamedModel(Vocab.ReplicationGraph.getURI());
+        Statement statement = replicationModel.getResource(Vocab.ReplicationGraph.getURI()).getProperty(Vocab.sequence);
+        return statement == null ? OptionalLong.empty() : OptionalLong.of(statement.getLong());
+    }
+
+    private void writeAppliedSequence(long sequence) {
+        Model replicationModel = dataset.getNamedModel(Vocab.ReplicationGraph.getURI());
+        Resource replication = replicationModel.getResource(Vocab.ReplicationGraph.getURI());
+        replication.removeAll(Vocab.sequence);
+        replication.addLiteral(Vocab.sequence, sequence);
+    }
+
+    /**
+     * Applies a snapshot patch and remembers the change log sequence it declares.
+     */
+    private static final class SnapshotApply extends RDFChangesApply {
+        private Long sequence;
+
+        private SnapshotApply(DatasetGraph dsg) {
+            super(dsg);
+        }
+
+        @Override
+        public void header(String field, Node value) {
+            if (ChangeLogService.SNAPSHOT_SEQUENCE_HEADER.equals(field)) {
+                sequence = ((Number) value.getLiteralValue()).longValue();
+            }
+        }
+    }
+}
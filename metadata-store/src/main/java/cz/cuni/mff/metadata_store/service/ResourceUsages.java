@@ -0,0 +1,13 @@
+package cz.cuni.mff.metadata_store.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pipelines referencing a plugin or a dataset.
+ *
+ * @param resource The URI of the plugin or dataset.
+ * @param pipelines For every pipeline using the resource, the steps using the plugin or the variables specializing the dataset.
+ */
+public record ResourceUsages(String resource, Map<String, List<String>> pipelines) {
+}
@@ -0,0 +1,13 @@
+package cz.cuni.mff.metadata_store.service;
+
+/**
+ * A resource matching a full-text search.
+ *
+ * @param uri The URI of the resource.
+ * @param type The kind of the resource: dataset, plugin or pipeline.
+ * @param title The title of the resource, or null if it has none.
+ * @param description The description of the resource, or null if it has none.
+ * @param score The relevance of the resource to the query.
+ */
+public record SearchHit(String uri, String type, String title, String description, float score) {
+}
@@ -0,0 +1,442 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdfpatch.RDFChanges;
+import org.apache.jena.rdfpatch.system.DatasetGraphChanges;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lucene full-text index over the titles, descriptions and keywords of datasets, plugins and pipelines.
+ * The index is kept in step with the store by {@link #monitor(DatasetGraph, DatasetGraph)}: the documents of all
+ * resources changed by a write transaction are rebuilt inside that transaction and committed to Lucene right after
+ * the store commits, in commit order. Each transaction also bumps a generation counter stored in the
+ * {@code df:search} graph and in the Lucene commit, so an index left behind by a crash is detected
+ * and rebuilt by {@link #synchronize(DatasetGraph)} on startup.
+ * A resource is read from the default graph and from the named graph named after it, which covers both storage layouts.
+ */
+public class SearchIndex implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+    private static final String URI_FIELD = "uri";
+    private static final String TYPE_FIELD = "type";
+    private static final String TITLE_FIELD = "title";
+    private static final String DESCRIPTION_FIELD = "description";
+    private static final String KEYWORD_FIELD = "keyword";
+    private static final String GENERATION_KEY = "generation";
+
+    private static final Node SEARCH_GRAPH = Vocab.SearchIndexGraph.asNode();
+    private static final Node SEQUENCE = Vocab.sequence.asNode();
+
+    /**
+     * Indexed resource types and the names they are reported under.
+     */
+    private static final Map<Node, String> RESOURCE_TYPES = new LinkedHashMap<>();
+    static {
+        RESOURCE_TYPES.put(Vocab.Dataset.asNode(), "dataset");
+        RESOURCE_TYPES.put(Vocab.Plugin.asNode(), "plugin");
+        RESOURCE_TYPES.put(Vocab.Plan.asNode(), "pipeline");
+    }
+
+    private static final Map<String, Float> FIELD_BOOSTS = Map.of(TITLE_FIELD, 3f, KEYWORD_FIELD, 2f, DESCRIPTION_FIELD, 1f);
+
+    private final StandardAnalyzer analyzer = new StandardAnalyzer();
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final long committedGeneration;
+
+    /**
+     * Serializes publishing of index updates in the commit order of the store.
+     */
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final ThreadLocal<Set<Node>> touched = new ThreadLocal<>();
+    private final ThreadLocal<PendingUpdate> pending = new ThreadLocal<>();
+
+    private record PendingUpdate(long generation, Map<String, Document> documents) {
+    }
+
+    /**
+     * @param directory The Lucene directory holding the index.
+     * @throws IOException If the index cannot be opened.
+     */
+    public SearchIndex(Directory directory) throws IOException {
+        this.committedGeneration = DirectoryReader.indexExists(directory)
+                ? Long.parseLong(SegmentInfos.readLatestCommit(directory).getUserData().getOrDefault(GENERATION_KEY, "-1"))
+                : -1;
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+    }
+
+    /**
+     * @return The names resources are reported under, in facet order.
+     */
+    public static List<String> resourceTypes() {
+        return List.copyOf(RESOURCE_TYPES.values());
+    }
+
+    /**
+     * Wraps a dataset so that every committed write transaction updates the index.
+     *
+     * @param dsg The dataset to monitor.
+     * @param base The unwrapped dataset, used to read resources and to store the generation counter without
+     *             the write being recorded by other monitors.
+     * @return The monitored dataset.
+     */
+    public DatasetGraph monitor(DatasetGraph dsg, DatasetGraph base) {
+        return new DatasetGraphChanges(dsg, new TouchedSubjects(base)) {
+            @Override
+            public void commit() {
+                try {
+                    super.commit();
+                } catch (RuntimeException e) {
+                    discard();
+                    throw e;
+                }
+                publish();
+            }
+
+            @Override
+            public void abort() {
+                discard();
+                super.abort();
+            }
+        };
+    }
+
+    /**
+     * Rebuilds the whole index if it does not correspond to the current state of the store,
+     * e.g. because it is new or the process stopped between a store commit and the index commit.
+     *
+     * @param base The unwrapped dataset.
+     */
+    public void synchronize(DatasetGraph base) {
+        long storeGeneration = Txn.calculateRead(base, () -> generation(base));
+        if (storeGeneration == committedGeneration) {
+            log.info("Search index is up to date at generation {}", committedGeneration);
+            return;
+        }
+
+        log.info("Search index is at generation {} but the store at {}, rebuilding", committedGeneration, storeGeneration);
+        Txn.executeRead(base, () -> {
+            try {
+                writer.deleteAll();
+                int indexed = 0;
+                for (Node type : RESOURCE_TYPES.keySet()) {
+                    Set<Node> subjects = new LinkedHashSet<>();
+                    base.find(Node.ANY, Node.ANY, Vocab.type.asNode(), type).forEachRemaining(quad -> subjects.add(quad.getSubject()));
+                    for (Node subject : subjects) {
+                        Document document = document(base, subject);
+                        if (document != null) {
+                            writer.updateDocument(new Term(URI_FIELD, subject.getURI()), document);
+                            indexed++;
+                        }
+                    }
+                }
+                writer.setLiveCommitData(Map.of(GENERATION_KEY, Long.toString(storeGeneration)).entrySet());
+                writer.commit();
+                searcherManager.maybeRefreshBlocking();
+                log.info("Rebuilt search index with {} resources", indexed);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to rebuild the search index", e);
+            }
+        });
+    }
+
+    /**
+     * Searches the titles, descriptions and keywords of the indexed resources.
+     * Titles weigh more than keywords, keywords more than descriptions.
+     *
+     * @param queryText The query in Lucene query syntax, e.g. {@code weather AND title:prague}.
+     * @param type The resource type to restrict the hits to, or null for all types.
+     * @param page The index of the page to return, starting at 0.
+     * @param size The maximum number of hits per page.
+     * @return The requested page of hits together with the number of matches per resource type.
+     * @throws IllegalArgumentException If the query cannot be parsed or the type is unknown.
+     */
+    public SearchResult search(String queryText, String type, int page, int size) {
+        if (type != null && !RESOURCE_TYPES.containsValue(type)) {
+            throw new IllegalArgumentException("Unknown resource type: " + type + ". Supported types: " + String.join(", ", RESOURCE_TYPES.values()));
+        }
+
+        Query query;
+        try {
+            query = new MultiFieldQueryParser(FIELD_BOOSTS.keySet().toArray(String[]::new), analyzer, FIELD_BOOSTS).parse(queryText);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid search query: " + e.getMessage(), e);
+        }
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+
+            Map<String, Long> facets = new LinkedHashMap<>();
+            for (String resourceType : RESOURCE_TYPES.values()) {
+                facets.put(resourceType, (long) searcher.count(withType(query, resourceType)));
+            }
+
+            Query filtered = type == null ? query : withType(query, type);
+            TopDocs topDocs = searcher.search(filtered, Math.max(1, (page + 1) * size));
+            List<SearchHit> hits = new ArrayList<>();
+            for (int i = page * size; i < topDocs.scoreDocs.length; i++) {
+                ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+                Document document = searcher.storedFields().document(scoreDoc.doc);
+                hits.add(new SearchHit(document.get(URI_FIELD), document.get(TYPE_FIELD),
+                        document.get(TITLE_FIELD), document.get(DESCRIPTION_FIELD), scoreDoc.score));
+            }
+
+            long total = type == null ? facets.values().stream().mapToLong(Long::longValue).sum() : facets.get(type);
+            return new SearchResult(queryText, total, page, size, facets, hits);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to search the index", e);
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    log.warn("Failed to release index searcher: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+    }
+
+    private static Query withType(Query query, String type) {
+        return new BooleanQuery.Builder()
+                .add(query, BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term(TYPE_FIELD, type)), BooleanClause.Occur.FILTER)
+                .build();
+    }
+
+    private static long generation(DatasetGraph base) {
+        Iterator<Quad> quads = base.find(SEARCH_GRAPH, SEARCH_GRAPH, SEQUENCE, Node.ANY);
+        return quads.hasNext() ? ((Number) quads.next().getObject().getLiteralValue()).longValue() : 0L;
+    }
+
+    /**
+     * Builds the index document of a resource from its current state.
+     *
+     * @return The document, or null if the subject is not an indexed resource.
+     */
+    private static Document document(DatasetGraph base, Node subject) {
+        if (!subject.isURI()) {
+            return null;
+        }
+
+        List<Quad> quads = new ArrayList<>();
+        base.find(Quad.defaultGraphIRI, subject, Node.ANY, Node.ANY).forEachRemaining(quads::add);
+        base.find(subject, subject, Node.ANY, Node.ANY).forEachRemaining(quads::add);
+
+        String type = null;
+        Set<String> titles = new LinkedHashSet<>();
+        Set<String> descriptions = new LinkedHashSet<>();
+        Set<String> keywords = new LinkedHashSet<>();
+        for (Quad quad : quads) {
+            Node predicate = quad.getPredicate();
+            Node object = quad.getObject();
+            if (predicate.equals(Vocab.type.asNode()) && type == null) {
+                type = RESOURCE_TYPES.get(object);
+            } else if (object.isLiteral()) {
+                if (predicate.equals(Vocab.title.asNode())) {
+                    titles.add(object.getLiteralLexicalForm());
+                } else if (predicate.equals(Vocab.description.asNode())) {
+                    descriptions.add(object.getLiteralLexicalForm());
+                } else if (predicate.equals(Vocab.keyword.asNode())) {
+                    keywords.add(object.getLiteralLexicalForm());
+                }
+            }
+        }
+        if (type == null) {
+            return null;
+        }
+
+        Document document = new Document();
+        document.add(new StringField(URI_FIELD, subject.getURI(), Field.Store.YES));
+        document.add(new StringField(TYPE_FIELD, type, Field.Store.YES));
+        if (!titles.isEmpty()) {
+            document.add(new TextField(TITLE_FIELD, String.join(" ", titles), Field.Store.YES));
+        }
+        if (!descriptions.isEmpty()) {
+            document.add(new TextField(DESCRIPTION_FIELD, String.join(" ", descriptions), Field.Store.YES));
+        }
+        if (!keywords.isEmpty()) {
+            document.add(new TextField(KEYWORD_FIELD, String.join(" ", keywords), Field.Store.NO));
+        }
+        return document;
+    }
+
+    /**
+     * Applies the documents prepared by the transaction that just committed on this thread.
+     */
+    private void publish() {
+        PendingUpdate update = pending.get();
+        if (update == null) {
+            return;
+        }
+        pending.remove();
+        try {
+            for (Map.Entry<String, Document> entry : update.documents().entrySet()) {
+                Term uriTerm = new Term(URI_FIELD, entry.getKey());
+                if (entry.getValue() == null) {
+                    writer.deleteDocuments(uriTerm);
+                } else {
+                    writer.updateDocument(uriTerm, entry.getValue());
+                }
+            }
+            writer.setLiveCommitData(Map.of(GENERATION_KEY, Long.toString(update.generation())).entrySet());
+            writer.commit();
+            searcherManager.maybeRefresh();
+            log.debug("Indexed {} resources at generation {}", update.documents().size(), update.generation());
+        } catch (IOException e) {
+            // The generations no longer match, so the index is rebuilt on the next startup
+            log.error("Failed to update the search index: {}", e.getMessage(), e);
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    private void discard() {
+        touched.remove();
+        if (pending.get() != null) {
+            pending.remove();
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Collects the subjects changed by a write transaction and prepares their documents right before it commits.
+     */
+    private final class TouchedSubjects implements RDFChanges {
+
+        private final DatasetGraph base;
+
+        private TouchedSubjects(DatasetGraph base) {
+            this.base = base;
+        }
+
+        @Override
+        public void txnBegin() {
+            touched.set(new LinkedHashSet<>());
+        }
+
+        @Override
+        public void add(Node g, Node s, Node p, Node o) {
+            touch(s);
+        }
+
+        @Override
+        public void delete(Node g, Node s, Node p, Node o) {
+            touch(s);
+        }
+
+        @Override
+        public void txnCommit() {
+            Set<Node> subjects = touched.get();
+            touched.remove();
+            if (subjects == null || subjects.isEmpty()) {
+                return;
+            }
+
+            Map<String, Document> documents = new LinkedHashMap<>();
+            for (Node subject : subjects) {
+                documents.put(subject.getURI(), document(base, subject));
+            }
+
+            // Held until the update is published, so updates reach Lucene in the commit order of the store
+            publishLock.lock();
+            try {
+                long generation = generation(base) + 1;
+                base.deleteAny(SEARCH_GRAPH, SEARCH_GRAPH, SEQUENCE, Node.ANY);
+                base.add(SEARCH_GRAPH, SEARCH_GRAPH, SEQUENCE, NodeFactory.createLiteralDT(Long.toString(generation), XSDDatatype.XSDlong));
+                pending.set(new PendingUpdate(generation, documents));
+            } catch (RuntimeException e) {
+                publishLock.unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        public void txnAbort() {
+            touched.remove();
+        }
+
+        @Override
+        public void addPrefix(Node gn, String prefix, String uriStr) {
+        }
+
+        @Override
+        public void deletePrefix(Node gn, String prefix) {
+        }
+
+        @Override
+        public void header(String field, Node value) {
+        }
+
+        @Override
+        public void segment() {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        private void touch(Node subject) {
+            Set<Node> subjects = touched.get();
+            if (subjects == null) {
+                subjects = new LinkedHashSet<>();
+                touched.set(subjects);
+            }
+            if (subject.isURI()) {
+                subjects.add(subject);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package cz.cuni.mff.metadata_store.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of full-text search results, ordered by relevance.
+ *
+ * @param query The query as sent by the client.
+ * @param total The number of resources matching the query and the type filter.
+ * @param page The index of this page, starting at 0.
+ * @param size The maximum number of hits per page.
+ * @param facets The number of resources matching the query for each resource type, regardless of the type filter.
+ * @param hits The hits of this page.
+ */
+public record SearchResult(String query, long total, int page, int size, Map<String, Long> facets, List<SearchHit> hits) {
+}
@@ -0,0 +1,291 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QueryParseException;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.resultset.ResultSetLang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFOps;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVars;
+import org.apache.jena.sparql.algebra.op.Op1;
+import org.apache.jena.sparql.algebra.op.Op2;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpJoin;
+import org.apache.jena.sparql.algebra.op.OpN;
+import org.apache.jena.sparql.algebra.op.OpPath;
+import org.apache.jena.sparql.algebra.op.OpQuadPattern;
+import org.apache.jena.sparql.algebra.op.OpSequence;
+import org.apache.jena.sparql.algebra.op.OpService;
+import org.apache.jena.sparql.algebra.op.OpTriple;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.path.P_OneOrMore1;
+import org.apache.jena.sparql.path.P_OneOrMoreN;
+import org.apache.jena.sparql.path.P_ZeroOrMore1;
+import org.apache.jena.sparql.path.P_ZeroOrMoreN;
+import org.apache.jena.sparql.path.Path;
+import org.apache.jena.sparql.resultset.ResultsWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs read-only ad-hoc SPARQL queries against the store.
+ * Queries are rejected up front if their estimated cost is too high, get their LIMIT capped,
+ * are cancelled when they exceed the timeout, and only a bounded number of them runs at once,
+ * so analytical queries cannot starve the operational endpoints.
+ * Results are written to the output stream while the query is evaluated, inside a single read transaction.
+ */
+@Service
+public class SparqlQueryService {
+
+    private static final Logger log = LoggerFactory.getLogger(SparqlQueryService.class);
+
+    // Estimated cost of a triple pattern by what it binds
+    private static final long BOUND_PATTERN_COST = 1;
+    private static final long PREDICATE_ONLY_PATTERN_COST = 10;
+    private static final long UNBOUND_PATTERN_COST = 100;
+
+    private final Dataset dataset;
+    private final StorageLayout storageLayout;
+    private final Semaphore permits;
+
+    @Value("${sparql.timeout-ms:10000}")
+    private long timeoutMs;
+
+    @Value("${sparql.max-results:10000}")
+    private long maxResults;
+
+    @Value("${sparql.max-cost:1000}")
+    private long maxCost;
+
+    @Value("${sparql.queue-timeout-ms:100}")
+    private long queueTimeoutMs;
+
+    /**
+     * A slot for running one query. Closing it frees the slot.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    @Autowired
+    public SparqlQueryService(Dataset dataset, StorageLayout storageLayout,
+                              @Value("${sparql.max-concurrent-queries:4}") int maxConcurrentQueries) {
+        this.dataset = dataset;
+        this.storageLayout = storageLayout;
+        this.permits = new Semaphore(maxConcurrentQueries, true);
+    }
+
+    /**
+     * Parses a query and checks that it may run.
+     * A query without a LIMIT, or with a LIMIT above {@code sparql.max-results}, gets that maximum as its LIMIT.
+     *
+     * @param queryString The SPARQL query.
+     * @return The parsed query, ready to be executed.
+     * @throws IllegalArgumentException If the query cannot be parsed, calls a remote SERVICE or its estimated cost exceeds {@code sparql.max-cost}.
+     */
+    public Query prepare(String queryString) {
+        Query query;
+        try {
+            query = QueryFactory.create(queryString);
+        } catch (QueryParseException e) {
+            throw new IllegalArgumentException("Invalid SPARQL query: " + e.getMessage(), e);
+        }
+
+        long cost = estimateCost(Algebra.compile(query));
+        if (cost > maxCost) {
+            throw new IllegalArgumentException("Query is too expensive (estimated cost " + cost + ", maximum " + maxCost
+                    + "). Bind more subjects or objects, and avoid patterns that share no variables.");
+        }
+
+        if (!query.isAskType() && (!query.hasLimit() || query.getLimit() > maxResults)) {
+            query.setLimit(maxResults);
+        }
+        log.debug("Prepared SPARQL query with estimated cost {}", cost);
+        return query;
+    }
+
+    /**
+     * Reserves a slot for running a query, waiting at most {@code sparql.queue-timeout-ms} for one to free up.
+     *
+     * @return The permit, to be closed once the query has finished.
+     * @throws RejectedExecutionException If all slots are taken.
+     */
+    public Permit admit() {
+        try {
+            if (!permits.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("Too many concurrent SPARQL queries, retry later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a SPARQL query slot", e);
+        }
+        return permits::release;
+    }
+
+    /**
+     * Evaluates a SELECT or ASK query and streams its results.
+     *
+     * @param query A query returned by {@link #prepare(String)}.
+     * @param resultLang The result format, e.g. {@link ResultSetLang#RS_JSON}, {@link ResultSetLang#RS_CSV} or {@link ResultSetLang#RS_TSV}.
+     * @param out The stream to write the results to.
+     * @throws org.apache.jena.query.QueryCancelledException If the query exceeds the timeout.
+     */
+    public void select(Query query, Lang resultLang, OutputStream out) {
+        dataset.executeRead(() -> {
+            try (QueryExecution qExec = execution(query)) {
+                ResultsWriter writer = ResultsWriter.create().lang(resultLang).build();
+                if (query.isAskType()) {
+                    writer.write(out, qExec.execAsk());
+                } else {
+                    writer.write(out, qExec.execSelect());
+                }
+            }
+        });
+    }
+
+    /**
+     * Evaluates a CONSTRUCT or DESCRIBE query and streams the resulting triples.
+     * Formats without a streaming writer are written once the whole result has been built.
+     *
+     * @param query A query returned by {@link #prepare(String)}.
+     * @param format The RDF format to write.
+     * @param out The stream to write the triples to.
+     * @throws org.apache.jena.query.QueryCancelledException If the query exceeds the timeout.
+     */
+    public void construct(Query query, RDFFormat format, OutputStream out) {
+        dataset.executeRead(() -> {
+            try (QueryExecution qExec = execution(query)) {
+                if (!StreamRDFWriter.registered(format)) {
+                    RDFDataMgr.write(out, query.isConstructType() ? qExec.execConstruct() : qExec.execDescribe(), format);
+                    return;
+                }
+                Iterator<Triple> triples = query.isConstructType() ? qExec.execConstructTriples() : qExec.execDescribeTriples();
+                StreamRDF stream = StreamRDFWriter.getWriterStream(out, format);
+                stream.start();
+                StreamRDFOps.sendTriplesToStream(triples, stream);
+                stream.finish();
+            }
+        });
+    }
+
+    private QueryExecution execution(Query query) {
+        return QueryExecution.dataset(storageLayout.queryView())
+                .query(query)
+                .timeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Estimates the cost of evaluating an algebra expression. Triple patterns cost by what they bind;
+     * patterns joined through a shared variable add up, patterns sharing no variable form a cross product and multiply.
+     * Transitive property paths between two variables cost as much as a fully unbound pattern.
+     *
+     * @throws IllegalArgumentException If the expression calls a remote SERVICE.
+     */
+    static long estimateCost(Op op) {
+        return switch (op) {
+            case OpBGP bgp -> patternsCost(bgp.getPattern().getList());
+            case OpTriple triple -> patternsCost(List.of(triple.getTriple()));
+            case OpQuadPattern quads -> patternsCost(quads.getBasicPattern().getList());
+            case OpPath path -> pathCost(path.getTriplePath());
+            case OpService service -> throw new IllegalArgumentException("Federated queries (SERVICE) are not supported");
+            case OpJoin join -> joinCost(List.of(join.getLeft(), join.getRight()));
+            case OpSequence sequence -> joinCost(sequence.getElements());
+            case Op1 op1 -> estimateCost(op1.getSubOp());
+            case Op2 op2 -> saturatedAdd(estimateCost(op2.getLeft()), estimateCost(op2.getRight()));
+            case OpN opN -> opN.getElements().stream().mapToLong(SparqlQueryService::estimateCost).reduce(0, SparqlQueryService::saturatedAdd);
+            default -> 0;
+        };
+    }
+
+    private static long patternsCost(List<Triple> patterns) {
+        long cost = 0;
+        Set<Var> boundVars = new HashSet<>();
+        for (Triple pattern : patterns) {
+            long patternCost = patternCost(pattern);
+            Set<Var> patternVars = varsOf(pattern);
+            boolean connected = boundVars.isEmpty() || !Collections.disjoint(boundVars, patternVars);
+            cost = connected ? saturatedAdd(cost, patternCost) : saturatedMultiply(Math.max(cost, 1), patternCost);
+            boundVars.addAll(patternVars);
+        }
+        return cost;
+    }
+
+    private static long joinCost(List<Op> elements) {
+        long cost = 0;
+        Set<Var> boundVars = new HashSet<>();
+        for (Op element : elements) {
+            long elementCost = estimateCost(element);
+            Set<Var> elementVars = OpVars.visibleVars(element);
+            boolean connected = boundVars.isEmpty() || !Collections.disjoint(boundVars, elementVars);
+            cost = connected ? saturatedAdd(cost, elementCost) : saturatedMultiply(Math.max(cost, 1), Math.max(elementCost, 1));
+            boundVars.addAll(elementVars);
+        }
+        return cost;
+    }
+
+    private static long patternCost(Triple pattern) {
+        if (pattern.getSubject().isConcrete() || pattern.getObject().isConcrete()) {
+            return BOUND_PATTERN_COST;
+        }
+        return pattern.getPredicate().isConcrete() ? PREDICATE_ONLY_PATTERN_COST : UNBOUND_PATTERN_COST;
+    }
+
+    private static long pathCost(TriplePath triplePath) {
+        if (triplePath.isTriple()) {
+            return patternCost(triplePath.asTriple());
+        }
+        if (triplePath.getSubject().isConcrete() || triplePath.getObject().isConcrete()) {
+            return BOUND_PATTERN_COST;
+        }
+        Path path = triplePath.getPath();
+        boolean transitive = path instanceof P_ZeroOrMore1 || path instanceof P_ZeroOrMoreN
+                || path instanceof P_OneOrMore1 || path instanceof P_OneOrMoreN;
+        return transitive ? UNBOUND_PATTERN_COST : PREDICATE_ONLY_PATTERN_COST;
+    }
+
+    private static Set<Var> varsOf(Triple pattern) {
+        Set<Var> vars = new HashSet<>();
+        for (Node node : List.of(pattern.getSubject(), pattern.getPredicate(), pattern.getObject())) {
+            if (Var.isVar(node)) {
+                vars.add(Var.alloc(node));
+            }
+        }
+        return vars;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        long high = Math.multiplyHigh(a, b);
+        return high != 0 || a * b < 0 ? Long.MAX_VALUE : a * b;
+    }
+}
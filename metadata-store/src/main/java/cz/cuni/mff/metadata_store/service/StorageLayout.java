@@ -0,0 +1,51 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Strategy deciding where in the TDB2 dataset the triples of datasets, plugins and pipelines live.
+ * All methods must be called inside an active transaction on the dataset.
+ */
+public interface StorageLayout {
+
+    /**
+     * Returns the model the triples of a resource are written to.
+     *
+     * @param resourceUri The URI of the resource.
+     * @return The model holding the resource.
+     */
+    Model resourceModel(String resourceUri);
+
+    /**
+     * Checks whether a resource is stored.
+     *
+     * @param resourceUri The URI of the resource.
+     * @return true if the store holds any triples of the resource.
+     */
+    boolean contains(String resourceUri);
+
+    /**
+     * Builds a detached description of a resource.
+     *
+     * @param resourceUri The URI of the resource.
+     * @return A new model with the triples describing the resource; empty if not found.
+     */
+    Model describe(String resourceUri);
+
+    /**
+     * Removes the triples describing a resource, so that it can be overwritten.
+     *
+     * @param resourceUri The URI of the resource.
+     */
+    void clear(String resourceUri);
+
+    /**
+     * Returns a dataset whose default graph contains all stored resources together with the
+     * root container, and none of the system graphs. SPARQL queries spanning several resources
+     * are evaluated against it.
+     *
+     * @return The dataset to query.
+     */
+    Dataset queryView();
+}
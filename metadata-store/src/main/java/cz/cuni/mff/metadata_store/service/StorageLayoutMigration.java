@@ -0,0 +1,118 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.config.ReplicationRole;
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Migrates resources stored by the default-graph layout into the named-graph layout.
+ * Every resource linked from the root container is moved, together with its blank nodes,
+ * distributions and, for pipelines, its steps and variables, from the default graph into the
+ * named graph of the resource. The migration runs in a single write transaction and is idempotent.
+ * Runs on startup when {@code storage.layout} is {@code named-graph} and {@code storage.layout.migrate} is set.
+ */
+@Component
+public class StorageLayoutMigration implements ApplicationListener<ContextRefreshedEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageLayoutMigration.class);
+
+    private final Dataset dataset;
+    private final StorageLayout storageLayout;
+
+    @Value("${storage.layout.migrate:false}")
+    private boolean migrate;
+
+    @Value("${replication.role:standalone}")
+    private ReplicationRole replicationRole;
+
+    @Autowired
+    public StorageLayoutMigration(Dataset dataset, StorageLayout storageLayout) {
+        this.dataset = dataset;
+        this.storageLayout = storageLayout;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (!migrate || !(storageLayout instanceof NamedGraphLayout) || replicationRole == ReplicationRole.REPLICA) {
+            return;
+        }
+        log.info("Migrating resources from the default graph into named graphs.");
+        int migrated = migrateToNamedGraphs();
+        log.info("Migrated {} resources into named graphs.", migrated);
+    }
+
+    /**
+     * Moves all resources linked from the root container out of the default graph into their own named graphs.
+     *
+     * @return The number of migrated resources.
+     */
+    public int migrateToNamedGraphs() {
+        return dataset.calculateWrite(() -> {
+            Model defaultModel = dataset.getDefaultModel();
+            Resource root = defaultModel.getResource(Vocab.RootContainer.getURI());
+            int migrated = 0;
+
+            for (RDFNode member : defaultModel.listObjectsOfProperty(root, Vocab.contains).toList()) {
+                if (!member.isURIResource()) {
+                    continue;
+                }
+                Resource resource = member.asResource();
+                Model resourceData = ModelFactory.createDefaultModel();
+                collect(defaultModel, resource, resourceData);
+
+                if (defaultModel.contains(resource, Vocab.type, Vocab.Plan)) {
+                    for (Resource part : defaultModel.listSubjectsWithProperty(Vocab.isStepOfPlan, resource).toList()) {
+                        collect(defaultModel, part, resourceData);
+                    }
+                    for (Resource part : defaultModel.listSubjectsWithProperty(Vocab.isVariableOfPlan, resource).toList()) {
+                        collect(defaultModel, part, resourceData);
+                    }
+                }
+                for (RDFNode distribution : defaultModel.listObjectsOfProperty(resource, Vocab.distribution).toList()) {
+                    if (distribution.isResource()) {
+                        collect(defaultModel, distribution.asResource(), resourceData);
+                    }
+                }
+
+                if (resourceData.isEmpty()) {
+                    continue;
+                }
+                storageLayout.resourceModel(resource.getURI()).add(resourceData);
+                defaultModel.remove(resourceData);
+                migrated++;
+                log.debug("Migrated {} triples of {}", resourceData.size(), resource.getURI());
+            }
+            return migrated;
+        });
+    }
+
+    /**
+     * Collects the triples of a subject, following blank node objects.
+     */
+    private void collect(Model source, Resource subject, Model target) {
+        List<Statement> statements = source.listStatements(subject, null, (RDFNode) null).toList();
+        for (Statement statement : statements) {
+            if (target.contains(statement)) {
+                continue;
+            }
+            target.add(statement);
+            if (statement.getObject().isAnon()) {
+                collect(source, statement.getObject().asResource(), target);
+            }
+        }
+    }
+}
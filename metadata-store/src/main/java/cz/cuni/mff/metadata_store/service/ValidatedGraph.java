@@ -0,0 +1,14 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ * RDF graph that passed validation and is ready to be stored.
+ *
+ * @param model The Jena Model representing the RDF graph.
+ * @param resourceType The primary RDF type of the graph (e.g., Vocab.Dataset).
+ * @param resourceUri The URI of the primary resource of the graph.
+ */
+public record ValidatedGraph(Model model, Resource resourceType, String resourceUri) {
+}
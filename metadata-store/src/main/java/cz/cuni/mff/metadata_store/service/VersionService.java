@@ -0,0 +1,107 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.RdfMediaType;
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.RDFFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * Service maintaining per-resource version counters used for optimistic concurrency control.
+ * The counters are kept in a dedicated named graph of the TDB2 dataset, so they are updated
+ * in the same transaction as the resource they describe and never show up in resource descriptions.
+ * All methods must be called inside an active transaction on the dataset.
+ */
+@Service
+public class VersionService {
+
+    private final Dataset dataset;
+
+    @Autowired
+    public VersionService(Dataset dataset) {
+        this.dataset = dataset;
+    }
+
+    /**
+     * Returns the current version of a resource.
+     *
+     * @param resourceUri The URI of the resource.
+     * @return The current version, or 0 if the resource has never been versioned.
+     */
+    public long getVersion(String resourceUri) {
+        Model versions = dataset.getNamedModel(Vocab.VersionsGraph.getURI());
+        Statement statement = versions.getResource(resourceUri).getProperty(Vocab.version);
+        return statement == null ? 0L : statement.getLong();
+    }
+
+    /**
+     * Increments the version of a resource. Must be called inside a write transaction.
+     *
+     * @param resourceUri The URI of the resource.
+     * @return The new version.
+     */
+    public long incrementVersion(String resourceUri) {
+        Model versions = dataset.getNamedModel(Vocab.VersionsGraph.getURI());
+        Resource resource = versions.getResource(resourceUri);
+        long newVersion = getVersion(resourceUri) + 1;
+        resource.removeAll(Vocab.version);
+        resource.addLiteral(Vocab.version, newVersion);
+        return newVersion;
+    }
+
+    /**
+     * Verifies an If-Match precondition against the current version of a resource.
+     * A null precondition always passes, '*' passes for any existing resource and otherwise
+     * at least one of the listed strong entity tags has to match the current version, either as sent on
+     * writes or with the representation suffix {@link #toETag(long, RDFFormat)} adds.
+     *
+     * @param resourceUri The URI of the resource.
+     * @param ifMatch The If-Match header value, may be null.
+     * @throws ConcurrentModificationException if the precondition does not hold.
+     */
+    public void checkPrecondition(String resourceUri, String ifMatch) throws ConcurrentModificationException {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return;
+        }
+
+        String currentETag = toETag(getVersion(resourceUri));
+        String representationPrefix = currentETag.substring(0, currentETag.length() - 1) + '-';
+        for (String candidate : ifMatch.split(",")) {
+            String etag = candidate.trim();
+            if (etag.equals(currentETag) || (etag.startsWith(representationPrefix) && etag.endsWith("\""))) {
+                return;
+            }
+        }
+        throw new ConcurrentModificationException("Resource " + resourceUri + " has been modified, current version is " + currentETag);
+    }
+
+    /**
+     * Formats a version as a strong HTTP entity tag.
+     *
+     * @param version The version.
+     * @return The quoted entity tag.
+     */
+    public static String toETag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Formats a version as the strong HTTP entity tag of its representation in an RDF format.
+     * Each format of the same version has different bytes, so the tag carries the name of the format
+     * ({@code "3"} becomes e.g. {@code "3-nt"} or {@code "3-thrift"}). GET, HEAD and PUT responses
+     * all send this tag, so a tag from any of them can be used in If-None-Match and If-Match.
+     *
+     * @param version The version.
+     * @param format The format the representation is written in.
+     * @return The entity tag, including the surrounding quotes.
+     */
+    public static String toETag(long version, RDFFormat format) {
+        return "\"" + version + '-' + RdfMediaType.getFormatName(format) + "\"";
+    }
+}
@@ -0,0 +1,12 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * RDF description of a resource together with the version it was read at.
+ *
+ * @param model The Jena Model describing the resource.
+ * @param version The version of the resource the description corresponds to.
+ */
+public record VersionedModel(Model model, long version) {
+}
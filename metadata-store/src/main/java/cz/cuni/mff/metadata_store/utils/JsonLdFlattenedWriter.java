@@ -0,0 +1,97 @@
+package cz.cuni.mff.metadata_store.utils;
+
+import com.apicatalog.jsonld.JsonLd;
+import com.apicatalog.jsonld.JsonLdError;
+import com.apicatalog.jsonld.api.FlatteningApi;
+import com.apicatalog.jsonld.document.JsonDocument;
+import com.apicatalog.jsonld.document.RdfDocument;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonStructure;
+import jakarta.json.JsonWriter;
+import jakarta.json.stream.JsonGenerator;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFFormatVariant;
+import org.apache.jena.riot.RDFWriterRegistry;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.WriterDatasetRIOT;
+import org.apache.jena.riot.WriterDatasetRIOTFactory;
+import org.apache.jena.riot.WriterGraphRIOT;
+import org.apache.jena.riot.WriterGraphRIOTFactory;
+import org.apache.jena.riot.system.JenaTitanium;
+import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.util.Context;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes JSON-LD in the flattened document form: every node is a top-level object of the {@code @graph} array
+ * and nested nodes, such as blank node distributions, are replaced by references to their {@code @id}.
+ * Jena only writes the expanded and compacted forms, so the expanded form is flattened with Titanium,
+ * and compacted with the prefixes of the graph as its context.
+ */
+public class JsonLdFlattenedWriter implements WriterDatasetRIOT, WriterGraphRIOT {
+
+    /**
+     * JSON-LD in the flattened document form; registered with Jena when this class is loaded.
+     */
+    public static final RDFFormat JSONLD_FLATTENED = new RDFFormat(Lang.JSONLD, new RDFFormatVariant("flattened"));
+
+    private static final Map<String, ?> PRETTY = Map.of(JsonGenerator.PRETTY_PRINTING, true);
+
+    static {
+        RDFWriterRegistry.register(JSONLD_FLATTENED, (WriterGraphRIOTFactory) format -> new JsonLdFlattenedWriter());
+        RDFWriterRegistry.register(JSONLD_FLATTENED, (WriterDatasetRIOTFactory) format -> new JsonLdFlattenedWriter());
+    }
+
+    @Override
+    public Lang getLang() {
+        return Lang.JSONLD;
+    }
+
+    @Override
+    public void write(OutputStream out, DatasetGraph datasetGraph, PrefixMap prefixMap, String baseURI, Context context) {
+        try (JsonWriter writer = Json.createWriterFactory(PRETTY).createWriter(out)) {
+            writer.write(flatten(datasetGraph, prefixMap));
+        }
+    }
+
+    @Override
+    public void write(Writer out, DatasetGraph datasetGraph, PrefixMap prefixMap, String baseURI, Context context) {
+        try (JsonWriter writer = Json.createWriterFactory(PRETTY).createWriter(out)) {
+            writer.write(flatten(datasetGraph, prefixMap));
+        }
+    }
+
+    @Override
+    public void write(OutputStream out, Graph graph, PrefixMap prefixMap, String baseURI, Context context) {
+        write(out, DatasetGraphFactory.wrap(graph), prefixMap, baseURI, context);
+    }
+
+    @Override
+    public void write(Writer out, Graph graph, PrefixMap prefixMap, String baseURI, Context context) {
+        write(out, DatasetGraphFactory.wrap(graph), prefixMap, baseURI, context);
+    }
+
+    private static JsonStructure flatten(DatasetGraph datasetGraph, PrefixMap prefixMap) {
+        try {
+            JsonArray expanded = JsonLd.fromRdf(RdfDocument.of(JenaTitanium.convert(datasetGraph))).get();
+            FlatteningApi flattening = JsonLd.flatten(JsonDocument.of(expanded));
+            if (prefixMap != null && !prefixMap.isEmpty()) {
+                JsonObjectBuilder prefixes = Json.createObjectBuilder();
+                prefixMap.forEach(prefixes::add);
+                flattening.context(Json.createObjectBuilder().add("@context", prefixes).build());
+            }
+            return flattening.get();
+        } catch (JsonLdError e) {
+            throw new RiotException("Failed to write flattened JSON-LD: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package cz.cuni.mff.metadata_store.utils;
 
 import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFWriterRegistry;
+import org.apache.jena.riot.resultset.ResultSetLang;
 import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -12,12 +19,52 @@ public class RdfMediaType {
     public static final String TEXT_TURTLE_VALUE = "text/turtle";
     public static final String APPLICATION_LD_JSON_VALUE = "application/ld+json";
     public static final String APPLICATION_RDF_XML_VALUE = "application/rdf+xml";
+    // Binary RDF encodings, cheap to write and parse; meant for service-to-service traffic
+    public static final String APPLICATION_RDF_THRIFT_VALUE = "application/rdf+thrift";
+    public static final String APPLICATION_RDF_PROTOBUF_VALUE = "application/rdf+protobuf";
+    // Line-based formats, written triple by triple without buffering the graph
+    public static final String APPLICATION_N_TRIPLES_VALUE = "application/n-triples";
+    public static final String APPLICATION_N_QUADS_VALUE = "application/n-quads";
 
-    private static final Map<String, Lang> MIME_TYPE_TO_LANG = Map.of(
-        TEXT_TURTLE_VALUE, Lang.TURTLE,
-        APPLICATION_LD_JSON_VALUE, Lang.JSONLD,
-        APPLICATION_RDF_XML_VALUE, Lang.RDFXML
-    );
+    /**
+     * Media type parameter selecting the Turtle writer: {@code pretty} (default), {@code blocks} or {@code flat}.
+     * Blocks and flat are streaming writers, e.g. {@code Accept: text/turtle;style=flat}.
+     */
+    public static final String TURTLE_STYLE_PARAMETER = "style";
+
+    /**
+     * Media type parameter selecting the JSON-LD document form, e.g.
+     * {@code Accept: application/ld+json;profile="http://www.w3.org/ns/json-ld#flattened"}.
+     */
+    public static final String JSON_LD_PROFILE_PARAMETER = "profile";
+    private static final String JSON_LD_NS = "http://www.w3.org/ns/json-ld#";
+
+    // SPARQL query result formats
+    public static final String APPLICATION_SPARQL_RESULTS_JSON_VALUE = "application/sparql-results+json";
+    public static final String APPLICATION_SPARQL_RESULTS_XML_VALUE = "application/sparql-results+xml";
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    public static final String TEXT_TSV_VALUE = "text/tab-separated-values";
+
+    // Insertion order is the order of preference when the client accepts a wildcard
+    private static final Map<String, Lang> MIME_TYPE_TO_LANG = new LinkedHashMap<>();
+    static {
+        MIME_TYPE_TO_LANG.put(TEXT_TURTLE_VALUE, Lang.TURTLE);
+        MIME_TYPE_TO_LANG.put(APPLICATION_LD_JSON_VALUE, Lang.JSONLD);
+        MIME_TYPE_TO_LANG.put(APPLICATION_RDF_XML_VALUE, Lang.RDFXML);
+        MIME_TYPE_TO_LANG.put(APPLICATION_N_TRIPLES_VALUE, Lang.NTRIPLES);
+        MIME_TYPE_TO_LANG.put(APPLICATION_N_QUADS_VALUE, Lang.NQUADS);
+        MIME_TYPE_TO_LANG.put(APPLICATION_RDF_THRIFT_VALUE, Lang.RDFTHRIFT);
+        MIME_TYPE_TO_LANG.put(APPLICATION_RDF_PROTOBUF_VALUE, Lang.RDFPROTO);
+    }
+
+    private static final Map<String, Lang> RESULTS_MIME_TYPE_TO_LANG = new LinkedHashMap<>();
+    static {
+        RESULTS_MIME_TYPE_TO_LANG.put(APPLICATION_SPARQL_RESULTS_JSON_VALUE, ResultSetLang.RS_JSON);
+        RESULTS_MIME_TYPE_TO_LANG.put(MediaType.APPLICATION_JSON_VALUE, ResultSetLang.RS_JSON);
+        RESULTS_MIME_TYPE_TO_LANG.put(TEXT_CSV_VALUE, ResultSetLang.RS_CSV);
+        RESULTS_MIME_TYPE_TO_LANG.put(TEXT_TSV_VALUE, ResultSetLang.RS_TSV);
+        RESULTS_MIME_TYPE_TO_LANG.put(APPLICATION_SPARQL_RESULTS_XML_VALUE, ResultSetLang.RS_XML);
+    }
 
     /**
      * Determines the Jena Lang based on a Content-Type string.
@@ -41,30 +88,97 @@ public class RdfMediaType {
 
     /**
      * Determines the Jena Lang based on an Accept header string, choosing the best match.
-     * Simple implementation: checks for supported types in order of preference.
      * @param acceptHeader The Accept header value.
      * @return Optional containing the preferred matching Lang, or empty if none match.
-     * Defaults to Turtle if the header is null, empty, or '*\/*'.
+     * Defaults to Turtle if the header is null or empty.
+     * @see #getFormatFromAcceptHeader(String)
     */
     public static Optional<Lang> getLangFromAcceptHeader(String acceptHeader) {
-        if (acceptHeader == null || acceptHeader.isBlank() || acceptHeader.trim().equals("*/*")) {
-            return Optional.of(Lang.TURTLE);
+        return getFormatFromAcceptHeader(acceptHeader).map(RDFFormat::getLang);
+    }
+
+    /**
+     * Determines the Jena writer format based on an Accept header string.
+     * Media ranges are tried in order of their q-values, concrete types before wildcards on a tie;
+     * types with {@code q=0} are never chosen, not even through a wildcard.
+     * The Turtle {@value #TURTLE_STYLE_PARAMETER} and JSON-LD {@value #JSON_LD_PROFILE_PARAMETER}
+     * parameters select the writer variant.
+     * @param acceptHeader The Accept header value.
+     * @return Optional containing the preferred matching format, or empty if none match.
+     * Defaults to pretty Turtle if the header is null or empty.
+     */
+    public static Optional<RDFFormat> getFormatFromAcceptHeader(String acceptHeader) {
+        if (acceptHeader == null || acceptHeader.isBlank()) {
+            return Optional.of(RDFFormat.TURTLE_PRETTY);
         }
 
-        try {
-            String lowerCaseHeader = acceptHeader.toLowerCase();
+        return negotiate(acceptHeader, MIME_TYPE_TO_LANG)
+                .map(match -> writerFormat(match.getValue(), match.getKey()));
+    }
 
-            if (lowerCaseHeader.contains(TEXT_TURTLE_VALUE)) return Optional.of(Lang.TURTLE);
-            if (lowerCaseHeader.contains(APPLICATION_LD_JSON_VALUE)) return Optional.of(Lang.JSONLD);
-            if (lowerCaseHeader.contains(APPLICATION_RDF_XML_VALUE)) return Optional.of(Lang.RDFXML);
+    /**
+     * Determines the SPARQL result format (for SELECT and ASK queries) based on an Accept header string,
+     * with the same q-value handling as {@link #getFormatFromAcceptHeader(String)}.
+     * @param acceptHeader The Accept header value.
+     * @return Optional containing the preferred result format, or empty if none match.
+     * Defaults to SPARQL JSON results if the header is null or empty.
+     */
+    public static Optional<Lang> getResultsLangFromAcceptHeader(String acceptHeader) {
+        if (acceptHeader == null || acceptHeader.isBlank()) {
+            return Optional.of(ResultSetLang.RS_JSON);
+        }
+        return negotiate(acceptHeader, RESULTS_MIME_TYPE_TO_LANG).map(Map.Entry::getValue);
+    }
 
+    /**
+     * Finds the supported type best matching an Accept header.
+     * @return The matching media range of the header and the value of the supported type, or empty if none match.
+     */
+    private static <T> Optional<Map.Entry<MediaType, T>> negotiate(String acceptHeader, Map<String, T> supportedTypes) {
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(acceptHeader));
         } catch (InvalidMediaTypeException e) {
-            // Ignore
+            return Optional.empty();
         }
+        accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed()
+                .thenComparing(MediaType::isWildcardType)
+                .thenComparing(MediaType::isWildcardSubtype));
+
+        List<MediaType> rejected = accepted.stream().filter(mediaType -> mediaType.getQualityValue() == 0).toList();
 
+        for (MediaType range : accepted) {
+            if (range.getQualityValue() == 0) {
+                break;
+            }
+            for (Map.Entry<String, T> entry : supportedTypes.entrySet()) {
+                MediaType supported = MediaType.parseMediaType(entry.getKey());
+                if (range.includes(supported) && rejected.stream().noneMatch(r -> r.includes(supported))) {
+                    return Optional.of(Map.entry(range, entry.getValue()));
+                }
+            }
+        }
         return Optional.empty();
     }
 
+    private static RDFFormat writerFormat(Lang lang, MediaType range) {
+        if (lang == Lang.TURTLE) {
+            String style = range.getParameter(TURTLE_STYLE_PARAMETER);
+            if ("blocks".equalsIgnoreCase(style)) return RDFFormat.TURTLE_BLOCKS;
+            if ("flat".equalsIgnoreCase(style)) return RDFFormat.TURTLE_FLAT;
+            return RDFFormat.TURTLE_PRETTY;
+        }
+        if (lang == Lang.JSONLD) {
+            String profile = range.getParameter(JSON_LD_PROFILE_PARAMETER);
+            if (profile != null) {
+                profile = profile.replace("\"", "");
+                if (profile.equals(JSON_LD_NS + "flattened")) return JsonLdFlattenedWriter.JSONLD_FLATTENED;
+                if (profile.equals(JSON_LD_NS + "expanded")) return RDFFormat.JSONLD11_PLAIN;
+            }
+        }
+        return RDFWriterRegistry.defaultSerialization(lang);
+    }
+
     /**
      * Gets the corresponding Content-Type string for a Jena Lang.
      * @param lang The Jena Lang.
@@ -72,10 +186,36 @@ public class RdfMediaType {
      */
     public static Optional<String> getContentTypeFromLang(Lang lang) {
         if (lang == Lang.TURTLE) return Optional.of(TEXT_TURTLE_VALUE);
-        if (lang == Lang.JSONLD) return Optional.of(APPLICATION_LD_JSON_VALUE);
+        if (lang == Lang.JSONLD || lang == Lang.JSONLD11) return Optional.of(APPLICATION_LD_JSON_VALUE);
         if (lang == Lang.RDFXML) return Optional.of(APPLICATION_RDF_XML_VALUE);
+        if (lang == Lang.RDFTHRIFT) return Optional.of(APPLICATION_RDF_THRIFT_VALUE);
+        if (lang == Lang.RDFPROTO) return Optional.of(APPLICATION_RDF_PROTOBUF_VALUE);
+        if (lang == Lang.NTRIPLES) return Optional.of(APPLICATION_N_TRIPLES_VALUE);
+        if (lang == Lang.NQUADS) return Optional.of(APPLICATION_N_QUADS_VALUE);
         return Optional.empty();
     }
 
+    /**
+     * Gets a short name of a writer format, distinguishing the writer variants of the same language,
+     * e.g. {@code turtle}, {@code turtle-flat}, {@code nt} or {@code thrift}.
+     * @param format The Jena writer format, as chosen by {@link #getFormatFromAcceptHeader(String)}.
+     * @return The name of the format.
+     */
+    public static String getFormatName(RDFFormat format) {
+        if (format.equals(RDFFormat.TURTLE_BLOCKS)) return "turtle-blocks";
+        if (format.equals(RDFFormat.TURTLE_FLAT)) return "turtle-flat";
+        if (format.equals(JsonLdFlattenedWriter.JSONLD_FLATTENED)) return "jsonld-flattened";
+        if (format.equals(RDFFormat.JSONLD11_PLAIN)) return "jsonld-expanded";
+        Lang lang = format.getLang();
+        if (lang == Lang.TURTLE) return "turtle";
+        if (lang == Lang.JSONLD || lang == Lang.JSONLD11) return "jsonld";
+        if (lang == Lang.RDFXML) return "rdfxml";
+        if (lang == Lang.RDFTHRIFT) return "thrift";
+        if (lang == Lang.RDFPROTO) return "protobuf";
+        if (lang == Lang.NTRIPLES) return "nt";
+        if (lang == Lang.NQUADS) return "nq";
+        return lang.getFileExtensions().getFirst();
+    }
+
     private RdfMediaType() {}
 }
\ No newline at end of file
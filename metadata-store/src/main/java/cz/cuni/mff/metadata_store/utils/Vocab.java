@@ -29,6 +29,7 @@ public final class Vocab {
     public static final String DCTERMS_NS = "http://purl.org/dc/terms/";
     public static final String LDP_NS = "http://www.w3.org/ns/ldp#";
     public static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    public static final String PROV_NS = "http://www.w3.org/ns/prov#";
     public static final String RDF_NAMESPACE_BASE = ensureNamespace(namespaceUri);
     public static final String DF_NS = ensureNamespaceWithHash(RDF_NAMESPACE_BASE + dfNamespace);
     public static final String DS_NS = ensureNamespaceWithHash(RDF_NAMESPACE_BASE + dsNamespace);
@@ -42,10 +43,36 @@ public final class Vocab {
     public static final Resource Plan = ResourceFactory.createResource(PPLAN_NS + "Plan");
     public static final Resource Plugin = ResourceFactory.createResource(DF_NS + "Plugin");
     public static final Resource RootContainer = ResourceFactory.createResource(DF_NS + "root");
+    public static final Resource Distribution = ResourceFactory.createResource(DCAT_NS + "Distribution");
+
+    // --- System graphs ---
+    public static final Resource VersionsGraph = ResourceFactory.createResource(DF_NS + "versions");
+    public static final Resource IngestGraph = ResourceFactory.createResource(DF_NS + "ingest");
+    public static final Resource ChangeLogGraph = ResourceFactory.createResource(DF_NS + "changelog");
+    public static final Resource ReplicationGraph = ResourceFactory.createResource(DF_NS + "replication");
+    public static final Resource SearchIndexGraph = ResourceFactory.createResource(DF_NS + "search");
+    public static final Resource UsagesGraph = ResourceFactory.createResource(DF_NS + "usages");
+    public static final String CLOSURE_GRAPH_NS = DF_NS + "closure/";
 
     // --- Properties ---
     public static final Property contains = ResourceFactory.createProperty(LDP_NS + "contains");
     public static final Property type = ResourceFactory.createProperty(RDF_NS + "type");
+    public static final Property distribution = ResourceFactory.createProperty(DCAT_NS + "distribution");
+    public static final Property version = ResourceFactory.createProperty(DF_NS + "version");
+    public static final Property journalOffset = ResourceFactory.createProperty(DF_NS + "journalOffset");
+    public static final Property sequence = ResourceFactory.createProperty(DF_NS + "sequence");
+    public static final Property patch = ResourceFactory.createProperty(DF_NS + "patch");
+    public static final Property wasGeneratedBy = ResourceFactory.createProperty(PROV_NS + "wasGeneratedBy");
+    public static final Property specializationOf = ResourceFactory.createProperty(PROV_NS + "specializationOf");
+    public static final Property isStepOfPlan = ResourceFactory.createProperty(PPLAN_NS + "isStepOfPlan");
+    public static final Property executionPlan = ResourceFactory.createProperty(DF_NS + "executionPlan");
+    public static final Property isVariableOfPlan = ResourceFactory.createProperty(PPLAN_NS + "isVariableOfPlan");
+    public static final Property usesPlugin = ResourceFactory.createProperty(DF_NS + "usesPlugin");
+    public static final Property usedByStep = ResourceFactory.createProperty(DF_NS + "usedByStep");
+    public static final Property usedByVariable = ResourceFactory.createProperty(DF_NS + "usedByVariable");
+    public static final Property title = ResourceFactory.createProperty(DCTERMS_NS + "title");
+    public static final Property description = ResourceFactory.createProperty(DCTERMS_NS + "description");
+    public static final Property keyword = ResourceFactory.createProperty(DCAT_NS + "keyword");
 
     private Vocab() {
     }
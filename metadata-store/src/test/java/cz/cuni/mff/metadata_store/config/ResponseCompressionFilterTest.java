@@ -0,0 +1,191 @@
+package cz.cuni.mff.metadata_store.config;
+
+import com.github.luben.zstd.ZstdInputStream;
+import cz.cuni.mff.metadata_store.controller.RdfController;
+import cz.cuni.mff.metadata_store.utils.RdfMediaType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ResponseCompressionFilter class.
+ */
+class ResponseCompressionFilterTest {
+
+    private static final String BODY = "<urn:s> <urn:p> \"object\" .\n".repeat(200);
+    private static final String GRAPH = IntStream.range(0, 200).mapToObj(i -> "<urn:s" + i + "> <urn:p> \"object\" .\n").collect(Collectors.joining());
+
+    private ResponseCompressionFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new ResponseCompressionFilter(true, 2048, 3, new String[]{"text/*", "application/n-triples"}, 16, 1 << 20);
+    }
+
+    private MockHttpServletResponse get(String acceptEncoding, String ifNoneMatch, FilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/datasets/1");
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static FilterChain writing(String etag, String body) {
+        return (request, response) -> {
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            httpResponse.setContentType("application/n-triples");
+            if (etag != null) {
+                httpResponse.setHeader(HttpHeaders.ETAG, etag);
+            }
+            httpResponse.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+        };
+    }
+
+    private static String decompress(MockHttpServletResponse response) throws IOException {
+        ByteArrayInputStream compressed = new ByteArrayInputStream(response.getContentAsByteArray());
+        try (InputStream in = "zstd".equals(response.getHeader(HttpHeaders.CONTENT_ENCODING)) ? new ZstdInputStream(compressed) : new GZIPInputStream(compressed)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void negotiateEncoding_FollowsQualityValues() {
+        assertNull(ResponseCompressionFilter.negotiateEncoding(null));
+        assertNull(ResponseCompressionFilter.negotiateEncoding(" "));
+        assertNull(ResponseCompressionFilter.negotiateEncoding("identity, br"));
+        assertEquals("gzip", ResponseCompressionFilter.negotiateEncoding("gzip"));
+        assertEquals("gzip", ResponseCompressionFilter.negotiateEncoding("x-gzip"));
+        assertEquals("zstd", ResponseCompressionFilter.negotiateEncoding("gzip, zstd"));
+        assertEquals("gzip", ResponseCompressionFilter.negotiateEncoding("zstd;q=0.5, gzip;q=0.8"));
+        assertEquals("zstd", ResponseCompressionFilter.negotiateEncoding("gzip;q=0.5, *"));
+    }
+
+    @Test
+    void negotiateEncoding_ExcludesCodingsWithZeroQuality() {
+        assertEquals("gzip", ResponseCompressionFilter.negotiateEncoding("zstd;q=0, *"));
+        assertNull(ResponseCompressionFilter.negotiateEncoding("*;q=0"));
+        assertNull(ResponseCompressionFilter.negotiateEncoding("gzip;q=0, zstd;q=0.000"));
+        assertNull(ResponseCompressionFilter.negotiateEncoding("gzip;q=invalid"));
+    }
+
+    @Test
+    void compressesLargeResponses_AndPassesSmallOnes() throws Exception {
+        MockHttpServletResponse large = get("gzip", null, writing(null, BODY));
+        assertEquals("gzip", large.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(BODY, decompress(large));
+        assertTrue(large.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT_ENCODING));
+
+        MockHttpServletResponse small = get("gzip", null, writing(null, "<urn:s> <urn:p> <urn:o> .\n"));
+        assertNull(small.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("<urn:s> <urn:p> <urn:o> .\n", small.getContentAsString());
+    }
+
+    @Test
+    void compressedResponses_GetTheCodingInTheirStrongETag() throws Exception {
+        assertEquals("\"7-zstd\"", get("zstd", null, writing("\"7\"", BODY)).getHeader(HttpHeaders.ETAG));
+        assertEquals("\"7-gzip\"", get("gzip", null, writing("\"7\"", BODY)).getHeader(HttpHeaders.ETAG));
+        assertEquals("W/\"7\"", get("gzip", null, writing("W/\"7\"", BODY)).getHeader(HttpHeaders.ETAG));
+        assertEquals("\"7\"", get(null, null, writing("\"7\"", BODY)).getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void preconditions_SeeTheETagsTheControllersSent() throws Exception {
+        AtomicReference<String> seen = new AtomicReference<>();
+        MockHttpServletResponse response = get("zstd", "\"7-zstd\", \"8-gzip\"", (request, servletResponse) -> {
+            seen.set(((HttpServletRequest) request).getHeader(HttpHeaders.IF_NONE_MATCH));
+            ((HttpServletResponse) servletResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            ((HttpServletResponse) servletResponse).setHeader(HttpHeaders.ETAG, "\"7\"");
+        });
+
+        assertEquals("\"7\", \"8\"", seen.get());
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        assertEquals("\"7-zstd\"", response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void precompressedCache_ReplaysTheBodyOfTheSameVersion() throws Exception {
+        MockHttpServletResponse first = get("zstd", null, writing("\"7\"", BODY));
+        // The same version of the resource is not compressed again, whatever the handler writes
+        MockHttpServletResponse second = get("zstd", null, writing("\"7\"", BODY.toUpperCase()));
+        MockHttpServletResponse nextVersion = get("zstd", null, writing("\"8\"", BODY.toUpperCase()));
+
+        assertArrayEquals(first.getContentAsByteArray(), second.getContentAsByteArray());
+        assertEquals(second.getContentAsByteArray().length, second.getContentLength());
+        assertEquals(BODY, decompress(second));
+        assertEquals(BODY.toUpperCase(), decompress(nextVersion));
+    }
+
+    @Test
+    void precompressedCache_SkipsWeakETags() throws Exception {
+        get("gzip", null, writing("W/\"7\"", BODY));
+        MockHttpServletResponse second = get("gzip", null, writing("W/\"7\"", BODY.toUpperCase()));
+
+        assertEquals(BODY.toUpperCase(), decompress(second));
+    }
+
+    @Test
+    void streamedResponses_AreCompressedInTheAsyncDispatch() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new StreamingController()).addFilters(filter).build();
+
+        MvcResult started = mockMvc.perform(MockMvcRequestBuilders.get("/stream").header(HttpHeaders.ACCEPT_ENCODING, "zstd"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started)).andReturn().getResponse();
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertEquals("zstd", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("\"7-nt-zstd\"", response.getHeader(HttpHeaders.ETAG));
+        // The graph does not keep the order of its triples
+        assertEquals(GRAPH.lines().sorted().toList(), decompress(response).lines().sorted().toList());
+    }
+
+    @RestController
+    static class StreamingController implements RdfController {
+
+        @Override
+        public String[] getSupportedRdfMediaTypes() {
+            return new String[]{RdfMediaType.APPLICATION_N_TRIPLES_VALUE};
+        }
+
+        @GetMapping("/stream")
+        public ResponseEntity<StreamingResponseBody> stream() {
+            Model model = ModelFactory.createDefaultModel();
+            RDFDataMgr.read(model, new ByteArrayInputStream(GRAPH.getBytes(StandardCharsets.UTF_8)), Lang.NTRIPLES);
+            return formatRdfResponse(model, RdfMediaType.APPLICATION_N_TRIPLES_VALUE, 7L, null);
+        }
+    }
+}
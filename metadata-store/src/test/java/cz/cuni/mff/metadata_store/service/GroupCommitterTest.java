@@ -0,0 +1,130 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the GroupCommitter class.
+ */
+class GroupCommitterTest {
+
+    private static final Node PREDICATE = NodeFactory.createURI("urn:written");
+
+    private final AtomicInteger commits = new AtomicInteger();
+    private final CountDownLatch blocking = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private DatasetGraph dsg;
+    private GroupCommitter<String> groupCommitter;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        dsg = new DatasetGraphWrapper(DatasetGraphFactory.createTxnMem()) {
+            @Override
+            public void commit() {
+                super.commit();
+                commits.incrementAndGet();
+            }
+        };
+        groupCommitter = new GroupCommitter<>(dsg, this::write, 10, Duration.ZERO, "test-group-committer");
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        groupCommitter.shutdown();
+        executor.shutdownNow();
+    }
+
+    private void write(String write) {
+        if (write.equals("block")) {
+            blocking.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (write.startsWith("bad")) {
+            throw new IllegalArgumentException("Broken write " + write);
+        }
+        dsg.add(Quad.defaultGraphIRI, NodeFactory.createURI("urn:" + write), PREDICATE, NodeFactory.createLiteralString(write));
+    }
+
+    private boolean isWritten(String write) {
+        return dsg.calculateRead(() -> dsg.contains(Quad.defaultGraphIRI, NodeFactory.createURI("urn:" + write), PREDICATE, Node.ANY));
+    }
+
+    /**
+     * Submits the writes while the committer is stuck in a transaction, so that they queue up for the next one.
+     */
+    private List<Future<?>> submitWhileBlocked(String... writes) throws InterruptedException {
+        Future<?> blocker = executor.submit(() -> groupCommitter.commit("block"));
+        assertTrue(blocking.await(5, TimeUnit.SECONDS));
+        List<Future<?>> futures = new ArrayList<>();
+        futures.add(blocker);
+        for (String write : writes) {
+            futures.add(executor.submit(() -> groupCommitter.commit(write)));
+        }
+        Thread.sleep(200);
+        release.countDown();
+        return futures;
+    }
+
+    @Test
+    void commit_BatchesWritesQueuedDuringACommit() throws Exception {
+        List<Future<?>> futures = submitWhileBlocked("a", "b", "c", "d", "e");
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, commits.get());
+        for (String write : List.of("block", "a", "b", "c", "d", "e")) {
+            assertTrue(isWritten(write));
+        }
+    }
+
+    @Test
+    void commit_IsolatesTheFailureOfOneWriteInABatch() throws Exception {
+        List<Future<?>> futures = submitWhileBlocked("a", "bad", "b");
+
+        futures.get(0).get(5, TimeUnit.SECONDS);
+        futures.get(1).get(5, TimeUnit.SECONDS);
+        Exception failure = assertThrows(Exception.class, () -> futures.get(2).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+        futures.get(3).get(5, TimeUnit.SECONDS);
+
+        assertTrue(isWritten("a"));
+        assertTrue(isWritten("b"));
+        assertFalse(isWritten("bad"));
+    }
+
+    @Test
+    void commit_FailsInsteadOfWaitingAfterShutdown() {
+        groupCommitter.commit("a");
+        groupCommitter.shutdown();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                assertThrows(IllegalStateException.class, () -> groupCommitter.commit("b")));
+        assertFalse(isWritten("b"));
+    }
+}
@@ -0,0 +1,113 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the IngestJournal class.
+ */
+class IngestJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private static ValidatedGraph createGraph(String uuid) {
+        Model model = ModelFactory.createDefaultModel();
+        String datasetUri = Vocab.DS_NS + uuid;
+        model.add(model.createResource(datasetUri), Vocab.type, Vocab.Dataset);
+        model.add(model.createResource(datasetUri), Vocab.title, "Dataset " + uuid);
+        return new ValidatedGraph(model, Vocab.Dataset, datasetUri);
+    }
+
+    @Test
+    void replay_ReturnsTheRecordsAfterTheOffset() throws IOException {
+        Path file = directory.resolve("ingest.journal");
+        IngestJournal.Entry first;
+        IngestJournal.Entry second;
+        try (IngestJournal journal = new IngestJournal(file)) {
+            first = journal.append("t1", createGraph("1"));
+            second = journal.append("t2", createGraph("2"));
+        }
+
+        try (IngestJournal journal = new IngestJournal(file)) {
+            List<IngestJournal.Entry> entries = journal.replay(0);
+            assertEquals(List.of("t1", "t2"), entries.stream().map(IngestJournal.Entry::ticket).toList());
+            assertEquals(first.endOffset(), entries.get(0).endOffset());
+            assertEquals(second.endOffset(), entries.get(1).endOffset());
+            assertEquals(Vocab.DS_NS + "2", entries.get(1).graph().resourceUri());
+            assertEquals(Vocab.Dataset, entries.get(1).graph().resourceType());
+            assertTrue(entries.get(1).graph().model().isIsomorphicWith(second.graph().model()));
+
+            assertEquals(List.of("t2"), journal.replay(first.endOffset()).stream().map(IngestJournal.Entry::ticket).toList());
+            assertTrue(journal.replay(second.endOffset()).isEmpty());
+        }
+    }
+
+    @Test
+    void replay_TruncatesATornTail() throws IOException {
+        Path file = directory.resolve("ingest.journal");
+        IngestJournal.Entry first;
+        IngestJournal.Entry second;
+        try (IngestJournal journal = new IngestJournal(file)) {
+            first = journal.append("t1", createGraph("1"));
+            second = journal.append("t2", createGraph("2"));
+        }
+        // Crash in the middle of appending the second record
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(second.endOffset() - 10);
+        }
+
+        try (IngestJournal journal = new IngestJournal(file)) {
+            assertEquals(List.of("t1"), journal.replay(0).stream().map(IngestJournal.Entry::ticket).toList());
+            assertEquals(first.endOffset(), Files.size(file));
+
+            journal.append("t3", createGraph("3"));
+            assertEquals(List.of("t1", "t3"), journal.replay(0).stream().map(IngestJournal.Entry::ticket).toList());
+        }
+    }
+
+    @Test
+    void replay_TruncatesACorruptedRecord() throws IOException {
+        Path file = directory.resolve("ingest.journal");
+        IngestJournal.Entry first;
+        try (IngestJournal journal = new IngestJournal(file)) {
+            first = journal.append("t1", createGraph("1"));
+            journal.append("t2", createGraph("2"));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long position = first.endOffset() + 12;
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+
+        try (IngestJournal journal = new IngestJournal(file)) {
+            assertEquals(List.of("t1"), journal.replay(0).stream().map(IngestJournal.Entry::ticket).toList());
+            assertEquals(first.endOffset(), journal.size());
+        }
+    }
+
+    @Test
+    void truncateIfCommitted_EmptiesOnlyAFullyCommittedJournal() throws IOException {
+        try (IngestJournal journal = new IngestJournal(directory.resolve("ingest.journal"))) {
+            IngestJournal.Entry first = journal.append("t1", createGraph("1"));
+            IngestJournal.Entry second = journal.append("t2", createGraph("2"));
+
+            assertFalse(journal.truncateIfCommitted(first.endOffset()));
+            assertTrue(journal.truncateIfCommitted(second.endOffset()));
+            assertEquals(0, journal.size());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the IngestService class.
+ */
+class IngestServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private Dataset dataset;
+    private UriService uriService;
+    private RdfStorageService rdfStorageService;
+    private IngestService ingestService;
+
+    @BeforeEach
+    void setUp() {
+        dataset = TDB2Factory.createDataset();
+        uriService = new UriService();
+        rdfStorageService = new RdfStorageServiceImpl(dataset, uriService, new VersionService(dataset));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ingestService != null) {
+            ingestService.stop();
+        }
+        dataset.close();
+    }
+
+    private IngestService startIngestService(int statusRetention) {
+        IngestService service = new IngestService(dataset, rdfStorageService, statusRetention);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "journalLocation", directory.resolve("ingest.journal").toString());
+        ReflectionTestUtils.setField(service, "batchSize", 10);
+        ReflectionTestUtils.setField(service, "batchWindowMs", 5L);
+        ReflectionTestUtils.setField(service, "retryBackoffMs", 5L);
+        service.start();
+        return service;
+    }
+
+    private ValidatedGraph createGraph() {
+        Model model = ModelFactory.createDefaultModel();
+        String datasetUri = uriService.buildDatasetUri(UUID.randomUUID().toString());
+        model.add(model.createResource(datasetUri), Vocab.type, Vocab.Dataset);
+        model.add(model.createResource(datasetUri), Vocab.title, "Ingested Dataset");
+        return new ValidatedGraph(model, Vocab.Dataset, datasetUri);
+    }
+
+    private IngestStatus awaitCommitted(String ticket) {
+        IngestStatus status = ingestService.awaitStatus(ticket, Duration.ofSeconds(5)).orElseThrow();
+        assertEquals(IngestStatus.State.COMMITTED, status.state());
+        return status;
+    }
+
+    @Test
+    void submit_CommitsTheJournaledWrite() {
+        ingestService = startIngestService(100);
+        ValidatedGraph graph = createGraph();
+
+        IngestStatus status = awaitCommitted(ingestService.submit(graph));
+
+        assertEquals(graph.resourceUri(), status.resource());
+        assertTrue(rdfStorageService.getDatasetDescription(graph.resourceUri().substring(Vocab.DS_NS.length())).containsAll(graph.model()));
+    }
+
+    @Test
+    void submit_RetriesWritesThatFailTransiently() {
+        AtomicInteger failures = new AtomicInteger(2);
+        rdfStorageService = new RdfStorageServiceImpl(dataset, uriService, new VersionService(dataset)) {
+            @Override
+            public void storeValidatedGraphs(List<ValidatedGraph> graphs) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Simulated I/O failure");
+                }
+                super.storeValidatedGraphs(graphs);
+            }
+        };
+        ingestService = startIngestService(100);
+        ValidatedGraph graph = createGraph();
+
+        awaitCommitted(ingestService.submit(graph));
+
+        assertTrue(rdfStorageService.getDatasetDescription(graph.resourceUri().substring(Vocab.DS_NS.length())).containsAll(graph.model()));
+    }
+
+    @Test
+    void submit_SkipsRejectedWritesAndCommitsTheOthers() {
+        ValidatedGraph rejected = createGraph();
+        rdfStorageService = new RdfStorageServiceImpl(dataset, uriService, new VersionService(dataset)) {
+            @Override
+            public void storeValidatedGraphs(List<ValidatedGraph> graphs) {
+                if (graphs.contains(rejected)) {
+                    throw new IllegalArgumentException("Simulated invalid graph");
+                }
+                super.storeValidatedGraphs(graphs);
+            }
+        };
+        ingestService = startIngestService(100);
+
+        String rejectedTicket = ingestService.submit(rejected);
+        String acceptedTicket = ingestService.submit(createGraph());
+
+        IngestStatus status = ingestService.awaitStatus(rejectedTicket, Duration.ofSeconds(5)).orElseThrow();
+        assertEquals(IngestStatus.State.FAILED, status.state());
+        assertEquals("Simulated invalid graph", status.error());
+        awaitCommitted(acceptedTicket);
+    }
+
+    @Test
+    void getStatus_ForgetsTheOldestFinishedTicketsBeyondTheRetention() {
+        ingestService = startIngestService(2);
+
+        String first = ingestService.submit(createGraph());
+        awaitCommitted(first);
+        String second = ingestService.submit(createGraph());
+        awaitCommitted(second);
+        String third = ingestService.submit(createGraph());
+        awaitCommitted(third);
+
+        assertTrue(ingestService.getStatus(first).isEmpty());
+        assertTrue(ingestService.getStatus(second).isPresent());
+        assertTrue(ingestService.getStatus(third).isPresent());
+        assertTrue(ingestService.getStatus(UUID.randomUUID().toString()).isEmpty());
+    }
+}
@@ -1,17 +1,35 @@
 package cz.cuni.mff.metadata_store.service;
 
+import cz.cuni.mff.metadata_store.config.ReplicationRole;
 import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.datatypes.TypeMapper;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.tdb2.TDB2Factory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -32,7 +50,7 @@ class RdfStorageServiceImplTest {
     void setUp() {
         dataset = TDB2Factory.createDataset();
         uriService = new UriService();
-        rdfStorageService = new RdfStorageServiceImpl(dataset, uriService);
+        rdfStorageService = new RdfStorageServiceImpl(dataset, uriService, new VersionService(dataset));
     }
 
     /**
@@ -54,6 +72,18 @@ class RdfStorageServiceImplTest {
         return model;
     }
 
+    private Model createTestDistributionModel(String uuid, String... accessUrls) {
+        Model model = ModelFactory.createDefaultModel();
+        Resource datasetResource = model.createResource(uriService.buildDatasetUri(uuid));
+        for (String accessUrl : accessUrls) {
+            Resource distribution = model.createResource()
+                    .addProperty(Vocab.type, Vocab.Distribution)
+                    .addProperty(model.createProperty(Vocab.DCAT_NS, "accessURL"), model.createResource(accessUrl));
+            datasetResource.addProperty(Vocab.distribution, distribution);
+        }
+        return model;
+    }
+
     @Test
     void storeRdfGraph_Success() {
         String uuid = UUID.randomUUID().toString();
@@ -81,6 +111,42 @@ class RdfStorageServiceImplTest {
         assertTrue(exception.getMessage().contains("does not contain a resource of type"), "Exception message should indicate the missing type.");
     }
 
+    @Test
+    void storeValidatedGraphs_StoresAllGraphsInOneTransaction() {
+        String uuid1 = UUID.randomUUID().toString();
+        String uuid2 = UUID.randomUUID().toString();
+        ValidatedGraph graph1 = rdfStorageService.validateRdfGraph(createTestDatasetModel(uuid1), Vocab.Dataset);
+        ValidatedGraph graph2 = rdfStorageService.validateRdfGraph(createTestDatasetModel(uuid2), Vocab.Dataset);
+
+        rdfStorageService.storeValidatedGraphs(List.of(graph1, graph2));
+
+        assertEquals(uriService.buildDatasetUri(uuid1), graph1.resourceUri());
+        assertFalse(rdfStorageService.getDatasetDescription(uuid1).isEmpty());
+        assertFalse(rdfStorageService.getDatasetDescription(uuid2).isEmpty());
+        assertEquals(1, rdfStorageService.getVersionedDatasetDescription(uuid2).version());
+    }
+
+    @Test
+    void storeRdfGraph_GroupCommitsConcurrentWrites() throws Exception {
+        RdfStorageServiceImpl groupCommitService = new RdfStorageServiceImpl(dataset, uriService, new VersionService(dataset), new DefaultGraphLayout(dataset), true, 8, 5, ReplicationRole.STANDALONE);
+        List<String> uuids = IntStream.range(0, 32).mapToObj(i -> UUID.randomUUID().toString()).toList();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<String>> results = uuids.stream()
+                    .map(uuid -> executor.submit(() -> groupCommitService.storeRdfGraph(createTestDatasetModel(uuid), Vocab.Dataset)))
+                    .toList();
+            for (int i = 0; i < uuids.size(); i++) {
+                assertEquals(uriService.buildDatasetUri(uuids.get(i)), results.get(i).get());
+            }
+        } finally {
+            groupCommitService.shutdown();
+        }
+
+        for (String uuid : uuids) {
+            assertEquals(1, rdfStorageService.getVersionedDatasetDescription(uuid).version());
+        }
+    }
+
     @Test
     void getDatasetDescription_Success() {
         String uuid = UUID.randomUUID().toString();
@@ -135,4 +201,347 @@ class RdfStorageServiceImplTest {
             assertEquals(2, resultModel.listSubjectsWithProperty(Vocab.type, Vocab.Dataset).toList().size());
         });
     }
+
+    @Test
+    void updateDatasetDistributions_AppendKeepsExisting() {
+        String uuid = UUID.randomUUID().toString();
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(uuid), Vocab.Dataset);
+
+        rdfStorageService.updateDatasetDistributions(uuid, createTestDistributionModel(uuid, "http://artifacts/1"), false);
+        rdfStorageService.updateDatasetDistributions(uuid, createTestDistributionModel(uuid, "http://artifacts/2"), false);
+
+        Model fetchedModel = rdfStorageService.getDatasetDescription(uuid);
+        Resource datasetResource = fetchedModel.getResource(uriService.buildDatasetUri(uuid));
+        assertEquals(2, fetchedModel.listObjectsOfProperty(datasetResource, Vocab.distribution).toList().size());
+    }
+
+    @Test
+    void updateDatasetDistributions_ReplaceRemovesExisting() {
+        String uuid = UUID.randomUUID().toString();
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(uuid), Vocab.Dataset);
+        rdfStorageService.updateDatasetDistributions(uuid, createTestDistributionModel(uuid, "http://artifacts/1", "http://artifacts/2"), false);
+
+        rdfStorageService.updateDatasetDistributions(uuid, createTestDistributionModel(uuid, "http://artifacts/3"), true);
+
+        dataset.executeRead(() -> {
+            Model defaultModel = dataset.getDefaultModel();
+            Resource datasetResource = defaultModel.getResource(uriService.buildDatasetUri(uuid));
+            assertEquals(1, defaultModel.listObjectsOfProperty(datasetResource, Vocab.distribution).toList().size());
+            assertEquals(1, defaultModel.listSubjectsWithProperty(Vocab.type, Vocab.Distribution).toList().size());
+            assertTrue(defaultModel.contains(datasetResource, defaultModel.createProperty(Vocab.DCTERMS_NS, "title")));
+        });
+    }
+
+    @Test
+    void updateDatasetDistributions_KeepsNestedChecksums() {
+        String uuid = UUID.randomUUID().toString();
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(uuid), Vocab.Dataset);
+        Property checksum = ResourceFactory.createProperty("http://spdx.org/rdf/terms#", "checksum");
+        Property checksumValue = ResourceFactory.createProperty("http://spdx.org/rdf/terms#", "checksumValue");
+
+        Model distributions = createTestDistributionModel(uuid, "http://artifacts/1");
+        distributions.listSubjectsWithProperty(Vocab.type, Vocab.Distribution).toList().forEach(distribution ->
+                distribution.addProperty(checksum, distributions.createResource().addProperty(checksumValue, "ab12")));
+        rdfStorageService.updateDatasetDistributions(uuid, createTestDistributionModel(uuid, "http://artifacts/0"), false);
+        rdfStorageService.updateDatasetDistributions(uuid, distributions, true);
+
+        Model fetchedModel = rdfStorageService.getDatasetDescription(uuid);
+        assertEquals(1, fetchedModel.listSubjectsWithProperty(Vocab.type, Vocab.Distribution).toList().size());
+        assertEquals(1, fetchedModel.listObjectsOfProperty(checksum).toList().size());
+        assertTrue(fetchedModel.contains(null, checksumValue, "ab12"));
+    }
+
+    @Test
+    void updateDatasetDistributions_ThrowsException_WhenDatasetIsMissing() {
+        String uuid = UUID.randomUUID().toString();
+
+        assertThrows(NoSuchElementException.class, () ->
+                rdfStorageService.updateDatasetDistributions(uuid, createTestDistributionModel(uuid, "http://artifacts/1"), false));
+    }
+
+    @Test
+    void updateDataset_IncrementsVersion() {
+        String uuid = UUID.randomUUID().toString();
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(uuid), Vocab.Dataset);
+        long storedVersion = rdfStorageService.getVersionedDatasetDescription(uuid).version();
+
+        long updatedVersion = rdfStorageService.updateDataset(uuid, createTestDatasetModel(uuid), VersionService.toETag(storedVersion));
+
+        assertEquals(storedVersion + 1, updatedVersion);
+        assertEquals(updatedVersion, rdfStorageService.getVersionedDatasetDescription(uuid).version());
+    }
+
+    @Test
+    void updateDataset_AcceptsRepresentationETag() {
+        String uuid = UUID.randomUUID().toString();
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(uuid), Vocab.Dataset);
+        long storedVersion = rdfStorageService.getVersionedDatasetDescription(uuid).version();
+        String turtleETag = VersionService.toETag(storedVersion, RDFFormat.TURTLE_PRETTY);
+        String thriftETag = VersionService.toETag(storedVersion, RDFFormat.RDF_THRIFT);
+
+        assertNotEquals(turtleETag, thriftETag);
+        assertEquals(storedVersion + 1, rdfStorageService.updateDataset(uuid, createTestDatasetModel(uuid), thriftETag));
+        assertThrows(ConcurrentModificationException.class, () ->
+                rdfStorageService.updateDataset(uuid, createTestDatasetModel(uuid), turtleETag));
+    }
+
+    @Test
+    void updateDataset_ThrowsException_WhenVersionIsStale() {
+        String uuid = UUID.randomUUID().toString();
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(uuid), Vocab.Dataset);
+        String staleETag = VersionService.toETag(rdfStorageService.getVersionedDatasetDescription(uuid).version());
+        rdfStorageService.updateDataset(uuid, createTestDatasetModel(uuid), staleETag);
+
+        assertThrows(ConcurrentModificationException.class, () ->
+                rdfStorageService.updateDataset(uuid, createTestDatasetModel(uuid), staleETag));
+    }
+
+    @Test
+    void getVersionedDatasetDescription_ExcludesVersionTriples() {
+        String uuid = UUID.randomUUID().toString();
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(uuid), Vocab.Dataset);
+
+        Model fetchedModel = rdfStorageService.getVersionedDatasetDescription(uuid).model();
+
+        assertFalse(fetchedModel.contains(null, Vocab.version));
+    }
+
+    @Test
+    void namedGraphLayout_StoresEachResourceInItsOwnGraph() {
+        RdfStorageService namedGraphService = new RdfStorageServiceImpl(dataset, uriService, new VersionService(dataset), new NamedGraphLayout(dataset), false, 1, 0, ReplicationRole.STANDALONE);
+        String uuid = UUID.randomUUID().toString();
+        String datasetUri = uriService.buildDatasetUri(uuid);
+        Model testModel = createTestDatasetModel(uuid);
+
+        namedGraphService.storeRdfGraph(testModel, Vocab.Dataset);
+        namedGraphService.updateDatasetDistributions(uuid, createTestDistributionModel(uuid, "http://artifacts/1"), false);
+
+        dataset.executeRead(() -> {
+            assertTrue(dataset.containsNamedModel(datasetUri));
+            assertTrue(dataset.getNamedModel(datasetUri).containsAll(testModel));
+            assertFalse(dataset.getDefaultModel().contains(dataset.getDefaultModel().getResource(datasetUri), null));
+        });
+        Model fetchedModel = namedGraphService.getDatasetDescription(uuid);
+        assertTrue(fetchedModel.containsAll(testModel));
+        assertEquals(1, fetchedModel.listObjectsOfProperty(Vocab.distribution).toList().size());
+        assertEquals(1, namedGraphService.listResources(Vocab.Dataset).listSubjectsWithProperty(Vocab.type, Vocab.Dataset).toList().size());
+
+        long storedVersion = namedGraphService.getVersionedDatasetDescription(uuid).version();
+        namedGraphService.updateDataset(uuid, createTestDatasetModel(uuid), VersionService.toETag(storedVersion));
+        assertTrue(namedGraphService.getDatasetDescription(uuid).listObjectsOfProperty(Vocab.distribution).toList().isEmpty());
+    }
+
+    @Test
+    void namedGraphLayout_QueryViewUnitesResourceGraphsOnly() {
+        NamedGraphLayout layout = new NamedGraphLayout(dataset);
+        String firstUri = uriService.buildDatasetUri(UUID.randomUUID().toString());
+        String secondUri = uriService.buildDatasetUri(UUID.randomUUID().toString());
+        Property title = ResourceFactory.createProperty(Vocab.DCTERMS_NS, "title");
+
+        dataset.executeWrite(() -> {
+            layout.resourceModel(firstUri).add(layout.resourceModel(firstUri).createResource(firstUri), title, "Shared");
+            layout.resourceModel(secondUri).add(layout.resourceModel(secondUri).createResource(firstUri), title, "Shared");
+            Model versions = dataset.getNamedModel(Vocab.VersionsGraph.getURI());
+            versions.add(versions.createResource(firstUri), title, "System");
+        });
+
+        dataset.executeRead(() -> {
+            Model view = layout.queryView().getDefaultModel();
+            assertEquals(1, view.listStatements(view.getResource(firstUri), title, (String) null).toList().size());
+            assertFalse(view.contains(view.getResource(firstUri), title, "System"));
+        });
+    }
+
+    @Test
+    void storageLayoutMigration_MovesResourcesIntoNamedGraphs() {
+        String uuid = UUID.randomUUID().toString();
+        String datasetUri = uriService.buildDatasetUri(uuid);
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(uuid), Vocab.Dataset);
+        rdfStorageService.updateDatasetDistributions(uuid, createTestDistributionModel(uuid, "http://artifacts/1"), false);
+        Model before = rdfStorageService.getDatasetDescription(uuid);
+
+        NamedGraphLayout layout = new NamedGraphLayout(dataset);
+        assertEquals(1, new StorageLayoutMigration(dataset, layout).migrateToNamedGraphs());
+
+        RdfStorageService namedGraphService = new RdfStorageServiceImpl(dataset, uriService, new VersionService(dataset), layout, false, 1, 0, ReplicationRole.STANDALONE);
+        dataset.executeRead(() -> assertTrue(dataset.containsNamedModel(datasetUri)));
+        assertTrue(namedGraphService.getDatasetDescription(uuid).isIsomorphicWith(before));
+    }
+
+    @Test
+    void getPipelineDescriptionWithDependencies_ReflectsDependencyUpdates() {
+        String pipelineUuid = UUID.randomUUID().toString();
+        String pluginUuid = UUID.randomUUID().toString();
+        String datasetUuid = UUID.randomUUID().toString();
+        Property title = ResourceFactory.createProperty(Vocab.DCTERMS_NS, "title");
+
+        Model plugin = ModelFactory.createDefaultModel();
+        plugin.createResource(uriService.buildPluginUri(pluginUuid)).addProperty(Vocab.type, Vocab.Plugin).addProperty(title, "Old Plugin");
+        rdfStorageService.storeRdfGraph(plugin, Vocab.Plugin);
+
+        Model pipeline = ModelFactory.createDefaultModel();
+        Resource pipelineResource = pipeline.createResource(uriService.buildPipelineUri(pipelineUuid)).addProperty(Vocab.type, Vocab.Plan);
+        pipeline.createResource(Vocab.STEP_NS + pipelineUuid)
+                .addProperty(pipeline.createProperty(Vocab.PPLAN_NS, "isStepOfPlan"), pipelineResource)
+                .addProperty(pipeline.createProperty(Vocab.DF_NS, "usesPlugin"), pipeline.createResource(uriService.buildPluginUri(pluginUuid)));
+        pipeline.createResource(Vocab.VAR_NS + pipelineUuid)
+                .addProperty(pipeline.createProperty(Vocab.PPLAN_NS, "isVariableOfPlan"), pipelineResource)
+                .addProperty(Vocab.specializationOf, pipeline.createResource(uriService.buildDatasetUri(datasetUuid)));
+        rdfStorageService.storeRdfGraph(pipeline, Vocab.Plan);
+
+        // Dataset stored after the pipeline that uses it
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(datasetUuid), Vocab.Dataset);
+        Model closure = rdfStorageService.getPipelineDescriptionWithDependencies(pipelineUuid);
+        assertTrue(closure.contains(closure.getResource(uriService.buildPluginUri(pluginUuid)), title, "Old Plugin"));
+        assertTrue(closure.contains(closure.getResource(uriService.buildDatasetUri(datasetUuid)), title, "Test Dataset"));
+
+        Model updatedPlugin = ModelFactory.createDefaultModel();
+        updatedPlugin.createResource(uriService.buildPluginUri(pluginUuid)).addProperty(Vocab.type, Vocab.Plugin).addProperty(title, "New Plugin");
+        rdfStorageService.updatePlugin(pluginUuid, updatedPlugin);
+
+        closure = rdfStorageService.getPipelineDescriptionWithDependencies(pipelineUuid);
+        Resource pluginResource = closure.getResource(uriService.buildPluginUri(pluginUuid));
+        assertTrue(closure.contains(pluginResource, title, "New Plugin"));
+        assertFalse(closure.contains(pluginResource, title, "Old Plugin"));
+        dataset.executeRead(() -> assertTrue(dataset.containsNamedModel(PipelineClosures.closureGraphUri(uriService.buildPipelineUri(pipelineUuid)))));
+    }
+
+    @Test
+    void getVersionedPipelineDescriptionWithDependencies_BumpsVersionOnDependencyUpdate() {
+        String pipelineUuid = UUID.randomUUID().toString();
+        String datasetUuid = UUID.randomUUID().toString();
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(datasetUuid), Vocab.Dataset);
+
+        Model pipeline = ModelFactory.createDefaultModel();
+        Resource pipelineResource = pipeline.createResource(uriService.buildPipelineUri(pipelineUuid)).addProperty(Vocab.type, Vocab.Plan);
+        pipeline.createResource(Vocab.VAR_NS + pipelineUuid)
+                .addProperty(pipeline.createProperty(Vocab.PPLAN_NS, "isVariableOfPlan"), pipelineResource)
+                .addProperty(Vocab.specializationOf, pipeline.createResource(uriService.buildDatasetUri(datasetUuid)));
+        rdfStorageService.storeRdfGraph(pipeline, Vocab.Plan);
+
+        long pipelineVersion = rdfStorageService.getVersionedPipelineDescription(pipelineUuid).version();
+        long closureVersion = rdfStorageService.getVersionedPipelineDescriptionWithDependencies(pipelineUuid).version();
+        assertTrue(closureVersion > 0);
+
+        rdfStorageService.updateDataset(datasetUuid, createTestDatasetModel(datasetUuid));
+
+        assertEquals(pipelineVersion, rdfStorageService.getVersionedPipelineDescription(pipelineUuid).version());
+        assertTrue(rdfStorageService.getVersionedPipelineDescriptionWithDependencies(pipelineUuid).version() > closureVersion);
+        assertThrows(NoSuchElementException.class, () ->
+                rdfStorageService.getVersionedPipelineDescriptionWithDependencies(UUID.randomUUID().toString()));
+    }
+
+    private void storeChainedPipeline(String pipelineUuid, String inputDatasetUuid, String outputDatasetUuid) {
+        Model pipeline = ModelFactory.createDefaultModel();
+        Resource pipelineResource = pipeline.createResource(uriService.buildPipelineUri(pipelineUuid)).addProperty(Vocab.type, Vocab.Plan);
+        pipeline.createResource(Vocab.VAR_NS + UUID.randomUUID())
+                .addProperty(Vocab.isVariableOfPlan, pipelineResource)
+                .addProperty(Vocab.specializationOf, pipeline.createResource(uriService.buildDatasetUri(inputDatasetUuid)));
+        rdfStorageService.storeRdfGraph(pipeline, Vocab.Plan);
+
+        Model output = createTestDatasetModel(outputDatasetUuid);
+        output.getResource(uriService.buildDatasetUri(outputDatasetUuid)).addProperty(Vocab.wasGeneratedBy, pipelineResource);
+        rdfStorageService.storeRdfGraph(output, Vocab.Dataset);
+    }
+
+    @Test
+    void getUsages_FollowsPipelineWrites() {
+        String pluginUuid = UUID.randomUUID().toString();
+        String source = UUID.randomUUID().toString();
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+        Model plugin = ModelFactory.createDefaultModel();
+        plugin.createResource(uriService.buildPluginUri(pluginUuid)).addProperty(Vocab.type, Vocab.Plugin);
+        rdfStorageService.storeRdfGraph(plugin, Vocab.Plugin);
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(source), Vocab.Dataset);
+        assertTrue(rdfStorageService.getPluginUsages(pluginUuid).pipelines().isEmpty());
+
+        storeChainedPipeline(first, source, UUID.randomUUID().toString());
+        storeChainedPipeline(second, source, UUID.randomUUID().toString());
+        Model pipeline = ModelFactory.createDefaultModel();
+        Resource pipelineResource = pipeline.createResource(uriService.buildPipelineUri(first));
+        pipeline.createResource(Vocab.STEP_NS + first)
+                .addProperty(Vocab.isStepOfPlan, pipelineResource)
+                .addProperty(Vocab.usesPlugin, pipeline.createResource(uriService.buildPluginUri(pluginUuid)));
+        pipelineResource.addProperty(Vocab.type, Vocab.Plan);
+        rdfStorageService.storeRdfGraph(pipeline, Vocab.Plan);
+
+        ResourceUsages pluginUsages = rdfStorageService.getPluginUsages(pluginUuid);
+        assertEquals(uriService.buildPluginUri(pluginUuid), pluginUsages.resource());
+        assertEquals(Map.of(uriService.buildPipelineUri(first), List.of(Vocab.STEP_NS + first)), pluginUsages.pipelines());
+        assertEquals(Set.of(uriService.buildPipelineUri(first), uriService.buildPipelineUri(second)),
+                rdfStorageService.getDatasetUsages(source).pipelines().keySet());
+        assertThrows(NoSuchElementException.class, () -> rdfStorageService.getPluginUsages(UUID.randomUUID().toString()));
+
+        // Stores written before the index existed are indexed on startup
+        dataset.executeWrite(() -> dataset.removeNamedModel(Vocab.UsagesGraph.getURI()));
+        assertTrue(rdfStorageService.getDatasetUsages(source).pipelines().isEmpty());
+        ((RdfStorageServiceImpl) rdfStorageService).buildUsageIndex();
+        assertEquals(2, rdfStorageService.getDatasetUsages(source).pipelines().size());
+        assertEquals(1, rdfStorageService.getPluginUsages(pluginUuid).pipelines().size());
+    }
+
+    @Test
+    void resolvePipelineDependencies_OrdersUpstreamPipelinesFirst() {
+        String source = UUID.randomUUID().toString();
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+        String third = UUID.randomUUID().toString();
+        String firstOutput = UUID.randomUUID().toString();
+        String secondOutput = UUID.randomUUID().toString();
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(source), Vocab.Dataset);
+        storeChainedPipeline(first, source, firstOutput);
+        storeChainedPipeline(second, firstOutput, secondOutput);
+        storeChainedPipeline(third, secondOutput, UUID.randomUUID().toString());
+
+        PipelineDependencies dependencies = rdfStorageService.resolvePipelineDependencies(third, 10);
+
+        List<String> expectedOrder = List.of(uriService.buildPipelineUri(first), uriService.buildPipelineUri(second), uriService.buildPipelineUri(third));
+        assertEquals(expectedOrder, dependencies.plan().executionOrder());
+        assertFalse(dependencies.plan().truncated());
+        assertTrue(dependencies.graph().contains(dependencies.graph().getResource(uriService.buildPipelineUri(first)), Vocab.type, Vocab.Plan));
+
+        DependencyPlan limited = rdfStorageService.resolvePipelineDependencies(third, 1).plan();
+        assertEquals(expectedOrder.subList(1, 3), limited.executionOrder());
+        assertTrue(limited.truncated());
+    }
+
+    @Test
+    void resolvePipelineDependencies_ThrowsException_WhenPipelinesFormCycle() {
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+        String firstOutput = UUID.randomUUID().toString();
+        String secondOutput = UUID.randomUUID().toString();
+        storeChainedPipeline(first, secondOutput, firstOutput);
+        storeChainedPipeline(second, firstOutput, secondOutput);
+
+        assertThrows(IllegalStateException.class, () -> rdfStorageService.resolvePipelineDependencies(first, 10));
+    }
+
+    @Test
+    void getPipelineExecutionPlan_ReturnsStoredPlan() {
+        String pipelineUuid = UUID.randomUUID().toString();
+        String plan = "{\"stages\":[],\"criticalPathLength\":0}";
+        Model pipeline = ModelFactory.createDefaultModel();
+        pipeline.createResource(uriService.buildPipelineUri(pipelineUuid))
+                .addProperty(Vocab.type, Vocab.Plan)
+                .addProperty(Vocab.executionPlan, pipeline.createTypedLiteral(plan, TypeMapper.getInstance().getSafeTypeByName(Vocab.RDF_NS + "JSON")));
+        rdfStorageService.storeRdfGraph(pipeline, Vocab.Plan);
+
+        assertEquals(Optional.of(plan), rdfStorageService.getPipelineExecutionPlan(pipelineUuid));
+        assertThrows(NoSuchElementException.class, () -> rdfStorageService.getPipelineExecutionPlan(UUID.randomUUID().toString()));
+    }
+
+    @Test
+    void writeEntireStore_StreamsSameTriplesAsStoreModel() {
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(UUID.randomUUID().toString()), Vocab.Dataset);
+        rdfStorageService.storeRdfGraph(createTestDatasetModel(UUID.randomUUID().toString()), Vocab.Dataset);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rdfStorageService.writeEntireStore(out, RDFFormat.NTRIPLES);
+
+        Model streamed = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(streamed, new ByteArrayInputStream(out.toByteArray()), Lang.NTRIPLES);
+        assertTrue(streamed.isIsomorphicWith(rdfStorageService.getEntireStoreModel()));
+    }
 }
@@ -0,0 +1,223 @@
+package cz.cuni.mff.metadata_store.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import cz.cuni.mff.metadata_store.config.ReplicationRole;
+import cz.cuni.mff.metadata_store.controller.ReplicationController;
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdfpatch.system.DatasetGraphChanges;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ReplicaService class, tailing a primary served over HTTP by the ReplicationController.
+ */
+class ReplicaServiceTest {
+
+    private static final String MARKER_GRAPH = "urn:test:marker";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<ReplicaService> replicas = new ArrayList<>();
+
+    private Dataset primary;
+    private Dataset replica;
+    private ChangeLogService changeLogService;
+    private HttpServer server;
+    private int writes;
+    private volatile long lastAcknowledged = -1;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        DatasetGraph base = TDB2Factory.createDataset().asDatasetGraph();
+        primary = DatasetFactory.wrap(new DatasetGraphChanges(base, new ChangeLogRecorder(base)));
+        replica = TDB2Factory.createDataset();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v1/replication/", this::serve);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicas.forEach(ReplicaService::stop);
+        server.stop(0);
+        primary.close();
+        replica.close();
+    }
+
+    /**
+     * Answers replication requests like the servlet container would, with the controller of the primary.
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                String[] pair = parameter.split("=", 2);
+                parameters.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8), URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+            }
+        }
+
+        ReplicationController controller = new ReplicationController(changeLogService, null, ReplicationRole.PRIMARY);
+        try (exchange) {
+            try {
+                if (exchange.getRequestURI().getPath().endsWith("/log")) {
+                    long after = Long.parseLong(parameters.getOrDefault("after", "0"));
+                    ChangeLogPage page = controller.getLog(after, Integer.parseInt(parameters.getOrDefault("limit", "500")), parameters.get("replica")).getBody();
+                    lastAcknowledged = after;
+                    byte[] json = objectMapper.writeValueAsBytes(page);
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, json.length);
+                    exchange.getResponseBody().write(json);
+                } else {
+                    exchange.getResponseHeaders().set("Content-Type", "application/rdf-patch");
+                    exchange.sendResponseHeaders(200, 0);
+                    controller.getSnapshot().getBody().writeTo(exchange.getResponseBody());
+                }
+            } catch (ResponseStatusException e) {
+                exchange.sendResponseHeaders(e.getStatusCode().value(), -1);
+            }
+        }
+    }
+
+    private void startPrimary(long retention, long replicaTimeoutMs) {
+        changeLogService = new ChangeLogService(primary, ReplicationRole.PRIMARY, retention, replicaTimeoutMs, 60_000);
+    }
+
+    private ReplicaService startReplica() {
+        ReplicaService service = new ReplicaService(replica, ReplicationRole.REPLICA);
+        ReflectionTestUtils.setField(service, "primaryUrl", "http://localhost:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(service, "pollIntervalMs", 20L);
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        ReflectionTestUtils.setField(service, "replicaId", "replica-1");
+        service.start();
+        replicas.add(service);
+        return service;
+    }
+
+    /**
+     * Commits write transactions on the primary, each adding a dataset with a title.
+     */
+    private void write(int transactions) {
+        for (int i = 0; i < transactions; i++) {
+            int number = ++writes;
+            primary.executeWrite(() -> {
+                Model model = primary.getDefaultModel();
+                Resource dataset = model.createResource(Vocab.DS_NS + number);
+                model.add(dataset, Vocab.type, Vocab.Dataset);
+                model.add(dataset, Vocab.title, "Dataset " + number);
+            });
+        }
+    }
+
+    /**
+     * Waits until the replica has applied the whole change log and acknowledged it with its next poll.
+     */
+    private void awaitCaughtUp(ReplicaService service) throws InterruptedException {
+        long latest = changeLogService.getLatestSequence();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (service.getAppliedSequence() != latest || lastAcknowledged != latest) {
+            assertTrue(System.nanoTime() < deadline, "Replica did not catch up with sequence " + latest);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Model copyOf(Dataset dataset, String graph) {
+        return dataset.calculateRead(() -> ModelFactory.createDefaultModel()
+                .add(graph == null ? dataset.getDefaultModel() : dataset.getNamedModel(graph)));
+    }
+
+    private void assertReplicated() {
+        assertTrue(copyOf(replica, null).isIsomorphicWith(copyOf(primary, null)));
+    }
+
+    /**
+     * Adds a graph to the replica that only survives as long as the replica does not reload a snapshot.
+     */
+    private void markReplica() {
+        replica.executeWrite(() -> replica.getNamedModel(MARKER_GRAPH).add(
+                replica.getNamedModel(MARKER_GRAPH).createResource(MARKER_GRAPH), Vocab.title, "marker"));
+    }
+
+    @Test
+    void replica_CatchesUpFromTheLogAfterARestart() throws InterruptedException {
+        startPrimary(2, 3_600_000);
+        write(3);
+        ReplicaService service = startReplica();
+        awaitCaughtUp(service);
+        assertReplicated();
+
+        write(3);
+        awaitCaughtUp(service);
+        assertReplicated();
+
+        service.stop();
+        markReplica();
+        write(3);
+        // The replica acknowledged sequence 6 with its last poll, so only the entries up to it are dropped
+        assertEquals(6, changeLogService.compact());
+        assertEquals(3, changeLogService.getEntries(6, 10).entries().size());
+
+        ReplicaService restarted = startReplica();
+        awaitCaughtUp(restarted);
+        assertEquals(9, restarted.getAppliedSequence());
+        assertReplicated();
+        assertFalse(copyOf(replica, MARKER_GRAPH).isEmpty(), "Replica reloaded the snapshot instead of applying the log");
+    }
+
+    @Test
+    void replica_ReloadsTheSnapshotOnceItsEntriesAreCompacted() throws InterruptedException {
+        startPrimary(2, 0);
+        write(2);
+        ReplicaService service = startReplica();
+        awaitCaughtUp(service);
+
+        service.stop();
+        markReplica();
+        write(4);
+        // The replica is no longer waited for, so all but the retained entries are dropped
+        assertEquals(4, changeLogService.compact());
+        assertThrows(NoSuchElementException.class, () -> changeLogService.getEntries(2, 10));
+
+        ReplicaService restarted = startReplica();
+        awaitCaughtUp(restarted);
+        assertReplicated();
+        assertTrue(copyOf(replica, MARKER_GRAPH).isEmpty(), "Replica applied a log with missing entries");
+    }
+
+    @Test
+    void compact_KeepsTheRetainedEntriesWithoutReplicas() {
+        startPrimary(3, 3_600_000);
+        write(5);
+        assertEquals(2, changeLogService.compact());
+        assertEquals(0, changeLogService.compact());
+        assertEquals(List.of(3L, 4L, 5L), changeLogService.getEntries(2, 10).entries().stream().map(ChangeLogEntry::sequence).toList());
+
+        // Compaction is not recorded as a change of its own
+        assertEquals(5, changeLogService.getLatestSequence());
+    }
+}
@@ -0,0 +1,76 @@
+package cz.cuni.mff.metadata_store.service;
+
+import cz.cuni.mff.metadata_store.utils.Vocab;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SearchIndex class.
+ * These tests use an in-memory Jena TDB2 dataset and an in-memory Lucene directory.
+ */
+class SearchIndexTest {
+
+    private Dataset dataset;
+    private UriService uriService;
+
+    @BeforeEach
+    void setUp() {
+        dataset = TDB2Factory.createDataset();
+        uriService = new UriService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dataset != null) {
+            dataset.close();
+        }
+    }
+
+    private Model createTestDatasetModel(String uuid) {
+        Model model = ModelFactory.createDefaultModel();
+        String datasetUri = uriService.buildDatasetUri(uuid);
+        Resource datasetResource = model.createResource(datasetUri);
+        model.add(datasetResource, Vocab.type, Vocab.Dataset);
+        model.add(datasetResource, model.createProperty(Vocab.DCTERMS_NS, "title"), "Test Dataset");
+        return model;
+    }
+
+    @Test
+    void searchIndex_FollowsCommittedWrites() throws Exception {
+        try (SearchIndex searchIndex = new SearchIndex(new ByteBuffersDirectory())) {
+            DatasetGraph base = dataset.asDatasetGraph();
+            Dataset searchable = DatasetFactory.wrap(searchIndex.monitor(base, base));
+            RdfStorageService service = new RdfStorageServiceImpl(searchable, uriService, new VersionService(searchable));
+
+            String uuid = UUID.randomUUID().toString();
+            Model weather = createTestDatasetModel(uuid);
+            weather.add(weather.getResource(uriService.buildDatasetUri(uuid)), Vocab.description, "Hourly weather measurements in Prague");
+            service.storeRdfGraph(weather, Vocab.Dataset);
+            service.storeRdfGraph(createTestDatasetModel(UUID.randomUUID().toString()), Vocab.Dataset);
+
+            SearchResult result = searchIndex.search("prague", null, 0, 10);
+            assertEquals(1, result.total());
+            assertEquals(uriService.buildDatasetUri(uuid), result.hits().getFirst().uri());
+            assertEquals(1L, result.facets().get("dataset"));
+            assertEquals(0L, result.facets().get("plugin"));
+            assertEquals(2, searchIndex.search("test", "dataset", 0, 10).total());
+
+            service.updateDataset(uuid, createTestDatasetModel(uuid));
+            assertEquals(0, searchIndex.search("prague", null, 0, 10).total());
+            assertThrows(IllegalArgumentException.class, () -> searchIndex.search("title:(", null, 0, 10));
+        }
+    }
+}
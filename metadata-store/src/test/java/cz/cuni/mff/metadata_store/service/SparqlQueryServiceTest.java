@@ -0,0 +1,63 @@
+package cz.cuni.mff.metadata_store.service;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SparqlQueryService class.
+ */
+class SparqlQueryServiceTest {
+
+    private Dataset dataset;
+    private SparqlQueryService sparqlQueryService;
+
+    @BeforeEach
+    void setUp() {
+        dataset = TDB2Factory.createDataset();
+        sparqlQueryService = new SparqlQueryService(dataset, new DefaultGraphLayout(dataset), 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dataset != null) {
+            dataset.close();
+        }
+    }
+
+    @Test
+    void sparqlCostEstimate_PenalizesUnboundCrossProducts() {
+        String prefix = "PREFIX dcterms: <http://purl.org/dc/terms/> ";
+        long bound = SparqlQueryService.estimateCost(Algebra.compile(QueryFactory.create(
+                prefix + "SELECT ?title WHERE { <urn:x> dcterms:title ?title }")));
+        long joined = SparqlQueryService.estimateCost(Algebra.compile(QueryFactory.create(
+                prefix + "SELECT * WHERE { ?s dcterms:title ?t . ?s dcterms:description ?d }")));
+        long crossProduct = SparqlQueryService.estimateCost(Algebra.compile(QueryFactory.create(
+                "SELECT * WHERE { ?a ?b ?c . ?d ?e ?f }")));
+
+        assertEquals(1, bound);
+        assertEquals(20, joined);
+        assertEquals(10_000, crossProduct);
+        assertThrows(IllegalArgumentException.class, () -> SparqlQueryService.estimateCost(Algebra.compile(QueryFactory.create(
+                "SELECT * WHERE { SERVICE <http://example.org/sparql> { ?s ?p ?o } }"))));
+    }
+
+    @Test
+    void admit_RejectsQueriesBeyondTheLimitUntilAPermitIsClosed() {
+        SparqlQueryService.Permit permit = sparqlQueryService.admit();
+
+        assertThrows(RejectedExecutionException.class, sparqlQueryService::admit);
+        permit.close();
+        try (SparqlQueryService.Permit next = sparqlQueryService.admit()) {
+            assertNotNull(next);
+        }
+    }
+}
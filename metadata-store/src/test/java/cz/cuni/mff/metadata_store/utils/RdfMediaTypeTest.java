@@ -0,0 +1,106 @@
+package cz.cuni.mff.metadata_store.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.resultset.ResultSetLang;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the RdfMediaType class.
+ */
+class RdfMediaTypeTest {
+
+    @Test
+    void getFormatFromAcceptHeader_PicksTheHighestQuality() {
+        assertEquals(Optional.of(RDFFormat.TURTLE_PRETTY), RdfMediaType.getFormatFromAcceptHeader(null));
+        assertEquals(Lang.RDFXML, RdfMediaType.getLangFromAcceptHeader("text/turtle;q=0.5, application/rdf+xml").orElseThrow());
+        assertEquals(Lang.NTRIPLES, RdfMediaType.getLangFromAcceptHeader("text/html, application/n-triples;q=0.9, */*;q=0.1").orElseThrow());
+        assertEquals(Lang.TURTLE, RdfMediaType.getLangFromAcceptHeader("text/html, */*;q=0.8").orElseThrow());
+        assertTrue(RdfMediaType.getFormatFromAcceptHeader("text/html").isEmpty());
+        assertTrue(RdfMediaType.getFormatFromAcceptHeader("not a media type").isEmpty());
+    }
+
+    @Test
+    void getFormatFromAcceptHeader_NeverPicksTypesWithZeroQuality() {
+        assertEquals(Lang.JSONLD, RdfMediaType.getLangFromAcceptHeader("text/turtle;q=0, */*").orElseThrow());
+        assertEquals(Lang.JSONLD, RdfMediaType.getLangFromAcceptHeader("*/*;q=0.5, text/turtle;q=0").orElseThrow());
+        assertTrue(RdfMediaType.getFormatFromAcceptHeader("text/turtle;q=0").isEmpty());
+        assertTrue(RdfMediaType.getFormatFromAcceptHeader("*/*;q=0").isEmpty());
+    }
+
+    @Test
+    void getFormatFromAcceptHeader_PrefersConcreteTypesOnATie() {
+        assertEquals(Lang.RDFXML, RdfMediaType.getLangFromAcceptHeader("*/*, application/rdf+xml").orElseThrow());
+        assertEquals(Lang.NQUADS, RdfMediaType.getLangFromAcceptHeader("application/*, application/n-quads").orElseThrow());
+        // Equal concrete types keep the order of the header
+        assertEquals(Lang.NTRIPLES, RdfMediaType.getLangFromAcceptHeader("application/n-triples, text/turtle").orElseThrow());
+    }
+
+    @Test
+    void getFormatName_DistinguishesWriterVariants() {
+        assertEquals("turtle", RdfMediaType.getFormatName(RdfMediaType.getFormatFromAcceptHeader("text/turtle").orElseThrow()));
+        assertEquals("turtle-flat", RdfMediaType.getFormatName(RdfMediaType.getFormatFromAcceptHeader("text/turtle;style=flat").orElseThrow()));
+        assertEquals("jsonld", RdfMediaType.getFormatName(RdfMediaType.getFormatFromAcceptHeader("application/ld+json").orElseThrow()));
+        assertEquals("jsonld-expanded", RdfMediaType.getFormatName(RdfMediaType.getFormatFromAcceptHeader(
+                "application/ld+json;profile=\"http://www.w3.org/ns/json-ld#expanded\"").orElseThrow()));
+        assertEquals("nt", RdfMediaType.getFormatName(RdfMediaType.getFormatFromAcceptHeader("application/n-triples").orElseThrow()));
+        assertEquals("thrift", RdfMediaType.getFormatName(RdfMediaType.getFormatFromAcceptHeader("application/rdf+thrift").orElseThrow()));
+    }
+
+    @Test
+    void getFormatFromAcceptHeader_SelectsWriterVariants() {
+        assertEquals(RDFFormat.TURTLE_FLAT, RdfMediaType.getFormatFromAcceptHeader("text/turtle;style=flat").orElseThrow());
+        assertEquals(RDFFormat.TURTLE_BLOCKS, RdfMediaType.getFormatFromAcceptHeader("text/turtle;style=blocks").orElseThrow());
+        assertEquals(RDFFormat.JSONLD11_PLAIN, RdfMediaType.getFormatFromAcceptHeader(
+                "application/ld+json;profile=\"http://www.w3.org/ns/json-ld#expanded\"").orElseThrow());
+        assertEquals(JsonLdFlattenedWriter.JSONLD_FLATTENED, RdfMediaType.getFormatFromAcceptHeader(
+                "application/ld+json;profile=\"http://www.w3.org/ns/json-ld#flattened\"").orElseThrow());
+    }
+
+    @Test
+    void getResultsLangFromAcceptHeader_FollowsQualityValues() {
+        assertEquals(Optional.of(ResultSetLang.RS_JSON), RdfMediaType.getResultsLangFromAcceptHeader(""));
+        assertEquals(ResultSetLang.RS_CSV, RdfMediaType.getResultsLangFromAcceptHeader("application/json;q=0.4, text/csv").orElseThrow());
+        assertEquals(ResultSetLang.RS_TSV, RdfMediaType.getResultsLangFromAcceptHeader("application/*;q=0, text/*;q=0.5, text/csv;q=0").orElseThrow());
+    }
+
+    @Test
+    void flattenedJsonLd_ListsEveryNodeAtTheTopLevel() throws Exception {
+        Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefix("dcat", "http://www.w3.org/ns/dcat#");
+        Resource distribution = model.createResource()
+                .addProperty(model.createProperty("http://www.w3.org/ns/dcat#", "accessURL"), model.createResource("http://artifacts/1"));
+        model.createResource("http://example.org/ds/1")
+                .addProperty(model.createProperty("http://www.w3.org/ns/dcat#", "distribution"), distribution);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFDataMgr.write(out, model, RdfMediaType.getFormatFromAcceptHeader(
+                "application/ld+json;profile=\"http://www.w3.org/ns/json-ld#flattened\"").orElseThrow());
+
+        JsonNode document = new ObjectMapper().readTree(out.toByteArray());
+        JsonNode graph = document.get("@graph");
+        assertEquals(2, graph.size());
+        for (JsonNode node : graph) {
+            assertTrue(node.has("@id"));
+            node.fields().forEachRemaining(field -> field.getValue().forEach(value ->
+                    assertFalse(value.isObject() && value.size() > 1, "Nested node in " + field.getKey())));
+        }
+        assertEquals("http://www.w3.org/ns/dcat#", document.get("@context").get("dcat").asText());
+
+        Model parsed = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(parsed, new ByteArrayInputStream(out.toByteArray()), Lang.JSONLD);
+        assertTrue(parsed.isIsomorphicWith(model));
+    }
+}